@@ -0,0 +1,88 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json.adapters;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.json.JsonSanitizer;
+import com.google.json.JsonSanitizer.OutputProfile;
+
+/**
+ * Creates Gson readers that read the sanitized form of JSON-like content.
+ * <p>
+ * The reader pulls from {@link JsonSanitizer#sanitizingReader}, so the
+ * sanitized characters are copied from the input straight into the reader's
+ * buffer and the sanitized JSON never exists as a whole.
+ */
+public final class GsonSanitizer {
+  private GsonSanitizer() {
+    // Static API.
+  }
+
+  /**
+   * A reader of the sanitized form of jsonish.
+   * Since the parsed JSON is never embedded, this uses
+   * {@link OutputProfile#PLAIN_JSON}.
+   *
+   * @param jsonish JSON-like content.  It must not be modified while the
+   *     reader is in use.
+   */
+  public static JsonReader newJsonReader(CharSequence jsonish) {
+    return new JsonReader(JsonSanitizer.sanitizingReader(
+        jsonish, JsonSanitizer.DEFAULT_NESTING_DEPTH,
+        OutputProfile.PLAIN_JSON));
+  }
+
+  /**
+   * A reader of the sanitized form of the JSON-like content read from in,
+   * like {@link #newJsonReader(CharSequence)}.
+   * The input is buffered, since fixing some content depends on what
+   * follows it, but the sanitized output is not.
+   *
+   * @param in JSON-like content.  This is read to the end but not closed.
+   */
+  public static JsonReader newJsonReader(Reader in) throws IOException {
+    return new JsonReader(JsonSanitizer.sanitizingReader(
+        in, JsonSanitizer.DEFAULT_NESTING_DEPTH, OutputProfile.PLAIN_JSON));
+  }
+
+  /**
+   * Deserializes the sanitized form of jsonish.
+   *
+   * @param gson configures deserialization.
+   * @param jsonish JSON-like content.
+   * @param typeOfT the type to deserialize, as for
+   *     {@link Gson#fromJson(JsonReader, Type)}.
+   */
+  public static <T> T fromJson(Gson gson, CharSequence jsonish, Type typeOfT) {
+    return gson.fromJson(newJsonReader(jsonish), typeOfT);
+  }
+
+  /**
+   * Deserializes the sanitized form of jsonish.
+   *
+   * @param gson configures deserialization.
+   * @param jsonish JSON-like content.
+   * @param classOfT the class to deserialize.
+   */
+  public static <T> T fromJson(
+      Gson gson, CharSequence jsonish, Class<T> classOfT) {
+    return classOfT.cast(fromJson(gson, jsonish, (Type) classOfT));
+  }
+}
@@ -0,0 +1,68 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json.adapters;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.google.json.JsonSanitizer;
+import com.google.json.JsonSanitizer.OutputProfile;
+
+/**
+ * Creates Jackson parsers that read the sanitized form of JSON-like content.
+ * <p>
+ * The parser pulls from {@link JsonSanitizer#sanitizingReader}, so the
+ * sanitized characters are copied from the input straight into the parser's
+ * buffer and the sanitized JSON never exists as a whole.
+ */
+public final class JacksonSanitizer {
+  private JacksonSanitizer() {
+    // Static API.
+  }
+
+  /**
+   * A parser of the sanitized form of jsonish.
+   * Since the parsed JSON is never embedded, this uses
+   * {@link OutputProfile#PLAIN_JSON}.
+   *
+   * @param factory configures the parser.
+   * @param jsonish JSON-like content.  It must not be modified while the
+   *     parser is in use.
+   */
+  public static JsonParser createParser(
+      JsonFactory factory, CharSequence jsonish)
+      throws IOException {
+    return factory.createParser(JsonSanitizer.sanitizingReader(
+        jsonish, JsonSanitizer.DEFAULT_NESTING_DEPTH,
+        OutputProfile.PLAIN_JSON));
+  }
+
+  /**
+   * A parser of the sanitized form of the JSON-like content read from in,
+   * like {@link #createParser(JsonFactory, CharSequence)}.
+   * The input is buffered, since fixing some content depends on what
+   * follows it, but the sanitized output is not.
+   *
+   * @param factory configures the parser.
+   * @param in JSON-like content.  This is read to the end but not closed.
+   */
+  public static JsonParser createParser(JsonFactory factory, Reader in)
+      throws IOException {
+    return factory.createParser(JsonSanitizer.sanitizingReader(
+        in, JsonSanitizer.DEFAULT_NESTING_DEPTH, OutputProfile.PLAIN_JSON));
+  }
+}
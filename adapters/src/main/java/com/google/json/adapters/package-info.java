@@ -0,0 +1,5 @@
+/**
+ * Adapters that feed sanitized JSON to third-party JSON parsers.
+ */
+@javax.annotation.ParametersAreNonnullByDefault
+package com.google.json.adapters;
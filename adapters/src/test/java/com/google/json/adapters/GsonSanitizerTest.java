@@ -0,0 +1,74 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json.adapters;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class GsonSanitizerTest extends TestCase {
+
+  @Test
+  public static final void testJsonReader() throws IOException {
+    String input = "{a:[1,,'</script>'";
+    for (JsonReader r : new JsonReader[] {
+           GsonSanitizer.newJsonReader(input),
+           GsonSanitizer.newJsonReader(new StringReader(input)),
+         }) {
+      r.beginObject();
+      assertEquals("a", r.nextName());
+      r.beginArray();
+      assertEquals(1, r.nextInt());
+      r.nextNull();
+      assertEquals("</script>", r.nextString());
+      r.endArray();
+      r.endObject();
+      assertEquals(JsonToken.END_DOCUMENT, r.peek());
+      r.close();
+    }
+  }
+
+  static final class Config {
+    String name;
+    List<Integer> ids;
+    Map<String, Boolean> flags;
+  }
+
+  @Test
+  public static final void testFromJson() {
+    Gson gson = new Gson();
+    Config c = GsonSanitizer.fromJson(
+        gson, "{name:'x', ids:[0x10, 017,], flags:{on:true, off:false,}}",
+        Config.class);
+    assertEquals("x", c.name);
+    assertEquals(2, c.ids.size());
+    assertEquals(16, c.ids.get(0).intValue());
+    assertEquals(15, c.ids.get(1).intValue());
+    assertEquals(Boolean.TRUE, c.flags.get("on"));
+
+    JsonElement e = GsonSanitizer.fromJson(gson, "[1 2]", JsonElement.class);
+    assertEquals("[1,2]", e.toString());
+  }
+}
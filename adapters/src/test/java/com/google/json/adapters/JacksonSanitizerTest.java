@@ -0,0 +1,82 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json.adapters;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class JacksonSanitizerTest extends TestCase {
+
+  private static String tokens(JsonParser p) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    try {
+      for (JsonToken t; (t = p.nextToken()) != null;) {
+        if (sb.length() != 0) { sb.append(' '); }
+        switch (t) {
+          case FIELD_NAME: sb.append(p.getCurrentName()).append(':'); break;
+          case VALUE_STRING: sb.append('\'').append(p.getText()).append('\'');
+            break;
+          case VALUE_NUMBER_INT: case VALUE_NUMBER_FLOAT:
+          case VALUE_TRUE: case VALUE_FALSE: case VALUE_NULL:
+            sb.append(p.getText());
+            break;
+          default: sb.append(t.asString()); break;
+        }
+      }
+    } finally {
+      p.close();
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public static final void testParsesSanitizedContent() throws IOException {
+    JsonFactory factory = new JsonFactory();
+    String input = "{ a: 'x</script>', b: [0x10, .5,, ], // comment\n c: ";
+    String want = "{ a: 'x</script>' b: [ 16 0.5 null ] c: null }";
+    assertEquals(want, tokens(JacksonSanitizer.createParser(factory, input)));
+    assertEquals(
+        want,
+        tokens(JacksonSanitizer.createParser(
+            factory, new StringReader(input))));
+  }
+
+  @Test
+  public static final void testLongInput() throws IOException {
+    // Longer than the parser's buffer so that it reads many times.
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < 10000; ++i) {
+      sb.append(i).append(",'s").append(i).append("',");
+    }
+    JsonParser p = JacksonSanitizer.createParser(new JsonFactory(), sb);
+    assertEquals(JsonToken.START_ARRAY, p.nextToken());
+    for (int i = 0; i < 10000; ++i) {
+      assertEquals(JsonToken.VALUE_NUMBER_INT, p.nextToken());
+      assertEquals(i, p.getIntValue());
+      assertEquals(JsonToken.VALUE_STRING, p.nextToken());
+      assertEquals("s" + i, p.getText());
+    }
+    assertEquals(JsonToken.END_ARRAY, p.nextToken());
+    assertNull(p.nextToken());
+  }
+}
@@ -0,0 +1,132 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json.cli;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import com.google.json.EvalMinifier;
+import com.google.json.JsonSanitizer;
+import com.google.json.JsonSanitizer.OutputProfile;
+
+/**
+ * Sanitizes or minifies JSON-like content from stdin to stdout.
+ * <pre>
+ * json-sanitizer [--minify] [--plain] [--max-depth N] &lt; in &gt; out
+ * </pre>
+ * <ul>
+ *   <li>{@code --minify} applies {@link EvalMinifier#minify(String, int)}
+ *     instead of {@link JsonSanitizer#sanitize(String, int, OutputProfile)}.
+ *   <li>{@code --plain} uses {@link OutputProfile#PLAIN_JSON} instead of
+ *     {@link OutputProfile#EMBEDDABLE} for output that will not be embedded
+ *     in HTML or XML.
+ *   <li>{@code --max-depth} sets the maximum nesting depth, which defaults
+ *     to {@link JsonSanitizer#DEFAULT_NESTING_DEPTH}.
+ * </ul>
+ * Input and output are UTF-8.  The exit status is 0 on success, 1 if the
+ * input is nested too deeply, and 2 on a usage error.
+ * <p>
+ * Shell pipelines run this thousands of times, so it is written to start
+ * fast: it reads and writes bytes on the standard file descriptors and
+ * loads few classes beyond the sanitizer's own.
+ * It has no reflection of its own, so it compiles with GraalVM
+ * {@code native-image}, and a JVM launch can use an AppCDS archive.
+ */
+public final class JsonSanitizerCli {
+  private JsonSanitizerCli() {
+    // Main class.
+  }
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final String USAGE =
+      "Usage: json-sanitizer [--minify] [--plain] [--max-depth N]"
+      + " < in > out\n";
+
+  public static void main(String[] args) throws IOException {
+    System.exit(run(
+        args, new FileInputStream(FileDescriptor.in),
+        new FileOutputStream(FileDescriptor.out),
+        new FileOutputStream(FileDescriptor.err)));
+  }
+
+  /** Runs the command and returns its exit status. */
+  static int run(String[] args, InputStream in, OutputStream out,
+                 OutputStream err)
+      throws IOException {
+    boolean minify = false;
+    OutputProfile profile = OutputProfile.EMBEDDABLE;
+    int maximumNestingDepth = JsonSanitizer.DEFAULT_NESTING_DEPTH;
+    for (int i = 0; i < args.length; ++i) {
+      String arg = args[i];
+      if ("--minify".equals(arg)) {
+        minify = true;
+      } else if ("--plain".equals(arg)) {
+        profile = OutputProfile.PLAIN_JSON;
+      } else if ("--max-depth".equals(arg) && i + 1 < args.length) {
+        try {
+          maximumNestingDepth = Integer.parseInt(args[++i]);
+        } catch (NumberFormatException ex) {
+          return usage(err);
+        }
+        if (maximumNestingDepth < 1
+            || maximumNestingDepth > JsonSanitizer.MAXIMUM_NESTING_DEPTH) {
+          return usage(err);
+        }
+      } else {
+        return usage(err);
+      }
+    }
+
+    String input = readAll(in);
+    String output;
+    try {
+      output = minify
+          ? EvalMinifier.minify(input, maximumNestingDepth)
+          : JsonSanitizer.sanitize(input, maximumNestingDepth, profile);
+    } catch (ArrayIndexOutOfBoundsException ex) {
+      // The sanitizer's signal that the input is nested too deeply.
+      err.write(("Nested deeper than " + maximumNestingDepth + "\n")
+                .getBytes(UTF8));
+      err.flush();
+      return 1;
+    }
+    out.write(output.getBytes(UTF8));
+    out.flush();
+    return 0;
+  }
+
+  private static int usage(OutputStream err) throws IOException {
+    err.write(USAGE.getBytes(UTF8));
+    err.flush();
+    return 2;
+  }
+
+  private static String readAll(InputStream in) throws IOException {
+    byte[] buf = new byte[8192];
+    int len = 0;
+    for (int n; (n = in.read(buf, len, buf.length - len)) >= 0;) {
+      len += n;
+      if (len == buf.length) { buf = Arrays.copyOf(buf, len * 2); }
+    }
+    return new String(buf, 0, len, UTF8);
+  }
+}
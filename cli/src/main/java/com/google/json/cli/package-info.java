@@ -0,0 +1,5 @@
+/**
+ * A command line tool that sanitizes JSON-like content.
+ */
+@javax.annotation.ParametersAreNonnullByDefault
+package com.google.json.cli;
@@ -0,0 +1,70 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.google.json.EvalMinifier;
+import com.google.json.JsonSanitizer;
+import com.google.json.JsonSanitizer.OutputProfile;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class JsonSanitizerCliTest extends TestCase {
+
+  private static String run(int wantStatus, String input, String... args)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    int status = JsonSanitizerCli.run(
+        args, new ByteArrayInputStream(input.getBytes("UTF-8")), out, err);
+    assertEquals(err.toString("UTF-8"), wantStatus, status);
+    return status == 0 ? out.toString("UTF-8") : err.toString("UTF-8");
+  }
+
+  @Test
+  public static final void testSanitize() throws IOException {
+    String input = "{a:'</script>', b:[0x10,,], c:'Grüße 🎉'";
+    assertEquals(JsonSanitizer.sanitize(input), run(0, input));
+    assertEquals(
+        JsonSanitizer.sanitize(
+            input, JsonSanitizer.DEFAULT_NESTING_DEPTH,
+            OutputProfile.PLAIN_JSON),
+        run(0, input, "--plain"));
+    assertEquals(EvalMinifier.minify(input), run(0, input, "--minify"));
+    assertEquals("null", run(0, ""));
+  }
+
+  @Test
+  public static final void testNestingDepth() throws IOException {
+    assertEquals("[[[]]]", run(0, "[[[", "--max-depth", "3"));
+    assertEquals("Nested deeper than 2\n",
+                 run(1, "[[[", "--max-depth", "2"));
+  }
+
+  @Test
+  public static final void testUsage() throws IOException {
+    for (String[] args : new String[][] {
+           { "--bogus" }, { "--max-depth" }, { "--max-depth", "x" },
+           { "--max-depth", "0" }, { "file.json" },
+         }) {
+      assertTrue(run(2, "[]", args).startsWith("Usage: "));
+    }
+  }
+}
@@ -0,0 +1,162 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures how long it takes to sanitize a small file from stdin to stdout
+ * in a new process, which is dominated by startup.
+ * <p>
+ * Usage: {@code [runs [native-image-binary]]}.
+ * It times a JVM with default options, one tuned for startup, the tuned
+ * one with an AppCDS archive made first, and the native image if one was
+ * built with {@code mvn -Pnative package}.  Child processes run with the
+ * jars on this process's class path, since AppCDS cannot archive classes
+ * from directories, so run it as in
+ * <pre>
+ * java -cp target/json-sanitizer-cli-VERSION.jar:target/test-classes:\
+ *   ../target/json-sanitizer-VERSION.jar \
+ *   com.google.json.cli.StartupBenchmark
+ * </pre>
+ */
+public final class StartupBenchmark {
+  private StartupBenchmark() {
+    // Main class.
+  }
+
+  public static void main(String[] args) throws Exception {
+    int runs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    File nativeImage = new File(
+        args.length > 1 ? args[1] : "target/json-sanitizer");
+
+    StringBuilder sb = new StringBuilder("[");
+    while (sb.length() < 2048) {
+      sb.append("{id:").append(sb.length())
+          .append(", name:'</script>', tags:[0x1F, 'a',],},");
+    }
+    byte[] input = sb.toString().getBytes("UTF-8");
+
+    String java = System.getProperty("java.home")
+        + File.separator + "bin" + File.separator + "java";
+    String cp = childClassPath();
+    String main = JsonSanitizerCli.class.getName();
+    File jsa = File.createTempFile("json-sanitizer", ".jsa");
+    jsa.deleteOnExit();
+    String[] tuned = {
+      "-XX:TieredStopAtLevel=1", "-XX:+UseSerialGC", "-XX:-UsePerfData",
+      "-Xshare:auto",
+    };
+
+    time("JVM", runs, input, java, "-cp", cp, main);
+    time("JVM tuned for startup", runs, input,
+         concat(java, tuned, "-cp", cp, main));
+    if (jsa.delete()) {
+      try {
+        run(input, concat(
+            java, tuned, "-XX:ArchiveClassesAtExit=" + jsa, "-Xlog:cds=off",
+            "-Xlog:cds+dynamic=off", "-cp", cp, main));
+      } catch (IOException ex) {
+        jsa.delete();
+      }
+    }
+    if (jsa.isFile()) {
+      time("JVM tuned with AppCDS", runs, input, concat(
+          java, tuned, "-XX:SharedArchiveFile=" + jsa, "-cp", cp, main));
+    } else {
+      System.out.println(
+          "JVM tuned with AppCDS: needs JDK 13 or later and a class path"
+          + " of jars, not directories");
+    }
+    if (nativeImage.canExecute()) {
+      time("native image", runs, input, nativeImage.getPath());
+    } else {
+      System.out.println("native image: " + nativeImage + " not built");
+    }
+  }
+
+  /**
+   * The jars on this process's class path, or the whole class path if the
+   * tool is not in a jar.
+   */
+  private static String childClassPath() {
+    String cp = System.getProperty("java.class.path");
+    StringBuilder jars = new StringBuilder();
+    for (String entry : cp.split(File.pathSeparator)) {
+      if (entry.endsWith(".jar")) {
+        if (jars.length() != 0) { jars.append(File.pathSeparatorChar); }
+        jars.append(entry);
+      }
+    }
+    String cli = JsonSanitizerCli.class.getProtectionDomain()
+        .getCodeSource().getLocation().getPath();
+    return cli.endsWith(".jar") ? jars.toString() : cp;
+  }
+
+  private static String[] concat(String java, String[] opts, String... rest) {
+    List<String> all = new ArrayList<String>();
+    all.add(java);
+    all.addAll(Arrays.asList(opts));
+    all.addAll(Arrays.asList(rest));
+    return all.toArray(new String[all.size()]);
+  }
+
+  private static void time(
+      String name, int runs, byte[] input, String... command)
+      throws IOException, InterruptedException {
+    run(input, command);  // Warm the file system cache.
+    long[] nanos = new long[runs];
+    for (int i = 0; i < runs; ++i) {
+      long t0 = System.nanoTime();
+      run(input, command);
+      nanos[i] = System.nanoTime() - t0;
+    }
+    Arrays.sort(nanos);
+    System.out.printf(
+        "%s: median %.1fms, min %.1fms, max %.1fms%n", name,
+        nanos[runs / 2] / 1e6, nanos[0] / 1e6, nanos[runs - 1] / 1e6);
+  }
+
+  /** Where children's output goes, since only their time matters. */
+  private static final File SINK;
+  static {
+    try {
+      SINK = File.createTempFile("json-sanitizer", ".out");
+    } catch (IOException ex) {
+      throw new ExceptionInInitializerError(ex);
+    }
+    SINK.deleteOnExit();
+  }
+
+  private static void run(byte[] input, String... command)
+      throws IOException, InterruptedException {
+    ProcessBuilder pb = new ProcessBuilder(command);
+    pb.redirectOutput(SINK);
+    pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+    Process p = pb.start();
+    OutputStream stdin = p.getOutputStream();
+    stdin.write(input);
+    stdin.close();
+    int status = p.waitFor();
+    if (status != 0) {
+      throw new IOException(Arrays.toString(command) + " exited " + status);
+    }
+  }
+}
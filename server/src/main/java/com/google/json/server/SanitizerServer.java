@@ -0,0 +1,396 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json.server;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.json.EvalMinifier;
+import com.google.json.JsonSanitizer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An HTTP server that lets services written in other languages sanitize and
+ * minify JSON-like content without embedding a JVM.
+ * <ul>
+ *   <li>{@code POST /sanitize} responds with
+ *     {@link JsonSanitizer#sanitize(String) embeddable JSON}.
+ *     The output is streamed from a {@link JsonSanitizer#sanitizingReader}
+ *     so it is never built as a whole.</li>
+ *   <li>{@code POST /minify} responds with
+ *     {@link EvalMinifier#minify(String) minified JSON}.</li>
+ *   <li>{@code GET /metrics} responds with request, byte, and latency
+ *     counts in the Prometheus text format.</li>
+ * </ul>
+ * Bodies are UTF-8.  The sanitizer needs the whole input before it can
+ * commit to some fixes, like closing a string that is missing its close
+ * quote, so request bodies are buffered as chars, up to a limit past which
+ * the server responds with 413.
+ * <p>
+ * Requests are handled on virtual threads when the JVM has them, and
+ * otherwise on a bounded pool that runs work on the accepting thread when
+ * its queue is full, which pushes back on clients instead of dropping
+ * their requests.
+ * <p>
+ * Unless the JVM-wide system property {@code sun.net.httpserver.nodelay} is
+ * {@code true}, the JDK server leaves Nagle's algorithm on, which adds about
+ * 40ms to each response.  {@link #main} sets it, but creating a server
+ * does not, so applications that embed one should run with
+ * {@code -Dsun.net.httpserver.nodelay=true}.
+ */
+public final class SanitizerServer {
+  /** The default limit on the length of a request body. */
+  public static final long DEFAULT_MAXIMUM_REQUEST_BYTES = 16L << 20;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final String SANITIZE = "sanitize";
+  private static final String MINIFY = "minify";
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final boolean virtualThreads;
+  private final long maximumRequestBytes;
+  private final ServerMetrics metrics = new ServerMetrics(SANITIZE, MINIFY);
+
+  /**
+   * A server bound to address that handles requests on virtual threads or
+   * on a pool of a few threads per processor.
+   * {@link #start} must be called before it responds to requests.
+   *
+   * @param address the address to listen on.  Port 0 picks a free port.
+   */
+  public SanitizerServer(InetSocketAddress address) throws IOException {
+    this(address, 4 * Runtime.getRuntime().availableProcessors(),
+         DEFAULT_MAXIMUM_REQUEST_BYTES);
+  }
+
+  /**
+   * @param address the address to listen on.  Port 0 picks a free port.
+   * @param poolSize the number of threads to handle requests with when
+   *     virtual threads are not available.
+   * @param maximumRequestBytes the longest request body to accept.
+   */
+  public SanitizerServer(
+      InetSocketAddress address, int poolSize, long maximumRequestBytes)
+      throws IOException {
+    if (poolSize < 1 || maximumRequestBytes < 0) {
+      throw new IllegalArgumentException();
+    }
+    this.maximumRequestBytes = maximumRequestBytes;
+    ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+    this.virtualThreads = virtual != null;
+    this.executor = virtual != null ? virtual : newBoundedPool(poolSize);
+    this.server = HttpServer.create(address, 0);
+    server.setExecutor(executor);
+    server.createContext("/" + SANITIZE, new TransformHandler(SANITIZE));
+    server.createContext("/" + MINIFY, new TransformHandler(MINIFY));
+    server.createContext("/metrics", new MetricsHandler());
+  }
+
+  /** Starts accepting requests. */
+  public void start() {
+    server.start();
+  }
+
+  /**
+   * Stops accepting requests, waits up to delaySeconds for those in
+   * progress to finish, and then releases the handler threads.
+   */
+  public void stop(int delaySeconds) {
+    server.stop(delaySeconds);
+    executor.shutdown();
+  }
+
+  /** The address that the server is bound to, including the port. */
+  public InetSocketAddress getAddress() {
+    return server.getAddress();
+  }
+
+  /** True if requests are handled on virtual threads. */
+  public boolean usesVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /** The metrics served at {@code /metrics}. */
+  public ServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Executors.newVirtualThreadPerTaskExecutor found reflectively, so that
+   * this compiles and runs on JDKs before 21, or null.
+   */
+  private static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (NoSuchMethodException ex) {
+      return null;  // Before JDK 19.
+    } catch (IllegalAccessException ex) {
+      return null;
+    } catch (InvocationTargetException ex) {
+      return null;  // A preview feature that is not enabled.
+    }
+  }
+
+  private static ExecutorService newBoundedPool(int poolSize) {
+    final AtomicInteger count = new AtomicInteger();
+    ThreadFactory threads = new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(
+            r, "json-sanitizer-server-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    };
+    return new ThreadPoolExecutor(
+        poolSize, poolSize, 0, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(16 * poolSize), threads,
+        new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  /** Thrown when a request body is longer than the limit. */
+  private static final class RequestTooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+  }
+
+  /** Counts bytes read and fails once there are more than the limit. */
+  private static final class LimitedInputStream extends FilterInputStream {
+    private final long limit;
+    long count;
+
+    LimitedInputStream(InputStream in, long limit) {
+      super(in);
+      this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b >= 0) { counted(1); }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = in.read(b, off, len);
+      if (n > 0) { counted(n); }
+      return n;
+    }
+
+    private void counted(int n) throws RequestTooLargeException {
+      count += n;
+      if (count > limit) { throw new RequestTooLargeException(); }
+    }
+  }
+
+  private static final class CountingOutputStream extends FilterOutputStream {
+    long count;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      ++count;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+
+  private final class TransformHandler implements HttpHandler {
+    private final String endpoint;
+
+    TransformHandler(String endpoint) {
+      this.endpoint = endpoint;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      long t0 = System.nanoTime();
+      LimitedInputStream in = new LimitedInputStream(
+          exchange.getRequestBody(), maximumRequestBytes);
+      CountingOutputStream out = new CountingOutputStream(
+          exchange.getResponseBody());
+      // Anything that escapes before the response is written is a 500.
+      int status = 500;
+      try {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+          exchange.getResponseHeaders().set("Allow", "POST");
+          status = sendError(exchange, out, 405, "Use POST");
+          return;
+        }
+        String length = exchange.getRequestHeaders().getFirst(
+            "Content-Length");
+        if (length != null && isTooLong(length)) {
+          status = sendError(exchange, out, 413, "Request body too large");
+          return;
+        }
+        Reader body = new InputStreamReader(in, UTF8);
+        Reader result;
+        try {
+          if (SANITIZE.equals(endpoint)) {
+            result = JsonSanitizer.sanitizingReader(body);
+          } else {
+            result = new StringReader(
+                EvalMinifier.minify(readAll(body)));
+          }
+        } catch (RequestTooLargeException ex) {
+          status = sendError(exchange, out, 413, "Request body too large");
+          return;
+        } catch (ArrayIndexOutOfBoundsException ex) {
+          // The sanitizer's signal that the input is nested too deeply.
+          status = sendError(exchange, out, 400, "Nested too deeply");
+          return;
+        }
+        exchange.getResponseHeaders().set(
+            "Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(200, 0);  // Chunked.
+        Writer w = new OutputStreamWriter(out, UTF8);
+        char[] buf = new char[8192];
+        for (int n; (n = result.read(buf, 0, buf.length)) >= 0;) {
+          w.write(buf, 0, n);
+        }
+        w.flush();
+        status = 200;
+      } finally {
+        // Record before closing so that the client never sees a response
+        // that the metrics do not count yet.
+        metrics.record(endpoint, status, in.count, out.count,
+                       System.nanoTime() - t0);
+        exchange.close();
+      }
+    }
+
+    private boolean isTooLong(String contentLength) {
+      try {
+        return Long.parseLong(contentLength.trim()) > maximumRequestBytes;
+      } catch (NumberFormatException ex) {
+        return false;  // Let the stream enforce the limit.
+      }
+    }
+  }
+
+  private final class MetricsHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+          exchange.getResponseHeaders().set("Allow", "GET");
+          sendError(exchange, exchange.getResponseBody(), 405, "Use GET");
+          return;
+        }
+        exchange.getResponseHeaders().set(
+            "Content-Type", "text/plain; version=0.0.4; charset=UTF-8");
+        exchange.sendResponseHeaders(200, 0);
+        Writer w = new OutputStreamWriter(exchange.getResponseBody(), UTF8);
+        metrics.writeTo(w);
+        w.flush();
+      } finally {
+        exchange.close();
+      }
+    }
+  }
+
+  private static int sendError(
+      HttpExchange exchange, OutputStream out, int status, String message)
+      throws IOException {
+    byte[] bytes = (message + "\n").getBytes(UTF8);
+    exchange.getResponseHeaders().set(
+        "Content-Type", "text/plain; charset=UTF-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    out.write(bytes);
+    return status;
+  }
+
+  private static String readAll(Reader r) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    char[] buf = new char[8192];
+    for (int n; (n = r.read(buf, 0, buf.length)) >= 0;) {
+      sb.append(buf, 0, n);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Sets {@code sun.net.httpserver.nodelay} unless it is already set.
+   * The JDK server writes headers and chunks separately, and unless it
+   * sets TCP_NODELAY, Nagle's algorithm holds back the last write until
+   * the client's delayed ACK.
+   * The property is read once, when the first server is created, so this
+   * must run before that.
+   */
+  static void preferNoDelay() {
+    String nodelay = "sun.net.httpserver.nodelay";
+    if (System.getProperty(nodelay) == null) {
+      System.setProperty(nodelay, "true");
+    }
+  }
+
+  /**
+   * Serves until the JVM exits.
+   * Usage: {@code [port [bind-address]]}, where port defaults to 8080 and
+   * the address to loopback, so that only local processes can connect.
+   */
+  public static void main(String[] args) throws IOException {
+    preferNoDelay();
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+    InetAddress host = args.length > 1
+        ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+    final SanitizerServer server = new SanitizerServer(
+        new InetSocketAddress(host, port));
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      @Override
+      public void run() {
+        server.stop(1);
+      }
+    });
+    server.start();
+    InetSocketAddress bound = server.getAddress();
+    System.err.println(
+        "Listening on http://" + bound.getHostString() + ":"
+        + bound.getPort() + "/ using "
+        + (server.usesVirtualThreads() ? "virtual threads" : "a thread pool"));
+  }
+}
@@ -0,0 +1,208 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json.server;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts requests, bytes, and latencies for each endpoint of a
+ * {@link SanitizerServer}, and writes them in the Prometheus text format.
+ * <p>
+ * Recording takes a few atomic increments and no locks, so it does not
+ * serialize request handling.
+ */
+public final class ServerMetrics {
+  /** Upper bounds of latency buckets in nanoseconds. */
+  private static final long[] LATENCY_BOUNDS = {
+    50000L, 100000L, 250000L, 500000L,
+    1000000L, 2500000L, 5000000L, 10000000L, 25000000L, 50000000L,
+    100000000L, 250000000L, 500000000L,
+    1000000000L, 2500000000L, 5000000000L, 10000000000L,
+  };
+
+  /** Upper bounds of request size buckets in bytes. */
+  private static final long[] SIZE_BOUNDS = {
+    256L, 1024L, 4096L, 16384L, 65536L, 262144L,
+    1048576L, 4194304L, 16777216L, 67108864L,
+  };
+
+  private final Map<String, Endpoint> endpoints;
+
+  ServerMetrics(String... endpointNames) {
+    Map<String, Endpoint> m = new LinkedHashMap<String, Endpoint>();
+    for (String name : endpointNames) {
+      m.put(name, new Endpoint());
+    }
+    this.endpoints = Collections.unmodifiableMap(m);
+  }
+
+  /**
+   * Records one request.
+   *
+   * @param endpoint the name of the endpoint that handled it.
+   * @param status the HTTP status of the response.
+   * @param requestBytes the length of the request body.
+   * @param responseBytes the length of the response body.
+   * @param nanos the time from reading the request to finishing the
+   *     response.
+   */
+  void record(
+      String endpoint, int status, long requestBytes, long responseBytes,
+      long nanos) {
+    Endpoint e = endpoints.get(endpoint);
+    e.requests.incrementAndGet();
+    if (status >= 400) { e.errors.incrementAndGet(); }
+    e.requestBytes.addAndGet(requestBytes);
+    e.responseBytes.addAndGet(responseBytes);
+    e.latency.observe(nanos);
+    e.requestSize.observe(requestBytes);
+  }
+
+  /** The number of requests that endpoint has handled. */
+  public long getRequestCount(String endpoint) {
+    return endpoints.get(endpoint).requests.get();
+  }
+
+  /** The number of requests to endpoint that got an error status. */
+  public long getErrorCount(String endpoint) {
+    return endpoints.get(endpoint).errors.get();
+  }
+
+  /** Writes the metrics in the Prometheus text exposition format. */
+  public void writeTo(Writer out) throws IOException {
+    counter(out, "json_sanitizer_requests_total", "Requests handled.");
+    for (Map.Entry<String, Endpoint> e : endpoints.entrySet()) {
+      sample(out, "json_sanitizer_requests_total", e.getKey(), null,
+             Long.toString(e.getValue().requests.get()));
+    }
+    counter(out, "json_sanitizer_errors_total",
+            "Requests answered with an error status.");
+    for (Map.Entry<String, Endpoint> e : endpoints.entrySet()) {
+      sample(out, "json_sanitizer_errors_total", e.getKey(), null,
+             Long.toString(e.getValue().errors.get()));
+    }
+    counter(out, "json_sanitizer_request_bytes_total",
+            "Bytes of request bodies read.");
+    for (Map.Entry<String, Endpoint> e : endpoints.entrySet()) {
+      sample(out, "json_sanitizer_request_bytes_total", e.getKey(), null,
+             Long.toString(e.getValue().requestBytes.get()));
+    }
+    counter(out, "json_sanitizer_response_bytes_total",
+            "Bytes of response bodies written.");
+    for (Map.Entry<String, Endpoint> e : endpoints.entrySet()) {
+      sample(out, "json_sanitizer_response_bytes_total", e.getKey(), null,
+             Long.toString(e.getValue().responseBytes.get()));
+    }
+    histogramHeader(out, "json_sanitizer_request_seconds",
+                    "Time to handle a request.");
+    for (Map.Entry<String, Endpoint> e : endpoints.entrySet()) {
+      e.getValue().latency.writeTo(
+          out, "json_sanitizer_request_seconds", e.getKey(), 1e-9);
+    }
+    histogramHeader(out, "json_sanitizer_request_size_bytes",
+                    "Size of request bodies.");
+    for (Map.Entry<String, Endpoint> e : endpoints.entrySet()) {
+      e.getValue().requestSize.writeTo(
+          out, "json_sanitizer_request_size_bytes", e.getKey(), 1);
+    }
+  }
+
+  private static void counter(Writer out, String name, String help)
+      throws IOException {
+    out.write("# HELP " + name + " " + help + "\n");
+    out.write("# TYPE " + name + " counter\n");
+  }
+
+  private static void histogramHeader(Writer out, String name, String help)
+      throws IOException {
+    out.write("# HELP " + name + " " + help + "\n");
+    out.write("# TYPE " + name + " histogram\n");
+  }
+
+  private static void sample(
+      Writer out, String name, String endpoint, String le, String value)
+      throws IOException {
+    out.write(name);
+    out.write("{endpoint=\"");
+    out.write(endpoint);
+    if (le != null) {
+      out.write("\",le=\"");
+      out.write(le);
+    }
+    out.write("\"} ");
+    out.write(value);
+    out.write('\n');
+  }
+
+  private static final class Endpoint {
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong errors = new AtomicLong();
+    final AtomicLong requestBytes = new AtomicLong();
+    final AtomicLong responseBytes = new AtomicLong();
+    final Histogram latency = new Histogram(LATENCY_BOUNDS);
+    final Histogram requestSize = new Histogram(SIZE_BOUNDS);
+  }
+
+  /** Counts observations into buckets with fixed upper bounds. */
+  private static final class Histogram {
+    private final long[] bounds;
+    /** Per-bucket counts, with one more for observations past the last. */
+    private final AtomicLongArray counts;
+    private final AtomicLong sum = new AtomicLong();
+
+    Histogram(long[] bounds) {
+      this.bounds = bounds;
+      this.counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    void observe(long value) {
+      int i = 0;
+      while (i < bounds.length && value > bounds[i]) { ++i; }
+      counts.incrementAndGet(i);
+      sum.addAndGet(value);
+    }
+
+    /**
+     * Writes cumulative buckets as Prometheus expects, scaling bounds and
+     * the sum by scale to get base units.
+     */
+    void writeTo(Writer out, String name, String endpoint, double scale)
+        throws IOException {
+      long cumulative = 0;
+      for (int i = 0; i < bounds.length; ++i) {
+        cumulative += counts.get(i);
+        sample(out, name + "_bucket", endpoint, number(bounds[i] * scale),
+               Long.toString(cumulative));
+      }
+      cumulative += counts.get(bounds.length);
+      sample(out, name + "_bucket", endpoint, "+Inf",
+             Long.toString(cumulative));
+      sample(out, name + "_sum", endpoint, null, number(sum.get() * scale));
+      sample(out, name + "_count", endpoint, null,
+             Long.toString(cumulative));
+    }
+
+    private static String number(double d) {
+      return d == Math.rint(d) && Math.abs(d) < 1e15
+          ? Long.toString((long) d) : Double.toString(d);
+    }
+  }
+}
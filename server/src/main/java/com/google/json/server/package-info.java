@@ -0,0 +1,5 @@
+/**
+ * An HTTP sidecar that sanitizes and minifies JSON-like request bodies.
+ */
+@javax.annotation.ParametersAreNonnullByDefault
+package com.google.json.server;
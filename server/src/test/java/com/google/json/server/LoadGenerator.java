@@ -0,0 +1,116 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.json.server.SanitizerServerTest.Response;
+
+/**
+ * Loads a {@link SanitizerServer} on localhost and reports throughput and
+ * client-side latency percentiles.
+ * <p>
+ * Usage: {@code [clients [seconds [body-chars]]]}, which default to 16
+ * clients for 10 seconds with bodies of about 2000 chars.
+ * The server's own view is printed from {@code /metrics} at the end.
+ */
+public final class LoadGenerator {
+  private LoadGenerator() {
+    // Main class.
+  }
+
+  public static void main(String[] args) throws Exception {
+    int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    int bodyChars = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+    StringBuilder sb = new StringBuilder("[");
+    while (sb.length() < bodyChars) {
+      sb.append("{id:").append(sb.length())
+          .append(", name:'</script>', tags:[0x1F, 'a',],},");
+    }
+    final String body = sb.toString();
+
+    SanitizerServer.preferNoDelay();
+    final SanitizerServer server = new SanitizerServer(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    server.start();
+    System.err.println(
+        "Serving on port " + server.getAddress().getPort() + " using "
+        + (server.usesVirtualThreads() ? "virtual threads" : "a thread pool"));
+
+    // Warm up so that the first seconds of JIT compilation do not count.
+    for (int i = 0; i < 2000; ++i) {
+      SanitizerServerTest.request(server, "POST", "/sanitize", body);
+    }
+
+    final long deadline = System.nanoTime() + seconds * 1000000000L;
+    ExecutorService pool = Executors.newFixedThreadPool(clients);
+    List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+    for (int i = 0; i < clients; ++i) {
+      final String path = (i & 1) == 0 ? "/sanitize" : "/minify";
+      results.add(pool.submit(new Callable<long[]>() {
+        @Override
+        public long[] call() throws IOException {
+          long[] latencies = new long[1024];
+          int n = 0;
+          for (long t0; (t0 = System.nanoTime()) < deadline;) {
+            Response r = SanitizerServerTest.request(
+                server, "POST", path, body);
+            if (r.status != 200) {
+              throw new IOException(path + " got " + r.status);
+            }
+            if (n == latencies.length) {
+              latencies = Arrays.copyOf(latencies, n * 2);
+            }
+            latencies[n++] = System.nanoTime() - t0;
+          }
+          return Arrays.copyOf(latencies, n);
+        }
+      }));
+    }
+    long[] all = new long[0];
+    for (Future<long[]> f : results) {
+      long[] latencies = f.get();
+      int n = all.length;
+      all = Arrays.copyOf(all, n + latencies.length);
+      System.arraycopy(latencies, 0, all, n, latencies.length);
+    }
+    pool.shutdown();
+    Arrays.sort(all);
+
+    System.out.printf(
+        "%d clients, %d requests of %d chars in %ds: %.0f req/s%n",
+        clients, all.length, body.length(), seconds,
+        all.length / (double) seconds);
+    for (double p : new double[] { 0.5, 0.9, 0.99, 0.999 }) {
+      long nanos = all.length == 0
+          ? 0 : all[Math.min(all.length - 1, (int) (p * all.length))];
+      System.out.printf("  p%-5s %8.3fms%n", p * 100, nanos / 1e6);
+    }
+    System.out.println(
+        SanitizerServerTest.request(server, "GET", "/metrics", null).body);
+    server.stop(0);
+  }
+}
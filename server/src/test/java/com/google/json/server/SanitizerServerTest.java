@@ -0,0 +1,235 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
+
+import com.google.json.EvalMinifier;
+import com.google.json.JsonSanitizer;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class SanitizerServerTest extends TestCase {
+
+  /** A status and body. */
+  static final class Response {
+    final int status;
+    final String body;
+
+    Response(int status, String body) {
+      this.status = status;
+      this.body = body;
+    }
+  }
+
+  static SanitizerServer startServer(long maximumRequestBytes)
+      throws IOException {
+    SanitizerServer server = new SanitizerServer(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2,
+        maximumRequestBytes);
+    server.start();
+    return server;
+  }
+
+  static Response request(
+      SanitizerServer server, String method, String path,
+      @Nullable String body)
+      throws IOException {
+    return request(server, method, path, body, false);
+  }
+
+  /**
+   * @param chunked true to send the body without a Content-Length so that
+   *     the server only finds out how long it is by reading it.
+   */
+  static Response request(
+      SanitizerServer server, String method, String path,
+      @Nullable String body, boolean chunked)
+      throws IOException {
+    InetSocketAddress address = server.getAddress();
+    URL url = new URL(
+        "http", address.getHostString(), address.getPort(), path);
+    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    conn.setRequestMethod(method);
+    if (body != null) {
+      byte[] bytes = body.getBytes("UTF-8");
+      conn.setDoOutput(true);
+      if (chunked) {
+        conn.setChunkedStreamingMode(1024);
+      } else {
+        conn.setFixedLengthStreamingMode(bytes.length);
+      }
+      OutputStream out = conn.getOutputStream();
+      out.write(bytes);
+      out.close();
+    }
+    int status = conn.getResponseCode();
+    InputStream in = status < 400 ? conn.getInputStream()
+        : conn.getErrorStream();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    if (in != null) {
+      byte[] buf = new byte[8192];
+      for (int n; (n = in.read(buf)) >= 0;) {
+        bytes.write(buf, 0, n);
+      }
+      in.close();
+    }
+    return new Response(status, bytes.toString("UTF-8"));
+  }
+
+  @Test
+  public static final void testSanitizeAndMinify() throws IOException {
+    SanitizerServer server = startServer(1 << 20);
+    try {
+      for (String input : new String[] {
+             "", "{a:'</script>', b:[1,,0x10]}", "[\"Grüße 🎉\"]",
+             "{\"unclosed\": \"string",
+           }) {
+        Response r = request(server, "POST", "/sanitize", input);
+        assertEquals(input, 200, r.status);
+        assertEquals(input, JsonSanitizer.sanitize(input), r.body);
+
+        r = request(server, "POST", "/minify", input);
+        assertEquals(input, 200, r.status);
+        assertEquals(input, EvalMinifier.minify(input), r.body);
+      }
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public static final void testLargeBodies() throws IOException {
+    SanitizerServer server = startServer(1 << 20);
+    try {
+      StringBuilder sb = new StringBuilder("[");
+      while (sb.length() < 500000) {
+        sb.append("{id:").append(sb.length()).append(", s:'x'},");
+      }
+      String input = sb.toString();
+      for (boolean chunked : new boolean[] { false, true }) {
+        Response r = request(server, "POST", "/sanitize", input, chunked);
+        assertEquals(200, r.status);
+        assertEquals(JsonSanitizer.sanitize(input), r.body);
+      }
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public static final void testRequestTooLarge() throws IOException {
+    SanitizerServer server = startServer(1000);
+    try {
+      char[] chars = new char[2000];
+      Arrays.fill(chars, '1');
+      String input = new String(chars);
+      for (boolean chunked : new boolean[] { false, true }) {
+        assertEquals(
+            413, request(server, "POST", "/sanitize", input, chunked).status);
+        assertEquals(
+            413, request(server, "POST", "/minify", input, chunked).status);
+      }
+      assertEquals(2, server.getMetrics().getErrorCount("sanitize"));
+      assertEquals(2, server.getMetrics().getErrorCount("minify"));
+      String small = input.substring(0, 1000);
+      assertEquals(small, request(server, "POST", "/sanitize", small).body);
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public static final void testErrors() throws IOException {
+    SanitizerServer server = startServer(1 << 20);
+    try {
+      assertEquals(405, request(server, "GET", "/sanitize", null).status);
+      assertEquals(405, request(server, "POST", "/metrics", "").status);
+      StringBuilder deep = new StringBuilder();
+      for (int i = 0; i < 100; ++i) { deep.append('['); }
+      Response r = request(server, "POST", "/sanitize", deep.toString());
+      assertEquals(400, r.status);
+      // The server still works.
+      assertEquals("[]", request(server, "POST", "/sanitize", "[]").body);
+      assertEquals(404, request(server, "GET", "/nope", null).status);
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public static final void testConcurrentRequestsAndMetrics()
+      throws Exception {
+    final SanitizerServer server = startServer(1 << 20);
+    ExecutorService clients = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Void>> results = new ArrayList<Future<Void>>();
+      for (int i = 0; i < 8; ++i) {
+        final String input = "{n:" + i + ", s:'<!--'}";
+        results.add(clients.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            for (int j = 0; j < 25; ++j) {
+              Response r = request(server, "POST", "/sanitize", input);
+              assertEquals(JsonSanitizer.sanitize(input), r.body);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> f : results) {
+        f.get();
+      }
+      assertEquals(200, server.getMetrics().getRequestCount("sanitize"));
+      assertEquals(0, server.getMetrics().getErrorCount("sanitize"));
+
+      Response r = request(server, "GET", "/metrics", null);
+      assertEquals(200, r.status);
+      assertTrue(r.body, r.body.contains(
+          "json_sanitizer_requests_total{endpoint=\"sanitize\"} 200\n"));
+      assertTrue(r.body, r.body.contains(
+          "json_sanitizer_requests_total{endpoint=\"minify\"} 0\n"));
+      assertTrue(r.body, r.body.contains(
+          "json_sanitizer_request_seconds_bucket"
+          + "{endpoint=\"sanitize\",le=\"+Inf\"} 200\n"));
+      assertTrue(r.body, r.body.contains(
+          "json_sanitizer_request_size_bytes_bucket"
+          + "{endpoint=\"sanitize\",le=\"256\"} 200\n"));
+      assertTrue(r.body, r.body.contains(
+          "# TYPE json_sanitizer_request_seconds histogram\n"));
+    } finally {
+      clients.shutdown();
+      server.stop(0);
+    }
+  }
+}
@@ -0,0 +1,476 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * Encodes sanitizer events as CBOR (RFC 7049) or MessagePack.
+ * <p>
+ * The sanitizer does not know how many entries an array or map has when it
+ * sees the open bracket.  CBOR containers use indefinite-length heads that
+ * a break byte ends, so CBOR output goes to the stream whenever the buffer
+ * fills.  MessagePack heads must give the count, so each container
+ * reserves room for the widest head, which is filled in with the shortest
+ * head that fits once the container closes.  The unused bytes are squeezed
+ * out in one pass when the top-level value ends, so MessagePack output is
+ * held until then.
+ */
+final class BinaryTranscoder implements JsonHandler {
+  /** The most bytes a MessagePack array or map head takes. */
+  private static final int MAX_MSGPACK_HEAD = 5;
+
+  private final boolean cbor;
+  /** Receives the buffer when it fills, or null to keep it all. */
+  private final @Nullable OutputStream out;
+  private @Nullable IOException failure;
+  private byte[] buf;
+  private int len;
+
+  // For MessagePack, per open container, indexed by depth.
+  /** The position in buf of the room reserved for the head. */
+  private int[] headAt = new int[16];
+  /** The number of entries so far. */
+  private int[] count = new int[16];
+  private int depth;
+  /**
+   * Unused head bytes to skip, each as its position in buf in the high 32
+   * bits and its length in the low.
+   */
+  private long[] gaps = new long[16];
+  private int nGaps;
+
+  BinaryTranscoder(
+      JsonSanitizer.BinaryFormat format, @Nullable OutputStream out) {
+    this.cbor = format == JsonSanitizer.BinaryFormat.CBOR;
+    this.out = out;
+    this.buf = new byte[out != null ? 8192 : 256];
+  }
+
+  /** The whole encoding, when there is no stream. */
+  byte[] toByteArray() {
+    squeeze();
+    return Arrays.copyOf(buf, len);
+  }
+
+  /** Writes what is left in the buffer to the stream. */
+  void finish() throws IOException {
+    squeeze();
+    flush();
+    if (failure != null) { throw failure; }
+  }
+
+  private void flush() {
+    if (out != null && failure == null && len != 0) {
+      try {
+        out.write(buf, 0, len);
+      } catch (IOException ex) {
+        // Handler methods cannot throw it, so finish will.
+        failure = ex;
+      }
+    }
+    if (out != null) { len = 0; }
+  }
+
+  private void ensureCapacity(int n) {
+    if (len + n > buf.length) {
+      // A MessagePack head cannot go out before its container closes.
+      if (depth == 0) { flush(); }
+      if (len + n > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+      }
+    }
+  }
+
+  private void writeByte(int b) {
+    ensureCapacity(1);
+    buf[len++] = (byte) b;
+  }
+
+  /** Writes the low nBytes bytes of v big-endian after the byte b. */
+  private void writeBytes(int b, long v, int nBytes) {
+    ensureCapacity(1 + nBytes);
+    buf[len++] = (byte) b;
+    for (int shift = (nBytes - 1) * 8; shift >= 0; shift -= 8) {
+      buf[len++] = (byte) (v >>> shift);
+    }
+  }
+
+  /** Writes a CBOR initial byte and argument for an unsigned argument. */
+  private void writeCborHead(int majorType, long v) {
+    int mt = majorType << 5;
+    if (v >= 0 && v < 24) {
+      writeByte(mt | (int) v);
+    } else if (v >= 0 && v < 0x100) {
+      writeBytes(mt | 24, v, 1);
+    } else if (v >= 0 && v < 0x10000) {
+      writeBytes(mt | 25, v, 2);
+    } else if (v >= 0 && v < 0x100000000L) {
+      writeBytes(mt | 26, v, 4);
+    } else {
+      // Includes unsigned values >= 2**63.
+      writeBytes(mt | 27, v, 8);
+    }
+  }
+
+  /** Writes the head of a string of n bytes. */
+  private void writeStringHead(int n) {
+    if (cbor) {
+      writeCborHead(3, n);
+    } else if (n < 32) {
+      writeByte(0xa0 | n);
+    } else if (n < 0x100) {
+      writeBytes(0xd9, n, 1);
+    } else if (n < 0x10000) {
+      writeBytes(0xda, n, 2);
+    } else {
+      writeBytes(0xdb, n, 4);
+    }
+  }
+
+  private void writeLong(long v) {
+    if (cbor) {
+      if (v >= 0) {
+        writeCborHead(0, v);
+      } else {
+        writeCborHead(1, -1 - v);
+      }
+    } else if (v >= 0) {
+      if (v < 0x80) {
+        writeByte((int) v);
+      } else if (v < 0x100) {
+        writeBytes(0xcc, v, 1);
+      } else if (v < 0x10000) {
+        writeBytes(0xcd, v, 2);
+      } else if (v < 0x100000000L) {
+        writeBytes(0xce, v, 4);
+      } else {
+        writeBytes(0xcf, v, 8);
+      }
+    } else if (v >= -32) {
+      writeByte((int) v & 0xff);
+    } else if (v >= Byte.MIN_VALUE) {
+      writeBytes(0xd0, v, 1);
+    } else if (v >= Short.MIN_VALUE) {
+      writeBytes(0xd1, v, 2);
+    } else if (v >= Integer.MIN_VALUE) {
+      writeBytes(0xd2, v, 4);
+    } else {
+      writeBytes(0xd3, v, 8);
+    }
+  }
+
+  /**
+   * Writes {@code -0}, which is not an integer in either format, as a float
+   * so that the sign survives.
+   */
+  private void writeNegativeZero() {
+    if (cbor) {
+      // Half-precision -0.0.
+      writeBytes(0xf9, 0x8000, 2);
+    } else {
+      writeDouble(-0.0);
+    }
+  }
+
+  private void writeDouble(double d) {
+    writeBytes(cbor ? 0xfb : 0xcb, Double.doubleToLongBits(d), 8);
+  }
+
+  private static final BigInteger MAX_UINT64 =
+      BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+  private void writeBigInteger(BigInteger v) {
+    if (v.bitLength() < 64) {
+      writeLong(v.longValue());
+    } else if (v.signum() > 0 && v.compareTo(MAX_UINT64) <= 0) {
+      // longValue() keeps the low 64 bits which both formats read as
+      // unsigned here.
+      if (cbor) {
+        writeCborHead(0, v.longValue());
+      } else {
+        writeBytes(0xcf, v.longValue(), 8);
+      }
+    } else if (cbor) {
+      // Tag 2 is a positive bignum, tag 3 a negative one as -1 - n.
+      boolean negative = v.signum() < 0;
+      BigInteger magnitude =
+          negative ? v.negate().subtract(BigInteger.ONE) : v;
+      byte[] bytes = magnitude.toByteArray();
+      int off = bytes[0] == 0 ? 1 : 0;
+      writeByte(negative ? 0xc3 : 0xc2);
+      writeCborHead(2, bytes.length - off);
+      ensureCapacity(bytes.length - off);
+      System.arraycopy(bytes, off, buf, len, bytes.length - off);
+      len += bytes.length - off;
+    } else {
+      // MessagePack has no bignums.
+      writeDouble(v.doubleValue());
+    }
+  }
+
+  /** Counts a value as an entry of the innermost open container. */
+  private void countValue() {
+    if (depth != 0) { ++count[depth - 1]; }
+  }
+
+  private void open(boolean array) {
+    if (cbor) {
+      writeByte(array ? 0x9f : 0xbf);
+      return;
+    }
+    countValue();
+    ensureCapacity(MAX_MSGPACK_HEAD);
+    if (depth == headAt.length) {
+      headAt = Arrays.copyOf(headAt, depth * 2);
+      count = Arrays.copyOf(count, depth * 2);
+    }
+    headAt[depth] = len;
+    count[depth] = 0;
+    ++depth;
+    len += MAX_MSGPACK_HEAD;
+  }
+
+  private void close(boolean array) {
+    if (cbor) {
+      writeByte(0xff);
+      return;
+    }
+    --depth;
+    int n = count[depth];
+    int end = headAt[depth] + MAX_MSGPACK_HEAD;
+    int headLength;
+    if (n < 16) {
+      buf[end - 1] = (byte) ((array ? 0x90 : 0x80) | n);
+      headLength = 1;
+    } else if (n < 0x10000) {
+      buf[end - 3] = (byte) (array ? 0xdc : 0xde);
+      buf[end - 2] = (byte) (n >>> 8);
+      buf[end - 1] = (byte) n;
+      headLength = 3;
+    } else {
+      buf[end - 5] = (byte) (array ? 0xdd : 0xdf);
+      for (int i = 0; i < 4; ++i) {
+        buf[end - 4 + i] = (byte) (n >>> (24 - 8 * i));
+      }
+      headLength = 5;
+    }
+    if (headLength != MAX_MSGPACK_HEAD) {
+      if (nGaps == gaps.length) { gaps = Arrays.copyOf(gaps, nGaps * 2); }
+      gaps[nGaps++] = ((long) headAt[depth] << 32)
+          | (MAX_MSGPACK_HEAD - headLength);
+    }
+    if (depth == 0) { squeeze(); }
+  }
+
+  /**
+   * Removes the unused head bytes from the buffer, moving each byte at most
+   * once.
+   */
+  private void squeeze() {
+    if (nGaps == 0) { return; }
+    // Inner containers close first, so the gaps are not in order.
+    Arrays.sort(gaps, 0, nGaps);
+    int to = (int) (gaps[0] >>> 32);
+    for (int g = 0; g < nGaps; ++g) {
+      int from = (int) (gaps[g] >>> 32) + (int) gaps[g];
+      int next = g + 1 < nGaps ? (int) (gaps[g + 1] >>> 32) : len;
+      System.arraycopy(buf, from, buf, to, next - from);
+      to += next - from;
+    }
+    len = to;
+    nGaps = 0;
+  }
+
+  /**
+   * Writes the JSON string {@code json[start:end]} as UTF-8 after decoding
+   * escapes, or just counts the bytes if write is false.
+   */
+  private int utf8(CharSequence json, int start, int end, boolean write) {
+    int nBytes = 0;
+    for (int i = start + 1, last = end - 1; i < last; ++i) {
+      char ch = json.charAt(i);
+      if (ch == '\\') {
+        ch = json.charAt(++i);
+        switch (ch) {
+          case 'b': ch = '\b'; break;
+          case 'f': ch = '\f'; break;
+          case 'n': ch = '\n'; break;
+          case 'r': ch = '\r'; break;
+          case 't': ch = '\t'; break;
+          case 'u':
+            ch = (char) ((hexVal(json.charAt(i + 1)) << 12)
+                | (hexVal(json.charAt(i + 2)) << 8)
+                | (hexVal(json.charAt(i + 3)) << 4)
+                | hexVal(json.charAt(i + 4)));
+            i += 4;
+            break;
+          default: break;  // '"', '\\', or '/'
+        }
+      }
+      int cp = ch;
+      if (Character.isHighSurrogate(ch) && i + 1 < last) {
+        // Look for a low surrogate, which may be escaped.
+        char lo = json.charAt(i + 1);
+        int loEnd = i + 1;
+        if (lo == '\\' && i + 6 < last && json.charAt(i + 2) == 'u') {
+          lo = (char) ((hexVal(json.charAt(i + 3)) << 12)
+              | (hexVal(json.charAt(i + 4)) << 8)
+              | (hexVal(json.charAt(i + 5)) << 4)
+              | hexVal(json.charAt(i + 6)));
+          loEnd = i + 6;
+        }
+        if (Character.isLowSurrogate(lo)) {
+          cp = Character.toCodePoint(ch, lo);
+          i = loEnd;
+        }
+      }
+      if (0xd800 <= cp && cp <= 0xdfff) {
+        // UTF-8 cannot encode an orphaned surrogate.
+        cp = 0xfffd;
+      }
+      int n = cp < 0x80 ? 1 : cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+      nBytes += n;
+      if (write) {
+        switch (n) {
+          case 1:
+            buf[len++] = (byte) cp;
+            break;
+          case 2:
+            buf[len++] = (byte) (0xc0 | (cp >> 6));
+            buf[len++] = (byte) (0x80 | (cp & 0x3f));
+            break;
+          case 3:
+            buf[len++] = (byte) (0xe0 | (cp >> 12));
+            buf[len++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+            buf[len++] = (byte) (0x80 | (cp & 0x3f));
+            break;
+          default:
+            buf[len++] = (byte) (0xf0 | (cp >> 18));
+            buf[len++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+            buf[len++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+            buf[len++] = (byte) (0x80 | (cp & 0x3f));
+            break;
+        }
+      }
+    }
+    return nBytes;
+  }
+
+  private static int hexVal(char ch) {
+    return Character.digit(ch, 16);
+  }
+
+  private void string(CharSequence json, int start, int end) {
+    int nBytes = utf8(json, start, end, false);
+    writeStringHead(nBytes);
+    ensureCapacity(nBytes);
+    utf8(json, start, end, true);
+  }
+
+  @Override
+  public void startObject(CharSequence json, int start, int end) {
+    open(false);
+  }
+
+  @Override
+  public void endObject(CharSequence json, int start, int end) {
+    close(false);
+  }
+
+  @Override
+  public void startArray(CharSequence json, int start, int end) {
+    open(true);
+  }
+
+  @Override
+  public void endArray(CharSequence json, int start, int end) {
+    close(true);
+  }
+
+  @Override
+  public void key(CharSequence json, int start, int end) {
+    string(json, start, end);
+  }
+
+  @Override
+  public void stringValue(CharSequence json, int start, int end) {
+    countValue();
+    string(json, start, end);
+  }
+
+  @Override
+  public void numberValue(CharSequence json, int start, int end) {
+    countValue();
+    // Numbers in the output are already decimal, so parse digits directly
+    // when they fit in a long.
+    boolean negative = json.charAt(start) == '-';
+    int digitsStart = negative ? start + 1 : start;
+    if (end - digitsStart <= 18) {
+      long v = 0;
+      int i = digitsStart;
+      for (; i < end; ++i) {
+        char ch = json.charAt(i);
+        if (ch < '0' || ch > '9') { break; }
+        v = v * 10 + (ch - '0');
+      }
+      if (i == end) {
+        if (negative && v == 0) {
+          writeNegativeZero();
+        } else {
+          writeLong(negative ? -v : v);
+        }
+        return;
+      }
+    }
+    String text = json.subSequence(start, end).toString();
+    boolean isInteger = true;
+    for (int i = 0, n = text.length(); i < n; ++i) {
+      char ch = text.charAt(i);
+      if (ch == '.' || ch == 'e' || ch == 'E') {
+        isInteger = false;
+        break;
+      }
+    }
+    if (isInteger) {
+      BigInteger v = new BigInteger(text);
+      if (negative && v.signum() == 0) {
+        writeNegativeZero();
+      } else {
+        writeBigInteger(v);
+      }
+    } else {
+      writeDouble(Double.parseDouble(text));
+    }
+  }
+
+  @Override
+  public void booleanValue(CharSequence json, int start, int end) {
+    countValue();
+    boolean value = json.charAt(start) == 't';
+    writeByte(cbor ? (value ? 0xf5 : 0xf4) : (value ? 0xc3 : 0xc2));
+  }
+
+  @Override
+  public void nullValue(CharSequence json, int start, int end) {
+    countValue();
+    writeByte(cbor ? 0xf6 : 0xc0);
+  }
+}
@@ -0,0 +1,199 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Writes the canonical form of an indexed, sanitized JSON value, so that
+ * values that are equal as JSON have the same text.
+ * <p>
+ * Following RFC 8785 (JSON Canonicalization Scheme):
+ * <ul>
+ *   <li>There is no whitespace between tokens.</li>
+ *   <li>Object members are sorted by the UTF-16 code units of their decoded
+ *     names.  Of members with the same name only the last is kept, since
+ *     that is the one {@code JSON.parse} keeps.</li>
+ *   <li>Numbers are in the form JavaScript's {@code Number.prototype.toString}
+ *     uses, but digits are kept exactly rather than rounded to the nearest
+ *     double, so numbers that differ beyond double precision stay
+ *     distinct.</li>
+ *   <li>Strings use the shortest escapes: only {@code "}, {@code \},
+ *     and control characters are escaped, plus the code-units that the
+ *     sanitizer's output guarantees require, and which depend only on the
+ *     decoded value.</li>
+ * </ul>
+ */
+final class CanonicalWriter {
+  private final JsonIndex index;
+  private final CharSequence json;
+  private final boolean embeddable;
+  private final StringBuilder out;
+  private final NumberRecoder numberRecoder = new NumberRecoder();
+
+  CanonicalWriter(JsonIndex index, boolean embeddable) {
+    this.index = index;
+    this.json = index.getJson();
+    this.embeddable = embeddable;
+    this.out = new StringBuilder(json.length());
+  }
+
+  String write() {
+    writeValue(0);
+    return out.toString();
+  }
+
+  private void writeValue(int token) {
+    int start = index.getStart(token);
+    switch (json.charAt(start)) {
+      case '{':
+        writeObject(token);
+        break;
+      case '[': {
+        out.append('[');
+        int close = index.getMatchingBracket(token);
+        for (int t = token + 1; t < close; t = index.skip(t)) {
+          if (t != token + 1) { out.append(','); }
+          writeValue(t);
+        }
+        out.append(']');
+        break;
+      }
+      case '"':
+        writeString(JsonIndex.decodeString(json, start, index.getEnd(token)));
+        break;
+      case 't': case 'f': case 'n':
+        out.append(json, start, index.getEnd(token));
+        break;
+      default:
+        writeNumber(start, index.getEnd(token));
+        break;
+    }
+  }
+
+  private void writeObject(int token) {
+    int close = index.getMatchingBracket(token);
+    int n = 0;
+    for (int t = token + 1; t < close; t = index.skip(t + 1)) { ++n; }
+    final String[] names = new String[n];
+    int[] values = new int[n];
+    Integer[] order = new Integer[n];
+    for (int t = token + 1, i = 0; t < close; t = index.skip(t + 1), ++i) {
+      names[i] = JsonIndex.decodeString(
+          json, index.getStart(t), index.getEnd(t));
+      values[i] = t + 1;
+      order[i] = i;
+    }
+    // Stable, so the last of a run of equal names is the last in the input.
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return names[a].compareTo(names[b]);
+      }
+    });
+    out.append('{');
+    boolean first = true;
+    for (int i = 0; i < n; ++i) {
+      int member = order[i];
+      if (i + 1 < n && names[member].equals(names[order[i + 1]])) {
+        continue;  // Overridden by a later duplicate.
+      }
+      if (!first) { out.append(','); }
+      first = false;
+      writeString(names[member]);
+      out.append(':');
+      writeValue(values[member]);
+    }
+    out.append('}');
+  }
+
+  private void writeNumber(int start, int end) {
+    if (numberRecoder.canonicalize(json, start, end)) {
+      out.append(numberRecoder);
+      return;
+    }
+    // The exponent is too large to canonicalize, but we can still settle
+    // the spelling of the exponent marker and sign.
+    for (int i = start; i < end; ++i) {
+      char ch = json.charAt(i);
+      if (ch != '+') { out.append(ch == 'E' ? 'e' : ch); }
+    }
+  }
+
+  private void writeString(String s) {
+    out.append('"');
+    for (int i = 0, n = s.length(); i < n; ++i) {
+      char ch = s.charAt(i);
+      switch (ch) {
+        case '"': out.append("\\\""); break;
+        case '\\': out.append("\\\\"); break;
+        case '\b': out.append("\\b"); break;
+        case '\f': out.append("\\f"); break;
+        case '\n': out.append("\\n"); break;
+        case '\r': out.append("\\r"); break;
+        case '\t': out.append("\\t"); break;
+        // Not newlines in JSON but unparseable by JS eval.
+        case '\u2028': case '\u2029': appendHexEscape(ch); break;
+        case '<':
+          // Same as JsonSanitizer, disallow <!--, <script, and </script.
+          if (embeddable
+              && (s.regionMatches(i + 1, "!--", 0, 3)
+                  || s.regionMatches(true, i + 1, "scr", 0, 3)
+                  || s.regionMatches(true, i + 1, "/sc", 0, 3))) {
+            appendHexEscape(ch);
+          } else {
+            out.append(ch);
+          }
+          break;
+        case '>':
+          if (embeddable && i >= 2 && s.regionMatches(i - 2, "--", 0, 2)) {
+            appendHexEscape(ch);
+          } else {
+            out.append(ch);
+          }
+          break;
+        case ']':
+          if (embeddable && s.regionMatches(i + 1, "]>", 0, 2)) {
+            appendHexEscape(ch);
+          } else {
+            out.append(ch);
+          }
+          break;
+        default:
+          if (ch < 0x20 || ch >= 0xfffe) {
+            appendHexEscape(ch);
+          } else if (ch < 0xd800 || ch >= 0xe000) {
+            out.append(ch);
+          } else if (Character.isHighSurrogate(ch) && i + 1 < n
+                     && Character.isLowSurrogate(s.charAt(i + 1))) {
+            out.append(ch).append(s.charAt(++i));
+          } else {
+            // Isolated surrogates are not allowed in XML.
+            appendHexEscape(ch);
+          }
+          break;
+      }
+    }
+    out.append('"');
+  }
+
+  private void appendHexEscape(char ch) {
+    out.append("\\u");
+    for (int shift = 12; shift >= 0; shift -= 4) {
+      out.append("0123456789abcdef".charAt((ch >>> shift) & 0xf));
+    }
+  }
+}
@@ -0,0 +1,360 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.json;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * Sanitizes a file of UTF-8 too large to fit in a {@code String}, for
+ * {@link JsonSanitizer#sanitizeChannel(FileChannel, WritableByteChannel)}.
+ * <p>
+ * The file is memory-mapped a segment at a time, since one
+ * {@link MappedByteBuffer} cannot span more than 2 GB, and decoded into a
+ * window of chars.  {@link JsonSanitizer} sanitizes the window, offering
+ * checkpoints every few thousand characters.  The output before the last
+ * checkpoint is written, and the window slides forward to start there, in
+ * that checkpoint's state, so a token cut off by the end of the window is
+ * sanitized again once it is whole.
+ * <p>
+ * After a comma, the output is not settled until the next value or close
+ * bracket decides whether the comma stays, so a long run of whitespace or
+ * commas would keep the window from sliding.  When no checkpoint in the
+ * window is settled, the output up to the last checkpoint is written
+ * except for that pending comma, which is carried into the next window.
+ * This keeps the window bounded, but if a value follows, the comma comes
+ * after the whitespace and comments that follow it in the input instead
+ * of before them.
+ * Offsets into the file are longs; only offsets within the window are ints.
+ */
+final class ChannelSanitizer implements Checkpoints {
+  /** The default number of bytes of the file mapped at once. */
+  static final int DEFAULT_SEGMENT_BYTES = 1 << 28;
+  /** The default number of chars sanitized at once. */
+  static final int DEFAULT_WINDOW_CHARS = 1 << 22;
+  private static final int MAX_WINDOW_CHARS = Integer.MAX_VALUE - 16;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final FileChannel in;
+  private final WritableByteChannel out;
+  private final int maximumNestingDepth;
+  private final JsonSanitizer.OutputProfile profile;
+  private final int segmentBytes;
+  /**
+   * The window size at which it stops widening to find a settled checkpoint
+   * and carries a pending comma over instead.
+   */
+  private final int carryCommaWindowChars;
+  private final long inputEnd;
+  /** The file offset of the first byte not yet mapped. */
+  private long mapped;
+  /** The unread part of the mapped segment, if any. */
+  private @Nullable MappedByteBuffer segment;
+  private final CharsetDecoder decoder = UTF8.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private final CharsetEncoder encoder = UTF8.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private final ByteBuffer outBytes = ByteBuffer.allocateDirect(1 << 16);
+  private long bytesWritten;
+
+  private char[] window;
+  private int windowLength;
+  /** The offset in the decoded input of window[0]. */
+  private long windowOffset;
+  private int checkpointInterval;
+
+  private JsonSanitizer.State startState = JsonSanitizer.State.START_ARRAY;
+  private boolean[] startBrackets = new boolean[0];
+  private String startOutput = "";
+  /** The last settled checkpoint in the window. */
+  private int lastPos;
+  private int lastOutputPos;
+  private JsonSanitizer.State lastState;
+  private boolean[] lastBrackets;
+  /** The last checkpoint in the window with a pending comma. */
+  private int commaPos;
+  private int commaOutputPos;
+  private JsonSanitizer.State commaState;
+  private boolean[] commaBrackets;
+  /** If not -1, the checkpoint at which to stop the sanitizer. */
+  private int stopAt = -1;
+  /** True when the sanitizer dropped the rest of the input. */
+  private boolean droppedRest;
+
+  ChannelSanitizer(
+      FileChannel in, WritableByteChannel out, int maximumNestingDepth,
+      JsonSanitizer.OutputProfile profile, int segmentBytes, int windowChars,
+      int carryCommaWindowChars)
+      throws IOException {
+    if (segmentBytes < 4 || windowChars < 16) {
+      throw new IllegalArgumentException();
+    }
+    this.in = in;
+    this.out = out;
+    this.maximumNestingDepth = maximumNestingDepth;
+    this.profile = profile;
+    this.segmentBytes = segmentBytes;
+    this.carryCommaWindowChars = carryCommaWindowChars;
+    this.mapped = in.position();
+    this.inputEnd = in.size();
+    this.window = new char[windowChars];
+    this.checkpointInterval = Math.min(4096, windowChars / 4);
+  }
+
+  /** The size of the window, which grows for tokens that do not fit. */
+  int getWindowChars() {
+    return window.length;
+  }
+
+  /** Sanitizes the rest of the input and returns the bytes written. */
+  long run() throws IOException {
+    while (true) {
+      boolean atEnd = fill();
+      lastPos = 0;
+      commaPos = 0;
+      CharSequence output = sanitizeWindow();
+      if (atEnd || droppedRest) {
+        write(output, 0, output.length());
+        break;
+      }
+      if (lastPos == 0 && commaPos != 0
+          && window.length >= carryCommaWindowChars) {
+        // Sanitize again, stopping where the comma is pending, since later
+        // tokens may have removed it.
+        int pos = commaPos;
+        int commaAt = commaOutputPos;
+        JsonSanitizer.State state = commaState;
+        boolean[] brackets = commaBrackets;
+        stopAt = pos;
+        output = sanitizeWindow();
+        stopAt = -1;
+        write(output, 0, commaAt);
+        write(output, commaAt + 1, output.length());
+        slide(pos, state, brackets, ",");
+        continue;
+      }
+      if (lastPos == 0) {
+        // A token does not end within the window, so widen it.
+        if (window.length == MAX_WINDOW_CHARS) {
+          throw new IOException(
+              "Token at " + windowOffset + " is longer than "
+              + MAX_WINDOW_CHARS + " chars");
+        }
+        window = Arrays.copyOf(
+            window, (int) Math.min(MAX_WINDOW_CHARS, window.length * 2L));
+        continue;
+      }
+      write(output, 0, lastOutputPos);
+      slide(lastPos, lastState, lastBrackets, "");
+    }
+    in.position(inputEnd);
+    return bytesWritten;
+  }
+
+  private CharSequence sanitizeWindow() {
+    JsonSanitizer s = new JsonSanitizer(
+        CharBuffer.wrap(window, 0, windowLength), maximumNestingDepth,
+        profile);
+    s.resumeFrom(this);
+    s.sanitize();
+    return s.toCharSequence();
+  }
+
+  /** Moves the start of the window to a checkpoint. */
+  private void slide(
+      int pos, JsonSanitizer.State state, boolean[] brackets, String output) {
+    startState = state;
+    startBrackets = brackets;
+    startOutput = output;
+    System.arraycopy(window, pos, window, 0, windowLength - pos);
+    windowLength -= pos;
+    windowOffset += pos;
+  }
+
+  /**
+   * Decodes input onto the end of the window until it is full.
+   *
+   * @return true if the window holds the rest of the input.
+   */
+  private boolean fill() throws IOException {
+    CharBuffer dst = CharBuffer.wrap(
+        window, windowLength, window.length - windowLength);
+    try {
+      while (dst.hasRemaining()) {
+        if (segment == null || !segment.hasRemaining()) {
+          if (!mapNextSegment()) {
+            return true;
+          }
+        }
+        // Segments end between UTF-8 sequences so each can be decoded as a
+        // whole.
+        CoderResult r = decoder.decode(segment, dst, true);
+        if (r.isOverflow()) { break; }
+        decoder.flush(dst);
+        decoder.reset();
+      }
+      return false;
+    } finally {
+      windowLength = dst.position();
+    }
+  }
+
+  private boolean mapNextSegment() throws IOException {
+    segment = null;
+    if (mapped >= inputEnd) { return false; }
+    long end = Math.min(inputEnd, mapped + segmentBytes);
+    // Map a few bytes past end to see whether a UTF-8 sequence spans it.
+    long mapEnd = Math.min(inputEnd, end + 3);
+    MappedByteBuffer buf = in.map(
+        FileChannel.MapMode.READ_ONLY, mapped, mapEnd - mapped);
+    int len = (int) (end - mapped);
+    if (end < inputEnd) {
+      // Back up over continuation bytes to the start of the sequence.
+      for (int k = 0; k < 3 && len > 1 && (buf.get(len) & 0xc0) == 0x80;
+           ++k) {
+        --len;
+      }
+    }
+    buf.limit(len);
+    segment = buf;
+    mapped += len;
+    return true;
+  }
+
+  /** Writes the UTF-8 encoding of output[start:end]. */
+  private void write(CharSequence output, int start, int end)
+      throws IOException {
+    if (start >= end) { return; }
+    CharBuffer chars;
+    if (output instanceof CharBuffer) {
+      chars = ((CharBuffer) output).duplicate();
+      int base = chars.position();
+      chars.limit(base + end);
+      chars.position(base + start);
+    } else if (output instanceof StringBuilder) {
+      // Encode from an array instead of through charAt.
+      StringBuilder sb = (StringBuilder) output;
+      char[] arr = new char[Math.min(end - start, 1 << 16)];
+      for (int pos = start, n; pos < end; pos += n) {
+        n = Math.min(arr.length, end - pos);
+        if (pos + n < end && Character.isHighSurrogate(sb.charAt(pos + n - 1))
+            && n > 1) {
+          // Keep surrogate pairs together.
+          --n;
+        }
+        sb.getChars(pos, pos + n, arr, 0);
+        encode(CharBuffer.wrap(arr, 0, n));
+      }
+      return;
+    } else {
+      chars = CharBuffer.wrap(output, start, end);
+    }
+    encode(chars);
+  }
+
+  private void encode(CharBuffer chars) throws IOException {
+    // Checkpoints are between tokens and pieces of output keep surrogate
+    // pairs together, so each piece can be encoded on its own.
+    encoder.reset();
+    while (true) {
+      CoderResult r = encoder.encode(chars, outBytes, true);
+      if (r.isOverflow()) {
+        drain();
+        continue;
+      }
+      if (encoder.flush(outBytes).isOverflow()) {
+        drain();
+        encoder.flush(outBytes);
+      }
+      break;
+    }
+    drain();
+  }
+
+  private void drain() throws IOException {
+    outBytes.flip();
+    while (outBytes.hasRemaining()) {
+      bytesWritten += out.write(outBytes);
+    }
+    outBytes.clear();
+  }
+
+  @Override
+  public int getStart() {
+    return 0;
+  }
+
+  @Override
+  public JsonSanitizer.State getStartState() {
+    return startState;
+  }
+
+  @Override
+  public boolean[] getStartBrackets() {
+    return startBrackets;
+  }
+
+  @Override
+  public CharSequence getStartOutput() {
+    return startOutput;
+  }
+
+  @Override
+  public int nextCheckpoint(int pos) {
+    return pos + checkpointInterval;
+  }
+
+  /** Remembers the checkpoint as the place to start the next window. */
+  @Override
+  public boolean checkpoint(
+      int pos, JsonSanitizer.State state, int bracketDepth,
+      @Nullable boolean[] isMap, int settledOutputPos, int outputPos) {
+    if (pos == stopAt) { return true; }
+    boolean[] brackets = bracketDepth == 0
+        ? new boolean[0] : Arrays.copyOf(isMap, bracketDepth);
+    if (settledOutputPos == outputPos) {
+      lastPos = pos;
+      lastOutputPos = outputPos;
+      lastState = state;
+      lastBrackets = brackets;
+    } else {
+      commaPos = pos;
+      commaOutputPos = settledOutputPos;
+      commaState = state;
+      commaBrackets = brackets;
+    }
+    return false;
+  }
+
+  @Override
+  public void droppedRest(int pos) {
+    droppedRest = true;
+  }
+}
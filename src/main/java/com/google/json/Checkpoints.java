@@ -0,0 +1,80 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.json;
+
+import javax.annotation.Nullable;
+
+/**
+ * Lets {@link JsonSanitizer} start part way through its input in a saved
+ * state, and offers places where it may save its state or stop.
+ * <p>
+ * A checkpoint is at the start of a token.  The state, the open brackets,
+ * and the rest of the input are all the sanitizer needs to go on from
+ * there.  Later tokens only append to the output so far, except that in
+ * the {@code BEFORE_ELEMENT} and {@code BEFORE_KEY} states a close bracket
+ * may still remove the comma that led there.
+ */
+interface Checkpoints {
+  /** Where sanitizing starts in the input. */
+  int getStart();
+
+  /** The sanitizer state at {@link #getStart}. */
+  JsonSanitizer.State getStartState();
+
+  /**
+   * The kinds of the brackets open at {@link #getStart}, true for
+   * <code>'{'</code>.  The length is the bracket depth.  Must not be
+   * modified.
+   */
+  boolean[] getStartBrackets();
+
+  /**
+   * Output that the sanitizer's output starts with: empty, or a comma
+   * carried over from before {@link #getStart} when the start state is
+   * {@code BEFORE_ELEMENT} or {@code BEFORE_KEY}.
+   */
+  CharSequence getStartOutput();
+
+  /**
+   * The input position at or after which the sanitizer should next call
+   * {@link #checkpoint}.
+   *
+   * @param pos a position that the sanitizer has reached.
+   */
+  int nextCheckpoint(int pos);
+
+  /**
+   * Called at the start of a token.
+   *
+   * @param pos the start of the token in the input.
+   * @param settledOutputPos the length of the output that later tokens
+   *     cannot change.  Less than outputPos only when a close bracket may
+   *     still remove the comma at settledOutputPos.
+   * @param outputPos the output length for the input before pos.
+   *     Output positions count {@link #getStartOutput} but not output for
+   *     input before {@link #getStart}.
+   * @return true to stop sanitizing, without the fixes at the end of input.
+   */
+  boolean checkpoint(
+      int pos, JsonSanitizer.State state, int bracketDepth,
+      @Nullable boolean[] isMap, int settledOutputPos, int outputPos);
+
+  /**
+   * Called when the sanitizer drops all input from pos on, because of a
+   * close bracket or comma outside any brackets.
+   */
+  void droppedRest(int pos);
+}
@@ -0,0 +1,446 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * The output of {@link JsonSanitizer#sanitizeAsEdits} represented as slices of
+ * the input interleaved with inserted fragments.
+ * <p>
+ * When the input needs few fixes, this costs memory proportional to the
+ * number of fixes instead of to the length of the input, and
+ * {@link #writeTo} can write the unchanged runs straight from the input
+ * buffer.
+ * <p>
+ * Since the unchanged runs are not copied, the input must not be modified
+ * while this is in use.
+ */
+public final class EditedJson implements CharSequence {
+  private final CharSequence input;
+  private final @Nullable String inputString;
+  private final @Nullable char[] inputChars;
+  private final int inputCharsOffset;
+  /** The content of all segments that do not come from the input. */
+  private final String inserted;
+  private final int nSegments;
+  /**
+   * If {@code srcStarts[k] >= 0} then the k-th segment is a slice of the
+   * input starting there, otherwise it is a slice of {@link #inserted}
+   * starting at {@code ~srcStarts[k]}.
+   */
+  private final int[] srcStarts;
+  /**
+   * The end of the k-th segment in the output.
+   * Each segment starts where the previous one ends, and the first starts at
+   * zero.
+   */
+  private final int[] outEnds;
+
+  private EditedJson(
+      CharSequence input, String inserted, int nSegments, int[] srcStarts,
+      int[] outEnds) {
+    this.input = input;
+    this.inserted = inserted;
+    this.nSegments = nSegments;
+    this.srcStarts = srcStarts;
+    this.outEnds = outEnds;
+    if (input instanceof String) {
+      this.inputString = (String) input;
+      this.inputChars = null;
+      this.inputCharsOffset = 0;
+    } else if (input instanceof CharBuffer && ((CharBuffer) input).hasArray()) {
+      CharBuffer cb = (CharBuffer) input;
+      this.inputString = null;
+      this.inputChars = cb.array();
+      this.inputCharsOffset = cb.arrayOffset() + cb.position();
+    } else {
+      this.inputString = null;
+      this.inputChars = null;
+      this.inputCharsOffset = 0;
+    }
+  }
+
+  /** An edited JSON that is exactly the input. */
+  static EditedJson unchanged(CharSequence input) {
+    int n = input.length();
+    return n == 0
+        ? new EditedJson(input, "", 0, new int[0], new int[0])
+        : new EditedJson(input, "", 1, new int[] { 0 }, new int[] { n });
+  }
+
+  /** The JSON-like content that was sanitized. */
+  public CharSequence getInput() {
+    return input;
+  }
+
+  /**
+   * The changes that turn the input into the sanitized output, ordered by
+   * position in the input, non-overlapping and non-adjacent.
+   * Empty when the input was already valid.
+   */
+  public List<Edit> getEdits() {
+    List<Edit> edits = new ArrayList<Edit>();
+    int inputPos = 0;
+    StringBuilder pending = null;
+    for (int k = 0; k < nSegments; ++k) {
+      int srcStart = srcStarts[k];
+      int len = outEnds[k] - (k == 0 ? 0 : outEnds[k - 1]);
+      if (srcStart >= 0) {
+        if (srcStart != inputPos || pending != null) {
+          edits.add(new Edit(
+              inputPos, srcStart, pending != null ? pending.toString() : ""));
+          pending = null;
+        }
+        inputPos = srcStart + len;
+      } else {
+        if (pending == null) { pending = new StringBuilder(); }
+        pending.append(inserted, ~srcStart, ~srcStart + len);
+      }
+    }
+    int inputLength = input.length();
+    if (inputPos != inputLength || pending != null) {
+      edits.add(new Edit(
+          inputPos, inputLength, pending != null ? pending.toString() : ""));
+    }
+    return Collections.unmodifiableList(edits);
+  }
+
+  /**
+   * Writes the sanitized output to out, copying unchanged runs directly from
+   * the input.
+   */
+  public void writeTo(Writer out) throws IOException {
+    for (int k = 0, outStart = 0; k < nSegments; outStart = outEnds[k++]) {
+      int srcStart = srcStarts[k];
+      int len = outEnds[k] - outStart;
+      if (srcStart < 0) {
+        out.write(inserted, ~srcStart, len);
+      } else if (inputChars != null) {
+        out.write(inputChars, inputCharsOffset + srcStart, len);
+      } else if (inputString != null) {
+        out.write(inputString, srcStart, len);
+      } else {
+        out.append(input, srcStart, srcStart + len);
+      }
+    }
+  }
+
+  /**
+   * A reader of the sanitized output that copies unchanged runs directly
+   * from the input into the caller's buffer, so the output is never
+   * materialized as a whole.
+   */
+  public Reader openReader() {
+    return new SegmentReader();
+  }
+
+  @Override
+  public int length() {
+    return nSegments == 0 ? 0 : outEnds[nSegments - 1];
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length()) {
+      throw new IndexOutOfBoundsException("" + index);
+    }
+    int k = segmentContaining(index);
+    int offset = index - (k == 0 ? 0 : outEnds[k - 1]);
+    int srcStart = srcStarts[k];
+    return srcStart >= 0
+        ? input.charAt(srcStart + offset)
+        : inserted.charAt(~srcStart + offset);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (start < 0 || end > length() || start > end) {
+      throw new IndexOutOfBoundsException(start + ":" + end);
+    }
+    StringBuilder sb = new StringBuilder(end - start);
+    appendTo(sb, start, end);
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    int n = length();
+    StringBuilder sb = new StringBuilder(n);
+    appendTo(sb, 0, n);
+    return sb.toString();
+  }
+
+  private void appendTo(StringBuilder sb, int start, int end) {
+    if (start == end) { return; }
+    for (int k = segmentContaining(start); k < nSegments; ++k) {
+      int outStart = k == 0 ? 0 : outEnds[k - 1];
+      if (outStart >= end) { break; }
+      int left = Math.max(start, outStart) - outStart;
+      int right = Math.min(end, outEnds[k]) - outStart;
+      int srcStart = srcStarts[k];
+      if (srcStart < 0) {
+        sb.append(inserted, ~srcStart + left, ~srcStart + right);
+      } else if (inputChars != null) {
+        sb.append(inputChars, inputCharsOffset + srcStart + left, right - left);
+      } else {
+        sb.append(input, srcStart + left, srcStart + right);
+      }
+    }
+  }
+
+  /** The index of the segment containing the output index i. */
+  private int segmentContaining(int i) {
+    int k = Arrays.binarySearch(outEnds, 0, nSegments, i);
+    // outEnds are exclusive so an exact match means i is in the next segment.
+    return k >= 0 ? k + 1 : ~k;
+  }
+
+  /** Reads the output a segment at a time. */
+  private final class SegmentReader extends Reader {
+    /** The segment containing the next char to read. */
+    private int k;
+    /** The output index of the next char to read. */
+    private int pos;
+    private boolean closed;
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      if (closed) { throw new IOException("closed"); }
+      if (off < 0 || len < 0 || len > cbuf.length - off) {
+        throw new IndexOutOfBoundsException();
+      }
+      if (len == 0) { return 0; }
+      int start = off;
+      for (int end = off + len; off < end && k < nSegments; ++k) {
+        int outStart = k == 0 ? 0 : outEnds[k - 1];
+        int left = pos - outStart;
+        int n = Math.min(end - off, outEnds[k] - pos);
+        int src = srcStarts[k];
+        if (src < 0) {
+          inserted.getChars(~src + left, ~src + left + n, cbuf, off);
+        } else if (inputChars != null) {
+          System.arraycopy(
+              inputChars, inputCharsOffset + src + left, cbuf, off, n);
+        } else if (inputString != null) {
+          inputString.getChars(src + left, src + left + n, cbuf, off);
+        } else {
+          for (int i = 0; i < n; ++i) {
+            cbuf[off + i] = input.charAt(src + left + i);
+          }
+        }
+        off += n;
+        pos += n;
+        if (pos != outEnds[k]) { break; }  // Buffer full mid-segment.
+      }
+      return off == start ? -1 : off - start;
+    }
+
+    @Override
+    public boolean ready() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+
+  /**
+   * A change to the input: the replacement of
+   * {@code input[getStart():getEnd()]} with {@link #getReplacement}.
+   */
+  public static final class Edit {
+    private final int start;
+    private final int end;
+    private final String replacement;
+
+    Edit(int start, int end, String replacement) {
+      this.start = start;
+      this.end = end;
+      this.replacement = replacement;
+    }
+
+    /** The start (inclusive) in the input of the replaced content. */
+    public int getStart() {
+      return start;
+    }
+
+    /** The end (exclusive) in the input of the replaced content. */
+    public int getEnd() {
+      return end;
+    }
+
+    /** The content that replaces the input between start and end. */
+    public String getReplacement() {
+      return replacement;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (!(o instanceof Edit)) { return false; }
+      Edit that = (Edit) o;
+      return this.start == that.start && this.end == that.end
+          && this.replacement.equals(that.replacement);
+    }
+
+    @Override
+    public int hashCode() {
+      return (start * 31 + end) * 31 + replacement.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return "[" + start + ":" + end + "]=" + replacement;
+    }
+  }
+
+
+  /**
+   * An output buffer for {@link JsonSanitizer} that records which parts of
+   * the output come from the input instead of copying them.
+   */
+  static final class Recorder extends OutputBuffer {
+    private final CharSequence input;
+    private final StringBuilder inserted = new StringBuilder();
+    private int nSegments;
+    private int[] srcStarts = new int[16];
+    private int[] outEnds = new int[16];
+
+    Recorder(CharSequence input) {
+      this.input = input;
+    }
+
+    EditedJson toEditedJson() {
+      return new EditedJson(
+          input, inserted.toString(), nSegments, srcStarts, outEnds);
+    }
+
+    @Override
+    void appendInput(int start, int end) {
+      if (start == end) { return; }
+      int k = nSegments - 1;
+      if (k >= 0 && srcStarts[k] >= 0
+          && srcStarts[k] + outEnds[k] - outStart(k) == start) {
+        outEnds[k] += end - start;
+      } else {
+        addSegment(start, end - start);
+      }
+    }
+
+    @Override
+    void append(char ch) {
+      appendInserted();
+      inserted.append(ch);
+      outEnds[nSegments - 1] += 1;
+    }
+
+    @Override
+    void append(CharSequence s) {
+      int n = s.length();
+      if (n == 0) { return; }
+      appendInserted();
+      inserted.append(s);
+      outEnds[nSegments - 1] += n;
+    }
+
+    /**
+     * Makes sure the last segment is one that can be extended by appending
+     * to {@link #inserted}.
+     */
+    private void appendInserted() {
+      int k = nSegments - 1;
+      // Since the sanitizer only truncates the output, a segment that is
+      // a slice of inserted is at the end of inserted if it is the last.
+      if (k < 0 || srcStarts[k] >= 0) {
+        addSegment(~inserted.length(), 0);
+      }
+    }
+
+    private void addSegment(int srcStart, int length) {
+      if (nSegments == srcStarts.length) {
+        int newCapacity = nSegments * 2;
+        srcStarts = Arrays.copyOf(srcStarts, newCapacity);
+        outEnds = Arrays.copyOf(outEnds, newCapacity);
+      }
+      int outStart = length();
+      srcStarts[nSegments] = srcStart;
+      outEnds[nSegments] = outStart + length;
+      ++nSegments;
+    }
+
+    private int outStart(int k) {
+      return k == 0 ? 0 : outEnds[k - 1];
+    }
+
+    @Override
+    int length() {
+      return nSegments == 0 ? 0 : outEnds[nSegments - 1];
+    }
+
+    @Override
+    char charAt(int i) {
+      // The sanitizer usually looks back at the end of the output.
+      int k = nSegments - 1;
+      if (outStart(k) > i) {
+        k = Arrays.binarySearch(outEnds, 0, nSegments, i);
+        k = k >= 0 ? k + 1 : ~k;
+      }
+      int srcStart = srcStarts[k];
+      int offset = i - outStart(k);
+      return srcStart >= 0
+          ? input.charAt(srcStart + offset)
+          : inserted.charAt(~srcStart + offset);
+    }
+
+    @Override
+    void setLength(int newLength) {
+      while (nSegments != 0 && outStart(nSegments - 1) >= newLength) {
+        --nSegments;
+        if (srcStarts[nSegments] < 0) {
+          inserted.setLength(~srcStarts[nSegments]);
+        }
+      }
+      int k = nSegments - 1;
+      if (k >= 0 && outEnds[k] > newLength) {
+        outEnds[k] = newLength;
+        if (srcStarts[k] < 0) {
+          inserted.setLength(~srcStarts[k] + newLength - outStart(k));
+        }
+      }
+    }
+
+    @Override
+    CharSequence toCharSequence() {
+      return toEditedJson();
+    }
+
+    @Override
+    public String toString() {
+      return toEditedJson().toString();
+    }
+  }
+}
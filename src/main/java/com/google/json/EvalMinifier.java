@@ -48,9 +48,7 @@ public final class EvalMinifier {
    *   {@code <![CDATA[...]]>} section.
    */
   public static String minify(String jsonish) {
-    JsonSanitizer s = new JsonSanitizer(jsonish);
-    s.sanitize();
-    return minify(s.toCharSequence()).toString();
+    return minify(new JsonSanitizer(jsonish), jsonish.length());
   }
 
   /**
@@ -61,13 +59,21 @@ public final class EvalMinifier {
    * @return see {@link EvalMinifier#minify(String)}
    */
   public static String minify(String jsonish, int maximumNestingDepth) {
-    JsonSanitizer s = new JsonSanitizer(jsonish, maximumNestingDepth);
+    return minify(
+        new JsonSanitizer(jsonish, maximumNestingDepth), jsonish.length());
+  }
+
+  private static String minify(JsonSanitizer s, int inputLength) {
+    // Null unless someone is recording, so this costs one check otherwise.
+    MinifyEvent event = FlightRecorderSupport.isInitialized()
+        ? MinifyEvent.start() : null;
     s.sanitize();
-    return minify(s.toCharSequence()).toString();
+    return minify(s.toCharSequence(), event, inputLength).toString();
   }
 
   @SuppressWarnings("synthetic-access")
-  private static CharSequence minify(CharSequence json) {
+  private static CharSequence minify(
+      CharSequence json, @Nullable MinifyEvent event, int inputLength) {
     Map<Token, Token> pool = new HashMap<Token, Token>();
     int n = json.length();
     for (int i = 0; i < n; ++i) {
@@ -140,6 +146,7 @@ public final class EvalMinifier {
       }
     }
     if (potentialSavings <= BOILERPLATE_COST + SAVINGS_THRESHOLD) {
+      if (event != null) { event.finish(inputLength, n, n, 0); }
       return json;
     }
 
@@ -213,6 +220,9 @@ public final class EvalMinifier {
     }
     sb.append(ENVELOPE_P4);
 
+    if (event != null) {
+      event.finish(inputLength, n, sb.length(), pool.size());
+    }
     return sb;
   }
 
@@ -0,0 +1,36 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+/**
+ * Whether Flight Recorder is running, checked before touching an event
+ * class.
+ * <p>
+ * This version is for JDKs that predate {@code jdk.jfr}.  The multi-release
+ * jar contains a version for Java 11 and later.
+ */
+final class FlightRecorderSupport {
+  private FlightRecorderSupport() {
+    // Static API.
+  }
+
+  /**
+   * False if no event can be recorded, so that callers need not load
+   * {@link SanitizeEvent} or {@link MinifyEvent}.
+   */
+  static boolean isInitialized() {
+    return false;
+  }
+}
@@ -0,0 +1,383 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.json;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * The output of {@link JsonSanitizer#sanitizeIncrementally} together with
+ * checkpoints that let {@link #edit} sanitize an edited input without
+ * starting over.
+ * <p>
+ * Every few thousand characters, at the start of a token, the sanitizer
+ * saves its {@link JsonSanitizer.State state}, the kinds of the open
+ * brackets, and the offsets reached in the input and the output.
+ * After an edit, sanitizing resumes from the last checkpoint before the edit
+ * and stops at the first checkpoint after it that is reached in the same
+ * state, since from there on the input, and so the output, is the same as
+ * before.
+ * A local edit to a large document therefore only sanitizes the
+ * characters around it, though the edited input and output are still
+ * copied.
+ * <p>
+ * Instances are immutable.
+ */
+public final class IncrementalJson {
+  /** The default number of input characters between checkpoints. */
+  public static final int DEFAULT_CHECKPOINT_INTERVAL = 4096;
+
+  private static final JsonSanitizer.State[] STATES =
+      JsonSanitizer.State.values();
+
+  private final String input;
+  private final String output;
+  private final int maximumNestingDepth;
+  private final JsonSanitizer.OutputProfile profile;
+  private final int checkpointInterval;
+  /** The number of checkpoints. */
+  private final int nCheckpoints;
+  /** The input offset of each checkpoint, in increasing order. */
+  private final int[] inputPositions;
+  /** The output offset of each checkpoint. */
+  private final int[] outputPositions;
+  /** The ordinal of the sanitizer state at each checkpoint. */
+  private final byte[] states;
+  /**
+   * The kinds of the brackets open at each checkpoint, true for
+   * <code>'{'</code>.  The array length is the bracket depth.
+   */
+  private final boolean[][] isMaps;
+  private final int resanitizedLength;
+
+  private IncrementalJson(
+      String input, String output, int maximumNestingDepth,
+      JsonSanitizer.OutputProfile profile, int checkpointInterval,
+      int nCheckpoints, int[] inputPositions, int[] outputPositions,
+      byte[] states, boolean[][] isMaps, int resanitizedLength) {
+    this.input = input;
+    this.output = output;
+    this.maximumNestingDepth = maximumNestingDepth;
+    this.profile = profile;
+    this.checkpointInterval = checkpointInterval;
+    this.nCheckpoints = nCheckpoints;
+    this.inputPositions = inputPositions;
+    this.outputPositions = outputPositions;
+    this.states = states;
+    this.isMaps = isMaps;
+    this.resanitizedLength = resanitizedLength;
+  }
+
+  static IncrementalJson sanitize(
+      String input, int maximumNestingDepth,
+      JsonSanitizer.OutputProfile profile, int checkpointInterval) {
+    if (checkpointInterval <= 0) {
+      throw new IllegalArgumentException(
+          "checkpointInterval=" + checkpointInterval);
+    }
+    return new Run(
+        input, maximumNestingDepth, profile, checkpointInterval, null, 0, 0, 0)
+        .run();
+  }
+
+  /** The JSON-like content that was sanitized. */
+  public String getInput() {
+    return input;
+  }
+
+  /** The sanitized JSON. */
+  public String getOutput() {
+    return output;
+  }
+
+  /**
+   * The number of input characters that were sanitized to produce this.
+   * The whole input when this came from
+   * {@link JsonSanitizer#sanitizeIncrementally}, and for an edit, the
+   * characters from the checkpoint before it to where the output
+   * rejoined the previous output.
+   */
+  public int getResanitizedLength() {
+    return resanitizedLength;
+  }
+
+  /**
+   * Sanitizes the input with the characters between start and end replaced.
+   *
+   * @param start the start of the replaced range in {@link #getInput}.
+   * @param end the end of the replaced range, exclusive.
+   * @param replacement the new content for the range.
+   * @return the sanitized form of the edited input, with its checkpoints.
+   * @throws IndexOutOfBoundsException if the range is not within the input.
+   */
+  public IncrementalJson edit(int start, int end, String replacement) {
+    if (start < 0 || start > end || end > input.length()) {
+      throw new IndexOutOfBoundsException(
+          "[" + start + ", " + end + ") of " + input.length());
+    }
+    String edited = new StringBuilder(
+        input.length() - (end - start) + replacement.length())
+        .append(input, 0, start)
+        .append(replacement)
+        .append(input, end, input.length())
+        .toString();
+    // The decision where a token ends looks at the character after it, so
+    // a checkpoint is only safe to resume from if it is before the edit.
+    int resume = -1;
+    for (int lo = 0, hi = nCheckpoints; lo < hi;) {
+      int mid = (lo + hi) >>> 1;
+      if (inputPositions[mid] < start) {
+        resume = mid;
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return new Run(
+        edited, maximumNestingDepth, profile, checkpointInterval, this,
+        resume, end, replacement.length() - (end - start))
+        .run();
+  }
+
+  /** The sanitized JSON. */
+  @Override
+  public String toString() {
+    return output;
+  }
+
+  /**
+   * Records checkpoints while {@link JsonSanitizer} sanitizes, and for an
+   * edit, tells it where to resume and recognizes when it has caught up with
+   * the previous run.
+   */
+  static final class Run implements Checkpoints {
+    private final String input;
+    private final int maximumNestingDepth;
+    private final JsonSanitizer.OutputProfile profile;
+    private final int checkpointInterval;
+    private final @Nullable IncrementalJson previous;
+    /** The index of the checkpoint in previous to resume from, or -1. */
+    private final int resumeIndex;
+    /** The change in input length made by the edit. */
+    private final int delta;
+    /** Where sanitizing starts in the input. */
+    private final int start;
+    /** The length of the output before {@link #start}. */
+    private final int outputBase;
+
+    private int nCheckpoints;
+    private int[] inputPositions = new int[16];
+    private int[] outputPositions = new int[16];
+    private byte[] states = new byte[16];
+    private boolean[][] isMaps = new boolean[16][];
+    private int lastRecorded;
+    /**
+     * The index of the next checkpoint in previous that the run may
+     * converge at.
+     */
+    private int nextOld;
+    /** The checkpoint in previous that the run converged at or -1. */
+    private int converged = -1;
+    private int convergedInputPosition;
+    private int convergedOutputPosition;
+
+    Run(String input, int maximumNestingDepth,
+        JsonSanitizer.OutputProfile profile, int checkpointInterval,
+        @Nullable IncrementalJson previous, int resumeIndex, int editEnd,
+        int delta) {
+      this.input = input;
+      this.maximumNestingDepth = maximumNestingDepth;
+      this.profile = profile;
+      this.checkpointInterval = checkpointInterval;
+      this.previous = previous;
+      this.resumeIndex = resumeIndex;
+      this.delta = delta;
+      if (previous != null && resumeIndex >= 0) {
+        this.start = previous.inputPositions[resumeIndex];
+        this.outputBase = previous.outputPositions[resumeIndex];
+      } else {
+        this.start = 0;
+        this.outputBase = 0;
+      }
+      this.lastRecorded = start;
+      if (previous != null) {
+        // Old checkpoints at or after the end of the edit see the same
+        // input from there on.
+        int k = resumeIndex + 1;
+        while (k < previous.nCheckpoints
+               && previous.inputPositions[k] < editEnd) {
+          ++k;
+        }
+        this.nextOld = k;
+      }
+    }
+
+    @Override
+    public int getStart() {
+      return start;
+    }
+
+    @Override
+    public JsonSanitizer.State getStartState() {
+      return previous != null && resumeIndex >= 0
+          ? STATES[previous.states[resumeIndex]]
+          : JsonSanitizer.State.START_ARRAY;
+    }
+
+    @Override
+    public boolean[] getStartBrackets() {
+      return previous != null && resumeIndex >= 0
+          ? previous.isMaps[resumeIndex]
+          : new boolean[0];
+    }
+
+    @Override
+    public CharSequence getStartOutput() {
+      return "";
+    }
+
+    @Override
+    public int nextCheckpoint(int pos) {
+      int next = lastRecorded + checkpointInterval;
+      if (converged < 0 && previous != null && nextOld < previous.nCheckpoints) {
+        int k = nextOld;
+        if (previous.inputPositions[k] + delta <= pos) { ++k; }
+        if (k < previous.nCheckpoints) {
+          next = Math.min(next, previous.inputPositions[k] + delta);
+        }
+      }
+      return Math.max(next, pos + 1);
+    }
+
+    /**
+     * Records a checkpoint every {@link #checkpointInterval} characters, and
+     * stops the sanitizer when sanitizing from pos on would repeat the
+     * previous run.
+     */
+    @Override
+    public boolean checkpoint(
+        int pos, JsonSanitizer.State state, int bracketDepth,
+        @Nullable boolean[] isMap, int settledOutputPos, int outputPos) {
+      if (settledOutputPos != outputPos) {
+        // Output spliced in from here on would follow a comma that a close
+        // bracket could still remove.
+        return false;
+      }
+      int out = outputBase + outputPos;
+      IncrementalJson p = previous;
+      if (p != null) {
+        while (nextOld < p.nCheckpoints
+               && p.inputPositions[nextOld] + delta < pos) {
+          ++nextOld;
+        }
+        if (nextOld < p.nCheckpoints
+            && p.inputPositions[nextOld] + delta == pos
+            && p.states[nextOld] == state.ordinal()
+            && sameBrackets(p.isMaps[nextOld], isMap, bracketDepth)) {
+          converged = nextOld;
+          convergedInputPosition = pos;
+          convergedOutputPosition = out;
+          return true;
+        }
+      }
+      if (pos - lastRecorded >= checkpointInterval) {
+        if (nCheckpoints == inputPositions.length) {
+          int cap = nCheckpoints * 2;
+          inputPositions = Arrays.copyOf(inputPositions, cap);
+          outputPositions = Arrays.copyOf(outputPositions, cap);
+          states = Arrays.copyOf(states, cap);
+          isMaps = Arrays.copyOf(isMaps, cap);
+        }
+        inputPositions[nCheckpoints] = pos;
+        outputPositions[nCheckpoints] = out;
+        states[nCheckpoints] = (byte) state.ordinal();
+        isMaps[nCheckpoints] = bracketDepth == 0
+            ? new boolean[0] : Arrays.copyOf(isMap, bracketDepth);
+        ++nCheckpoints;
+        lastRecorded = pos;
+      }
+      return false;
+    }
+
+    @Override
+    public void droppedRest(int pos) {
+      // Nothing after pos to converge with.
+    }
+
+    private static boolean sameBrackets(
+        boolean[] saved, @Nullable boolean[] isMap, int bracketDepth) {
+      if (saved.length != bracketDepth) { return false; }
+      for (int k = bracketDepth; --k >= 0;) {
+        if (saved[k] != isMap[k]) { return false; }
+      }
+      return true;
+    }
+
+    IncrementalJson run() {
+      JsonSanitizer s = new JsonSanitizer(input, maximumNestingDepth, profile);
+      s.resumeFrom(this);
+      s.sanitize();
+      CharSequence resumed = s.toCharSequence();
+      IncrementalJson p = previous;
+
+      int end = converged >= 0 ? convergedInputPosition : input.length();
+      int nOld = p != null ? resumeIndex + 1 : 0;
+      int nTail = converged >= 0 ? p.nCheckpoints - converged : 0;
+      int n = nOld + nCheckpoints + nTail;
+      int[] inPos = new int[n];
+      int[] outPos = new int[n];
+      byte[] st = new byte[n];
+      boolean[][] maps = new boolean[n][];
+      if (nOld != 0) {
+        System.arraycopy(p.inputPositions, 0, inPos, 0, nOld);
+        System.arraycopy(p.outputPositions, 0, outPos, 0, nOld);
+        System.arraycopy(p.states, 0, st, 0, nOld);
+        System.arraycopy(p.isMaps, 0, maps, 0, nOld);
+      }
+      System.arraycopy(inputPositions, 0, inPos, nOld, nCheckpoints);
+      System.arraycopy(outputPositions, 0, outPos, nOld, nCheckpoints);
+      System.arraycopy(states, 0, st, nOld, nCheckpoints);
+      System.arraycopy(isMaps, 0, maps, nOld, nCheckpoints);
+
+      String output;
+      if (p == null) {
+        output = resumed.toString();
+      } else {
+        int oldTail = converged >= 0
+            ? p.output.length() - p.outputPositions[converged] : 0;
+        StringBuilder sb = new StringBuilder(
+            outputBase + resumed.length() + oldTail);
+        sb.append(p.output, 0, outputBase).append(resumed);
+        if (converged >= 0) {
+          int tailStart = p.outputPositions[converged];
+          sb.append(p.output, tailStart, p.output.length());
+          int outDelta = convergedOutputPosition - tailStart;
+          for (int k = 0, j = nOld + nCheckpoints; k < nTail; ++k, ++j) {
+            inPos[j] = p.inputPositions[converged + k] + delta;
+            outPos[j] = p.outputPositions[converged + k] + outDelta;
+            st[j] = p.states[converged + k];
+            maps[j] = p.isMaps[converged + k];
+          }
+        }
+        output = sb.toString();
+      }
+      return new IncrementalJson(
+          input, output, maximumNestingDepth, profile, checkpointInterval,
+          n, inPos, outPos, st, maps, end - start);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+/**
+ * Receives events from
+ * {@link JsonSanitizer#sanitizeWithHandler(CharSequence, JsonHandler)} as it
+ * walks over tokens, so that callers can sanitize and parse in one pass.
+ * <p>
+ * Every method receives the sanitized output as {@code json} and the
+ * position of the token in it:
+ * {@code json.subSequence(start, end)} is the token's sanitized text.
+ * The output up to {@code end} does not change after the event is delivered,
+ * so handlers may keep json and look back at earlier tokens, but output after
+ * {@code end} has not been produced yet.
+ * <p>
+ * Events nest properly, so each {@code startObject} is followed by zero or
+ * more {@code key}, value pairs and then an {@code endObject}, and the
+ * sanitizer reports any keys, values, and brackets it inserts to fix the
+ * input.
+ */
+public interface JsonHandler {
+  /** Called for <code>'{'</code>. */
+  void startObject(CharSequence json, int start, int end);
+
+  /** Called for <code>'}'</code>. */
+  void endObject(CharSequence json, int start, int end);
+
+  /** Called for {@code '['}. */
+  void startArray(CharSequence json, int start, int end);
+
+  /** Called for {@code ']'}. */
+  void endArray(CharSequence json, int start, int end);
+
+  /** Called for a property name, a quoted JSON string including quotes. */
+  void key(CharSequence json, int start, int end);
+
+  /** Called for a string value, a quoted JSON string including quotes. */
+  void stringValue(CharSequence json, int start, int end);
+
+  /** Called for a number value. */
+  void numberValue(CharSequence json, int start, int end);
+
+  /** Called for {@code true} or {@code false}. */
+  void booleanValue(CharSequence json, int start, int end);
+
+  /** Called for {@code null}. */
+  void nullValue(CharSequence json, int start, int end);
+}
@@ -0,0 +1,323 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.util.Arrays;
+
+/**
+ * Sanitized JSON with a structural index that lets callers find values
+ * without tokenizing the JSON again.
+ * <p>
+ * Tokens are identified by their position on the index's tape, an
+ * {@code int[]} with two entries per token: the token's start in the JSON,
+ * and then the end for keys and scalar values, or the tape position of the
+ * matching bracket for brackets.
+ * Token 0 is the top-level value, the members of an object alternate
+ * between keys and values, and {@link #skip} jumps over a whole value so
+ * navigation only visits the tokens on the way to what it finds.
+ * <p>
+ * For example, in <code>{"a":[1,2]}</code>, the tokens are
+ * <code>{</code>, <code>"a"</code>, <code>[</code>, <code>1</code>,
+ * <code>2</code>, <code>]</code>, and <code>}</code>,
+ * and <code>find("$.a[1]")</code> returns 4.
+ */
+public final class JsonIndex {
+  private final CharSequence json;
+  private final int[] tape;
+  private final int nTokens;
+
+  private JsonIndex(CharSequence json, int[] tape, int nTokens) {
+    this.json = json;
+    this.tape = tape;
+    this.nTokens = nTokens;
+  }
+
+  /** The sanitized JSON. */
+  public CharSequence getJson() {
+    return json;
+  }
+
+  /** The number of tokens in the index. */
+  public int getTokenCount() {
+    return nTokens;
+  }
+
+  /** The start of the token in {@link #getJson}. */
+  public int getStart(int token) {
+    return tape[2 * checkToken(token)];
+  }
+
+  /**
+   * The end of the value that starts with token in {@link #getJson}.
+   * For an open bracket, this is the end of the matching close bracket.
+   */
+  public int getEnd(int token) {
+    char ch = json.charAt(getStart(token));
+    if (ch == '{' || ch == '[') {
+      return tape[2 * tape[2 * token + 1]] + 1;
+    } else if (ch == '}' || ch == ']') {
+      return tape[2 * token] + 1;
+    }
+    return tape[2 * token + 1];
+  }
+
+  /**
+   * A read-only view of the value that starts with token.
+   * @throws IllegalArgumentException if token is a close bracket.
+   */
+  public JsonValue getValue(int token) {
+    return new JsonValue(this, checkToken(token));
+  }
+
+  /** The text of the value that starts with token. */
+  public CharSequence getText(int token) {
+    return json.subSequence(getStart(token), getEnd(token));
+  }
+
+  /** True if token is the start of an object. */
+  public boolean isObject(int token) {
+    return json.charAt(getStart(token)) == '{';
+  }
+
+  /** True if token is the start of an array. */
+  public boolean isArray(int token) {
+    return json.charAt(getStart(token)) == '[';
+  }
+
+  /**
+   * The token of the matching bracket.
+   * @throws IllegalArgumentException if token is not a bracket.
+   */
+  public int getMatchingBracket(int token) {
+    switch (json.charAt(getStart(token))) {
+      case '{': case '[': case '}': case ']':
+        return tape[2 * token + 1];
+      default:
+        throw new IllegalArgumentException("not a bracket: " + token);
+    }
+  }
+
+  /**
+   * The token after the value or key that starts with token.
+   * For an open bracket, this is the token after the matching close bracket.
+   */
+  public int skip(int token) {
+    return isObject(token) || isArray(token)
+        ? tape[2 * token + 1] + 1 : token + 1;
+  }
+
+  /**
+   * The number of members in an object or elements in an array.
+   * @throws IllegalArgumentException if token is not an object or array.
+   */
+  public int getSize(int token) {
+    boolean object = isObject(token);
+    if (!(object || isArray(token))) {
+      throw new IllegalArgumentException("not a container: " + token);
+    }
+    int close = tape[2 * token + 1];
+    int size = 0;
+    for (int t = token + 1; t < close; t = skip(object ? t + 1 : t)) {
+      ++size;
+    }
+    return size;
+  }
+
+  /**
+   * The token of the value of the named member of an object.
+   * If there are multiple members with that name, this is the last, which
+   * is the one that {@code JSON.parse} keeps.
+   * @return -1 if token is not an object or has no such member.
+   */
+  public int getMember(int token, String name) {
+    if (!isObject(token)) { return -1; }
+    int close = tape[2 * token + 1];
+    int member = -1;
+    for (int t = token + 1; t < close; t = skip(t + 1)) {
+      if (stringEquals(json, tape[2 * t], tape[2 * t + 1], name)) {
+        member = t + 1;
+      }
+    }
+    return member;
+  }
+
+  /**
+   * The token of the index-th element of an array.
+   * @return -1 if token is not an array or index is out of bounds.
+   */
+  public int getElement(int token, int index) {
+    if (!isArray(token) || index < 0) { return -1; }
+    int close = tape[2 * token + 1];
+    int t = token + 1;
+    for (int i = 0; i < index && t < close; ++i) {
+      t = skip(t);
+    }
+    return t < close ? t : -1;
+  }
+
+  /**
+   * The token of the value at path.
+   * @param path a path like <code>$.items[42].id</code> or
+   *     <code>$['a b'][0]</code>.
+   * @return -1 if there is no such value.
+   * @throws IllegalArgumentException if path is malformed.
+   */
+  public int find(String path) {
+    int token = 0;
+    for (Object step : JsonPath.parse(path)) {
+      token = step instanceof String
+          ? getMember(token, (String) step)
+          : getElement(token, (Integer) step);
+      if (token < 0) { break; }
+    }
+    return token;
+  }
+
+  private int checkToken(int token) {
+    if (token < 0 || token >= nTokens) {
+      throw new IndexOutOfBoundsException("" + token);
+    }
+    return token;
+  }
+
+  /**
+   * True if {@code json[start:end]} is a JSON string whose value is s.
+   */
+  static boolean stringEquals(
+      CharSequence json, int start, int end, String s) {
+    int n = s.length();
+    int rawLength = end - start - 2;
+    // Escapes only make the value shorter than its JSON form, so if the
+    // lengths match there are no escapes, and we need not decode.
+    if (rawLength == n) {
+      for (int i = 0; i < n; ++i) {
+        if (json.charAt(start + 1 + i) != s.charAt(i)) { return false; }
+      }
+      return true;
+    }
+    return rawLength > n && decodeString(json, start, end).equals(s);
+  }
+
+  /**
+   * The value of the JSON string {@code json[start:end]} which must be a
+   * string in sanitized output.
+   */
+  static String decodeString(CharSequence json, int start, int end) {
+    StringBuilder sb = new StringBuilder(end - start - 2);
+    for (int i = start + 1, last = end - 1; i < last; ++i) {
+      char ch = json.charAt(i);
+      if (ch == '\\') {
+        ch = json.charAt(++i);
+        switch (ch) {
+          case 'b': ch = '\b'; break;
+          case 'f': ch = '\f'; break;
+          case 'n': ch = '\n'; break;
+          case 'r': ch = '\r'; break;
+          case 't': ch = '\t'; break;
+          case 'u':
+            ch = (char) Integer.parseInt(
+                json.subSequence(i + 1, i + 5).toString(), 16);
+            i += 4;
+            break;
+          default: break;  // '"', '\\', or '/'
+        }
+      }
+      sb.append(ch);
+    }
+    return sb.toString();
+  }
+
+
+  /** Records the tape for a {@link JsonIndex} from sanitizer events. */
+  static final class Builder implements JsonHandler {
+    private int[] tape = new int[64];
+    private int nTokens;
+    private int[] openBrackets = new int[16];
+    private int depth;
+
+    JsonIndex build(CharSequence json) {
+      return new JsonIndex(json, tape, nTokens);
+    }
+
+    private void add(int start, int endOrLink) {
+      if (2 * nTokens == tape.length) {
+        tape = Arrays.copyOf(tape, tape.length * 2);
+      }
+      tape[2 * nTokens] = start;
+      tape[2 * nTokens + 1] = endOrLink;
+      ++nTokens;
+    }
+
+    private void open(int start) {
+      if (depth == openBrackets.length) {
+        openBrackets = Arrays.copyOf(openBrackets, depth * 2);
+      }
+      openBrackets[depth++] = nTokens;
+      // The link is filled in by close.
+      add(start, -1);
+    }
+
+    private void close(int start) {
+      int open = openBrackets[--depth];
+      tape[2 * open + 1] = nTokens;
+      add(start, open);
+    }
+
+    @Override
+    public void startObject(CharSequence json, int start, int end) {
+      open(start);
+    }
+
+    @Override
+    public void endObject(CharSequence json, int start, int end) {
+      close(start);
+    }
+
+    @Override
+    public void startArray(CharSequence json, int start, int end) {
+      open(start);
+    }
+
+    @Override
+    public void endArray(CharSequence json, int start, int end) {
+      close(start);
+    }
+
+    @Override
+    public void key(CharSequence json, int start, int end) {
+      add(start, end);
+    }
+
+    @Override
+    public void stringValue(CharSequence json, int start, int end) {
+      add(start, end);
+    }
+
+    @Override
+    public void numberValue(CharSequence json, int start, int end) {
+      add(start, end);
+    }
+
+    @Override
+    public void booleanValue(CharSequence json, int start, int end) {
+      add(start, end);
+    }
+
+    @Override
+    public void nullValue(CharSequence json, int start, int end) {
+      add(start, end);
+    }
+  }
+}
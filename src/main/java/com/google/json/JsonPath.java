@@ -0,0 +1,112 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses simple paths like <code>$.items[42].id</code> or
+ * <code>$['a b']</code> into a list of steps where each step is a
+ * {@code String} property name or an {@code Integer} array index, and
+ * JSON Pointers like {@code /items/42/id} into a list of {@code String}
+ * steps.
+ */
+final class JsonPath {
+
+  private JsonPath() {
+    // Static API
+  }
+
+  /**
+   * @throws IllegalArgumentException if path is not a simple path.
+   */
+  static Object[] parse(String path) {
+    int n = path.length();
+    if (n == 0 || path.charAt(0) != '$') {
+      throw new IllegalArgumentException(path);
+    }
+    List<Object> steps = new ArrayList<Object>();
+    int i = 1;
+    while (i < n) {
+      char ch = path.charAt(i);
+      if (ch == '.') {
+        int start = ++i;
+        while (i < n && path.charAt(i) != '.' && path.charAt(i) != '[') {
+          ++i;
+        }
+        if (start == i) { throw new IllegalArgumentException(path); }
+        steps.add(path.substring(start, i));
+      } else if (ch == '[' && i + 1 < n) {
+        char q = path.charAt(i + 1);
+        if (q == '\'' || q == '"') {
+          int close = path.indexOf(q, i + 2);
+          if (close < 0 || close + 1 >= n || path.charAt(close + 1) != ']') {
+            throw new IllegalArgumentException(path);
+          }
+          steps.add(path.substring(i + 2, close));
+          i = close + 2;
+        } else {
+          int close = path.indexOf(']', i);
+          if (close < 0) { throw new IllegalArgumentException(path); }
+          try {
+            int index = Integer.parseInt(path.substring(i + 1, close));
+            if (index < 0) { throw new IllegalArgumentException(path); }
+            steps.add(index);
+          } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(path, ex);
+          }
+          i = close + 1;
+        }
+      } else {
+        throw new IllegalArgumentException(path);
+      }
+    }
+    return steps.toArray();
+  }
+
+  /**
+   * Parses an RFC 6901 JSON Pointer.
+   * @throws IllegalArgumentException if pointer is not a JSON Pointer.
+   */
+  static Object[] parsePointer(String pointer) {
+    List<Object> steps = new ArrayList<Object>();
+    int n = pointer.length();
+    if (n != 0 && pointer.charAt(0) != '/') {
+      throw new IllegalArgumentException(pointer);
+    }
+    StringBuilder sb = new StringBuilder();
+    for (int i = 1; i <= n; ++i) {
+      char ch = i < n ? pointer.charAt(i) : '/';
+      if (ch == '/') {
+        steps.add(sb.toString());
+        sb.setLength(0);
+      } else if (ch == '~') {
+        char next = i + 1 < n ? pointer.charAt(i + 1) : '\0';
+        if (next == '0') {
+          sb.append('~');
+        } else if (next == '1') {
+          sb.append('/');
+        } else {
+          throw new IllegalArgumentException(pointer);
+        }
+        ++i;
+      } else {
+        sb.append(ch);
+      }
+    }
+    return steps.toArray();
+  }
+}
@@ -0,0 +1,215 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link JsonHandler} that captures the sanitized text of the values at
+ * a few paths as the sanitizer passes them.
+ * <p>
+ * Paths may be simple paths like <code>$.meta.priority</code> or
+ * <code>$.items[0]['id']</code>, or JSON Pointers like
+ * {@code /meta/priority} or {@code /items/0/id}.
+ * A property name that is a decimal integer, as in a JSON Pointer, also
+ * matches that index in an array.
+ * If an object has more than one member with the same name, the last one
+ * counts, as with {@code JSON.parse}, so a later member can replace a
+ * captured value or remove it.  A value is settled once the outermost
+ * object around it has closed.
+ * <p>
+ * Pass this to
+ * {@link JsonSanitizer#sanitizeWithHandler(CharSequence, JsonHandler)} to
+ * capture values while producing the full output, or use
+ * {@link JsonSanitizer#extract} to stop sanitizing once the values at all
+ * the paths are settled.  Paths into a top-level object are only settled
+ * when it ends, but paths like <code>$[0].id</code> into the first element
+ * of a top-level array settle as soon as that element ends.
+ */
+public final class JsonPathExtractor implements JsonHandler {
+  private final String[] paths;
+  private final PathTracker tracker;
+  private final @Nullable String[] values;
+  /** True for paths whose value can no longer change. */
+  private final boolean[] settled;
+  /**
+   * For captured paths, the depth of the outermost object around the value,
+   * which must close before the value is settled.
+   */
+  private final int[] settleDepth;
+  private int nSettled;
+
+  // Per open container, indexed by depth.
+  /** capture[d][p] when path p ends at the container at depth d. */
+  private boolean[][] capture = new boolean[8][];
+  private int[] containerStart = new int[8];
+
+  /**
+   * @param paths simple paths or JSON Pointers.
+   * @throws IllegalArgumentException if a path is malformed.
+   */
+  public JsonPathExtractor(String... paths) {
+    this.paths = paths.clone();
+    this.tracker = new PathTracker(this.paths);
+    this.values = new String[paths.length];
+    this.settled = new boolean[paths.length];
+    this.settleDepth = new int[paths.length];
+  }
+
+  /** True when the value at every path is settled. */
+  public boolean isDone() {
+    return nSettled == paths.length;
+  }
+
+  /**
+   * The sanitized text of the value at path, or null if no value has been
+   * seen at path.
+   */
+  public @Nullable String getValue(String path) {
+    for (int p = 0; p < paths.length; ++p) {
+      if (paths[p].equals(path)) { return values[p]; }
+    }
+    return null;
+  }
+
+  /**
+   * Maps each path that has been found to the sanitized text of its value,
+   * in the order the paths were given.
+   */
+  public Map<String, String> getValues() {
+    Map<String, String> found = new LinkedHashMap<String, String>();
+    for (int p = 0; p < paths.length; ++p) {
+      String value = values[p];
+      if (value != null && !found.containsKey(paths[p])) {
+        found.put(paths[p], value);
+      }
+    }
+    return Collections.unmodifiableMap(found);
+  }
+
+  private void scalar(CharSequence json, int start, int end) {
+    if (tracker.startValue()) {
+      String text = null;
+      for (int p = 0; p < paths.length; ++p) {
+        if (!settled[p] && tracker.endsAtValue(p)) {
+          if (text == null) { text = json.subSequence(start, end).toString(); }
+          capture(p, text);
+        }
+      }
+    }
+  }
+
+  private void open(boolean object, int start) {
+    boolean any = tracker.startValue();
+    int d = tracker.depth();
+    if (d == capture.length) {
+      capture = Arrays.copyOf(capture, d * 2);
+      containerStart = Arrays.copyOf(containerStart, d * 2);
+    }
+    boolean[] containerCapture = capture[d];
+    if (containerCapture == null) {
+      capture[d] = containerCapture = new boolean[paths.length];
+    }
+    for (int p = 0; p < paths.length; ++p) {
+      containerCapture[p] = any && !settled[p] && tracker.endsAtValue(p);
+    }
+    containerStart[d] = start;
+    tracker.open(object);
+  }
+
+  private void close(CharSequence json, int end) {
+    tracker.close();
+    int d = tracker.depth();
+    boolean[] containerCapture = capture[d];
+    String text = null;
+    for (int p = 0; p < paths.length; ++p) {
+      if (containerCapture[p]) {
+        if (text == null) {
+          text = json.subSequence(containerStart[d], end).toString();
+        }
+        capture(p, text);
+      } else if (!settled[p] && values[p] != null && settleDepth[p] == d) {
+        settle(p);
+      }
+    }
+  }
+
+  private void capture(int p, String text) {
+    values[p] = text;
+    settleDepth[p] = tracker.outermostObject();
+    if (settleDepth[p] < 0) { settle(p); }
+  }
+
+  private void settle(int p) {
+    settled[p] = true;
+    ++nSettled;
+  }
+
+  @Override
+  public void startObject(CharSequence json, int start, int end) {
+    open(true, start);
+  }
+
+  @Override
+  public void endObject(CharSequence json, int start, int end) {
+    close(json, end);
+  }
+
+  @Override
+  public void startArray(CharSequence json, int start, int end) {
+    open(false, start);
+  }
+
+  @Override
+  public void endArray(CharSequence json, int start, int end) {
+    close(json, end);
+  }
+
+  @Override
+  public void key(CharSequence json, int start, int end) {
+    tracker.key(json, start, end);
+    for (int p = 0; p < paths.length; ++p) {
+      // A later member with the same name replaces what was captured.
+      if (!settled[p] && tracker.matchesMember(p)) {
+        values[p] = null;
+      }
+    }
+  }
+
+  @Override
+  public void stringValue(CharSequence json, int start, int end) {
+    scalar(json, start, end);
+  }
+
+  @Override
+  public void numberValue(CharSequence json, int start, int end) {
+    scalar(json, start, end);
+  }
+
+  @Override
+  public void booleanValue(CharSequence json, int start, int end) {
+    scalar(json, start, end);
+  }
+
+  @Override
+  public void nullValue(CharSequence json, int start, int end) {
+    scalar(json, start, end);
+  }
+}
@@ -0,0 +1,217 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * A compiled set of object members to redact while sanitizing, by passing it
+ * to {@link JsonSanitizer#redact(String, JsonRedactor)}.
+ * <p>
+ * Members are named by a plain property name like {@code password}, which
+ * matches a member with that name at any depth, or by a path to a member
+ * like <code>$.user.ssn</code> or {@code /user/ssn}.
+ * Anything that starts with {@code /}, <code>$.</code>, or <code>$[</code>
+ * is treated as a path, so a top-level member named {@code /x} has to be
+ * given as <code>$['/x']</code>.
+ * Members inside a value that is redacted are not considered separately.
+ * <p>
+ * Instances are immutable and may be shared across threads.
+ */
+public final class JsonRedactor {
+  private final String[] names;
+  private final String[] paths;
+  /** The JSON for redacted values, or null to remove whole members. */
+  private final @Nullable String placeholderJson;
+
+  private JsonRedactor(
+      String[] namesAndPaths, @Nullable String placeholderJson) {
+    List<String> nameList = new ArrayList<String>();
+    List<String> pathList = new ArrayList<String>();
+    for (String nameOrPath : namesAndPaths) {
+      if (isPath(nameOrPath)) {
+        pathList.add(nameOrPath);
+      } else {
+        nameList.add(nameOrPath);
+      }
+    }
+    this.names = nameList.toArray(new String[nameList.size()]);
+    this.paths = pathList.toArray(new String[pathList.size()]);
+    this.placeholderJson = placeholderJson;
+    // Fail early on malformed paths.
+    new PathTracker(paths);
+  }
+
+  private static boolean isPath(String s) {
+    return s.startsWith("/") || s.equals("$")
+        || s.startsWith("$.") || s.startsWith("$[");
+  }
+
+  /**
+   * A redactor that replaces the values of the named members with a
+   * placeholder string, as in <code>{"password":"***"}</code>.
+   *
+   * @param placeholder the value of the JSON string that replaces values.
+   * @param namesAndPaths property names or paths to members.
+   * @throws IllegalArgumentException if a path is malformed.
+   */
+  public static JsonRedactor replacingValues(
+      String placeholder, String... namesAndPaths) {
+    StringBuilder sb = new StringBuilder(placeholder.length() + 2);
+    sb.append('"');
+    for (int i = 0, n = placeholder.length(); i < n; ++i) {
+      char ch = placeholder.charAt(i);
+      if (ch == '"' || ch == '\\') {
+        sb.append('\\').append(ch);
+      } else if (ch < 0x20) {
+        sb.append(ch < 0x10 ? "\\u000" : "\\u00")
+            .append(Integer.toHexString(ch));
+      } else {
+        sb.append(ch);
+      }
+    }
+    sb.append('"');
+    // Let the sanitizer take care of embedding concerns.
+    return new JsonRedactor(
+        namesAndPaths.clone(), JsonSanitizer.sanitize(sb.toString()));
+  }
+
+  /**
+   * A redactor that removes the named members, key and value, fixing up
+   * commas so the output stays well-formed.
+   *
+   * @param namesAndPaths property names or paths to members.
+   * @throws IllegalArgumentException if a path is malformed.
+   */
+  public static JsonRedactor removingMembers(String... namesAndPaths) {
+    return new JsonRedactor(namesAndPaths.clone(), null);
+  }
+
+  /** Per-sanitization state which redacts members as they end. */
+  Pass newPass(JsonSanitizer sanitizer) {
+    return new Pass(sanitizer);
+  }
+
+
+  /**
+   * Watches for members to redact, and once the value of one ends, asks the
+   * sanitizer to redact it.
+   */
+  final class Pass implements JsonHandler {
+    private final JsonSanitizer sanitizer;
+    private final @Nullable PathTracker tracker;
+    /** The number of open containers. */
+    private int depth;
+    /** True if the value about to start belongs to a redacted member. */
+    private boolean memberMatched;
+    private int keyStart;
+    /** The depth of the value being redacted or -1 if none. */
+    private int redactDepth = -1;
+    /** The start of the output to redact. */
+    private int redactStart;
+
+    Pass(JsonSanitizer sanitizer) {
+      this.sanitizer = sanitizer;
+      this.tracker = paths.length != 0 ? new PathTracker(paths) : null;
+    }
+
+    private void startValue(int start) {
+      if (tracker != null) { tracker.startValue(); }
+      if (memberMatched && redactDepth < 0) {
+        redactDepth = depth;
+        redactStart = placeholderJson != null ? start : keyStart;
+      }
+      memberMatched = false;
+    }
+
+    private void endValue(int end) {
+      if (redactDepth == depth) {
+        redactDepth = -1;
+        sanitizer.redact(redactStart, end, placeholderJson);
+      }
+    }
+
+    private void open(boolean object, int start) {
+      startValue(start);
+      if (tracker != null) { tracker.open(object); }
+      ++depth;
+    }
+
+    private void close(int end) {
+      if (tracker != null) { tracker.close(); }
+      --depth;
+      endValue(end);
+    }
+
+    private void scalar(int start, int end) {
+      startValue(start);
+      endValue(end);
+    }
+
+    @Override
+    public void startObject(CharSequence json, int start, int end) {
+      open(true, start);
+    }
+
+    @Override
+    public void endObject(CharSequence json, int start, int end) {
+      close(end);
+    }
+
+    @Override
+    public void startArray(CharSequence json, int start, int end) {
+      open(false, start);
+    }
+
+    @Override
+    public void endArray(CharSequence json, int start, int end) {
+      close(end);
+    }
+
+    @Override
+    public void key(CharSequence json, int start, int end) {
+      boolean match = tracker != null && tracker.key(json, start, end);
+      if (redactDepth >= 0) { return; }
+      for (int k = 0; !match && k < names.length; ++k) {
+        match = JsonIndex.stringEquals(json, start, end, names[k]);
+      }
+      memberMatched = match;
+      keyStart = start;
+    }
+
+    @Override
+    public void stringValue(CharSequence json, int start, int end) {
+      scalar(start, end);
+    }
+
+    @Override
+    public void numberValue(CharSequence json, int start, int end) {
+      scalar(start, end);
+    }
+
+    @Override
+    public void booleanValue(CharSequence json, int start, int end) {
+      scalar(start, end);
+    }
+
+    @Override
+    public void nullValue(CharSequence json, int start, int end) {
+      scalar(start, end);
+    }
+  }
+}
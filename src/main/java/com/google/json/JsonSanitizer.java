@@ -14,7 +14,19 @@
 
 package com.google.json;
 
-import java.math.BigInteger;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Checksum;
+
+import javax.annotation.Nullable;
 
 /**
  * Given JSON-like content, converts it to valid JSON.
@@ -70,6 +82,9 @@ import java.math.BigInteger;
  *   (no isolated UTF-16 surrogates) that are
  *   <a href="http://www.w3.org/TR/xml/#charsets">allowed in XML</a> unescaped.
  * </ol>
+ * The first two properties are only needed when the output is embedded in
+ * HTML or XML; callers that never do that can sanitize with
+ * {@link OutputProfile#PLAIN_JSON} to skip the work of ensuring them.
  *
  * <h2>Security</h2>
  * Since the output is well-formed JSON, passing it to <code>eval</code> will
@@ -120,16 +135,708 @@ public final class JsonSanitizer {
    * @return embeddable JSON
    */
   public static String sanitize(String jsonish, int maximumNestingDepth) {
-    JsonSanitizer s = new JsonSanitizer(jsonish, maximumNestingDepth);
+    return sanitize(jsonish, maximumNestingDepth, OutputProfile.EMBEDDABLE);
+  }
+
+  /**
+   * Same as {@link JsonSanitizer#sanitize(String, int)}, but allows choosing
+   * which embedding guarantees the output needs to satisfy.
+   *
+   * @param jsonish JSON-like content.
+   * @param maximumNestingDepth maximum nesting depth.
+   * @param profile the contexts in which the output will be used.
+   * @return JSON that satisfies the guarantees of profile.
+   */
+  public static String sanitize(
+      String jsonish, int maximumNestingDepth, OutputProfile profile) {
+    JsonSanitizer s = new JsonSanitizer(jsonish, maximumNestingDepth, profile);
     s.sanitize();
     return s.toString();
   }
 
+  /**
+   * Like {@link JsonSanitizer#sanitize(String)} but for content that is not
+   * in a {@code String}, such as a {@link CharBuffer} or a
+   * {@link StringBuilder}.
+   * The input is not copied, and when it is already valid, the input itself
+   * is returned, so callers that reuse buffers should not modify the input
+   * while the output is in use.
+   *
+   * @param jsonish JSON-like content.
+   * @return embeddable JSON
+   */
+  public static CharSequence sanitize(CharSequence jsonish) {
+    return sanitize(
+        jsonish, DEFAULT_NESTING_DEPTH, OutputProfile.EMBEDDABLE);
+  }
+
+  /**
+   * Same as {@link JsonSanitizer#sanitize(CharSequence)}, but allows setting
+   * a custom maximum nesting depth and output profile.
+   *
+   * @param jsonish JSON-like content.
+   * @param maximumNestingDepth maximum nesting depth.
+   * @param profile the contexts in which the output will be used.
+   * @return JSON that satisfies the guarantees of profile.
+   */
+  public static CharSequence sanitize(
+      CharSequence jsonish, int maximumNestingDepth, OutputProfile profile) {
+    JsonSanitizer s = new JsonSanitizer(jsonish, maximumNestingDepth, profile);
+    s.sanitize();
+    return s.toCharSequence();
+  }
+
+  /**
+   * Like {@link JsonSanitizer#sanitize(CharSequence)} but reads JSON-like
+   * content directly from {@code chars[off:off+len]}.
+   *
+   * @param chars a buffer containing JSON-like content.
+   * @param off the index into chars of the start of the content.
+   * @param len the length of the content.
+   * @return embeddable JSON
+   */
+  public static CharSequence sanitize(char[] chars, int off, int len) {
+    return sanitize(
+        chars, off, len, DEFAULT_NESTING_DEPTH, OutputProfile.EMBEDDABLE);
+  }
+
+  /**
+   * Same as {@link JsonSanitizer#sanitize(char[], int, int)}, but allows
+   * setting a custom maximum nesting depth and output profile.
+   *
+   * @param chars a buffer containing JSON-like content.
+   * @param off the index into chars of the start of the content.
+   * @param len the length of the content.
+   * @param maximumNestingDepth maximum nesting depth.
+   * @param profile the contexts in which the output will be used.
+   * @return JSON that satisfies the guarantees of profile.
+   */
+  public static CharSequence sanitize(
+      char[] chars, int off, int len, int maximumNestingDepth,
+      OutputProfile profile) {
+    return sanitize(
+        CharBuffer.wrap(chars, off, len), maximumNestingDepth, profile);
+  }
+
+  /**
+   * Like {@link JsonSanitizer#sanitize(CharSequence)} but describes the output
+   * in terms of the changes made to the input instead of copying it.
+   * When the input needs few fixes, the result takes memory proportional to
+   * the number of fixes instead of to the length of the input.
+   *
+   * @param jsonish JSON-like content.
+   * @return embeddable JSON
+   */
+  public static EditedJson sanitizeAsEdits(CharSequence jsonish) {
+    return sanitizeAsEdits(
+        jsonish, DEFAULT_NESTING_DEPTH, OutputProfile.EMBEDDABLE);
+  }
+
+  /**
+   * Same as {@link JsonSanitizer#sanitizeAsEdits(CharSequence)}, but allows
+   * setting a custom maximum nesting depth and output profile.
+   *
+   * @param jsonish JSON-like content.
+   * @param maximumNestingDepth maximum nesting depth.
+   * @param profile the contexts in which the output will be used.
+   * @return JSON that satisfies the guarantees of profile.
+   */
+  public static EditedJson sanitizeAsEdits(
+      CharSequence jsonish, int maximumNestingDepth, OutputProfile profile) {
+    JsonSanitizer s = new JsonSanitizer(jsonish, maximumNestingDepth, profile);
+    s.outputMode = OutputMode.EDITS;
+    s.sanitize();
+    return s.toEditedJson();
+  }
+
+  /**
+   * Sanitizes JSON-like content that will be edited and sanitized again, as
+   * in an editor that shows the sanitized form as the user types.
+   * {@link IncrementalJson#edit} only sanitizes the part of the edited input
+   * near the edit.
+   *
+   * @param jsonish JSON-like content.
+   * @return embeddable JSON with checkpoints for sanitizing edits.
+   */
+  public static IncrementalJson sanitizeIncrementally(String jsonish) {
+    return sanitizeIncrementally(
+        jsonish, DEFAULT_NESTING_DEPTH, OutputProfile.EMBEDDABLE,
+        IncrementalJson.DEFAULT_CHECKPOINT_INTERVAL);
+  }
+
+  /**
+   * Same as {@link JsonSanitizer#sanitizeIncrementally(String)}, but allows
+   * setting a custom maximum nesting depth, output profile, and checkpoint
+   * interval.
+   *
+   * @param jsonish JSON-like content.
+   * @param maximumNestingDepth maximum nesting depth.
+   * @param profile the contexts in which the output will be used.
+   * @param checkpointInterval the least number of input characters between
+   *     checkpoints.  Smaller intervals make edits cheaper to sanitize but
+   *     cost memory for the bracket stack at each checkpoint.
+   * @return JSON that satisfies the guarantees of profile, with checkpoints.
+   */
+  public static IncrementalJson sanitizeIncrementally(
+      String jsonish, int maximumNestingDepth, OutputProfile profile,
+      int checkpointInterval) {
+    return IncrementalJson.sanitize(
+        jsonish, maximumNestingDepth, profile, checkpointInterval);
+  }
+
+  /**
+   * Sanitizes UTF-8 JSON-like content from a file that may be too large for
+   * a {@code String}, like a multi-gigabyte dump, and writes the output as
+   * UTF-8 to a channel.
+   * <p>
+   * The file is memory-mapped a segment at a time and sanitized through a
+   * window of a few million characters, so neither the input nor the output
+   * is ever held in the heap.
+   * The output is the same as that of {@link #sanitize(String)} on the
+   * decoded content, where malformed UTF-8 decodes to U+FFFD, with one
+   * exception.  When a comma is followed by more whitespace and comments
+   * than fit in the window, the comma is written later, somewhere in or
+   * after the whitespace that follows it, instead of right after the value
+   * before it.  So {@code [1,   2]} with a huge run of spaces may come out
+   * as {@code [1  ,  2]}.  The output still parses to the same value, but
+   * is not always char-for-char equal to that of {@code sanitize}.
+   *
+   * @param jsonish read from its position to its end.  On return, its
+   *     position is at the end.
+   * @param out receives the UTF-8 encoding of embeddable JSON.
+   * @return the number of bytes written to out.
+   * @throws IOException if reading or writing fails, or if a single token,
+   *     such as a string, is too long to fit in a char array.
+   */
+  public static long sanitizeChannel(
+      FileChannel jsonish, WritableByteChannel out)
+      throws IOException {
+    return sanitizeChannel(
+        jsonish, out, DEFAULT_NESTING_DEPTH, OutputProfile.EMBEDDABLE);
+  }
+
+  /**
+   * Same as
+   * {@link JsonSanitizer#sanitizeChannel(FileChannel, WritableByteChannel)},
+   * including where a comma before a huge run of whitespace goes, but
+   * allows setting a custom maximum nesting depth and output profile.
+   *
+   * @param jsonish read from its position to its end.
+   * @param out receives the UTF-8 encoding of the output.
+   * @param maximumNestingDepth maximum nesting depth.
+   * @param profile the contexts in which the output will be used.
+   * @return the number of bytes written to out.
+   * @throws IOException if reading or writing fails, or if a single token
+   *     is too long to fit in a char array.
+   */
+  public static long sanitizeChannel(
+      FileChannel jsonish, WritableByteChannel out, int maximumNestingDepth,
+      OutputProfile profile)
+      throws IOException {
+    return new ChannelSanitizer(
+        jsonish, out, maximumNestingDepth, profile,
+        ChannelSanitizer.DEFAULT_SEGMENT_BYTES,
+        ChannelSanitizer.DEFAULT_WINDOW_CHARS,
+        ChannelSanitizer.DEFAULT_WINDOW_CHARS)
+        .run();
+  }
+
+  /**
+   * A reader of the sanitized form of JSON-like content, for handing to a
+   * streaming parser.
+   * The output is recorded as edits to the input, and the reader copies
+   * unchanged runs straight from the input into the parser's buffer, so the
+   * sanitized output is never materialized as a whole.
+   *
+   * @param jsonish JSON-like content.  It must not be modified while the
+   *     reader is in use.
+   * @return a reader of embeddable JSON
+   */
+  public static Reader sanitizingReader(CharSequence jsonish) {
+    return sanitizeAsEdits(jsonish).openReader();
+  }
+
+  /**
+   * Same as {@link JsonSanitizer#sanitizingReader(CharSequence)}, but allows
+   * setting a custom maximum nesting depth and output profile.
+   *
+   * @param jsonish JSON-like content.
+   * @param maximumNestingDepth maximum nesting depth.
+   * @param profile the contexts in which the output will be used.
+   * @return a reader of JSON that satisfies the guarantees of profile.
+   */
+  public static Reader sanitizingReader(
+      CharSequence jsonish, int maximumNestingDepth, OutputProfile profile) {
+    return sanitizeAsEdits(jsonish, maximumNestingDepth, profile)
+        .openReader();
+  }
+
+  /**
+   * Like {@link JsonSanitizer#sanitizingReader(CharSequence)} but reads the
+   * JSON-like content from in.
+   * Fixing some content depends on what follows it, as when a string is
+   * missing its close quote, so the input is buffered, but the sanitized
+   * output is not.
+   *
+   * @param in JSON-like content.  This method reads it to the end but does
+   *     not close it.
+   * @return a reader of embeddable JSON
+   */
+  public static Reader sanitizingReader(Reader in) throws IOException {
+    return sanitizingReader(
+        in, DEFAULT_NESTING_DEPTH, OutputProfile.EMBEDDABLE);
+  }
+
+  /**
+   * Same as {@link JsonSanitizer#sanitizingReader(Reader)}, but allows
+   * setting a custom maximum nesting depth and output profile.
+   *
+   * @param in JSON-like content.  This method reads it to the end but does
+   *     not close it.
+   * @param maximumNestingDepth maximum nesting depth.
+   * @param profile the contexts in which the output will be used.
+   * @return a reader of JSON that satisfies the guarantees of profile.
+   */
+  public static Reader sanitizingReader(
+      Reader in, int maximumNestingDepth, OutputProfile profile)
+      throws IOException {
+    char[] buf = new char[4096];
+    int len = 0;
+    for (int n; (n = in.read(buf, len, buf.length - len)) >= 0;) {
+      len += n;
+      if (len == buf.length) { buf = Arrays.copyOf(buf, len * 2); }
+    }
+    // Wrap the array so that the reader can copy runs out of it in bulk.
+    return sanitizingReader(
+        CharBuffer.wrap(buf, 0, len), maximumNestingDepth, profile);
+  }
+
+  /**
+   * Sanitizes JSON-like content while telling handler about each token in the
+   * output, so that callers that need to parse the output can do so without
+   * another pass.
+   * The output is represented as edits to the input, so if the handler only
+   * needs to look at a few tokens, the full output is never materialized.
+   *
+   * @param jsonish JSON-like content.
+   * @param handler receives events for tokens in the output.
+   * @return embeddable JSON
+   */
+  public static EditedJson sanitizeWithHandler(
+      CharSequence jsonish, JsonHandler handler) {
+    return sanitizeWithHandler(
+        jsonish, handler, DEFAULT_NESTING_DEPTH, OutputProfile.EMBEDDABLE);
+  }
+
+  /**
+   * Same as
+   * {@link JsonSanitizer#sanitizeWithHandler(CharSequence, JsonHandler)},
+   * but allows setting a custom maximum nesting depth and output profile.
+   *
+   * @param jsonish JSON-like content.
+   * @param handler receives events for tokens in the output.
+   * @param maximumNestingDepth maximum nesting depth.
+   * @param profile the contexts in which the output will be used.
+   * @return JSON that satisfies the guarantees of profile.
+   */
+  public static EditedJson sanitizeWithHandler(
+      CharSequence jsonish, JsonHandler handler, int maximumNestingDepth,
+      OutputProfile profile) {
+    JsonSanitizer s = new JsonSanitizer(jsonish, maximumNestingDepth, profile);
+    s.outputMode = OutputMode.EDITS;
+    s.handler = handler;
+    s.sanitize();
+    return s.toEditedJson();
+  }
+
+  /**
+   * Sanitizes JSON-like content and indexes the structure of the output so
+   * that values can be found without parsing the output again.
+   *
+   * @param jsonish JSON-like content.
+   * @return embeddable JSON and its index.
+   */
+  public static JsonIndex sanitizeAndIndex(CharSequence jsonish) {
+    return sanitizeAndIndex(
+        jsonish, DEFAULT_NESTING_DEPTH, OutputProfile.EMBEDDABLE);
+  }
+
+  /**
+   * Same as {@link JsonSanitizer#sanitizeAndIndex(CharSequence)}, but
+   * allows setting a custom maximum nesting depth and output profile.
+   *
+   * @param jsonish JSON-like content.
+   * @param maximumNestingDepth maximum nesting depth.
+   * @param profile the contexts in which the output will be used.
+   * @return JSON that satisfies the guarantees of profile, and its index.
+   */
+  public static JsonIndex sanitizeAndIndex(
+      CharSequence jsonish, int maximumNestingDepth, OutputProfile profile) {
+    JsonSanitizer s = new JsonSanitizer(jsonish, maximumNestingDepth, profile);
+    JsonIndex.Builder builder = new JsonIndex.Builder();
+    s.handler = builder;
+    s.sanitize();
+    // Unlike toCharSequence, don't expose a mutable buffer.
+    return builder.build(
+        s.sanitizedJson != null ? s.sanitizedJson.toString() : s.jsonish);
+  }
+
+  /**
+   * Sanitizes JSON-like content and returns a read-only tree of the output.
+   * <p>
+   * The tree is a view of a {@link JsonIndex}, so it costs little more
+   * memory than the sanitized text, and string and number values are only
+   * decoded when asked for.
+   *
+   * @param jsonish JSON-like content.
+   * @return the top-level value of the sanitized output.
+   */
+  public static JsonValue parse(CharSequence jsonish) {
+    return sanitizeAndIndex(jsonish).getValue(0);
+  }
+
+  /**
+   * Same as {@link JsonSanitizer#parse(CharSequence)}, but allows setting a
+   * custom maximum nesting depth and output profile.
+   *
+   * @param jsonish JSON-like content.
+   * @param maximumNestingDepth maximum nesting depth.
+   * @param profile the contexts in which the output will be used.
+   * @return the top-level value of the sanitized output.
+   */
+  public static JsonValue parse(
+      CharSequence jsonish, int maximumNestingDepth, OutputProfile profile) {
+    return sanitizeAndIndex(jsonish, maximumNestingDepth, profile)
+        .getValue(0);
+  }
+
+  /**
+   * Sanitizes JSON-like content into a canonical form in the style of
+   * <a href="https://www.rfc-editor.org/rfc/rfc8785">RFC 8785</a>, so that
+   * inputs that only differ in member order, number spelling, escapes, or
+   * whitespace produce the same output, as for use as a cache key.
+   * <p>
+   * Members are sorted by name, with only the last of any duplicates kept,
+   * numbers are in JavaScript's canonical form as numeric property names
+   * are, and strings use the shortest escapes that still satisfy the output
+   * guarantees above.
+   * Unlike RFC 8785, numbers are not rounded to doubles.
+   *
+   * @param jsonish JSON-like content.
+   * @return embeddable JSON in canonical form.
+   */
+  public static String canonicalize(CharSequence jsonish) {
+    return canonicalize(
+        jsonish, DEFAULT_NESTING_DEPTH, OutputProfile.EMBEDDABLE);
+  }
+
+  /**
+   * Same as {@link JsonSanitizer#canonicalize(CharSequence)}, but allows
+   * setting a custom maximum nesting depth and output profile.
+   * With {@link OutputProfile#PLAIN_JSON}, only {@code "}, {@code \},
+   * control characters, U+2028, U+2029, and code-units that are not allowed
+   * in XML are escaped.
+   *
+   * @param jsonish JSON-like content.
+   * @param maximumNestingDepth maximum nesting depth.
+   * @param profile the contexts in which the output will be used.
+   * @return JSON that satisfies the guarantees of profile in canonical form.
+   */
+  public static String canonicalize(
+      CharSequence jsonish, int maximumNestingDepth, OutputProfile profile) {
+    // Strings are re-escaped from their values, so the first pass need not
+    // spend any effort on embedding.
+    JsonIndex index = sanitizeAndIndex(
+        jsonish, maximumNestingDepth, OutputProfile.PLAIN_JSON);
+    return new CanonicalWriter(index, profile == OutputProfile.EMBEDDABLE)
+        .write();
+  }
+
+  /**
+   * Finds the values at the given paths in the sanitized form of JSON-like
+   * content, without producing the rest of the output.
+   * Sanitization stops as soon as the value at every path is settled, as
+   * described at {@link JsonPathExtractor}.
+   *
+   * @param jsonish JSON-like content.
+   * @param paths simple paths like <code>$.meta.priority</code> or JSON
+   *     Pointers like {@code /meta/priority} as described at
+   *     {@link JsonPathExtractor}.
+   * @return maps each path that was found to the sanitized JSON text of its
+   *     value.
+   * @throws IllegalArgumentException if a path is malformed.
+   */
+  public static Map<String, String> extract(
+      CharSequence jsonish, String... paths) {
+    JsonPathExtractor extractor = new JsonPathExtractor(paths);
+    JsonSanitizer s = new JsonSanitizer(jsonish);
+    s.outputMode = OutputMode.EDITS;
+    s.handler = extractor;
+    s.stopWhenDone = extractor;
+    s.sanitize();
+    return extractor.getValues();
+  }
+
+  /**
+   * Sanitizes JSON-like content while redacting object members.
+   * The output is embeddable JSON as from {@link #sanitize(String)} except
+   * that the members named by redactor have their values replaced, or are
+   * removed.
+   *
+   * @param jsonish JSON-like content.
+   * @param redactor names the members to redact.
+   * @return embeddable JSON
+   */
+  public static String redact(String jsonish, JsonRedactor redactor) {
+    return redact(
+        jsonish, redactor, DEFAULT_NESTING_DEPTH, OutputProfile.EMBEDDABLE);
+  }
+
+  /**
+   * Same as {@link JsonSanitizer#redact(String, JsonRedactor)}, but allows
+   * setting a custom maximum nesting depth and output profile.
+   *
+   * @param jsonish JSON-like content.
+   * @param redactor names the members to redact.
+   * @param maximumNestingDepth maximum nesting depth.
+   * @param profile the contexts in which the output will be used.
+   * @return JSON that satisfies the guarantees of profile.
+   */
+  public static String redact(
+      String jsonish, JsonRedactor redactor, int maximumNestingDepth,
+      OutputProfile profile) {
+    JsonSanitizer s = new JsonSanitizer(jsonish, maximumNestingDepth, profile);
+    s.handler = redactor.newPass(s);
+    s.sanitize();
+    return s.toString();
+  }
+
+  /**
+   * Sanitizes JSON-like content and encodes the result in a binary format
+   * without producing JSON text or parsing it.
+   * Numbers are converted as in the sanitized output, so hex and octal
+   * literals become integers, and string escapes are decoded once on the
+   * way to UTF-8.
+   * <p>
+   * Integers are encoded as integers when the format can represent them, and
+   * other numbers, including {@code -0}, as floats.
+   * <p>
+   * CBOR arrays and maps have indefinite-length heads, since the sanitizer
+   * does not know how many entries they have until they close.  MessagePack
+   * has no such heads, so its arrays and maps get the shortest head that
+   * fits once they close, and the encoding of a top-level array or object
+   * is held in memory until it ends.
+   *
+   * @param jsonish JSON-like content.
+   * @param format the binary format to produce.
+   * @return the encoded form of the sanitized output.
+   */
+  public static byte[] transcode(CharSequence jsonish, BinaryFormat format) {
+    return transcodeTo(jsonish, format, null).toByteArray();
+  }
+
+  /**
+   * Like {@link JsonSanitizer#transcode(CharSequence, BinaryFormat)} but
+   * writes the encoded form to out.
+   * CBOR goes out in blocks as it is produced, but MessagePack for a
+   * top-level array or object goes out only once it has been read in full.
+   *
+   * @param jsonish JSON-like content.
+   * @param format the binary format to produce.
+   * @param out receives the encoded form of the sanitized output.
+   */
+  public static void transcode(
+      CharSequence jsonish, BinaryFormat format, OutputStream out)
+      throws IOException {
+    transcodeTo(jsonish, format, out).finish();
+  }
+
+  private static BinaryTranscoder transcodeTo(
+      CharSequence jsonish, BinaryFormat format, @Nullable OutputStream out) {
+    BinaryTranscoder transcoder = new BinaryTranscoder(format, out);
+    // Embedding concerns do not apply to binary output.
+    JsonSanitizer s = new JsonSanitizer(
+        jsonish, DEFAULT_NESTING_DEPTH, OutputProfile.PLAIN_JSON);
+    s.outputMode = OutputMode.EDITS;
+    s.handler = transcoder;
+    s.sanitize();
+    return transcoder;
+  }
+
+  /**
+   * Sanitizes JSON-like content while feeding the UTF-8 bytes of the output
+   * to digest, so that an ETag or content hash of the output is ready as
+   * soon as the output is.
+   * The digest sees the same bytes as
+   * {@code digest.update(output.getBytes("UTF-8"))} would, in blocks as the
+   * sanitizer commits to the output, without a second pass over it.
+   *
+   * @param jsonish JSON-like content.
+   * @param digest receives the UTF-8 encoding of the output.  Callers
+   *     should call {@link MessageDigest#digest()} after this returns.
+   * @return embeddable JSON
+   */
+  public static String sanitizeAndDigest(
+      String jsonish, MessageDigest digest) {
+    return sanitizeDigesting(jsonish, new OutputDigester(digest));
+  }
+
+  /**
+   * Like {@link JsonSanitizer#sanitizeAndDigest(String, MessageDigest)} but
+   * feeds a {@link Checksum}, as for a fast non-cryptographic hash like
+   * {@link java.util.zip.CRC32} or a 64-bit hash that implements
+   * {@code Checksum}.
+   *
+   * @param jsonish JSON-like content.
+   * @param checksum receives the UTF-8 encoding of the output.
+   * @return embeddable JSON
+   */
+  public static String sanitizeAndDigest(
+      String jsonish, Checksum checksum) {
+    return sanitizeDigesting(jsonish, new OutputDigester(checksum));
+  }
+
+  private static String sanitizeDigesting(
+      String jsonish, OutputDigester digester) {
+    JsonSanitizer s = new JsonSanitizer(jsonish);
+    s.handler = digester;
+    s.sanitize();
+    String output = s.toString();
+    digester.finish(output);
+    return output;
+  }
+
+  /**
+   * Sanitizes {@code chars[off:off+len]} in place, reusing the input array
+   * for the output.
+   * <p>
+   * Many fixes, like removing comments and trailing commas, only shrink the
+   * text, so output is written over input that has already been consumed.
+   * Only when a rewrite grows the text, as when quoting property names, does
+   * the excess go to a separate buffer until there is room for it in chars.
+   * <p>
+   * The content of {@code chars[off:off+len]} is unspecified after this
+   * returns, except as described by the result.  Chars outside it are not
+   * modified.
+   *
+   * @param chars a buffer containing JSON-like content.
+   * @param off the index into chars of the start of the content.
+   * @param len the length of the content.
+   * @return embeddable JSON.  If it fits in {@code chars[off:off+len]} then
+   *     this is backed by {@code chars} starting at {@code off}, otherwise it
+   *     is backed by a new array, and either way its
+   *     {@link CharBuffer#remaining} is the length of the sanitized output.
+   */
+  public static CharBuffer sanitizeInPlace(char[] chars, int off, int len) {
+    return sanitizeInPlace(chars, off, len, off + len);
+  }
+
+  /**
+   * Same as {@link JsonSanitizer#sanitizeInPlace(char[], int, int)}, but
+   * lets output that grows past the content use spare room after it.
+   *
+   * @param chars a buffer containing JSON-like content.
+   * @param off the index into chars of the start of the content.
+   * @param len the length of the content.
+   * @param limit the end of the part of chars that may be overwritten, at
+   *     least {@code off + len}.  The content of {@code chars[off:limit]} is
+   *     unspecified after this returns, except as described by the result.
+   * @return embeddable JSON backed by {@code chars} starting at {@code off}
+   *     if it fits before limit, otherwise by a new array.
+   */
+  public static CharBuffer sanitizeInPlace(
+      char[] chars, int off, int len, int limit) {
+    return sanitizeInPlace(
+        chars, off, len, limit, DEFAULT_NESTING_DEPTH,
+        OutputProfile.EMBEDDABLE);
+  }
+
+  /**
+   * Same as {@link JsonSanitizer#sanitizeInPlace(char[], int, int)}, but
+   * allows setting a custom maximum nesting depth and output profile.
+   *
+   * @param chars a buffer containing JSON-like content.
+   * @param off the index into chars of the start of the content.
+   * @param len the length of the content.
+   * @param maximumNestingDepth maximum nesting depth.
+   * @param profile the contexts in which the output will be used.
+   * @return JSON that satisfies the guarantees of profile, stored as
+   *     described at {@link JsonSanitizer#sanitizeInPlace(char[], int, int)}.
+   */
+  public static CharBuffer sanitizeInPlace(
+      char[] chars, int off, int len, int maximumNestingDepth,
+      OutputProfile profile) {
+    return sanitizeInPlace(
+        chars, off, len, off + len, maximumNestingDepth, profile);
+  }
+
+  /**
+   * Same as {@link JsonSanitizer#sanitizeInPlace(char[], int, int, int)},
+   * but allows setting a custom maximum nesting depth and output profile.
+   *
+   * @param chars a buffer containing JSON-like content.
+   * @param off the index into chars of the start of the content.
+   * @param len the length of the content.
+   * @param limit the end of the part of chars that may be overwritten.
+   * @param maximumNestingDepth maximum nesting depth.
+   * @param profile the contexts in which the output will be used.
+   * @return JSON that satisfies the guarantees of profile, stored as
+   *     described at
+   *     {@link JsonSanitizer#sanitizeInPlace(char[], int, int, int)}.
+   */
+  public static CharBuffer sanitizeInPlace(
+      char[] chars, int off, int len, int limit, int maximumNestingDepth,
+      OutputProfile profile) {
+    CharBuffer input = CharBuffer.wrap(chars, off, len);
+    if (limit < off + len || limit > chars.length) {
+      throw new IndexOutOfBoundsException(
+          "limit " + limit + " not in [" + (off + len) + ", " + chars.length
+          + "]");
+    }
+    JsonSanitizer s = new JsonSanitizer(input, maximumNestingDepth, profile);
+    s.outputMode = OutputMode.IN_PLACE;
+    s.inPlaceLimit = limit - off;
+    s.sanitize();
+    return s.inPlaceBuffer != null ? s.inPlaceBuffer.toCharSequence() : input;
+  }
+
+  /**
+   * Describes the contexts in which sanitized output is going to be used, so
+   * that the sanitizer need only do the work needed to make it safe there.
+   */
+  public enum OutputProfile {
+    /**
+     * The output can be embedded in an HTML {@code <script>} element or an
+     * XML {@code <![CDATA[...]]>} section without further encoding.
+     * This is the default.
+     */
+    EMBEDDABLE,
+    /**
+     * The output is well-formed JSON that is safe to pass to {@code eval}, but
+     * string literals may contain substrings like {@code </script} and
+     * {@code ]]>}.
+     * Appropriate when the output is never going to be embedded in HTML or
+     * XML, as for service-to-service traffic.
+     */
+    PLAIN_JSON,
+    ;
+  }
+
+  /** Binary formats that {@link JsonSanitizer#transcode} can produce. */
+  public enum BinaryFormat {
+    /** Concise Binary Object Representation per RFC 7049. */
+    CBOR,
+    /** MessagePack per https://msgpack.org/ */
+    MESSAGE_PACK,
+    ;
+  }
+
   /**
    * Describes where we are in a state machine that consists of transitions on
    * complete values, colons, commas, and brackets.
+   * Reported to {@link TraceListener}s.
    */
-  private enum State {
+  public enum State {
     /**
      * Immediately after '[' and
      * {@link #BEFORE_ELEMENT before the first element}.
@@ -158,12 +865,157 @@ public final class JsonSanitizer {
     ;
   }
 
+  private static final State[] STATES = State.values();
+
+  // The token loop keeps the state as its ordinal so that the ordinal can
+  // index TRANSITIONS.
+  private static final int S_START_ARRAY = 0;
+  private static final int S_BEFORE_ELEMENT = 1;
+  private static final int S_AFTER_ELEMENT = 2;
+  private static final int S_START_MAP = 3;
+  private static final int S_BEFORE_KEY = 4;
+  private static final int S_AFTER_KEY = 5;
+  private static final int S_BEFORE_VALUE = 6;
+  private static final int S_AFTER_VALUE = 7;
+
+  // Classes of characters that start tokens.  The first six are the ones
+  // that TRANSITIONS has columns for.
+  /** Starts a number, keyword, or unquoted string, or is cruft. */
+  private static final byte C_OTHER = 0;
+  private static final byte C_QUOTE = 1;
+  private static final byte C_OPEN = 2;
+  private static final byte C_CLOSE = 3;
+  private static final byte C_COMMA = 4;
+  private static final byte C_COLON = 5;
+  private static final byte C_SPACE = 6;
+  private static final byte C_PAREN = 7;
+  private static final byte C_SLASH = 8;
+
+  /** The classes of ASCII characters.  All others are {@link #C_OTHER}. */
+  private static final byte[] CHAR_CLASSES = new byte[128];
+
+  // Changes to the output that a transition calls for.
+  private static final int A_NONE = 0;
+  /** Removes the token. */
+  private static final int A_ELIDE = 1;
+  private static final int A_INSERT_COLON = 2;
+  /** Inserts a comma, or outside any brackets, drops the rest. */
+  private static final int A_INSERT_COMMA = 3;
+  private static final int A_INSERT_EMPTY_KEY = 4;
+  private static final int A_INSERT_COMMA_EMPTY_KEY = 5;
+  private static final int A_INSERT_NULL = 6;
+  private static final int A_INSERT_COLON_NULL = 7;
+  /** Removes the comma before a close bracket. */
+  private static final int A_ELIDE_TRAILING_COMMA = 8;
+
+  /**
+   * Indexed by {@code (state << 3) | characterClass}, the action in the
+   * high bits and the next state in the low three, so an entry less than 8
+   * is a transition that leaves the output alone.
+   * For close brackets, the next state depends on the enclosing bracket, so
+   * the entry only gives the action.
+   */
+  private static final byte[] TRANSITIONS = new byte[8 << 3];
+
+  static {
+    assert STATES.length == 8
+        && STATES[S_START_ARRAY] == State.START_ARRAY
+        && STATES[S_BEFORE_ELEMENT] == State.BEFORE_ELEMENT
+        && STATES[S_AFTER_ELEMENT] == State.AFTER_ELEMENT
+        && STATES[S_START_MAP] == State.START_MAP
+        && STATES[S_BEFORE_KEY] == State.BEFORE_KEY
+        && STATES[S_AFTER_KEY] == State.AFTER_KEY
+        && STATES[S_BEFORE_VALUE] == State.BEFORE_VALUE
+        && STATES[S_AFTER_VALUE] == State.AFTER_VALUE;
+
+    CHAR_CLASSES['\t'] = CHAR_CLASSES['\n'] = CHAR_CLASSES['\r'] =
+        CHAR_CLASSES[' '] = C_SPACE;
+    CHAR_CLASSES['"'] = CHAR_CLASSES['\''] = C_QUOTE;
+    CHAR_CLASSES['('] = CHAR_CLASSES[')'] = C_PAREN;
+    CHAR_CLASSES['{'] = CHAR_CLASSES['['] = C_OPEN;
+    CHAR_CLASSES['}'] = CHAR_CLASSES[']'] = C_CLOSE;
+    CHAR_CLASSES[','] = C_COMMA;
+    CHAR_CLASSES[':'] = C_COLON;
+    CHAR_CLASSES['/'] = C_SLASH;
+
+    for (int state = 0; state < 8; ++state) {
+      // Unless given below, a token is removed and the state is unchanged.
+      for (int cls = 0; cls < 8; ++cls) {
+        transition(state, cls, A_ELIDE, state);
+      }
+      // Close brackets only need a fix in some states.
+      transition(state, C_CLOSE, A_NONE, state);
+    }
+
+    // Strings, and runs like numbers, can be keys.
+    for (int cls : new int[] { C_QUOTE, C_OTHER }) {
+      transition(S_START_ARRAY, cls, A_NONE, S_AFTER_ELEMENT);
+      transition(S_BEFORE_ELEMENT, cls, A_NONE, S_AFTER_ELEMENT);
+      transition(S_AFTER_ELEMENT, cls, A_INSERT_COMMA, S_AFTER_ELEMENT);
+      transition(S_START_MAP, cls, A_NONE, S_AFTER_KEY);
+      transition(S_BEFORE_KEY, cls, A_NONE, S_AFTER_KEY);
+      transition(S_AFTER_KEY, cls, A_INSERT_COLON, S_AFTER_VALUE);
+      transition(S_BEFORE_VALUE, cls, A_NONE, S_AFTER_VALUE);
+      transition(S_AFTER_VALUE, cls, A_INSERT_COMMA, S_AFTER_KEY);
+    }
+
+    // Open brackets cannot be keys.  The next state is the bracket's own.
+    transition(S_START_ARRAY, C_OPEN, A_NONE, S_AFTER_ELEMENT);
+    transition(S_BEFORE_ELEMENT, C_OPEN, A_NONE, S_AFTER_ELEMENT);
+    transition(S_AFTER_ELEMENT, C_OPEN, A_INSERT_COMMA, S_AFTER_ELEMENT);
+    transition(S_START_MAP, C_OPEN, A_INSERT_EMPTY_KEY, S_AFTER_VALUE);
+    transition(S_BEFORE_KEY, C_OPEN, A_INSERT_EMPTY_KEY, S_AFTER_VALUE);
+    transition(S_AFTER_KEY, C_OPEN, A_INSERT_COLON, S_AFTER_VALUE);
+    transition(S_BEFORE_VALUE, C_OPEN, A_NONE, S_AFTER_VALUE);
+    transition(S_AFTER_VALUE, C_OPEN, A_INSERT_COMMA_EMPTY_KEY, S_AFTER_VALUE);
+
+    transition(S_BEFORE_ELEMENT, C_CLOSE, A_ELIDE_TRAILING_COMMA,
+               S_BEFORE_ELEMENT);
+    transition(S_BEFORE_KEY, C_CLOSE, A_ELIDE_TRAILING_COMMA, S_BEFORE_KEY);
+    transition(S_AFTER_KEY, C_CLOSE, A_INSERT_COLON_NULL, S_AFTER_KEY);
+    transition(S_BEFORE_VALUE, C_CLOSE, A_INSERT_NULL, S_BEFORE_VALUE);
+
+    transition(S_AFTER_ELEMENT, C_COMMA, A_NONE, S_BEFORE_ELEMENT);
+    transition(S_AFTER_VALUE, C_COMMA, A_NONE, S_BEFORE_KEY);
+    // Elided array elements like [1,,3] are undefined, which is == null.
+    transition(S_START_ARRAY, C_COMMA, A_INSERT_NULL, S_BEFORE_ELEMENT);
+    transition(S_BEFORE_ELEMENT, C_COMMA, A_INSERT_NULL, S_BEFORE_ELEMENT);
+    transition(S_BEFORE_VALUE, C_COMMA, A_INSERT_NULL, S_BEFORE_KEY);
+
+    transition(S_AFTER_KEY, C_COLON, A_NONE, S_BEFORE_VALUE);
+  }
+
+  private static void transition(int state, int cls, int action, int next) {
+    TRANSITIONS[(state << 3) | cls] = (byte) ((action << 3) | next);
+  }
+
   /**
    * The maximum nesting depth. According to RFC4627 it is implementation-specific.
    */
   private final int maximumNestingDepth;
 
-  private final String jsonish;
+  private final CharSequence jsonish;
+  /** The length of {@link #jsonish}. */
+  private final int jsonishLength;
+  /**
+   * {@link #jsonish} if it is a {@code String} so that we can use intrinsics
+   * like {@code indexOf}.
+   */
+  private final @Nullable String jsonishString;
+  /**
+   * The array backing {@link #jsonish} if any, so that array-backed inputs
+   * can be read without an interface call per character.
+   * {@code jsonish.charAt(i) == jsonishChars[jsonishCharsOffset + i]}.
+   */
+  private final @Nullable char[] jsonishChars;
+  /** The index into {@link #jsonishChars} of the start of the input. */
+  private final int jsonishCharsOffset;
+
+  /**
+   * True if string literals need to be checked for HTML and XML special
+   * sequences per {@link OutputProfile#EMBEDDABLE}.
+   */
+  private final boolean embeddable;
 
   /**
    * The number of brackets that have been entered and not subsequently exited.
@@ -181,66 +1033,260 @@ public final class JsonSanitizer {
    * If {@code null}, then no unclean constructs have been found in
    * {@code jsonish} yet.
    */
-  private StringBuilder sanitizedJson;
+  private OutputBuffer sanitizedJson;
+  /** The kind of buffer to use for {@link #sanitizedJson}. */
+  private OutputMode outputMode = OutputMode.COPY;
+  /**
+   * {@link #sanitizedJson} when it shares storage with the input so needs to
+   * know which input has been consumed.
+   */
+  private @Nullable OutputBuffer.InPlace inPlaceBuffer;
+  /**
+   * For {@link OutputMode#IN_PLACE}, the length of the part of the input
+   * array, from the start of the input, that output may be written to.
+   */
+  private int inPlaceLimit;
+  /** Receives events for tokens as they are sanitized. */
+  private @Nullable JsonHandler handler;
+  /** The output as seen by {@link #handler}. */
+  private final CharSequence outputView = new OutputView();
+  /** If not null, sanitizing stops once this has found all its paths. */
+  private @Nullable JsonPathExtractor stopWhenDone;
+  /**
+   * True when a redacted member was removed from the start of an object, so
+   * the comma after it has to go too.
+   */
+  private boolean dropLeadingComma;
+  /** Scratch space for rewriting numbers, created on first use. */
+  private @Nullable NumberRecoder numberRecoder;
   /**
    * The length of the prefix of {@link #jsonish} that has been written onto
    * {@link #sanitizedJson}.
    */
   private int cleaned;
+  /** The number of places where the output differs from the input. */
+  private int nRewrites;
+  /** The greatest value {@link #bracketDepth} has reached. */
+  private int maxBracketDepth;
+  /** If not null, saves checkpoints and may say where to start and stop. */
+  private @Nullable Checkpoints checkpoints;
+  /** The input position at which to next offer {@link #checkpoints} one. */
+  private int nextCheckpoint = Integer.MAX_VALUE;
+  /**
+   * With checkpoints, the output position of the comma that led to the
+   * BEFORE_ELEMENT or BEFORE_KEY state.
+   */
+  private int pendingCommaOutput;
+
+  /** Receives a trace of this call if it was sampled. */
+  private @Nullable TraceListener trace;
+  /** Identifies this call to {@link #trace}. */
+  private long traceCall;
+  /** The start of the token being sanitized, when tracing. */
+  private int tokenStart;
+  /**
+   * Bits describing the edits made for the current token, so that
+   * {@link #trace} can be told what happened to it.
+   */
+  private int tokenEdits;
+  /** Content was added to the output. */
+  private static final int INSERTED = 1;
+  /** Input starting at {@link #tokenStart} was dropped. */
+  private static final int REMOVED = 2;
+  /** Input after {@link #tokenStart}, or before it, was dropped. */
+  private static final int CHANGED = 4;
+
+  /** The installed trace listener and its sampling rate. */
+  private static final class Tracing {
+    final TraceListener listener;
+    final int sampleEvery;
+    final AtomicLong calls = new AtomicLong();
+
+    Tracing(TraceListener listener, int sampleEvery) {
+      this.listener = listener;
+      this.sampleEvery = sampleEvery;
+    }
+  }
+
+  private static volatile @Nullable Tracing tracing;
 
-  private static final boolean SUPER_VERBOSE_AND_SLOW_LOGGING = false;
+  /**
+   * Installs a listener that receives a trace of every token that the
+   * sanitizer handles for one in every sampleEvery calls, or removes any
+   * listener if listener is null.
+   * This can be called at any time; calls in progress are unaffected.
+   * <p>
+   * While no listener is installed, tracing costs one read of a volatile
+   * field per call.  While one is installed, calls that are not sampled
+   * also increment a shared counter.
+   *
+   * @param listener receives events, or null to stop tracing.
+   * @param sampleEvery 1 to trace every call, 2 to trace every other call,
+   *     and so on.
+   */
+  public static void setTraceListener(
+      @Nullable TraceListener listener, int sampleEvery) {
+    if (sampleEvery < 1) {
+      throw new IllegalArgumentException("sampleEvery " + sampleEvery);
+    }
+    tracing = listener != null ? new Tracing(listener, sampleEvery) : null;
+  }
 
-  JsonSanitizer(String jsonish) {
+  JsonSanitizer(CharSequence jsonish) {
     this(jsonish, DEFAULT_NESTING_DEPTH);
   }
 
-  JsonSanitizer(String jsonish, int maximumNestingDepth) {
+  JsonSanitizer(CharSequence jsonish, int maximumNestingDepth) {
+    this(jsonish, maximumNestingDepth, OutputProfile.EMBEDDABLE);
+  }
+
+  JsonSanitizer(
+      CharSequence jsonish, int maximumNestingDepth, OutputProfile profile) {
     this.maximumNestingDepth = Math.min(Math.max(1, maximumNestingDepth),MAXIMUM_NESTING_DEPTH);
-    if (SUPER_VERBOSE_AND_SLOW_LOGGING) {
-      System.err.println("\n" + jsonish + "\n========");
+    if (jsonish == null) { jsonish = "null"; }
+    this.jsonish = jsonish;
+    this.jsonishLength = jsonish.length();
+    if (jsonish instanceof String) {
+      this.jsonishString = (String) jsonish;
+      this.jsonishChars = null;
+      this.jsonishCharsOffset = 0;
+    } else if (jsonish instanceof CharBuffer
+               && ((CharBuffer) jsonish).hasArray()) {
+      CharBuffer cb = (CharBuffer) jsonish;
+      this.jsonishString = null;
+      this.jsonishChars = cb.array();
+      this.jsonishCharsOffset = cb.arrayOffset() + cb.position();
+    } else {
+      this.jsonishString = null;
+      this.jsonishChars = null;
+      this.jsonishCharsOffset = 0;
     }
-    this.jsonish = jsonish != null ? jsonish : "null";
+    this.embeddable = profile == OutputProfile.EMBEDDABLE;
   }
 
   int getMaximumNestingDepth() {
     return this.maximumNestingDepth;
   }
 
+  /**
+   * Makes {@link #sanitize} start and stop where checkpoints says, and offer
+   * it checkpoints.  Only for the default output mode without a handler.
+   */
+  void resumeFrom(Checkpoints checkpoints) {
+    this.checkpoints = checkpoints;
+  }
+
   void sanitize() {
+    // Null unless someone is recording, so this costs one check otherwise.
+    SanitizeEvent event = FlightRecorderSupport.isInitialized()
+        ? SanitizeEvent.start() : null;
+    trace = null;
+    Tracing t = tracing;
+    if (t != null) {
+      long call = t.calls.getAndIncrement();
+      if (call % t.sampleEvery == 0) {
+        trace = t.listener;
+        traceCall = call;
+      }
+    }
+    sanitizeTokens();
+    if (event != null) {
+      event.finish(
+          jsonishLength,
+          sanitizedJson != null ? sanitizedJson.length() : jsonishLength,
+          sanitizedJson == null, nRewrites, maxBracketDepth);
+    }
+  }
+
+  private void sanitizeTokens() {
     // Return to consistent state.
     bracketDepth = cleaned = 0;
-    sanitizedJson = null;
-
-    State state = State.START_ARRAY;
-    int n = jsonish.length();
+    sanitizedJson = inPlaceBuffer = null;
+    dropLeadingComma = false;
+    nRewrites = maxBracketDepth = 0;
+
+    int state = S_START_ARRAY;
+    int n = jsonishLength;
+    int start = 0;
+    if (checkpoints != null) {
+      // Pick up where an earlier run saved a checkpoint.
+      start = checkpoints.getStart();
+      state = checkpoints.getStartState().ordinal();
+      boolean[] brackets = checkpoints.getStartBrackets();
+      bracketDepth = maxBracketDepth = brackets.length;
+      if (bracketDepth != 0) {
+        if (isMap == null) {
+          isMap = new boolean[maximumNestingDepth];
+        }
+        System.arraycopy(brackets, 0, isMap, 0, bracketDepth);
+      }
+      CharSequence startOutput = checkpoints.getStartOutput();
+      if (start != 0 || startOutput.length() != 0) {
+        // The output before start is the earlier run's, so is not kept here.
+        sanitizedJson = makeOutputBuffer(n - start + 16);
+        sanitizedJson.append(startOutput);
+        cleaned = start;
+      }
+      // Any comma carried over is at the start of the output.
+      pendingCommaOutput = 0;
+      nextCheckpoint = checkpoints.nextCheckpoint(start);
+    }
 
     // Walk over each token and either validate it, by just advancing i and
     // computing the next state, or manipulate cleaned&sanitizedJson so that
     // sanitizedJson contains the sanitized equivalent of
     // jsonish.substring(0, cleaned).
+    JsonPathExtractor extractor = stopWhenDone;
+
     token_loop:
-    for (int i = 0; i < n; ++i) {
+    for (int i = start; i < n; ++i) {
       try {
-        char ch = jsonish.charAt(i);
-        if (SUPER_VERBOSE_AND_SLOW_LOGGING) {
-          String sanitizedJsonStr =
-            (sanitizedJson == null ? "" : sanitizedJson)
-            + jsonish.substring(cleaned, i);
-          System.err.println("i=" + i + ", ch=" + ch + ", state=" + state
-                             + ", sanitized=" + sanitizedJsonStr);
+        if (extractor != null && extractor.isDone()) {
+          // The caller does not want the rest of the output.
+          return;
         }
-        switch (ch) {
-          case '\t': case '\n': case '\r': case ' ':
-            break;
+        if (i >= nextCheckpoint && checkpoint(i, state)) {
+          // The caller has the rest of the output or will sanitize it later.
+          elide(i, i);
+          return;
+        }
+        char ch = charAt(i);
+        if (inPlaceBuffer != null) {
+          // Let the output reuse storage for input we won't read again.
+          inPlaceBuffer.discardInputBefore(Math.min(cleaned, i));
+        }
+        int stateBefore = state;
+        if (trace != null) {
+          tokenStart = i;
+          tokenEdits = 0;
+        }
+        // The transition table covers the tokens that the state depends on,
+        // and says how the output must change; for valid JSON, it never has
+        // to.
+        int transition;
+        switch (ch < CHAR_CLASSES.length ? CHAR_CLASSES[ch] : C_OTHER) {
+          case C_SPACE:
+            continue;
 
-          case '"': case '\'':
-            state = requireValueState(i, state, true);
-            int strEnd = endOfQuotedString(jsonish, i);
+          case C_QUOTE:
+            transition = TRANSITIONS[(state << 3) | C_QUOTE];
+            state = transition < 8 && !dropLeadingComma
+                ? transition : fixTransition(i, state, C_QUOTE);
+            int strEnd = endOfQuotedString(i);
+            int strOutStart = outputPosition(i);
             sanitizeString(i, strEnd);
+            if (handler != null) {
+              if (state == S_AFTER_KEY) {
+                handler.key(outputView, strOutStart, outputPosition(strEnd));
+              } else {
+                handler.stringValue(
+                    outputView, strOutStart, outputPosition(strEnd));
+              }
+            }
             i = strEnd - 1;
             break;
 
-          case '(': case ')':
+          case C_PAREN:
             // Often JSON-like content which is meant for use by eval is
             // wrapped in parentheses so that the JS parser treats contained
             // curly brackets as part of an object constructor instead of a
@@ -249,99 +1295,90 @@ public final class JsonSanitizer {
             elide(i, i + 1);
             break;
 
-          case '{': case '[':
-            state = requireValueState(i, state, false);
+          case C_OPEN:
+            transition = TRANSITIONS[(state << 3) | C_OPEN];
+            if (transition >= 8 || dropLeadingComma) {
+              fixTransition(i, state, C_OPEN);
+            }
             if (isMap == null) {
               isMap = new boolean[maximumNestingDepth];
             }
             boolean map = ch == '{';
             isMap[bracketDepth] = map;
             ++bracketDepth;
-            state = map ? State.START_MAP : State.START_ARRAY;
+            if (bracketDepth > maxBracketDepth) {
+              maxBracketDepth = bracketDepth;
+            }
+            state = map ? S_START_MAP : S_START_ARRAY;
+            if (handler != null) {
+              int openOutStart = outputPosition(i);
+              if (map) {
+                handler.startObject(outputView, openOutStart, openOutStart + 1);
+              } else {
+                handler.startArray(outputView, openOutStart, openOutStart + 1);
+              }
+            }
             break;
 
-          case '}': case ']':
+          case C_CLOSE:
             if (bracketDepth == 0) {
-              elide(i, jsonish.length());
+              elide(i, jsonishLength);
+              if (checkpoints != null) { checkpoints.droppedRest(i); }
+              if (trace != null) { traceToken(i, ch, stateBefore); }
               break token_loop;
             }
 
-            // Strip trailing comma to convert {"a":0,} -> {"a":0}
-            // and [1,2,3,] -> [1,2,3,]
-            switch (state) {
-              case BEFORE_VALUE:
-                insert(i, "null");
-                break;
-              case BEFORE_ELEMENT: case BEFORE_KEY:
-                elideTrailingComma(i);
-                break;
-              case AFTER_KEY:
-                insert(i, ":null");
-                break;
-              case START_MAP: case START_ARRAY:
-              case AFTER_ELEMENT: case AFTER_VALUE: break;
+            // Supply a missing value, or strip a trailing comma to convert
+            // {"a":0,} -> {"a":0} and [1,2,3,] -> [1,2,3]
+            if (TRANSITIONS[(state << 3) | C_CLOSE] >= 8) {
+              fixTransition(i, state, C_CLOSE);
             }
 
+            dropLeadingComma = false;
             --bracketDepth;
             char closeBracket = isMap[bracketDepth] ? '}' : ']';
+            int closeOutStart = outputPosition(i);
             if (ch != closeBracket) {
               replace(i, i + 1, closeBracket);
             }
+            emitClose(closeBracket, closeOutStart);
             state = bracketDepth == 0 || !isMap[bracketDepth - 1]
-                ? State.AFTER_ELEMENT : State.AFTER_VALUE;
+                ? S_AFTER_ELEMENT : S_AFTER_VALUE;
             break;
-          case ',':
+          case C_COMMA:
             if (bracketDepth == 0) { throw UNBRACKETED_COMMA; }
             // Convert comma elisions like [1,,3] to [1,null,3].
             // [1,,3] in JS is an array that has no element at index 1
             // according to the "in" operator so accessing index 1 will
             // yield the special value "undefined" which is equivalent to
             // JS's "null" value according to "==".
-            switch (state) {
-              // Normal
-              case AFTER_ELEMENT:
-                state = State.BEFORE_ELEMENT;
-                break;
-              case AFTER_VALUE:
-                state = State.BEFORE_KEY;
-                break;
-              // Array elision.
-              case START_ARRAY: case BEFORE_ELEMENT:
-                insert(i, "null");
-                state = State.BEFORE_ELEMENT;
-                break;
-              // Ignore
-              case START_MAP: case BEFORE_KEY:
-              case AFTER_KEY:
-                elide(i, i + 1);
-                break;
-              // Supply missing value.
-              case BEFORE_VALUE:
-                insert(i, "null");
-                state = State.BEFORE_KEY;
-                break;
+            transition = TRANSITIONS[(state << 3) | C_COMMA];
+            state = transition < 8 && !dropLeadingComma
+                ? transition : fixTransition(i, state, C_COMMA);
+            if (checkpoints != null && stateBefore != S_BEFORE_KEY
+                && (state == S_BEFORE_ELEMENT || state == S_BEFORE_KEY)) {
+              // The comma was kept, after any null inserted before it.
+              pendingCommaOutput = outputPosition(i);
             }
             break;
 
-          case ':':
-            if (state == State.AFTER_KEY) {
-              state = State.BEFORE_VALUE;
-            } else {
-              elide(i, i + 1);
-            }
+          case C_COLON:
+            transition = TRANSITIONS[(state << 3) | C_COLON];
+            state = transition < 8
+                ? transition : fixTransition(i, state, C_COLON);
             break;
 
-          case '/':
+          case C_SLASH:
             // Skip over JS-style comments since people like inserting them into
             // data files and getting huffy with Crockford when he says no to
             // versioning JSON to allow ignorable tokens.
             int end = i + 1;
             if (i + 1 < n) {
-              switch (jsonish.charAt(i + 1)) {
+              switch (charAt(i + 1)) {
                 case '/':
                   end = n;  // Worst case.
                   for (int j = i + 2; j < n; ++j) {
-                    char cch = jsonish.charAt(j);
+                    char cch = charAt(j);
                     if (cch == '\n' || cch == '\r'
                         || cch == '\u2028' || cch == '\u2029') {
                       end = j + 1;
@@ -353,8 +1390,8 @@ public final class JsonSanitizer {
                   end = n;
                   if (i + 3 < n) {
                     for (int j = i + 2;
-                         (j = jsonish.indexOf('/', j + 1)) >= 0;) {
-                      if (jsonish.charAt(j - 1) == '*') {
+                         (j = indexOf('/', j + 1)) >= 0;) {
+                      if (charAt(j - 1) == '*') {
                         end = j + 1;
                         break;
                       }
@@ -382,7 +1419,7 @@ public final class JsonSanitizer {
             // outside keyword and number.
             int runEnd;
             for (runEnd = i; runEnd < n; ++runEnd) {
-              char tch = jsonish.charAt(runEnd);
+              char tch = charAt(runEnd);
               if (('a' <= tch && tch <= 'z') || ('0' <= tch && tch <= '9')
                   || tch == '+' || tch == '-' || tch == '.'
                   || ('A' <= tch && tch <= 'Z') || tch == '_' || tch == '$') {
@@ -396,7 +1433,10 @@ public final class JsonSanitizer {
               break;
             }
 
-            state = requireValueState(i, state, true);
+            transition = TRANSITIONS[(state << 3) | C_OTHER];
+            state = transition < 8 && !dropLeadingComma
+                ? transition : fixTransition(i, state, C_OTHER);
+            int runOutStart = outputPosition(i);
 
             boolean isNumber = ('0' <= ch && ch <= '9')
                || ch == '.' || ch == '+' || ch == '-';
@@ -410,12 +1450,12 @@ public final class JsonSanitizer {
                   break;
                 }
               }
-              if (runEnd < n && jsonish.charAt(runEnd) == '"') {
+              if (runEnd < n && charAt(runEnd) == '"') {
                 ++runEnd;
               }
             }
 
-            if (state == State.AFTER_KEY) {
+            if (state == S_AFTER_KEY) {
               // We need to quote whatever we have since it is used as a
               // property name in a map and only quoted strings can be used that
               // way in JSON.
@@ -446,52 +1486,91 @@ public final class JsonSanitizer {
                 sanitizeString(i, runEnd);
               }
             }
+            if (handler != null) {
+              int runOutEnd = outputPosition(runEnd);
+              if (state == S_AFTER_KEY) {
+                handler.key(outputView, runOutStart, runOutEnd);
+              } else if (isNumber) {
+                handler.numberValue(outputView, runOutStart, runOutEnd);
+              } else if (!isKeyword) {
+                handler.stringValue(outputView, runOutStart, runOutEnd);
+              } else if (ch == 'n') {
+                handler.nullValue(outputView, runOutStart, runOutEnd);
+              } else {
+                handler.booleanValue(outputView, runOutStart, runOutEnd);
+              }
+            }
             i = runEnd - 1;
         }
+        if (trace != null) { traceToken(tokenStart, ch, stateBefore); }
       } catch (@SuppressWarnings("unused") UnbracketedComma e) {
-        elide(i, jsonish.length());
+        elide(i, jsonishLength);
+        if (checkpoints != null) { checkpoints.droppedRest(i); }
+        if (trace != null) { traceToken(i, charAt(i), state); }
         break;
       }
     }
 
-    if (state == State.START_ARRAY && bracketDepth == 0) {
+    int stateBefore = state;
+    tokenStart = n;
+    tokenEdits = 0;
+    if (state == S_START_ARRAY && bracketDepth == 0) {
       // No tokens.  Only whitespace
       insert(n, "null");
-      state = State.AFTER_ELEMENT;
-    }
-
-    if (SUPER_VERBOSE_AND_SLOW_LOGGING) {
-      System.err.println(
-          "state=" + state + ", sanitizedJson=" + sanitizedJson
-          + ", cleaned=" + cleaned + ", bracketDepth=" + bracketDepth);
+      emitInsertedNull();
+      state = S_AFTER_ELEMENT;
     }
 
-    if ((sanitizedJson != null && sanitizedJson.length() != 0)
-        || cleaned != 0 || bracketDepth != 0) {
+    // The output may be empty because a close bracket removed a comma
+    // carried over from a checkpoint.
+    if (sanitizedJson != null || cleaned != 0 || bracketDepth != 0) {
       if (sanitizedJson == null) {
-        sanitizedJson = new StringBuilder(n + bracketDepth);
+        sanitizedJson = makeOutputBuffer(n + bracketDepth);
       }
-      sanitizedJson.append(jsonish, cleaned, n);
+      sanitizedJson.appendInput(cleaned, n);
       cleaned = n;
+      int fixedLength = sanitizedJson.length();
 
-      switch (state) {
+      switch (STATES[state]) {
         case BEFORE_ELEMENT: case BEFORE_KEY:
           elideTrailingComma(n);
           break;
         case AFTER_KEY:
           sanitizedJson.append(":null");
+          emitInsertedNull();
           break;
         case BEFORE_VALUE:
           sanitizedJson.append("null");
+          emitInsertedNull();
           break;
         default: break;
       }
 
       // Insert brackets to close unclosed content.
       while (bracketDepth != 0) {
-        sanitizedJson.append(isMap[--bracketDepth] ? '}' : ']');
+        char closeBracket = isMap[--bracketDepth] ? '}' : ']';
+        sanitizedJson.append(closeBracket);
+        emitClose(closeBracket, sanitizedJson.length() - 1);
       }
+      if (sanitizedJson.length() > fixedLength) { tokenEdits |= INSERTED; }
     }
+    if (trace != null) { traceToken(n, -1, stateBefore); }
+
+    if (inPlaceBuffer != null) {
+      inPlaceBuffer.discardInputBefore(n);
+    }
+  }
+
+  /** Tells {@link #trace} what was done to the token at position. */
+  private void traceToken(int position, int ch, int stateBefore) {
+    TraceListener.Action action;
+    switch (tokenEdits) {
+      case 0: action = TraceListener.Action.KEPT; break;
+      case INSERTED: action = TraceListener.Action.INSERTED; break;
+      case REMOVED: action = TraceListener.Action.REMOVED; break;
+      default: action = TraceListener.Action.REWRITTEN; break;
+    }
+    trace.token(traceCall, position, ch, STATES[stateBefore], action);
   }
 
   /**
@@ -513,7 +1592,7 @@ public final class JsonSanitizer {
   private void sanitizeString(int start, int end) {
     boolean closed = false;
     for (int i = start; i < end; ++i) {
-      char ch = jsonish.charAt(i);
+      char ch = charAt(i);
       switch (ch) {
         case '\t': replace(i, i + 1, "\\t"); break;
         // Fixup newlines.
@@ -529,7 +1608,7 @@ public final class JsonSanitizer {
             if (ch == '\'') { replace(i, i + 1, '"'); }
           } else {
             if (i + 1 == end) {
-              char startDelim = jsonish.charAt(start);
+              char startDelim = charAt(start);
               if (startDelim != '\'') {
                 // If we're sanitizing a string whose start was inferred, then
                 // treat '"' as closing regardless.
@@ -552,7 +1631,10 @@ public final class JsonSanitizer {
         // https://www.w3.org/TR/html53/syntax.html#script-data-escaped-state
         // https://www.w3.org/TR/html53/syntax.html#script-data-double-escaped-state
         // https://www.w3.org/TR/xml/#sec-cdata-sect
+        // When the output need not be embeddable, none of these are special
+        // so we skip the lookahead and lookbehind entirely.
         case '<': {
+          if (!embeddable) { break; }
           // Disallow <!--, which lets the HTML parser switch into the "script
           // data escaped" state.
           // Disallow <script, which followed by various characters lets the
@@ -563,13 +1645,13 @@ public final class JsonSanitizer {
             break;
           }
           int la = i + 1;
-          int c1AndDelta = unescapedChar(jsonish, la);
+          int c1AndDelta = unescapedChar(la);
           char c1 = (char) c1AndDelta;
           la += c1AndDelta >>> 16;
-          long c2AndDelta = unescapedChar(jsonish, la);
+          int c2AndDelta = unescapedChar(la);
           char c2 = (char) c2AndDelta;
           la += c2AndDelta >>> 16;
-          long c3AndEnd = unescapedChar(jsonish, la);
+          int c3AndEnd = unescapedChar(la);
           char c3 = (char) c3AndEnd;
           char lc1 = (char) (c1 | 32);
           char lc2 = (char) (c2 | 32);
@@ -586,17 +1668,19 @@ public final class JsonSanitizer {
         case '>':
           // Disallow -->, which lets the HTML parser switch out of the "script
           // data escaped" or "script data double escaped" state.
-          if ((i - 2) >= start) {
+          // Look no further back than the string's start, since input before
+          // it may already be overwritten when sanitizing in place.
+          if (embeddable && (i - 2) >= start) {
             int lb = i - 1;
-            if ((runSlashPreceding(jsonish, lb) & 1) == 1) {
+            if ((runSlashPreceding(lb, start) & 1) == 1) {
               // If the '>' is escaped backup over its slash.
               lb -= 1;
             }
-            int cm1AndDelta = unescapedCharRev(jsonish, lb);
+            int cm1AndDelta = unescapedCharRev(lb, start);
             char cm1 = (char) cm1AndDelta;
             if ('-' == cm1) {
                 lb -= cm1AndDelta >>> 16;
-                int cm2AndDelta = unescapedCharRev(jsonish, lb);
+                int cm2AndDelta = unescapedCharRev(lb, start);
                 char cm2 = (char) cm2AndDelta;
                 if ('-' == cm2) {
                     replace(i, i + 1, "\\u003e"); // Escaped >
@@ -605,12 +1689,12 @@ public final class JsonSanitizer {
           }
           break;
         case ']':
-          if (i + 2 < end) {
+          if (embeddable && i + 2 < end) {
             int la = i + 1;
-            long c1AndDelta = unescapedChar(jsonish, la);
+            int c1AndDelta = unescapedChar(la);
             char c1 = (char) c1AndDelta;
             la += c1AndDelta >>> 16;
-            long c2AndEnd = unescapedChar(jsonish, la);
+            int c2AndEnd = unescapedChar(la);
             char c2 = (char) c2AndEnd;
             if (']' == c1 && '>' == c2) {
               replace(i, i + 1, "\\u005d");
@@ -623,7 +1707,7 @@ public final class JsonSanitizer {
             elide(i, i + 1);
             break;
           }
-          char sch = jsonish.charAt(i + 1);
+          char sch = charAt(i + 1);
           switch (sch) {
             case 'b': case 'f': case 'n': case 'r': case 't': case '\\':
             case '/': case '"':
@@ -662,7 +1746,7 @@ public final class JsonSanitizer {
               }
               int value = 0;
               for (int j = octalStart; j < octalEnd; ++j) {
-                char digit = jsonish.charAt(j);
+                char digit = charAt(j);
                 value = (value << 3) | (digit - '0');
               }
               replace(octalStart, octalEnd, "u00");
@@ -692,7 +1776,7 @@ public final class JsonSanitizer {
             continue;
           } else if (ch < 0xe000) {  // A surrogate
             if (Character.isHighSurrogate(ch) && i+1 < end
-                && Character.isLowSurrogate(jsonish.charAt(i+1))) {
+                && Character.isLowSurrogate(charAt(i+1))) {
               ++i;  // Skip over low surrogate since we have already vetted it.
               continue;
             }
@@ -709,37 +1793,66 @@ public final class JsonSanitizer {
     if (!closed) { insert(end, '"'); }
   }
 
-  private State requireValueState(int pos, State state, boolean canBeKey)
-    throws UnbracketedComma {
-    switch (state) {
-      case START_MAP: case BEFORE_KEY:
-        if (canBeKey) {
-          return State.AFTER_KEY;
-        } else {
-          insert(pos, "\"\":");
-          return State.AFTER_VALUE;
-        }
-      case AFTER_KEY:
+  /**
+   * Makes the changes to the output that the transition table entry for a
+   * token calls for, and handles the members left without a leading comma
+   * by {@link #redact}.
+   *
+   * @param pos the start of the token.
+   * @param cls the character class of the token.
+   * @return the state after the token.
+   */
+  private int fixTransition(int pos, int state, int cls)
+      throws UnbracketedComma {
+    if (dropLeadingComma && state == S_AFTER_VALUE
+        && (cls == C_QUOTE || cls == C_OTHER || cls == C_OPEN)) {
+      // There is no member before this one to separate it from.
+      dropLeadingComma = false;
+      state = S_START_MAP;
+    }
+    int transition = TRANSITIONS[(state << 3) | cls];
+    switch (transition >>> 3) {
+      case A_NONE:
+        break;
+      case A_ELIDE:
+        elide(pos, pos + 1);
+        break;
+      case A_INSERT_COLON:
         insert(pos, ':');
-        return State.AFTER_VALUE;
-      case BEFORE_VALUE:
-        return State.AFTER_VALUE;
-      case AFTER_VALUE:
-        if (canBeKey) {
-          insert(pos, ',');
-          return State.AFTER_KEY;
-        } else {
-          insert(pos, ",\"\":");
-          return State.AFTER_VALUE;
-        }
-      case START_ARRAY: case BEFORE_ELEMENT:
-        return State.AFTER_ELEMENT;
-      case AFTER_ELEMENT:
+        break;
+      case A_INSERT_COMMA:
         if (bracketDepth == 0) { throw UNBRACKETED_COMMA; }
         insert(pos, ',');
-        return State.AFTER_ELEMENT;
+        break;
+      case A_INSERT_EMPTY_KEY:
+        insert(pos, "\"\":");
+        emitInsertedEmptyKey();
+        break;
+      case A_INSERT_COMMA_EMPTY_KEY:
+        insert(pos, ",\"\":");
+        emitInsertedEmptyKey();
+        break;
+      case A_INSERT_NULL:
+        insert(pos, "null");
+        emitInsertedNull();
+        break;
+      case A_INSERT_COLON_NULL:
+        insert(pos, ":null");
+        emitInsertedNull();
+        break;
+      case A_ELIDE_TRAILING_COMMA:
+        elideTrailingComma(pos);
+        break;
+      default:
+        throw new AssertionError(transition);
+    }
+    if (dropLeadingComma && cls == C_COMMA
+        && (state == S_AFTER_VALUE || state == S_BEFORE_VALUE)) {
+      dropLeadingComma = false;
+      elide(pos, pos + 1);
+      return S_START_MAP;
     }
-    throw new AssertionError();
+    return transition & 7;
   }
 
   private void insert(int pos, char ch) {
@@ -751,42 +1864,138 @@ public final class JsonSanitizer {
   }
 
   private void elide(int start, int end) {
+    if (start != end) {
+      ++nRewrites;
+      tokenEdits |= start == tokenStart ? REMOVED : CHANGED;
+    }
     if (sanitizedJson == null) {
-      sanitizedJson = new StringBuilder(jsonish.length() + 16);
+      sanitizedJson = makeOutputBuffer(jsonishLength + 16);
     }
-    sanitizedJson.append(jsonish, cleaned, start);
+    sanitizedJson.appendInput(cleaned, start);
     cleaned = end;
   }
 
   private void replace(int start, int end, char ch) {
     elide(start, end);
+    if (start == end) { ++nRewrites; }  // elide counted the others.
+    tokenEdits |= INSERTED;
     sanitizedJson.append(ch);
   }
 
   private void replace(int start, int end, String s) {
     elide(start, end);
+    if (start == end) { ++nRewrites; }
+    tokenEdits |= INSERTED;
     sanitizedJson.append(s);
   }
 
+  /**
+   * The position in the output of {@code jsonish[pos]} where pos is at or
+   * after {@link #cleaned}.
+   */
+  private int outputPosition(int pos) {
+    return sanitizedJson != null ? sanitizedJson.length() + pos - cleaned : pos;
+  }
+
+  /** Tells any handler about a "null" just added to the output. */
+  private void emitInsertedNull() {
+    if (handler != null) {
+      int end = sanitizedJson.length();
+      handler.nullValue(outputView, end - 4, end);
+    }
+  }
+
+  /** Tells any handler about a <code>"":</code> just added to the output. */
+  private void emitInsertedEmptyKey() {
+    if (handler != null) {
+      int end = sanitizedJson.length() - 1;
+      handler.key(outputView, end - 2, end);
+    }
+  }
+
+  /**
+   * Replaces the output between outStart and outEnd, which may extend into
+   * input that has not been copied to the output yet, with replacement.
+   * If replacement is null, the output is an object member, and it is
+   * removed along with the comma that separates it from its neighbours.
+   */
+  void redact(int outStart, int outEnd, @Nullable String replacement) {
+    if (sanitizedJson == null) {
+      sanitizedJson = makeOutputBuffer(jsonishLength + 16);
+    }
+    int outLength = sanitizedJson.length();
+    if (outEnd > outLength) {
+      int end = cleaned + outEnd - outLength;
+      sanitizedJson.appendInput(cleaned, end);
+      cleaned = end;
+    }
+    sanitizedJson.setLength(outStart);
+    if (replacement != null) {
+      sanitizedJson.append(replacement);
+      return;
+    }
+    for (int k = outStart; --k >= 0;) {
+      char ch = sanitizedJson.charAt(k);
+      if (ch == ',') {
+        sanitizedJson.setLength(k);
+        return;
+      } else if (!(ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r')) {
+        break;
+      }
+    }
+    // The member was first, so the comma after it, if any, has to go.
+    dropLeadingComma = true;
+  }
+
+  private void emitClose(char closeBracket, int outStart) {
+    if (handler != null) {
+      if (closeBracket == '}') {
+        handler.endObject(outputView, outStart, outStart + 1);
+      } else {
+        handler.endArray(outputView, outStart, outStart + 1);
+      }
+    }
+  }
+
   /**
    * The position past the last character within the quotes of the quoted
-   * string starting at {@code s.charAt(start)}.  Does not assume that the
-   * quoted string is properly closed.
+   * string starting at {@code jsonish.charAt(start)}.  Does not assume that
+   * the quoted string is properly closed.
    */
-  private static int endOfQuotedString(String s, int start) {
-    char quote = s.charAt(start);
-    for (int i = start; (i = s.indexOf(quote, i + 1)) >= 0;) {
+  private int endOfQuotedString(int start) {
+    char quote = charAt(start);
+    for (int i = start; (i = indexOf(quote, i + 1)) >= 0;) {
       // If there are an even number of preceding backslashes then this is
       // the end of the string.
       int slashRunStart = i;
-      while (slashRunStart > start && s.charAt(slashRunStart - 1) == '\\') {
+      while (slashRunStart > start && charAt(slashRunStart - 1) == '\\') {
         --slashRunStart;
       }
       if (((i - slashRunStart) & 1) == 0) {
         return i + 1;
       }
     }
-    return s.length();
+    return jsonishLength;
+  }
+
+  /**
+   * Offers {@link #checkpoints} a checkpoint at the start of a token.
+   *
+   * @return true if sanitizing should stop.
+   */
+  private boolean checkpoint(int i, int state) {
+    int outputPos = outputPosition(i);
+    // A close bracket could still remove the comma that is already in the
+    // output.
+    int settledOutputPos = state == S_BEFORE_ELEMENT || state == S_BEFORE_KEY
+        ? pendingCommaOutput : outputPos;
+    if (checkpoints.checkpoint(
+            i, STATES[state], bracketDepth, isMap, settledOutputPos,
+            outputPos)) {
+      return true;
+    }
+    nextCheckpoint = checkpoints.nextCheckpoint(i);
+    return false;
   }
 
   private void elideTrailingComma(int closeBracketPos) {
@@ -796,13 +2005,13 @@ public final class JsonSanitizer {
     // We walk over whitespace characters in both right-to-left looking for a
     // comma.
     for (int i = closeBracketPos; --i >= cleaned;) {
-      switch (jsonish.charAt(i)) {
+      switch (charAt(i)) {
         case '\t': case '\n': case '\r': case ' ':
           continue;
         case ',':
           elide(i, i+1);
           return;
-        default: throw new AssertionError("" + jsonish.charAt(i));
+        default: throw new AssertionError("" + charAt(i));
       }
     }
     assert sanitizedJson != null;
@@ -837,7 +2046,7 @@ public final class JsonSanitizer {
     int pos = start;
     // Sign
     if (pos < end) {
-      switch (jsonish.charAt(pos)) {
+      switch (charAt(pos)) {
         case '+':
           elide(pos, pos + 1);
           ++pos;
@@ -854,17 +2063,17 @@ public final class JsonSanitizer {
     int intEnd = endOfDigitRun(pos, end);
     if (pos == intEnd) {  // No empty integer parts allowed in JSON.
       insert(pos, '0');
-    } else if ('0' == jsonish.charAt(pos)) {
+    } else if ('0' == charAt(pos)) {
       boolean reencoded = false;
       int maxDigVal = 0; // The value of the max digit
       int probableBase = 10; // The base suggested by the prefix
       int firstDigitIndex = -1;
       if (intEnd - pos == 1 && intEnd < end
-              && 'x' == (jsonish.charAt(intEnd) | 32)) {  // Recode hex.
+              && 'x' == (charAt(intEnd) | 32)) {  // Recode hex.
         probableBase = 16;
         firstDigitIndex = intEnd + 1;
         for (intEnd = intEnd + 1; intEnd < end; ++intEnd) {
-          char ch = jsonish.charAt(intEnd);
+          char ch = charAt(intEnd);
           int digVal;
           if ('0' <= ch && ch <= '9') {
             digVal = ch - '0';
@@ -883,7 +2092,7 @@ public final class JsonSanitizer {
         probableBase = 8;
         firstDigitIndex = pos;
         for (int i = pos; i < intEnd; ++i) {
-          int digVal = jsonish.charAt(i) - '0';
+          int digVal = charAt(i) - '0';
           if (digVal < 0) {
             break;
           }
@@ -896,26 +2105,17 @@ public final class JsonSanitizer {
         // Putting out the underflowed value is the least bad option.
         elide(pos, intEnd);
 
-        String digits = jsonish.substring(firstDigitIndex, intEnd);
-
-        int nDigits = digits.length();
         int base = probableBase > maxDigVal ? probableBase : maxDigVal > 10 ? 16 : 10;
-        if (nDigits == 0) {
-          sanitizedJson.append('0');
-        } else if (DIGITS_BY_BASE_THAT_FIT_IN_63B[base] >= nDigits) {
-          long value = Long.parseLong(digits, base);
-          sanitizedJson.append(value);
-        } else {
-          // If there are lots of digits, we need to reencode using a BigInteger
-          BigInteger value = new BigInteger(digits, base);
-          sanitizedJson.append(value);
-        }
+        NumberRecoder recoder = numberRecoder();
+        recoder.recode(jsonish, firstDigitIndex, intEnd, base);
+        sanitizedJson.append(recoder);
+        tokenEdits |= INSERTED;
       }
     }
     pos = intEnd;
 
     // Optional fraction.
-    if (pos < end && jsonish.charAt(pos) == '.') {
+    if (pos < end && charAt(pos) == '.') {
       ++pos;
       int fractionEnd = endOfDigitRun(pos, end);
       if (fractionEnd == pos) {
@@ -927,10 +2127,10 @@ public final class JsonSanitizer {
     }
 
     // Optional exponent.
-    if (pos < end && 'e' == (jsonish.charAt(pos) | 32)) {
+    if (pos < end && 'e' == (charAt(pos) | 32)) {
       ++pos;
       if (pos < end) {
-        switch (jsonish.charAt(pos)) {
+        switch (charAt(pos)) {
           // JSON allows explicit + in exponent but not for number as a whole.
           case '+': case '-': ++pos; break;
           default: break;
@@ -966,210 +2166,34 @@ public final class JsonSanitizer {
     elide(end, end);
     int sanEnd = sanitizedJson.length();
 
-    return canonicalizeNumber(sanitizedJson, sanStart, sanEnd);
-  }
-
-  /**
-   * @param sanStart the start (inclusive) of the number on sanitizedJson.
-   * @param sanEnd the end (exclusive) of the number on sanitizedJson.
-   * @return true when the number could be canonicalized.
-   */
-  private static boolean canonicalizeNumber(
-      StringBuilder sanitizedJson, int sanStart, int sanEnd) {
-    // Now we perform several steps.
-    // 1. Convert from scientific notation to regular or vice-versa based on
-    //    normalized exponent.
-    // 2. Remove trailing zeroes from the fraction and truncate it to 24 digits.
-    // 3. Elide the fraction entirely if it is ".0".
-    // 4. Convert any 'E' that separates the exponent to lower-case.
-    // 5. Elide any minus sign on a zero value.
-    // to convert the number to its canonical JS string form.
-
-    // Figure out where the parts of the number start and end.
-    int intStart, intEnd, fractionStart, fractionEnd, expStart, expEnd;
-    intStart = sanStart + (sanitizedJson.charAt(sanStart) == '-' ? 1 : 0);
-    for (intEnd = intStart; intEnd < sanEnd; ++intEnd) {
-      char ch = sanitizedJson.charAt(intEnd);
-      if (!('0' <= ch && ch <= '9')) { break; }
-    }
-    if (intEnd == sanEnd || '.' != sanitizedJson.charAt(intEnd)) {
-      fractionStart = fractionEnd = intEnd;
-    } else {
-      fractionStart = intEnd + 1;
-      for (fractionEnd = fractionStart; fractionEnd < sanEnd; ++fractionEnd) {
-        char ch = sanitizedJson.charAt(fractionEnd);
-        if (!('0' <= ch && ch <= '9')) { break; }
-      }
-    }
-    if (fractionEnd == sanEnd) {
-      expStart = expEnd = sanEnd;
-    } else {
-      assert 'e' == (sanitizedJson.charAt(fractionEnd) | 32);
-      expStart = fractionEnd + 1;
-      if (sanitizedJson.charAt(expStart) == '+') { ++expStart; }
-      expEnd = sanEnd;
-    }
-
-    assert
-         intStart      <= intEnd
-      && intEnd        <= fractionStart
-      && fractionStart <= fractionEnd
-      && fractionEnd   <= expStart
-      && expStart      <= expEnd;
-
-    int exp;
-    if (expEnd == expStart) {
-      exp = 0;
-    } else {
-      try {
-        exp = Integer.parseInt(sanitizedJson.substring(expStart, expEnd), 10);
-      } catch (@SuppressWarnings("unused") NumberFormatException ex) {
-        // The exponent is out of the range of representable ints.
-        // JSON does not place limits on the range of representable numbers but
-        // nor does it allow bare numbers as keys.
-        return false;
-      }
-    }
-
-    // Numbered Comments below come from the EcmaScript 5 language specification
-    // section 9.8.1 : ToString Applied to the Number Type
-    // http://es5.github.com/#x9.8.1
-
-    // 5. let n, k, and s be integers such that k >= 1, 10k-1 <= s < 10k, the
-    // Number value for s * 10n-k is m, and k is as small as possible.
-    // Note that k is the number of digits in the decimal representation of s,
-    // that s is not divisible by 10, and that the least significant digit of s
-    // is not necessarily uniquely determined by these criteria.
-    int n = exp;  // Exponent
-
-    // s, the string of decimal digits in the representation of m are stored in
-    // sanitizedJson.substring(intStart).
-    // k, the number of digits in s is computed later.
-
-    // Leave only the number representation on the output buffer after intStart.
-    // This leaves any sign on the digit per
-    // 3. If m is less than zero, return the String concatenation of the
-    //    String "-" and ToString(-m).
-    boolean sawDecimal = false;
-    boolean zero = true;
-    int digitOutPos = intStart;
-    for (int i = intStart, nZeroesPending = 0; i < fractionEnd; ++i) {
-      char ch = sanitizedJson.charAt(i);
-      if (ch == '.') {
-        sawDecimal = true;
-        if (zero) { nZeroesPending = 0; }
-        continue;
-      }
-
-      char digit = ch;
-      if ((!zero || digit != '0') && !sawDecimal) { ++n; }
-
-      if (digit == '0') {
-        // Keep track of runs of zeros so that we can take them into account
-        // if we later see a non-zero digit.
-        ++nZeroesPending;
-      } else {
-        if (zero) {  // First non-zero digit.
-          // Discard runs of zeroes at the front of the integer part, but
-          // any after the decimal point factor into the exponent, n.
-          if (sawDecimal) {
-            n -= nZeroesPending;
-          }
-          nZeroesPending = 0;
-        }
-        zero = false;
-        while (nZeroesPending != 0 || digit != 0) {
-          char vdigit;
-          if (nZeroesPending == 0) {
-            vdigit = digit;
-            digit = (char) 0;
-          } else {
-            vdigit = '0';
-            --nZeroesPending;
-          }
-
-          // TODO: limit s to 21 digits?
-          sanitizedJson.setCharAt(digitOutPos++, vdigit);
-        }
-      }
-    }
-    sanitizedJson.setLength(digitOutPos);
-    // Number of digits in decimal representation of s.
-    int k = digitOutPos - intStart;
-
-    // Now we have computed n, k, and s as defined above.  Time to add decimal
-    // points, exponents, and leading zeroes per the rest of the JS number
-    // formatting specification.
-
-    if (zero) {  // There are no non-zero decimal digits.
-      // 2. If m is +0 or -0, return the String "0".
-      sanitizedJson.setLength(sanStart);  // Elide any sign.
-      sanitizedJson.append('0');
-      return true;
-    }
-
-    // 6. If k <= n <= 21, return the String consisting of the k digits of the
-    // decimal representation of s (in order, with no leading zeroes),
-    // followed by n-k occurrences of the character '0'.
-    if (k <= n && n <= 21) {
-      for (int i = k; i < n; ++i) {
-        sanitizedJson.append('0');
-      }
-
-    // 7. If 0 < n <= 21, return the String consisting of the most significant n
-    // digits of the decimal representation of s, followed by a decimal point
-    // '.', followed by the remaining k-n digits of the decimal representation
-    // of s.
-    } else if (0 < n && n <= 21) {
-      sanitizedJson.insert(intStart + n, '.');
-
-    // 8. If -6 < n <= 0, return the String consisting of the character '0',
-    // followed by a decimal point '.', followed by -n occurrences of the
-    // character '0', followed by the k digits of the decimal representation of
-    // s.
-    } else if (-6 < n && n <= 0) {
-      sanitizedJson.insert(intStart, "0.000000".substring(0, 2 - n));
-
-    } else {
-
-      // 9. Otherwise, if k = 1, return the String consisting of the single
-      // digit of s, followed by lowercase character 'e', followed by a plus
-      // sign '+' or minus sign '-' according to whether n-1 is positive or
-      // negative, followed by the decimal representation of the integer
-      // abs(n-1) (with no leading zeros).
-      if (k == 1) {
-        // Sole digit already on sanitizedJson.
-
-      // 10. Return the String consisting of the most significant digit of the
-      // decimal representation of s, followed by a decimal point '.', followed
-      // by the remaining k-1 digits of the decimal representation of s,
-      // followed by the lowercase character 'e', followed by a plus sign '+'
-      // or minus sign '-' according to whether n-1 is positive or negative,
-      // followed by the decimal representation of the integer abs(n-1) (with
-      // no leading zeros).
-      } else {
-        sanitizedJson.insert(intStart + 1, '.');
-      }
-      int nLess1 = n-1;
-      sanitizedJson.append('e').append(nLess1 < 0 ? '-' : '+')
-          .append(Math.abs(nLess1));
+    // Canonicalizing involves some random access, so the recoder writes the
+    // result to a scratch buffer before we replace the number with it.
+    NumberRecoder recoder = numberRecoder();
+    if (!recoder.canonicalize(outputView, sanStart, sanEnd)) {
+      return false;
     }
+    sanitizedJson.setLength(sanStart);
+    sanitizedJson.append(recoder);
     return true;
   }
 
+  private NumberRecoder numberRecoder() {
+    if (numberRecoder == null) { numberRecoder = new NumberRecoder(); }
+    return numberRecoder;
+  }
+
   private boolean isKeyword(int start, int end) {
     int n = end - start;
     if (n == 5) {
-      return "false".regionMatches(0, jsonish, start, n);
+      return regionMatches("false", start);
     } else if (n == 4) {
-      return "null".regionMatches(0, jsonish, start, n)
-          || "true".regionMatches(0, jsonish, start, n);
+      return regionMatches("null", start) || regionMatches("true", start);
     }
     return false;
   }
 
   private boolean isOctAt(int i) {
-    return isOct(jsonish.charAt(i));
+    return isOct(charAt(i));
   }
 
   private static boolean isOct(char ch) {
@@ -1177,7 +2201,7 @@ public final class JsonSanitizer {
   }
 
   private boolean isHexAt(int i) {
-    return isHex(jsonish.charAt(i));
+    return isHex(charAt(i));
   }
 
   private static boolean isHex(char ch) {
@@ -1192,7 +2216,7 @@ public final class JsonSanitizer {
   }
 
   private boolean isJsonSpecialChar(int i) {
-    char ch = jsonish.charAt(i);
+    char ch = charAt(i);
     if (ch <= ' ') { return true; }
     switch (ch) {
       case '"':
@@ -1220,7 +2244,7 @@ public final class JsonSanitizer {
 
   private int endOfDigitRun(int start, int limit) {
     for (int end = start; end < limit; ++end) {
-      char ch = jsonish.charAt(end);
+      char ch = charAt(end);
       if (!('0' <= ch && ch <= '9')) { return end; }
     }
     return limit;
@@ -1238,12 +2262,111 @@ public final class JsonSanitizer {
   }
 
   CharSequence toCharSequence() {
-    return sanitizedJson != null ? sanitizedJson : jsonish;
+    return sanitizedJson != null ? sanitizedJson.toCharSequence() : jsonish;
   }
 
   @Override
   public String toString() {
-    return sanitizedJson != null ? sanitizedJson.toString() : jsonish;
+    return sanitizedJson != null
+        ? sanitizedJson.toString() : jsonish.toString();
+  }
+
+  EditedJson toEditedJson() {
+    return sanitizedJson != null
+        ? ((EditedJson.Recorder) sanitizedJson).toEditedJson()
+        : EditedJson.unchanged(jsonish);
+  }
+
+  private OutputBuffer makeOutputBuffer(int capacity) {
+    switch (outputMode) {
+      case COPY:
+        return new OutputBuffer.OfStringBuilder(
+            jsonish, jsonishChars, jsonishCharsOffset, capacity);
+      case EDITS:
+        return new EditedJson.Recorder(jsonish);
+      case IN_PLACE:
+        assert jsonishChars != null;
+        inPlaceBuffer = new OutputBuffer.InPlace(
+            jsonishChars, jsonishCharsOffset, jsonishLength, inPlaceLimit);
+        return inPlaceBuffer;
+    }
+    throw new AssertionError(outputMode);
+  }
+
+  /**
+   * The output so far followed by the input that has not been consumed yet,
+   * which is the output when sanitization is done.
+   */
+  private final class OutputView implements CharSequence {
+    @Override
+    public int length() {
+      return outputPosition(jsonishLength);
+    }
+
+    @Override
+    public char charAt(int index) {
+      int outLength = sanitizedJson != null ? sanitizedJson.length() : 0;
+      return index < outLength
+          ? sanitizedJson.charAt(index)
+          : JsonSanitizer.this.charAt(index - outLength + cleaned);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      StringBuilder sb = new StringBuilder(end - start);
+      for (int i = start; i < end; ++i) {
+        sb.append(charAt(i));
+      }
+      return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+      return subSequence(0, length()).toString();
+    }
+  }
+
+  /** Kinds of {@link OutputBuffer}s. */
+  private enum OutputMode {
+    /** Copies the output to a new buffer. */
+    COPY,
+    /** Records the output as edits to the input. */
+    EDITS,
+    /** Writes the output over the input array. */
+    IN_PLACE,
+    ;
+  }
+
+  private char charAt(int i) {
+    String str = jsonishString;
+    if (str != null) { return str.charAt(i); }
+    char[] chars = jsonishChars;
+    if (chars != null) { return chars[jsonishCharsOffset + i]; }
+    return jsonish.charAt(i);
+  }
+
+  /**
+   * The index of the first occurrence of ch in jsonish at or after start or
+   * -1 if there is none.
+   */
+  private int indexOf(char ch, int start) {
+    if (jsonishString != null) { return jsonishString.indexOf(ch, start); }
+    for (int i = Math.max(0, start); i < jsonishLength; ++i) {
+      if (charAt(i) == ch) { return i; }
+    }
+    return -1;
+  }
+
+  private boolean regionMatches(String s, int start) {
+    int n = s.length();
+    if (jsonishString != null) {
+      return s.regionMatches(0, jsonishString, start, n);
+    }
+    if (start + n > jsonishLength) { return false; }
+    for (int i = 0; i < n; ++i) {
+      if (s.charAt(i) != charAt(start + i)) { return false; }
+    }
+    return true;
   }
 
   private static final char[] HEX_DIGITS = new char[] {
@@ -1251,51 +2374,45 @@ public final class JsonSanitizer {
     '8', '9', 'a', 'b', 'c', 'd', 'e', 'f',
   };
 
-  private static final int[] DIGITS_BY_BASE_THAT_FIT_IN_63B = {
-          -1,               -1, 63,               39, 31, 27, 24, 22,
-          21 /* base 8  */, 19, 18 /* base 10 */, 18, 17, 17, 16, 16,
-          15 /* base 16 */,
-  };
-
   /**
-   * Looks for a literal character or escape sequence at left in s.
+   * Looks for a literal character or escape sequence at left in jsonish.
    * Packs the char into the lowest 16 bytes of the output and the
    * count of characters in the sequence in the remaining bits
    */
-  private static int unescapedChar(String s, int left) {
-    int n = s.length();
+  private int unescapedChar(int left) {
+    int n = jsonishLength;
     if (left >= n) {
       return 0;
     }
-    char c = s.charAt(left);
+    char c = charAt(left);
     if (c == '\\') {
       if (left + 1 == n) {
         return 0x10000;
       }
-      char nc = s.charAt(left + 1);
+      char nc = charAt(left + 1);
       switch (nc) {
         case '0': case '1': case '2': case '3':
         case '4': case '5': case '6': case '7': {
           int octalStart = left + 1;
           int octalEnd = octalStart;
           ++octalEnd;
-          if (octalEnd < n && isOct(s.charAt(octalEnd))) {
+          if (octalEnd < n && isOct(charAt(octalEnd))) {
             ++octalEnd;
-            if (nc <= '3' && octalEnd < n && isOct(s.charAt(octalEnd))) {
+            if (nc <= '3' && octalEnd < n && isOct(charAt(octalEnd))) {
               ++octalEnd;
             }
           }
           int value = 0;
           for (int j = octalStart; j < octalEnd; ++j) {
-            char digit = s.charAt(j);
+            char digit = charAt(j);
             value = (value << 3) | (digit - '0');
           }
           return ((octalEnd - left) << 16) | value;
         }
         case 'x':
           if (left + 3 < n) {
-            char d0 = s.charAt(left + 2);
-            char d1 = s.charAt(left + 3);
+            char d0 = charAt(left + 2);
+            char d1 = charAt(left + 3);
             if (isHex(d0) && isHex(d1)) {
               return 0x40000 | (hexVal(d0) << 4) | hexVal(d1);
             }
@@ -1303,10 +2420,10 @@ public final class JsonSanitizer {
           break;
         case 'u':
           if (left + 5 < n) {
-            char d0 = s.charAt(left + 2);
-            char d1 = s.charAt(left + 3);
-            char d2 = s.charAt(left + 4);
-            char d3 = s.charAt(left + 5);
+            char d0 = charAt(left + 2);
+            char d1 = charAt(left + 3);
+            char d2 = charAt(left + 4);
+            char d3 = charAt(left + 5);
             if (isHex(d0) && isHex(d1) && isHex(d2) && isHex(d3)) {
               return 0x60000 |
                       (hexVal(d0) << 12) | (hexVal(d1) << 8) | (hexVal(d2) << 4) | hexVal(d3);
@@ -1327,8 +2444,8 @@ public final class JsonSanitizer {
     }
   }
 
-  private static int unescapedCharRev(String s, int rightIncl) {
-    if (rightIncl < 0) {
+  private int unescapedCharRev(int rightIncl, int leftLimit) {
+    if (rightIncl < leftLimit) {
       return 0;
     }
     // \?
@@ -1338,15 +2455,15 @@ public final class JsonSanitizer {
     // \u0000
     for (int i = 1; i < 6; ++i) {
       int left = rightIncl - i;
-      if (left < 0) { break; }
-      if (s.charAt(left) == '\\') {
+      if (left < leftLimit) { break; }
+      if (charAt(left) == '\\') {
         // If there are an odd number of '\\' then decode.
         int n = 1;
-        while (left - n >= 0 && s.charAt(left - n) == '\\') {
+        while (left - n >= leftLimit && charAt(left - n) == '\\') {
           ++n;
         }
         if ((n & 1) == 1) {
-          int unescaped = unescapedChar(s, left);
+          int unescaped = unescapedChar(left);
           if ((unescaped >>> 16) - 1 == i) {
             return unescaped;
           }
@@ -1354,12 +2471,12 @@ public final class JsonSanitizer {
         break;
       }
     }
-    return 0x10000 | s.charAt(rightIncl);
+    return 0x10000 | charAt(rightIncl);
   }
 
-  private static int runSlashPreceding(String jsonish, int pos) {
+  private int runSlashPreceding(int pos, int leftLimit) {
     int startOfRun = pos;
-    while (startOfRun >= 0 && jsonish.charAt(startOfRun) == '\\') {
+    while (startOfRun >= leftLimit && charAt(startOfRun) == '\\') {
       --startOfRun;
     }
     return pos - startOfRun;
@@ -0,0 +1,213 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import com.google.json.JsonSanitizer.OutputProfile;
+
+/**
+ * Memoizes {@link JsonSanitizer#sanitize(String)} for workloads that
+ * sanitize the same inputs over and over, like configuration blobs.
+ * <p>
+ * Entries are found by the input's hash code and length, and the input is
+ * compared on a hit, so inputs that collide are never confused.
+ * The cache is bounded by the number of characters it retains, counting
+ * the input and, when sanitizing changed it, the output.  It is split into
+ * stripes that each hold an equal share and evict their least recently
+ * used entries, so threads looking up different inputs rarely contend.
+ * Inputs too big for a stripe are sanitized but not retained.
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class JsonSanitizerCache {
+  private static final int DEFAULT_STRIPE_COUNT = 16;
+
+  private final int maximumNestingDepth;
+  private final OutputProfile profile;
+  private final Stripe[] stripes;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * A cache of sanitized output that satisfies the guarantees of
+   * {@link OutputProfile#EMBEDDABLE}.
+   *
+   * @param maximumRetainedChars the bound on the UTF-16 code-units the cache
+   *     retains across all entries.
+   */
+  public JsonSanitizerCache(long maximumRetainedChars) {
+    this(maximumRetainedChars, JsonSanitizer.DEFAULT_NESTING_DEPTH,
+         OutputProfile.EMBEDDABLE);
+  }
+
+  /**
+   * @param maximumRetainedChars the bound on the UTF-16 code-units the cache
+   *     retains across all entries.
+   * @param maximumNestingDepth maximum nesting depth.
+   * @param profile the contexts in which the output will be used.
+   */
+  public JsonSanitizerCache(
+      long maximumRetainedChars, int maximumNestingDepth,
+      OutputProfile profile) {
+    this(maximumRetainedChars, maximumNestingDepth, profile,
+         DEFAULT_STRIPE_COUNT);
+  }
+
+  JsonSanitizerCache(
+      long maximumRetainedChars, int maximumNestingDepth,
+      OutputProfile profile, int stripeCount) {
+    if (maximumRetainedChars < 0) {
+      throw new IllegalArgumentException("" + maximumRetainedChars);
+    }
+    if (Integer.bitCount(stripeCount) != 1) {
+      throw new IllegalArgumentException("" + stripeCount);
+    }
+    this.maximumNestingDepth = maximumNestingDepth;
+    this.profile = profile;
+    this.stripes = new Stripe[stripeCount];
+    for (int i = 0; i < stripeCount; ++i) {
+      stripes[i] = new Stripe(maximumRetainedChars / stripeCount);
+    }
+  }
+
+  /**
+   * Same as {@link JsonSanitizer#sanitize(String, int, OutputProfile)} with
+   * this cache's nesting depth and profile, but returns a retained result
+   * when jsonish was sanitized before.
+   * Null input is treated as the JSON {@code null} and is neither retained
+   * nor counted as a hit or miss.
+   *
+   * @param jsonish JSON-like content.
+   * @return JSON that satisfies the guarantees of this cache's profile.
+   */
+  public String sanitize(@Nullable String jsonish) {
+    if (jsonish == null) {
+      return "null";
+    }
+    int hash = jsonish.hashCode();
+    long key = ((long) hash << 32) | jsonish.length();
+    // Spread the hash so that stripes do not depend only on its low bits.
+    int h = hash ^ (hash >>> 16);
+    Stripe stripe = stripes[(h ^ (h >>> 8)) & (stripes.length - 1)];
+
+    String cached = stripe.get(key, jsonish);
+    if (cached != null) {
+      hits.incrementAndGet();
+      return cached;
+    }
+    misses.incrementAndGet();
+    // Sanitize outside the lock so that slow inputs do not block others.
+    String sanitized = JsonSanitizer.sanitize(
+        jsonish, maximumNestingDepth, profile);
+    stripe.put(key, jsonish, sanitized);
+    return sanitized;
+  }
+
+  /** The number of calls to {@link #sanitize} that found a retained result. */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /** The number of calls to {@link #sanitize} that had to sanitize. */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /** The number of entries dropped to make room for others. */
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  /** The number of UTF-16 code-units currently retained. */
+  public long getRetainedChars() {
+    long total = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        total += stripe.retainedChars;
+      }
+    }
+    return total;
+  }
+
+  /** Drops all entries.  Statistics are not reset. */
+  public void clear() {
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        stripe.entries.clear();
+        stripe.retainedChars = 0;
+      }
+    }
+  }
+
+
+  private static final class Entry {
+    final String input;
+    final String output;
+
+    Entry(String input, String output) {
+      this.input = input;
+      this.output = output;
+    }
+
+    long size() {
+      // Unchanged inputs are returned as is, so cost nothing extra.
+      return input.length() + (output != input ? output.length() : 0);
+    }
+  }
+
+  /** An LRU map guarded by its own lock. */
+  private final class Stripe {
+    final long maximumRetainedChars;
+    final LinkedHashMap<Long, Entry> entries =
+        new LinkedHashMap<Long, Entry>(16, 0.75f, true);
+    long retainedChars;
+
+    Stripe(long maximumRetainedChars) {
+      this.maximumRetainedChars = maximumRetainedChars;
+    }
+
+    synchronized @Nullable String get(long key, String input) {
+      Entry e = entries.get(key);
+      // Verify, since distinct inputs can share a hash code and length.
+      if (e != null && (e.input == input || e.input.equals(input))) {
+        return e.output;
+      }
+      return null;
+    }
+
+    synchronized void put(long key, String input, String output) {
+      Entry e = new Entry(input, output);
+      long size = e.size();
+      if (size > maximumRetainedChars) { return; }
+      Entry old = entries.put(key, e);
+      // A colliding input replaces the older one.
+      if (old != null) { retainedChars -= old.size(); }
+      retainedChars += size;
+      Iterator<Entry> it = entries.values().iterator();
+      while (retainedChars > maximumRetainedChars) {
+        Entry eldest = it.next();
+        it.remove();
+        retainedChars -= eldest.size();
+        evictions.incrementAndGet();
+      }
+    }
+  }
+}
@@ -0,0 +1,279 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+/**
+ * A read-only view of a value in sanitized JSON as returned by
+ * {@link JsonSanitizer#parse}.
+ * <p>
+ * A value is just a position on the tape of a {@link JsonIndex}, so the
+ * whole tree costs two {@code int}s per token, and values are created only
+ * as they are visited.
+ * Strings are decoded and numbers parsed only when asked for.
+ * <p>
+ * Iterating over an object or array steps from each value to the next on
+ * the tape, so visiting every member takes time linear in the container's
+ * length, whereas {@link #get(int)} and {@link #size} walk from the first.
+ */
+public final class JsonValue implements Iterable<JsonValue> {
+
+  /** The kinds of JSON values. */
+  public enum Type {
+    /** A JSON object: <code>{...}</code>. */
+    OBJECT,
+    /** A JSON array: {@code [...]}. */
+    ARRAY,
+    /** A JSON string: {@code "..."}. */
+    STRING,
+    /** A JSON number. */
+    NUMBER,
+    /** {@code true} or {@code false}. */
+    BOOLEAN,
+    /** {@code null}. */
+    NULL,
+    ;
+  }
+
+  private final JsonIndex index;
+  private final int token;
+  private final Type type;
+  /** The member name's position on the tape, or -1 if not a member value. */
+  private final int keyToken;
+
+  JsonValue(JsonIndex index, int token) {
+    this(index, token, -1);
+  }
+
+  private JsonValue(JsonIndex index, int token, int keyToken) {
+    this.index = index;
+    this.token = token;
+    this.keyToken = keyToken;
+    switch (index.getJson().charAt(index.getStart(token))) {
+      case '{': type = Type.OBJECT; break;
+      case '[': type = Type.ARRAY; break;
+      case '"': type = Type.STRING; break;
+      case 't': case 'f': type = Type.BOOLEAN; break;
+      case 'n': type = Type.NULL; break;
+      case '}': case ']':
+        throw new IllegalArgumentException("not a value: " + token);
+      default: type = Type.NUMBER; break;
+    }
+  }
+
+  /** The kind of value. */
+  public Type getType() {
+    return type;
+  }
+
+  /** The index that this is a view of. */
+  public JsonIndex getIndex() {
+    return index;
+  }
+
+  /** The position of this value's first token on the index's tape. */
+  public int getToken() {
+    return token;
+  }
+
+  /**
+   * The number of members of an object or elements of an array.
+   * This walks the container, so callers that visit each value should
+   * iterate instead.
+   * @throws IllegalStateException if this is not an object or array.
+   */
+  public int size() {
+    requireContainer();
+    return index.getSize(token);
+  }
+
+  /**
+   * The i-th element of an array or the value of the i-th member of an
+   * object.
+   * This walks past the i values before it, so callers that visit each
+   * value should iterate instead.
+   * @throws IllegalStateException if this is not an object or array.
+   * @throws IndexOutOfBoundsException if i is not less than {@link #size}.
+   */
+  public JsonValue get(int i) {
+    int t = memberToken(i);
+    return type == Type.OBJECT
+        ? new JsonValue(index, t + 1, t) : new JsonValue(index, t);
+  }
+
+  /**
+   * The name of the i-th member of an object.
+   * @throws IllegalStateException if this is not an object.
+   * @throws IndexOutOfBoundsException if i is not less than {@link #size}.
+   */
+  public String getKey(int i) {
+    require(Type.OBJECT);
+    int key = memberToken(i);
+    return JsonIndex.decodeString(
+        index.getJson(), index.getStart(key), index.getEnd(key));
+  }
+
+  /**
+   * The value of the named member of an object, or null if there is no such
+   * member.
+   * If there are multiple members with that name, this is the last, which
+   * is the one that {@code JSON.parse} keeps.
+   * @throws IllegalStateException if this is not an object.
+   */
+  public @Nullable JsonValue get(String name) {
+    require(Type.OBJECT);
+    int member = index.getMember(token, name);
+    return member >= 0 ? new JsonValue(index, member, member - 1) : null;
+  }
+
+  /**
+   * The name of the member whose value this is, or null if this value was
+   * not reached via an object.
+   */
+  public @Nullable String getKey() {
+    return keyToken >= 0
+        ? JsonIndex.decodeString(
+            index.getJson(), index.getStart(keyToken), index.getEnd(keyToken))
+        : null;
+  }
+
+  /**
+   * The elements of an array or the values of an object's members in order.
+   * Each step skips over the previous value on the tape, and values of
+   * members know their name via {@link #getKey()}.
+   * @throws IllegalStateException if this is not an object or array.
+   */
+  @Override
+  public Iterator<JsonValue> iterator() {
+    requireContainer();
+    final boolean isObject = type == Type.OBJECT;
+    final int close = index.getMatchingBracket(token);
+    return new Iterator<JsonValue>() {
+      private int next = token + 1;
+      @Override
+      public boolean hasNext() {
+        return next < close;
+      }
+      @Override
+      @SuppressWarnings("synthetic-access")
+      public JsonValue next() {
+        if (next >= close) {
+          throw new NoSuchElementException();
+        }
+        JsonValue value = isObject
+            ? new JsonValue(index, next + 1, next)
+            : new JsonValue(index, next);
+        next = index.skip(value.token);
+        return value;
+      }
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * The value of a string.
+   * @throws IllegalStateException if this is not a string.
+   */
+  public String getString() {
+    require(Type.STRING);
+    return JsonIndex.decodeString(
+        index.getJson(), index.getStart(token), index.getEnd(token));
+  }
+
+  /**
+   * The value of a boolean.
+   * @throws IllegalStateException if this is not a boolean.
+   */
+  public boolean getBoolean() {
+    require(Type.BOOLEAN);
+    return index.getJson().charAt(index.getStart(token)) == 't';
+  }
+
+  /**
+   * The value of a number.
+   * @throws IllegalStateException if this is not a number.
+   */
+  public BigDecimal getBigDecimal() {
+    return new BigDecimal(numberText());
+  }
+
+  /**
+   * The value of a number as the closest double.
+   * @throws IllegalStateException if this is not a number.
+   */
+  public double getDouble() {
+    return Double.parseDouble(numberText());
+  }
+
+  /**
+   * The value of a number which must be an integer that fits in a long.
+   * @throws IllegalStateException if this is not a number.
+   * @throws ArithmeticException if the number is not an integer that fits.
+   */
+  public long getLong() {
+    String text = numberText();
+    try {
+      return Long.parseLong(text);
+    } catch (@SuppressWarnings("unused") NumberFormatException ex) {
+      // Maybe a fraction or exponent like 1.0 or 1e3.
+      return new BigDecimal(text).longValueExact();
+    }
+  }
+
+  private String numberText() {
+    require(Type.NUMBER);
+    return index.getText(token).toString();
+  }
+
+  /** The position on the tape of the i-th element or member key. */
+  private int memberToken(int i) {
+    requireContainer();
+    int close = index.getMatchingBracket(token);
+    int t = token + 1;
+    for (int j = 0; j < i && t < close; ++j) {
+      t = index.skip(type == Type.OBJECT ? t + 1 : t);
+    }
+    if (i < 0 || t >= close) {
+      throw new IndexOutOfBoundsException("" + i);
+    }
+    return t;
+  }
+
+  private void requireContainer() {
+    if (type != Type.OBJECT && type != Type.ARRAY) {
+      throw new IllegalStateException(type.name());
+    }
+  }
+
+  private void require(Type t) {
+    if (type != t) {
+      throw new IllegalStateException(type.name());
+    }
+  }
+
+  /** The sanitized JSON text of this value. */
+  @Override
+  public String toString() {
+    return index.getText(token).toString();
+  }
+}
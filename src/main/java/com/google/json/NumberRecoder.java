@@ -0,0 +1,316 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Rewrites numbers into a reusable scratch buffer, which it exposes as a
+ * {@code CharSequence} of the last result.
+ * <p>
+ * Once its buffers have grown to fit the longest number seen, recoding
+ * allocates nothing, so a sanitizer can keep one around for inputs that are
+ * full of hex literals.
+ * <p>
+ * Instances are not thread-safe.
+ */
+final class NumberRecoder implements CharSequence {
+  private static final int BILLION = 1000000000;
+
+  /**
+   * The most significant digits to convert by folding them into base 10**9
+   * limbs, which takes time quadratic in the number of digits.
+   */
+  static final int MAX_LIMB_DIGITS = 256;
+
+  /** A non-negative integer in base 10**9, least significant limb first. */
+  private int[] limbs = new int[8];
+  private char[] out = new char[32];
+  private int outLength;
+  /** Index into the number being canonicalized of the next digit to copy. */
+  private int cursor;
+
+  /**
+   * Writes the decimal form of the unsigned integer whose digits are
+   * {@code src[start:end]}.
+   * <p>
+   * Hex and octal integers of more than {@link #MAX_LIMB_DIGITS}
+   * significant digits go through {@link BigInteger#toString()}, which
+   * since JDK 8 splits big integers by powers of ten and converts the
+   * halves recursively, in time less than quadratic in their length.
+   *
+   * @param base 8, 10, or 16.  The digits must all be valid in base.
+   */
+  void recode(CharSequence src, int start, int end, int base) {
+    while (start < end - 1 && src.charAt(start) == '0') { ++start; }
+    if (base == 10 && start != end) {
+      outLength = end - start;
+      ensureCapacity(outLength);
+      for (int i = 0; i < outLength; ++i) {
+        out[i] = src.charAt(start + i);
+      }
+      return;
+    }
+    if (end - start > MAX_LIMB_DIGITS) {
+      String decimal = toBigInteger(src, start, end, base).toString();
+      outLength = decimal.length();
+      ensureCapacity(outLength);
+      decimal.getChars(0, outLength, out, 0);
+      return;
+    }
+    // Fold in as many digits at once as fit in an int multiplier, so each
+    // chunk costs one pass over the limbs.
+    int digitsPerChunk = base == 16 ? 7 : 9;
+    int nLimbs = 0;
+    for (int i = start; i < end;) {
+      int chunkEnd = Math.min(end, i + digitsPerChunk);
+      int chunk = 0;
+      int multiplier = 1;
+      for (; i < chunkEnd; ++i) {
+        char ch = src.charAt(i);
+        chunk = chunk * base
+            + (ch <= '9' ? ch - '0' : (ch | 32) - ('a' - 10));
+        multiplier *= base;
+      }
+      long carry = chunk;
+      for (int k = 0; k < nLimbs; ++k) {
+        long limb = limbs[k] * (long) multiplier + carry;
+        limbs[k] = (int) (limb % BILLION);
+        carry = limb / BILLION;
+      }
+      for (; carry != 0; carry /= BILLION) {
+        if (nLimbs == limbs.length) {
+          limbs = Arrays.copyOf(limbs, nLimbs * 2);
+        }
+        limbs[nLimbs++] = (int) (carry % BILLION);
+      }
+    }
+
+    if (nLimbs == 0) {
+      outLength = 0;
+      out[outLength++] = '0';
+      return;
+    }
+    int top = limbs[nLimbs - 1];
+    int topDigits = 1;
+    for (int t = top; t >= 10; t /= 10) { ++topDigits; }
+    outLength = topDigits + 9 * (nLimbs - 1);
+    ensureCapacity(outLength);
+    // Fill from the right, zero-padding all but the top limb.
+    int pos = outLength;
+    for (int k = 0; k < nLimbs - 1; ++k) {
+      int limb = limbs[k];
+      for (int j = 0; j < 9; ++j, limb /= 10) {
+        out[--pos] = (char) ('0' + limb % 10);
+      }
+    }
+    for (int t = top; pos > 0; t /= 10) {
+      out[--pos] = (char) ('0' + t % 10);
+    }
+  }
+
+  /**
+   * Packs the bits of digits in a power of two base into a
+   * {@code BigInteger}, in time linear in their number.
+   */
+  private static BigInteger toBigInteger(
+      CharSequence src, int start, int end, int base) {
+    int bitsPerDigit = base == 16 ? 4 : 3;
+    long nBits = (end - start) * (long) bitsPerDigit;
+    byte[] magnitude = new byte[(int) ((nBits + 7) / 8)];
+    // Fill big-endian bytes from the least significant digit.
+    int acc = 0;
+    int accBits = 0;
+    int pos = magnitude.length;
+    for (int i = end; --i >= start;) {
+      char ch = src.charAt(i);
+      acc |= (ch <= '9' ? ch - '0' : (ch | 32) - ('a' - 10)) << accBits;
+      accBits += bitsPerDigit;
+      if (accBits >= 8) {
+        magnitude[--pos] = (byte) acc;
+        acc >>>= 8;
+        accBits -= 8;
+      }
+    }
+    if (accBits != 0) { magnitude[--pos] = (byte) acc; }
+    return new BigInteger(1, magnitude);
+  }
+
+  /**
+   * Writes the canonical JS string form of the JSON number
+   * {@code number[start:end]}, which is also a valid JSON number.
+   *
+   * @return true when the number could be canonicalized.  When false, this
+   *     sequence is unspecified.
+   */
+  boolean canonicalize(CharSequence number, int start, int end) {
+    // Rather than editing the number in several passes, find its parts in
+    // one pass and then write the result in another, following
+    // EcmaScript 5 section 9.8.1 : ToString Applied to the Number Type
+    // http://es5.github.com/#x9.8.1
+
+    int pos = start;
+    boolean negative = number.charAt(pos) == '-';
+    if (negative) { ++pos; }
+
+    // Find s, the decimal digits of the number without leading or trailing
+    // zeroes, by index into the digit sequence with any '.' skipped.
+    int nIntDigits = -1;
+    int nDigits = 0;
+    int firstNonZero = -1;
+    int firstNonZeroPos = -1;
+    int lastNonZero = -1;
+    for (; pos < end; ++pos) {
+      char ch = number.charAt(pos);
+      if (ch == '.') {
+        nIntDigits = nDigits;
+      } else if ('0' <= ch && ch <= '9') {
+        if (ch != '0') {
+          if (firstNonZero < 0) {
+            firstNonZero = nDigits;
+            firstNonZeroPos = pos;
+          }
+          lastNonZero = nDigits;
+        }
+        ++nDigits;
+      } else {
+        break;
+      }
+    }
+    if (nIntDigits < 0) { nIntDigits = nDigits; }
+
+    long exp = 0;
+    if (pos < end) {
+      assert 'e' == (number.charAt(pos) | 32);
+      ++pos;
+      boolean negativeExp = false;
+      switch (number.charAt(pos)) {
+        case '-': negativeExp = true; ++pos; break;
+        case '+': ++pos; break;
+        default: break;
+      }
+      for (; pos < end; ++pos) {
+        exp = exp * 10 + (number.charAt(pos) - '0');
+        if (exp > Integer.MAX_VALUE + 1L) {
+          // JSON does not place limits on the range of representable numbers
+          // but nor does it allow bare numbers as keys.
+          return false;
+        }
+      }
+      if (negativeExp) { exp = -exp; }
+      if (exp > Integer.MAX_VALUE) { return false; }
+    }
+
+    outLength = 0;
+    // 2. If m is +0 or -0, return the String "0".
+    if (firstNonZero < 0) {
+      out[outLength++] = '0';
+      return true;
+    }
+
+    // 5. let n, k, and s be integers such that k >= 1, 10k-1 <= s < 10k, the
+    // Number value for s * 10n-k is m, and k is as small as possible.
+    int k = lastNonZero - firstNonZero + 1;
+    long n = exp + nIntDigits - firstNonZero;
+    ensureCapacity(k + 64);
+    cursor = firstNonZeroPos;
+
+    // 3. If m is less than zero, return the String concatenation of the
+    //    String "-" and ToString(-m).
+    if (negative) { out[outLength++] = '-'; }
+
+    if (k <= n && n <= 21) {
+      // 6. The k digits of s followed by n-k occurrences of '0'.
+      copyDigits(number, k);
+      for (long i = k; i < n; ++i) { out[outLength++] = '0'; }
+    } else if (0 < n && n <= 21) {
+      // 7. The most significant n digits of s, followed by '.', followed by
+      // the remaining k-n digits.
+      copyDigits(number, (int) n);
+      out[outLength++] = '.';
+      copyDigits(number, k - (int) n);
+    } else if (-6 < n && n <= 0) {
+      // 8. '0', followed by '.', followed by -n occurrences of '0', followed
+      // by the k digits of s.
+      out[outLength++] = '0';
+      out[outLength++] = '.';
+      for (long i = n; i < 0; ++i) { out[outLength++] = '0'; }
+      copyDigits(number, k);
+    } else {
+      // 9. and 10. The most significant digit of s, followed by '.' and the
+      // remaining k-1 digits if k > 1, followed by 'e', followed by '+' or
+      // '-' according to the sign of n-1, followed by abs(n-1).
+      copyDigits(number, 1);
+      if (k > 1) {
+        out[outLength++] = '.';
+        copyDigits(number, k - 1);
+      }
+      long nLess1 = n - 1;
+      out[outLength++] = 'e';
+      out[outLength++] = nLess1 < 0 ? '-' : '+';
+      appendDecimal(Math.abs(nLess1));
+    }
+    return true;
+  }
+
+  /** Copies count digits from number starting at cursor skipping any '.'. */
+  private void copyDigits(CharSequence number, int count) {
+    for (int i = 0; i < count; ++i) {
+      char ch = number.charAt(cursor++);
+      if (ch == '.') { ch = number.charAt(cursor++); }
+      out[outLength++] = ch;
+    }
+  }
+
+  private void appendDecimal(long value) {
+    int nDigits = 1;
+    for (long v = value; v >= 10; v /= 10) { ++nDigits; }
+    outLength += nDigits;
+    long v = value;
+    for (int pos = outLength; --nDigits >= 0; v /= 10) {
+      out[--pos] = (char) ('0' + v % 10);
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (out.length < capacity) {
+      out = Arrays.copyOf(out, Math.max(capacity, out.length * 2));
+    }
+  }
+
+  @Override
+  public int length() {
+    return outLength;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= outLength) {
+      throw new IndexOutOfBoundsException("" + index);
+    }
+    return out[index];
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return toString().substring(start, end);
+  }
+
+  @Override
+  public String toString() {
+    return new String(out, 0, outLength);
+  }
+}
@@ -0,0 +1,254 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.nio.CharBuffer;
+
+import javax.annotation.Nullable;
+
+/**
+ * Receives the sanitized form of a prefix of the input to
+ * {@link JsonSanitizer}.
+ * <p>
+ * The sanitizer only ever appends, except that it may look back at and
+ * truncate a short suffix, as when removing a trailing comma or rewriting a
+ * number into canonical form.
+ */
+abstract class OutputBuffer {
+
+  /** Appends {@code jsonish[start:end]}. */
+  abstract void appendInput(int start, int end);
+
+  abstract void append(char ch);
+
+  abstract void append(CharSequence s);
+
+  abstract int length();
+
+  abstract char charAt(int i);
+
+  /** Truncates the output.  newLength must be at most {@link #length}. */
+  abstract void setLength(int newLength);
+
+  /** The output so far. */
+  abstract CharSequence toCharSequence();
+
+
+  /** Copies everything onto a {@code StringBuilder}. */
+  static final class OfStringBuilder extends OutputBuffer {
+    private final StringBuilder sb;
+    private final CharSequence jsonish;
+    private final @Nullable char[] jsonishChars;
+    private final int jsonishCharsOffset;
+
+    OfStringBuilder(
+        CharSequence jsonish, @Nullable char[] jsonishChars,
+        int jsonishCharsOffset, int capacity) {
+      this.sb = new StringBuilder(capacity);
+      this.jsonish = jsonish;
+      this.jsonishChars = jsonishChars;
+      this.jsonishCharsOffset = jsonishCharsOffset;
+    }
+
+    @Override
+    void appendInput(int start, int end) {
+      if (jsonishChars != null) {
+        sb.append(jsonishChars, jsonishCharsOffset + start, end - start);
+      } else {
+        sb.append(jsonish, start, end);
+      }
+    }
+
+    @Override
+    void append(char ch) {
+      sb.append(ch);
+    }
+
+    @Override
+    void append(CharSequence s) {
+      sb.append(s);
+    }
+
+    @Override
+    int length() {
+      return sb.length();
+    }
+
+    @Override
+    char charAt(int i) {
+      return sb.charAt(i);
+    }
+
+    @Override
+    void setLength(int newLength) {
+      sb.setLength(newLength);
+    }
+
+    @Override
+    CharSequence toCharSequence() {
+      return sb;
+    }
+
+    @Override
+    public String toString() {
+      return sb.toString();
+    }
+  }
+
+
+  /**
+   * Writes output over the input array.
+   * <p>
+   * Output is written into the array only where the input has already been
+   * consumed, so the write cursor trails the read cursor.  When a rewrite
+   * grows the text past the read cursor, the excess waits on a separate
+   * pending buffer until the read cursor moves far enough ahead.
+   */
+  static final class InPlace extends OutputBuffer {
+    private final char[] buf;
+    private final int off;
+    /** The length of the input. */
+    private final int len;
+    /**
+     * The maximum length of output that can be stored in buf, at least
+     * {@link #len}.
+     */
+    private final int capacity;
+    /** Output [0:flushed] is stored in buf[off:off+flushed]. */
+    private int flushed;
+    /**
+     * Output [flushed:] which cannot yet be stored in buf is
+     * pending[pendingStart:].  Flushed chars are only deleted from the front
+     * once they are at least half of pending, so that flushing a little at a
+     * time does not shift the rest each time.
+     */
+    private final StringBuilder pending = new StringBuilder();
+    private int pendingStart;
+    /**
+     * buf[off:off+writeLimit] contains no input that the sanitizer will
+     * read again.
+     */
+    private int writeLimit;
+
+    InPlace(char[] buf, int off, int len, int capacity) {
+      assert len <= capacity && off + capacity <= buf.length;
+      this.buf = buf;
+      this.off = off;
+      this.len = len;
+      this.capacity = capacity;
+    }
+
+    /**
+     * Called by the sanitizer to indicate that it will not read any input
+     * before pos again.
+     */
+    void discardInputBefore(int pos) {
+      // Once all the input has been consumed, we can use any spare room after
+      // it that the caller allowed.
+      int newWriteLimit = pos >= len ? capacity : pos;
+      if (newWriteLimit > writeLimit) {
+        writeLimit = newWriteLimit;
+        flush();
+      }
+    }
+
+    private void flush() {
+      int nPending = pending.length() - pendingStart;
+      if (nPending != 0) {
+        int n = Math.min(nPending, writeLimit - flushed);
+        if (n > 0) {
+          pending.getChars(pendingStart, pendingStart + n, buf, off + flushed);
+          pendingStart += n;
+          flushed += n;
+          if (pendingStart == pending.length()) {
+            pending.setLength(0);
+            pendingStart = 0;
+          } else if (pendingStart >= pending.length() - pendingStart) {
+            pending.delete(0, pendingStart);
+            pendingStart = 0;
+          }
+        }
+      }
+    }
+
+    @Override
+    void appendInput(int start, int end) {
+      if (pending.length() == pendingStart) {
+        int n = Math.min(end - start, writeLimit - flushed);
+        if (n > 0) {
+          // start >= writeLimit so this only moves content leftwards.
+          System.arraycopy(buf, off + start, buf, off + flushed, n);
+          flushed += n;
+          start += n;
+        }
+      }
+      pending.append(buf, off + start, end - start);
+    }
+
+    @Override
+    void append(char ch) {
+      pending.append(ch);
+      flush();
+    }
+
+    @Override
+    void append(CharSequence s) {
+      pending.append(s);
+      flush();
+    }
+
+    @Override
+    int length() {
+      return flushed + pending.length() - pendingStart;
+    }
+
+    @Override
+    char charAt(int i) {
+      return i < flushed
+          ? buf[off + i] : pending.charAt(pendingStart + i - flushed);
+    }
+
+    @Override
+    void setLength(int newLength) {
+      if (newLength >= flushed) {
+        pending.setLength(pendingStart + newLength - flushed);
+      } else {
+        pending.setLength(0);
+        pendingStart = 0;
+        flushed = newLength;
+      }
+    }
+
+    /**
+     * The output which is stored in buf starting at off if it fits, or in a
+     * new array otherwise.
+     */
+    @Override
+    CharBuffer toCharSequence() {
+      if (pending.length() == pendingStart) {
+        return CharBuffer.wrap(buf, off, flushed);
+      }
+      char[] out = new char[length()];
+      System.arraycopy(buf, off, out, 0, flushed);
+      pending.getChars(pendingStart, pending.length(), out, flushed);
+      return CharBuffer.wrap(out);
+    }
+
+    @Override
+    public String toString() {
+      return toCharSequence().toString();
+    }
+  }
+}
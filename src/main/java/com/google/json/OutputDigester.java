@@ -0,0 +1,154 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.security.MessageDigest;
+import java.util.zip.Checksum;
+
+import javax.annotation.Nullable;
+
+/**
+ * Feeds the UTF-8 encoding of the sanitized output to a
+ * {@link MessageDigest} or {@link Checksum} as the sanitizer commits to it.
+ * <p>
+ * Output is final up to the end of each token that the sanitizer reports,
+ * so this encodes everything up to there into a block, and passes the block
+ * on whenever it fills up.
+ * The result is the same as digesting {@code output.getBytes("UTF-8")}.
+ */
+final class OutputDigester implements JsonHandler {
+  private final @Nullable MessageDigest digest;
+  private final @Nullable Checksum checksum;
+  private final byte[] block = new byte[4096];
+  private int blockLength;
+  /** The length of the output that has been encoded. */
+  private int digested;
+  /** A high surrogate whose low surrogate has not been seen yet, or 0. */
+  private char pendingHighSurrogate;
+
+  OutputDigester(MessageDigest digest) {
+    this.digest = digest;
+    this.checksum = null;
+  }
+
+  OutputDigester(Checksum checksum) {
+    this.digest = null;
+    this.checksum = checksum;
+  }
+
+  /** Encodes {@code output[digested:end]}. */
+  private void advance(CharSequence output, int end) {
+    for (int i = digested; i < end; ++i) {
+      char ch = output.charAt(i);
+      if (blockLength + 4 > block.length) { flush(); }
+      if (pendingHighSurrogate != 0) {
+        char hi = pendingHighSurrogate;
+        pendingHighSurrogate = 0;
+        if (Character.isLowSurrogate(ch)) {
+          int cp = Character.toCodePoint(hi, ch);
+          block[blockLength++] = (byte) (0xf0 | (cp >> 18));
+          block[blockLength++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+          block[blockLength++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+          block[blockLength++] = (byte) (0x80 | (cp & 0x3f));
+          continue;
+        }
+        // Like String.getBytes, encode an orphaned surrogate as '?'.
+        block[blockLength++] = '?';
+        if (blockLength + 4 > block.length) { flush(); }
+      }
+      if (ch < 0x80) {
+        block[blockLength++] = (byte) ch;
+      } else if (ch < 0x800) {
+        block[blockLength++] = (byte) (0xc0 | (ch >> 6));
+        block[blockLength++] = (byte) (0x80 | (ch & 0x3f));
+      } else if (Character.isHighSurrogate(ch)) {
+        pendingHighSurrogate = ch;
+      } else if (Character.isLowSurrogate(ch)) {
+        block[blockLength++] = '?';
+      } else {
+        block[blockLength++] = (byte) (0xe0 | (ch >> 12));
+        block[blockLength++] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+        block[blockLength++] = (byte) (0x80 | (ch & 0x3f));
+      }
+    }
+    if (end > digested) { digested = end; }
+  }
+
+  private void flush() {
+    if (blockLength != 0) {
+      if (digest != null) {
+        digest.update(block, 0, blockLength);
+      } else {
+        checksum.update(block, 0, blockLength);
+      }
+      blockLength = 0;
+    }
+  }
+
+  /** Encodes the rest of the complete output and passes it on. */
+  void finish(CharSequence output) {
+    advance(output, output.length());
+    if (pendingHighSurrogate != 0) {
+      pendingHighSurrogate = 0;
+      block[blockLength++] = '?';
+    }
+    flush();
+  }
+
+  @Override
+  public void startObject(CharSequence json, int start, int end) {
+    advance(json, end);
+  }
+
+  @Override
+  public void endObject(CharSequence json, int start, int end) {
+    advance(json, end);
+  }
+
+  @Override
+  public void startArray(CharSequence json, int start, int end) {
+    advance(json, end);
+  }
+
+  @Override
+  public void endArray(CharSequence json, int start, int end) {
+    advance(json, end);
+  }
+
+  @Override
+  public void key(CharSequence json, int start, int end) {
+    advance(json, end);
+  }
+
+  @Override
+  public void stringValue(CharSequence json, int start, int end) {
+    advance(json, end);
+  }
+
+  @Override
+  public void numberValue(CharSequence json, int start, int end) {
+    advance(json, end);
+  }
+
+  @Override
+  public void booleanValue(CharSequence json, int start, int end) {
+    advance(json, end);
+  }
+
+  @Override
+  public void nullValue(CharSequence json, int start, int end) {
+    advance(json, end);
+  }
+}
@@ -0,0 +1,190 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.util.Arrays;
+
+/**
+ * Follows {@link JsonHandler} events to keep track of which of a set of paths
+ * match the current position without decoding keys that no path needs.
+ * <p>
+ * Callers call {@link #startValue} as each value starts, then
+ * {@link #open} if it is an object or array, and {@link #close} when it
+ * ends, and {@link #key} for each property name.
+ */
+final class PathTracker {
+  /** The steps of each path.  Each is a String name or Integer index. */
+  private final Object[][] steps;
+  private final int nPaths;
+
+  // Per open container, indexed by depth.
+  /** alive[d][p] when path p matches the container at depth d. */
+  private boolean[][] alive = new boolean[8][];
+  /** The paths that match the member whose key was seen last. */
+  private boolean[][] memberAlive = new boolean[8][];
+  private boolean[] isObject = new boolean[8];
+  private int[] elementCount = new int[8];
+  private int depth;
+  /** The paths that match the value being started. */
+  private final boolean[] valueAlive;
+
+  /**
+   * @param paths simple paths or JSON Pointers.
+   * @throws IllegalArgumentException if a path is malformed.
+   */
+  PathTracker(String... paths) {
+    this.nPaths = paths.length;
+    this.steps = new Object[nPaths][];
+    for (int p = 0; p < nPaths; ++p) {
+      String path = paths[p];
+      steps[p] = path.startsWith("$")
+          ? JsonPath.parse(path) : JsonPath.parsePointer(path);
+    }
+    this.valueAlive = new boolean[nPaths];
+  }
+
+  /** The number of open containers. */
+  int depth() {
+    return depth;
+  }
+
+  /** The number of steps in path p. */
+  int length(int p) {
+    return steps[p].length;
+  }
+
+  /**
+   * Called as a value starts.
+   * @return true if any path matches the value or something inside it.
+   */
+  boolean startValue() {
+    if (depth == 0) {
+      Arrays.fill(valueAlive, true);
+      return nPaths != 0;
+    }
+    int d = depth - 1;
+    boolean any = false;
+    if (isObject[d]) {
+      System.arraycopy(memberAlive[d], 0, valueAlive, 0, nPaths);
+      for (int p = 0; p < nPaths; ++p) { any |= valueAlive[p]; }
+    } else {
+      int index = elementCount[d]++;
+      boolean[] parentAlive = alive[d];
+      for (int p = 0; p < nPaths; ++p) {
+        boolean match = false;
+        if (parentAlive[p]) {
+          Object step = steps[p][d];
+          match = step instanceof Integer
+              ? ((Integer) step).intValue() == index
+              : isIndex((String) step, index);
+        }
+        valueAlive[p] = match;
+        any |= match;
+      }
+    }
+    return any;
+  }
+
+  /** True if path p ends at the value last passed to {@link #startValue}. */
+  boolean endsAtValue(int p) {
+    return valueAlive[p] && steps[p].length == depth;
+  }
+
+  /**
+   * Called after {@link #startValue} when the value is an object or array.
+   */
+  void open(boolean object) {
+    int d = depth;
+    if (d == alive.length) {
+      int newLength = d * 2;
+      alive = Arrays.copyOf(alive, newLength);
+      memberAlive = Arrays.copyOf(memberAlive, newLength);
+      isObject = Arrays.copyOf(isObject, newLength);
+      elementCount = Arrays.copyOf(elementCount, newLength);
+    }
+    if (alive[d] == null) {
+      alive[d] = new boolean[nPaths];
+      memberAlive[d] = new boolean[nPaths];
+    }
+    boolean[] containerAlive = alive[d];
+    for (int p = 0; p < nPaths; ++p) {
+      containerAlive[p] = valueAlive[p] && steps[p].length > d;
+    }
+    Arrays.fill(memberAlive[d], false);
+    isObject[d] = object;
+    elementCount[d] = 0;
+    depth = d + 1;
+  }
+
+  /** Called when an object or array ends. */
+  void close() {
+    --depth;
+  }
+
+  /**
+   * Called for a property name.
+   * @return true if a path ends at the member with that name.
+   */
+  boolean key(CharSequence json, int start, int end) {
+    int d = depth - 1;
+    boolean[] parentAlive = alive[d];
+    boolean[] keyAlive = memberAlive[d];
+    boolean ends = false;
+    for (int p = 0; p < nPaths; ++p) {
+      boolean match = false;
+      if (parentAlive[p]) {
+        Object step = steps[p][d];
+        match = step instanceof String
+            && JsonIndex.stringEquals(json, start, end, (String) step);
+        ends |= match && steps[p].length == depth;
+      }
+      keyAlive[p] = match;
+    }
+    return ends;
+  }
+
+  /**
+   * True if path p matches the member whose key was last passed to
+   * {@link #key}.
+   */
+  boolean matchesMember(int p) {
+    return memberAlive[depth - 1][p];
+  }
+
+  /**
+   * The depth of the outermost open object, or -1 if all the open
+   * containers are arrays.
+   */
+  int outermostObject() {
+    for (int d = 0; d < depth; ++d) {
+      if (isObject[d]) { return d; }
+    }
+    return -1;
+  }
+
+  private static boolean isIndex(String step, int index) {
+    int n = step.length();
+    if (n == 0 || n > 10 || (n > 1 && step.charAt(0) == '0')) {
+      return false;
+    }
+    long value = 0;
+    for (int i = 0; i < n; ++i) {
+      char ch = step.charAt(i);
+      if (ch < '0' || ch > '9') { return false; }
+      value = value * 10 + (ch - '0');
+    }
+    return value == index;
+  }
+}
@@ -0,0 +1,50 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import javax.annotation.Nullable;
+
+/**
+ * Reports a call to {@link JsonSanitizer} to JDK Flight Recorder.
+ * <p>
+ * This version is for JDKs that predate {@code jdk.jfr} and reports
+ * nothing.  The multi-release jar contains a version for Java 11 and later
+ * that is a {@code jdk.jfr.Event} with the same API.
+ */
+final class SanitizeEvent {
+  private SanitizeEvent() {
+    // Never recording.
+  }
+
+  /** An event that has started timing, or null if it is not enabled. */
+  static @Nullable SanitizeEvent start() {
+    return null;
+  }
+
+  /**
+   * Stops timing and records the event if it took long enough.
+   *
+   * @param inputLength the length of the JSON-like content.
+   * @param outputLength the length of the sanitized output.
+   * @param fastPath true if the input was already sanitized.
+   * @param rewrites the number of places where the output differs.
+   * @param maxDepth the deepest nesting of brackets.
+   */
+  void finish(
+      int inputLength, int outputLength, boolean fastPath, int rewrites,
+      int maxDepth) {
+    // Never recording.
+  }
+}
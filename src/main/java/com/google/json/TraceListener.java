@@ -0,0 +1,64 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.json;
+
+import com.google.json.JsonSanitizer.State;
+
+/**
+ * Receives a record of each decision the sanitizer makes, for diagnosing
+ * why a particular input was sanitized the way it was.
+ * <p>
+ * Install one with {@link JsonSanitizer#setTraceListener} to trace a sample
+ * of calls, and see {@link TraceRecorder} for one that keeps the most recent
+ * events in a fixed amount of memory.
+ * <p>
+ * Listeners are called on the sanitizing thread, so one that is installed
+ * globally must be thread-safe, and it should be quick since it slows the
+ * calls that are sampled.  It must not throw.
+ */
+public interface TraceListener {
+  /**
+   * Called for each token, and for each character that is not part of a
+   * token and is not white-space, after the sanitizer has dealt with it.
+   *
+   * @param call identifies the call to the sanitizer.  Calls are numbered
+   *     in the order they start.
+   * @param position the index into the input of the start of the token, or
+   *     the length of the input for fixes made at the end, as when closing
+   *     unclosed brackets.
+   * @param ch the first character of the token, or -1 at the end of input.
+   * @param state the state before the token.
+   * @param action what the sanitizer did with the token.
+   */
+  void token(long call, int position, int ch, State state, Action action);
+
+  /** What the sanitizer did with a token. */
+  public enum Action {
+    /** The token was copied to the output unchanged. */
+    KEPT,
+    /**
+     * Content was inserted, as when a missing value or close bracket is
+     * supplied, but no input was changed.
+     */
+    INSERTED,
+    /** Parts of the token were changed, as when a string is re-quoted. */
+    REWRITTEN,
+    /**
+     * The token does not appear in the output, as for comments and
+     * grouping parentheses.
+     */
+    REMOVED,
+    ;
+  }
+}
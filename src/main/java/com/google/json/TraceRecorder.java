@@ -0,0 +1,163 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.json;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import com.google.json.JsonSanitizer.State;
+
+/**
+ * A {@link TraceListener} that keeps the most recent events in a ring
+ * buffer, so that it can stay installed on a live server and be read when
+ * a problem input turns up.
+ * <p>
+ * Events are stored in parallel arrays that are allocated once, so
+ * recording allocates nothing and memory use does not grow.
+ * <p>
+ * Instances are thread-safe.
+ */
+public final class TraceRecorder implements TraceListener {
+  private static final State[] STATES = State.values();
+  private static final Action[] ACTIONS = Action.values();
+
+  private final long[] calls;
+  private final int[] positions;
+  private final int[] chars;
+  private final byte[] states;
+  private final byte[] actions;
+  /** The number of events ever recorded. */
+  private long count;
+
+  /**
+   * @param capacity the number of events to keep.
+   */
+  public TraceRecorder(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity " + capacity);
+    }
+    this.calls = new long[capacity];
+    this.positions = new int[capacity];
+    this.chars = new int[capacity];
+    this.states = new byte[capacity];
+    this.actions = new byte[capacity];
+  }
+
+  public synchronized void token(
+      long call, int position, int ch, State state, Action action) {
+    int i = (int) (count++ % calls.length);
+    calls[i] = call;
+    positions[i] = position;
+    chars[i] = ch;
+    states[i] = (byte) state.ordinal();
+    actions[i] = (byte) action.ordinal();
+  }
+
+  /** The number of events recorded, including those since overwritten. */
+  public synchronized long getEventCount() {
+    return count;
+  }
+
+  /** The retained events, oldest first. */
+  public synchronized List<Event> getEvents() {
+    int capacity = calls.length;
+    int n = (int) Math.min(count, capacity);
+    List<Event> events = new ArrayList<Event>(n);
+    for (long k = count - n; k < count; ++k) {
+      int i = (int) (k % capacity);
+      events.add(new Event(
+          calls[i], positions[i], chars[i], STATES[states[i]],
+          ACTIONS[actions[i]]));
+    }
+    return events;
+  }
+
+  /** The retained events for the given call, oldest first. */
+  public List<Event> getEvents(long call) {
+    List<Event> events = new ArrayList<Event>();
+    for (Event e : getEvents()) {
+      if (e.getCall() == call) { events.add(e); }
+    }
+    return events;
+  }
+
+  /** Discards all events. */
+  public synchronized void clear() {
+    count = 0;
+  }
+
+  /** A call to {@link TraceListener#token}. */
+  public static final class Event {
+    private final long call;
+    private final int position;
+    private final int ch;
+    private final State state;
+    private final Action action;
+
+    Event(long call, int position, int ch, State state, Action action) {
+      this.call = call;
+      this.position = position;
+      this.ch = ch;
+      this.state = state;
+      this.action = action;
+    }
+
+    /** Identifies the call to the sanitizer. */
+    public long getCall() { return call; }
+
+    /** The index into the input of the start of the token. */
+    public int getPosition() { return position; }
+
+    /** The first character of the token, or -1 at the end of input. */
+    public int getChar() { return ch; }
+
+    /** The state before the token. */
+    public State getState() { return state; }
+
+    /** What the sanitizer did with the token. */
+    public Action getAction() { return action; }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (!(o instanceof Event)) { return false; }
+      Event that = (Event) o;
+      return this.call == that.call && this.position == that.position
+          && this.ch == that.ch && this.state == that.state
+          && this.action == that.action;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) call + 31 * (position + 31 * (ch + 31 * (
+          state.hashCode() + 31 * action.hashCode())));
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append('#').append(call).append(" @").append(position).append(' ');
+      if (ch < 0) {
+        sb.append("EOF");
+      } else if (ch < 0x20 || ch >= 0x7f) {
+        sb.append(String.format("U+%04X", ch));
+      } else {
+        sb.append('\'').append((char) ch).append('\'');
+      }
+      return sb.append(' ').append(state).append(' ').append(action)
+          .toString();
+    }
+  }
+}
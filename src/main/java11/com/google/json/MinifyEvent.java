@@ -0,0 +1,83 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import javax.annotation.Nullable;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Reports a call to {@link EvalMinifier} to JDK Flight Recorder.
+ * <p>
+ * Calls shorter than the threshold are not recorded.  It defaults to 1 ms
+ * and can be changed as for {@link SanitizeEvent} using the name
+ * {@code com.google.json.Minify}.
+ * The sanitizing that minifying does is reported separately as a
+ * {@code com.google.json.Sanitize} event.
+ * Callers check {@link FlightRecorderSupport#isInitialized} first, as for
+ * {@link SanitizeEvent}.
+ */
+@Name("com.google.json.Minify")
+@Label("JSON Minify")
+@Category("JSON Sanitizer")
+@Description("A call to EvalMinifier")
+@Threshold("1 ms")
+final class MinifyEvent extends Event {
+  @Label("Input Length")
+  @Description("UTF-16 code-units of JSON-like content")
+  int inputLength;
+
+  @Label("Output Length")
+  @Description("UTF-16 code-units of minified output")
+  int outputLength;
+
+  @Label("Pool Size")
+  @Description("Constants pooled into variables")
+  int poolSize;
+
+  @Label("Chars Saved")
+  @Description("UTF-16 code-units saved relative to the sanitized JSON")
+  int charsSaved;
+
+  private MinifyEvent() {
+    // Use start.
+  }
+
+  /** An event that has started timing, or null if it is not enabled. */
+  static @Nullable MinifyEvent start() {
+    MinifyEvent event = new MinifyEvent();
+    if (!event.isEnabled()) { return null; }
+    event.begin();
+    return event;
+  }
+
+  /** Stops timing and records the event if it took long enough. */
+  void finish(
+      int inputLength, int sanitizedLength, int outputLength, int poolSize) {
+    end();
+    if (shouldCommit()) {
+      this.inputLength = inputLength;
+      this.outputLength = outputLength;
+      this.poolSize = poolSize;
+      this.charsSaved = sanitizedLength - outputLength;
+      commit();
+    }
+  }
+}
@@ -0,0 +1,90 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import javax.annotation.Nullable;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Reports a call to {@link JsonSanitizer} to JDK Flight Recorder.
+ * <p>
+ * Calls shorter than the threshold are not recorded.  It defaults to 1 ms
+ * and can be changed like any other event setting, as by
+ * {@code com.google.json.Sanitize#threshold=10 ms} in a {@code .jfc} file
+ * or {@code recording.enable("com.google.json.Sanitize").withThreshold(d)}.
+ * <p>
+ * Loading any event class makes Flight Recorder set itself up, which takes
+ * a few hundred milliseconds, so callers check
+ * {@link FlightRecorderSupport#isInitialized} before calling {@link #start}.
+ */
+@Name("com.google.json.Sanitize")
+@Label("JSON Sanitize")
+@Category("JSON Sanitizer")
+@Description("A call to JsonSanitizer")
+@Threshold("1 ms")
+final class SanitizeEvent extends Event {
+  @Label("Input Length")
+  @Description("UTF-16 code-units of JSON-like content")
+  int inputLength;
+
+  @Label("Output Length")
+  @Description("UTF-16 code-units of sanitized output")
+  int outputLength;
+
+  @Label("Fast Path")
+  @Description("True if the input was already sanitized")
+  boolean fastPath;
+
+  @Label("Rewrites")
+  @Description("Places where the output differs from the input")
+  int rewrites;
+
+  @Label("Maximum Depth")
+  @Description("The deepest nesting of brackets")
+  int maxDepth;
+
+  private SanitizeEvent() {
+    // Use start.
+  }
+
+  /** An event that has started timing, or null if it is not enabled. */
+  static @Nullable SanitizeEvent start() {
+    SanitizeEvent event = new SanitizeEvent();
+    if (!event.isEnabled()) { return null; }
+    event.begin();
+    return event;
+  }
+
+  /** Stops timing and records the event if it took long enough. */
+  void finish(
+      int inputLength, int outputLength, boolean fastPath, int rewrites,
+      int maxDepth) {
+    end();
+    if (shouldCommit()) {
+      this.inputLength = inputLength;
+      this.outputLength = outputLength;
+      this.fastPath = fastPath;
+      this.rewrites = rewrites;
+      this.maxDepth = maxDepth;
+      commit();
+    }
+  }
+}
@@ -0,0 +1,183 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.nio.CharBuffer;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Checks how much memory sanitizing allocates, so that changes that make
+ * the fast path copy valid input, or make fixing input cost more than a
+ * few copies of it, fail the build.
+ * <p>
+ * Allocation is measured with
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)},
+ * and these tests pass vacuously on JVMs that do not support it.
+ */
+@SuppressWarnings("javadoc")
+public final class AllocationBudgetTest extends TestCase {
+
+  /**
+   * Bytes that a call on valid input may allocate regardless of input
+   * length: the sanitizer itself, its output view, and its stack of open
+   * brackets.
+   */
+  private static final long FIXED_BUDGET = 256;
+
+  /**
+   * Bytes that a call that rewrites its input may allocate regardless of
+   * input length, which also covers slack in the output buffer and scratch
+   * space for recoding numbers.
+   */
+  private static final long REWRITE_FIXED_BUDGET = 1024;
+
+  /**
+   * Bytes per input char that a call that rewrites its input may allocate.
+   * The output buffer, its growth, and the final string each take up to two
+   * bytes per output char, and escaping can make the output about twice as
+   * long as the input.
+   */
+  private static final long BYTES_PER_CHAR = 16;
+
+  /** Repeats inputs so that costs per char dominate fixed costs. */
+  private static final int LONG_REPEAT = 1000;
+
+  private static final String[] CLEAN = {
+    "null",
+    "0",
+    "-1.5e+10",
+    "\"foo\"",
+    "[]",
+    "{}",
+    "[1,2,3]",
+    "{\"a\":[true,false,null],\"b\":{\"c\":\"d\"}}",
+    "[\"\\u0000\\n\\\\\\\"\",\"\\u2028\"]",
+    "[\"\u00e9\u4e2d\ud83d\ude00\"]",
+    "[[[[[[[[[[0]]]]]]]]]]",
+    " { \"a\" : 1 , \"b\" : [ 2 ] } ",
+  };
+
+  private static final String[] REWRITTEN = {
+    "",
+    "'foo'",
+    "{a:1}",
+    "[1,,2,]",
+    "[0x1f, 017, .5, 1.]",
+    "{1e2: 'x', \"y\":}",
+    "[1 /* comment */, 2 // comment\n]",
+    "(\"foo\")",
+    "[\"</script>\", \"]]>\"]",
+    "[\"\u2028\", '\\x41\\101']",
+    "[\"\u00e9\u4e2d\ud83d\"]",
+    "[{\"a\":1]}",
+    "[1]]]]]",
+  };
+
+  /**
+   * The fewest bytes allocated by any of several calls to sanitize input,
+   * so that allocation by other code on this thread, like class loading,
+   * does not count.
+   */
+  private static long bytesPerCall(Call call, CharSequence input) {
+    long overhead = ThreadAllocation.allocatedBytes();
+    overhead = ThreadAllocation.allocatedBytes() - overhead;
+    long fewest = Long.MAX_VALUE;
+    for (int i = 0; i < 20; ++i) {
+      long before = ThreadAllocation.allocatedBytes();
+      call.sanitize(input);
+      long after = ThreadAllocation.allocatedBytes();
+      fewest = Math.min(fewest, after - before - overhead);
+    }
+    return fewest;
+  }
+
+  private static String repeat(String s, int n) {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < n; ++i) {
+      if (i != 0) { sb.append(','); }
+      sb.append(s.length() != 0 ? s : "0");
+    }
+    return sb.append(']').toString();
+  }
+
+  private interface Call {
+    CharSequence sanitize(CharSequence input);
+  }
+
+  private static final Call SANITIZE_STRING = new Call() {
+    public CharSequence sanitize(CharSequence input) {
+      return JsonSanitizer.sanitize(input.toString());
+    }
+  };
+
+  private static final Call SANITIZE_CHAR_SEQUENCE = new Call() {
+    public CharSequence sanitize(CharSequence input) {
+      return JsonSanitizer.sanitize(
+          input, JsonSanitizer.DEFAULT_NESTING_DEPTH,
+          JsonSanitizer.OutputProfile.EMBEDDABLE);
+    }
+  };
+
+  private static void assertCleanBudget(Call call, CharSequence input) {
+    assertSame(input.toString(), input, call.sanitize(input));
+    long bytes = bytesPerCall(call, input);
+    assertTrue(
+        "Sanitizing valid " + input.length() + " chars allocated " + bytes
+        + "B: " + input,
+        bytes <= FIXED_BUDGET);
+  }
+
+  private static void assertRewriteBudget(Call call, CharSequence input) {
+    long bytes = bytesPerCall(call, input);
+    long budget = REWRITE_FIXED_BUDGET + BYTES_PER_CHAR * input.length();
+    assertTrue(
+        "Sanitizing " + input.length() + " chars allocated " + bytes
+        + "B > " + budget + "B: " + input,
+        bytes <= budget);
+  }
+
+  @Test
+  public static final void testCleanInputAllocatesNoOutput() {
+    if (!ThreadAllocation.isSupported()) { return; }
+    for (String input : CLEAN) {
+      assertCleanBudget(SANITIZE_STRING, input);
+      assertCleanBudget(SANITIZE_STRING, repeat(input, LONG_REPEAT));
+    }
+  }
+
+  @Test
+  public static final void testCleanBufferAllocatesNoOutput() {
+    if (!ThreadAllocation.isSupported()) { return; }
+    for (String input : CLEAN) {
+      assertCleanBudget(
+          SANITIZE_CHAR_SEQUENCE,
+          CharBuffer.wrap(repeat(input, LONG_REPEAT).toCharArray()));
+    }
+  }
+
+  @Test
+  public static final void testRewriteIsLinear() {
+    if (!ThreadAllocation.isSupported()) { return; }
+    for (String input : REWRITTEN) {
+      assertRewriteBudget(SANITIZE_STRING, input);
+      assertRewriteBudget(SANITIZE_STRING, repeat(input, LONG_REPEAT));
+      assertRewriteBudget(
+          SANITIZE_CHAR_SEQUENCE,
+          CharBuffer.wrap(repeat(input, LONG_REPEAT).toCharArray()));
+    }
+  }
+}
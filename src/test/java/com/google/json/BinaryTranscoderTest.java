@@ -0,0 +1,178 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import com.google.json.JsonSanitizer.BinaryFormat;
+
+@SuppressWarnings("javadoc")
+public final class BinaryTranscoderTest extends TestCase {
+
+  private static String hex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder();
+    for (byte b : bytes) {
+      if (sb.length() != 0) { sb.append(' '); }
+      sb.append("0123456789abcdef".charAt((b >> 4) & 0xf))
+          .append("0123456789abcdef".charAt(b & 0xf));
+    }
+    return sb.toString();
+  }
+
+  private static void assertTranscoded(
+      String jsonish, String wantCbor, String wantMessagePack)
+      throws IOException {
+    assertEquals(
+        jsonish, wantCbor,
+        hex(JsonSanitizer.transcode(jsonish, BinaryFormat.CBOR)));
+    assertEquals(
+        jsonish, wantMessagePack,
+        hex(JsonSanitizer.transcode(jsonish, BinaryFormat.MESSAGE_PACK)));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JsonSanitizer.transcode(jsonish, BinaryFormat.CBOR, out);
+    assertEquals(jsonish, wantCbor, hex(out.toByteArray()));
+    out.reset();
+    JsonSanitizer.transcode(jsonish, BinaryFormat.MESSAGE_PACK, out);
+    assertEquals(jsonish, wantMessagePack, hex(out.toByteArray()));
+  }
+
+  @Test
+  public static final void testScalars() throws IOException {
+    assertTranscoded("null", "f6", "c0");
+    assertTranscoded("", "f6", "c0");
+    assertTranscoded("true", "f5", "c3");
+    assertTranscoded("false", "f4", "c2");
+    assertTranscoded("0", "00", "00");
+    assertTranscoded("-1", "20", "ff");
+    assertTranscoded("0x10", "10", "10");
+    assertTranscoded("010", "08", "08");
+    assertTranscoded("300", "19 01 2c", "cd 01 2c");
+    assertTranscoded("-200", "38 c7", "d1 ff 38");
+    assertTranscoded(
+        "-9223372036854775808",
+        "3b 7f ff ff ff ff ff ff ff", "d3 80 00 00 00 00 00 00 00");
+    assertTranscoded(
+        "18446744073709551615",
+        "1b ff ff ff ff ff ff ff ff", "cf ff ff ff ff ff ff ff ff");
+    assertTranscoded(
+        "18446744073709551616",
+        "c2 49 01 00 00 00 00 00 00 00 00", "cb 43 f0 00 00 00 00 00 00");
+    assertTranscoded(
+        "1.5", "fb 3f f8 00 00 00 00 00 00", "cb 3f f8 00 00 00 00 00 00");
+    assertTranscoded(
+        "1e2", "fb 40 59 00 00 00 00 00 00", "cb 40 59 00 00 00 00 00 00");
+  }
+
+  @Test
+  public static final void testNegativeZero() throws IOException {
+    // Neither format has a negative zero integer.
+    assertTranscoded("-0", "f9 80 00", "cb 80 00 00 00 00 00 00 00");
+    assertTranscoded("-0x0", "f9 80 00", "cb 80 00 00 00 00 00 00 00");
+    assertTranscoded(
+        "-0.0", "fb 80 00 00 00 00 00 00 00", "cb 80 00 00 00 00 00 00 00");
+    assertTranscoded(
+        "[-00000000000000000000000]", "9f f9 80 00 ff",
+        "91 cb 80 00 00 00 00 00 00 00");
+  }
+
+  @Test
+  public static final void testStrings() throws IOException {
+    assertTranscoded("'a'", "61 61", "a1 61");
+    assertTranscoded("\"\\u00e9\\n\"", "63 c3 a9 0a", "a3 c3 a9 0a");
+    assertTranscoded(
+        "\"\\ud83d\\ude00\"", "64 f0 9f 98 80", "a4 f0 9f 98 80");
+    assertTranscoded("\"\ud83d\ude00\"", "64 f0 9f 98 80", "a4 f0 9f 98 80");
+    assertTranscoded("\"\\ud83d\"", "63 ef bf bd", "a3 ef bf bd");
+    assertTranscoded("\"</script>\"", "69 3c 2f 73 63 72 69 70 74 3e",
+                     "a9 3c 2f 73 63 72 69 70 74 3e");
+  }
+
+  @Test
+  public static final void testContainers() throws IOException {
+    // CBOR containers have indefinite lengths, and MessagePack ones the
+    // shortest head that fits.
+    assertTranscoded("[]", "9f ff", "90");
+    assertTranscoded("{}", "bf ff", "80");
+    assertTranscoded(
+        "{a: [1, -1, 0x10, true, null,], b: {}}",
+        "bf 61 61 9f 01 20 10 f5 f6 ff 61 62 bf ff ff",
+        "82 a1 61 95 01 ff 10 c3 c0 a1 62 80");
+    assertTranscoded(
+        "[[1], [[]]", "9f 9f 01 ff 9f 9f ff ff ff", "92 91 01 91 90");
+    for (int n : new int[] { 20, 0x10000 }) {
+      StringBuilder sb = new StringBuilder("[[");
+      for (int i = 0; i < n; ++i) { sb.append(i == 0 ? "0" : ",0"); }
+      sb.append("], {}]");
+      StringBuilder cbor = new StringBuilder("9f 9f");
+      StringBuilder msgpack = new StringBuilder(
+          n < 0x10000 ? "92 dc 00 14" : "92 dd 00 01 00 00");
+      for (int i = 0; i < n; ++i) {
+        cbor.append(" 00");
+        msgpack.append(" 00");
+      }
+      cbor.append(" ff bf ff ff");
+      msgpack.append(" 80");
+      assertTranscoded(sb.toString(), cbor.toString(), msgpack.toString());
+    }
+  }
+
+  @Test
+  public static final void testStreams() throws IOException {
+    // Deep and long, so that a buffered encoding would move a lot of bytes
+    // to insert each head.
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 30; ++i) { sb.append("[{a:"); }
+    for (int i = 0; i < 100000; ++i) { sb.append(i == 0 ? "0" : ",0"); }
+    for (int i = 0; i < 30; ++i) { sb.append("}]"); }
+    String jsonish = sb.toString();
+    byte[] want = JsonSanitizer.transcode(jsonish, BinaryFormat.CBOR);
+
+    final int[] nWrites = new int[1];
+    final int[] maxWrite = new int[1];
+    ByteArrayOutputStream out = new ByteArrayOutputStream() {
+      @Override
+      public synchronized void write(byte[] b, int off, int len) {
+        ++nWrites[0];
+        maxWrite[0] = Math.max(maxWrite[0], len);
+        super.write(b, off, len);
+      }
+    };
+    JsonSanitizer.transcode(jsonish, BinaryFormat.CBOR, out);
+    assertEquals(hex(want), hex(out.toByteArray()));
+    // The output went out a buffer at a time, not all at the end.
+    assertTrue(nWrites[0] > 10);
+    assertTrue(maxWrite[0] <= 8192);
+
+    // MessagePack heads are squeezed to fit once each container closes.
+    sb.setLength(0);
+    StringBuilder heads = new StringBuilder();
+    for (int i = 0; i < 30; ++i) {
+      sb.append("[{a:");
+      heads.append("91 81 a1 61 ");
+    }
+    sb.append('[');
+    for (int i = 0; i < 100000; ++i) { sb.append(i == 0 ? "0" : ",0"); }
+    sb.append(']');
+    for (int i = 0; i < 30; ++i) { sb.append("}]"); }
+    byte[] msgpack = JsonSanitizer.transcode(
+        sb.toString(), BinaryFormat.MESSAGE_PACK);
+    assertTrue(hex(msgpack).startsWith(heads + "dd 00 01 86 a0 00 00"));
+    assertEquals(30 * 4 + 5 + 100000, msgpack.length);
+  }
+}
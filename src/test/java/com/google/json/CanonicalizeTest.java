@@ -0,0 +1,105 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import static com.google.json.JsonSanitizer.OutputProfile.PLAIN_JSON;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class CanonicalizeTest extends TestCase {
+
+  private static void assertCanonical(String want, String input) {
+    String got = JsonSanitizer.canonicalize(input);
+    assertEquals(input, want, got);
+    // Canonical output is sanitized output, and canonical.
+    assertEquals(input, got, JsonSanitizer.sanitize(got));
+    assertEquals(input, got, JsonSanitizer.canonicalize(got));
+  }
+
+  @Test
+  public static final void testEqualDocuments() {
+    String want = "{\"a\":[1,16,0.5,\"x\"],\"b\":{\"c\":null,\"d\":true}}";
+    assertCanonical(want, want);
+    assertCanonical(
+        want, "{ b: { d: true, c: null }, a: [ 1.0, 0x10, 5e-1, 'x' ] }");
+    assertCanonical(
+        want, "{\"\\u0062\":{\"d\":true,\"c\":null},"
+        + "\"a\":[10E-1,020,.5,\"\\x78\"],}");
+  }
+
+  @Test
+  public static final void testNumbers() {
+    assertCanonical("[0,0,-1,100,1e+21,1.5e-7,0.000001]",
+                    "[-0, 0.0, -1e0, 1E2, 1000000000000000000000,"
+                    + " 0.00000015, 1e-6]");
+    // Digits beyond double precision are kept.
+    assertCanonical("[1.2345678901234567890123e+22]",
+                    "[12345678901234567890123]");
+    // Exponents too large to normalize still have one spelling.
+    assertCanonical("[1e99999999999,1e99999999999]",
+                    "[1E+99999999999, 1e99999999999]");
+  }
+
+  @Test
+  public static final void testMembers() {
+    // Sorted by UTF-16 code-units, so the supplementary code-point is
+    // before U+FB33.
+    assertCanonical(
+        "{\"\":0,\"\\n\":1,\"1\":2,\"a\":3,\"\ud83d\ude00\":4,\"\ufb33\":5}",
+        "{\"\ufb33\":5,\"\ud83d\ude00\":4,a:3,1:2,\"\":0,\"\\n\":1}");
+    // The last duplicate wins as in JSON.parse.
+    assertCanonical("{\"a\":3,\"b\":2}", "{a:1,b:2,a:3}");
+  }
+
+  @Test
+  public static final void testEscapes() {
+    assertCanonical(
+        "[\"\\\"\\\\/\\b\\f\\n\\r\\t\\u0001\u00e9\\u2028\ud83d\ude00\\udc00\"]",
+        "[\"\\\"\\\\\\/\\b\\f\\n\\r\\t\\u0001\\u00E9\\u2028\\ud83d\\ude00"
+        + "\\udc00\"]");
+    assertCanonical(
+        "[\"\\u003c/script \\u003c!-- --\\u003e \\u005d]> <b>\"]",
+        "['</script <!-- --> ]]> \\u003cb\\u003e']");
+    assertEquals(
+        "[\"</script <!-- --> ]]> <b>\"]",
+        JsonSanitizer.canonicalize(
+            "['\\u003c/script <!-- --> ]]> <b>']",
+            JsonSanitizer.DEFAULT_NESTING_DEPTH, PLAIN_JSON));
+  }
+
+  @Test
+  public static final void testFuzzyInputs() {
+    long seed = new Random().nextLong();
+    Random rnd = new Random(seed);
+    int nRuns = 300;
+    for (String input : new FuzzyStringGenerator(rnd)) {
+      if (--nRuns < 0) { break; }
+      String got;
+      try {
+        got = JsonSanitizer.canonicalize(input);
+      } catch (ArrayIndexOutOfBoundsException ex) {
+        // Nested too deeply.
+        continue;
+      }
+      // Canonical output is well-formed and a fixed point.
+      assertEquals(seed + ": " + input, got, JsonSanitizer.sanitize(got));
+      assertEquals(seed + ": " + input, got, JsonSanitizer.canonicalize(got));
+    }
+  }
+}
@@ -0,0 +1,240 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class ChannelSanitizerTest extends TestCase {
+
+  /**
+   * Sanitizes bytes via a temporary file with the given sizes, so that tests
+   * can make tokens and characters straddle segments and windows.
+   */
+  static String sanitizeFile(byte[] bytes, int segmentBytes, int windowChars)
+      throws IOException {
+    return sanitizeFile(
+        bytes, segmentBytes, windowChars, Integer.MAX_VALUE,
+        Integer.MAX_VALUE);
+  }
+
+  /**
+   * Like {@link #sanitizeFile(byte[], int, int)} but carries pending commas
+   * over once the window reaches carryCommaWindowChars, and checks that the
+   * window never grows past maxWindowChars.
+   */
+  static String sanitizeFile(
+      byte[] bytes, int segmentBytes, int windowChars,
+      int carryCommaWindowChars, int maxWindowChars)
+      throws IOException {
+    File f = File.createTempFile("ChannelSanitizerTest", ".json");
+    try {
+      FileOutputStream fout = new FileOutputStream(f);
+      try {
+        fout.write(bytes);
+      } finally {
+        fout.close();
+      }
+      RandomAccessFile raf = new RandomAccessFile(f, "r");
+      try {
+        FileChannel in = raf.getChannel();
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ChannelSanitizer cs = new ChannelSanitizer(
+            in, Channels.newChannel(bout),
+            JsonSanitizer.DEFAULT_NESTING_DEPTH,
+            JsonSanitizer.OutputProfile.EMBEDDABLE,
+            segmentBytes, windowChars, carryCommaWindowChars);
+        long nWritten = cs.run();
+        assertTrue(cs.getWindowChars() <= maxWindowChars);
+        assertEquals(bout.size(), nWritten);
+        assertEquals(bytes.length, in.position());
+        return new String(bout.toByteArray(), "UTF-8");
+      } finally {
+        raf.close();
+      }
+    } finally {
+      if (!f.delete()) { f.deleteOnExit(); }
+    }
+  }
+
+  private static void assertSanitized(String input) throws IOException {
+    String want = JsonSanitizer.sanitize(input);
+    byte[] bytes = input.getBytes("UTF-8");
+    for (int segmentBytes : new int[] { 4, 5, 7, 1 << 20 }) {
+      for (int windowChars : new int[] { 16, 17, 64, 1 << 16 }) {
+        assertEquals(
+            input + " in segments of " + segmentBytes + " bytes, windows of "
+            + windowChars + " chars",
+            want, sanitizeFile(bytes, segmentBytes, windowChars));
+      }
+    }
+  }
+
+  @Test
+  public static final void testSanitize() throws IOException {
+    assertSanitized("");
+    assertSanitized("  ");
+    assertSanitized("[1, 2, 3]");
+    assertSanitized("{'a': [1, 2,], b: 0x10, \"c\": \"</script>\"}");
+    assertSanitized("[1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15,]");
+    assertSanitized(
+        "{\"a\": {\"b\": [{\"c\": [[[true, false, null]]]}]}, \"d\": [");
+    assertSanitized("[/* a comment that goes on */ 1, // and on\n 2]");
+    assertSanitized("[\"unclosed string, 1, 2, 3, 4, 5, 6, 7, 8, 9");
+  }
+
+  @Test
+  public static final void testMultiByteCharacters() throws IOException {
+    assertSanitized(
+        "[\"été\", \"中文\", \"😀😀\","
+        + " été, \" \"]");
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < 200; ++i) {
+      sb.append("\"😀é中\",");
+    }
+    assertSanitized(sb.append(']').toString());
+  }
+
+  @Test
+  public static final void testMalformedUtf8() throws IOException {
+    byte[] bytes = { '[', '"', (byte) 0xe2, (byte) 0x82, '"', ',',
+                     (byte) 0xff, '1', ']' };
+    assertEquals(
+        JsonSanitizer.sanitize(new String(bytes, "UTF-8")),
+        sanitizeFile(bytes, 1 << 20, 1 << 16));
+  }
+
+  @Test
+  public static final void testTokenLongerThanWindow() throws IOException {
+    StringBuilder sb = new StringBuilder("[\"");
+    for (int i = 0; i < 10000; ++i) {
+      sb.append((char) ('a' + i % 26));
+    }
+    String input = sb.append("\", 1]").toString();
+    byte[] bytes = input.getBytes("UTF-8");
+    assertEquals(
+        JsonSanitizer.sanitize(input), sanitizeFile(bytes, 7, 16));
+  }
+
+  @Test
+  public static final void testLongRunsAfterComma() throws IOException {
+    StringBuilder spaces = new StringBuilder();
+    for (int i = 0; i < 100000; ++i) {
+      spaces.append(" \n\t".charAt(i % 3));
+    }
+    StringBuilder commas = new StringBuilder();
+    for (int i = 0; i < 100000; ++i) {
+      commas.append(",");
+    }
+    String[] inputs = {
+      "[1," + spaces + "]",
+      "[1," + spaces + "2]",
+      "{\"a\":1," + spaces + "}",
+      "{\"a\":1," + spaces + "\"b\":2}",
+      "[1," + spaces + "/* x */]",
+      "[1" + commas + "2]",
+      "[1" + commas + "]",
+    };
+    for (String input : inputs) {
+      String want = JsonSanitizer.sanitize(input);
+      // The window slides instead of growing to hold the whole run.
+      String got = sanitizeFile(
+          input.getBytes("UTF-8"), 1 << 12, 64, 64, 64);
+      if (input.indexOf(",,") >= 0) {
+        assertEquals(want, got);
+      } else {
+        // A comma that stays may come after whitespace that followed it.
+        assertEquals(
+            want.replaceAll("\\s+", ""), got.replaceAll("\\s+", ""));
+      }
+    }
+  }
+
+  @Test
+  public static final void testRestDropped() throws IOException {
+    assertSanitized("[1, 2, 3] , [4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14]");
+    assertSanitized("1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19 20");
+    assertSanitized("[1, 2, 3, 4]] [5, 6, 7, 8, 9, 10, 11, 12, 13, 14]");
+  }
+
+  @Test
+  public static final void testFuzzyInputs() throws IOException {
+    long seed = new Random().nextLong();
+    Random rnd = new Random(seed);
+    int nRuns = 300;
+    for (String input : new FuzzyStringGenerator(rnd)) {
+      if (--nRuns < 0) { break; }
+      String want;
+      try {
+        want = JsonSanitizer.sanitize(input);
+      } catch (ArrayIndexOutOfBoundsException ex) {
+        // Nested too deeply.
+        continue;
+      }
+      // Lone surrogates do not survive a trip through UTF-8.
+      String encodable = new String(input.getBytes("UTF-8"), "UTF-8");
+      if (!encodable.equals(input)) {
+        continue;
+      }
+      int segmentBytes = 4 + rnd.nextInt(16);
+      int windowChars = 16 + rnd.nextInt(64);
+      assertEquals(
+          "seed " + Long.toHexString(seed) + ": " + SlowInputs.quote(input)
+          + " in segments of " + segmentBytes + " bytes, windows of "
+          + windowChars + " chars",
+          want,
+          sanitizeFile(input.getBytes("UTF-8"), segmentBytes, windowChars));
+    }
+  }
+
+  @Test
+  public static final void testFromChannelPosition() throws IOException {
+    File f = File.createTempFile("ChannelSanitizerTest", ".json");
+    try {
+      FileOutputStream fout = new FileOutputStream(f);
+      try {
+        fout.write("ignored[1,,2".getBytes("UTF-8"));
+      } finally {
+        fout.close();
+      }
+      RandomAccessFile raf = new RandomAccessFile(f, "r");
+      try {
+        FileChannel in = raf.getChannel();
+        in.position("ignored".length());
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        assertEquals(
+            "[1,null,2]".length(),
+            JsonSanitizer.sanitizeChannel(in, Channels.newChannel(bout)));
+        assertEquals("[1,null,2]", bout.toString("UTF-8"));
+        assertEquals(f.length(), in.position());
+      } finally {
+        raf.close();
+      }
+    } finally {
+      if (!f.delete()) { f.deleteOnExit(); }
+    }
+  }
+}
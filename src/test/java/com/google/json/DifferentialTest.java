@@ -0,0 +1,158 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import com.google.json.SanitizerEngines.Engine;
+
+/**
+ * Checks that every engine in {@link SanitizerEngines#ALL} produces the same
+ * output as {@link SanitizerEngines#REFERENCE} on fuzzed inputs and on a
+ * corpus of real-world inputs.
+ */
+@SuppressWarnings("javadoc")
+public final class DifferentialTest extends TestCase {
+  /** Real-world inputs, a resource relative to this class. */
+  static final String CORPUS = "real-world-corpus.txt";
+
+  @Test
+  public static final void testEnginesAgreeOnFuzzyInputs() {
+    int nRuns = 2000;
+    long seed;
+    String seedString = System.getProperty("fuzz.seed", null);
+    if (seedString != null) {
+      // toHexString writes negative seeds as unsigned.
+      seed = new BigInteger(seedString, 16).longValue();
+    } else {
+      seed = new Random().nextLong();
+    }
+    String reproduce = "-Dfuzz.seed=" + Long.toHexString(seed);
+    System.err.println("Fuzzing with " + reproduce);
+    System.err.flush();
+
+    for (String input : new FuzzyStringGenerator(new Random(seed))) {
+      assertEnginesAgree(input, reproduce);
+      if (--nRuns <= 0) { break; }
+    }
+  }
+
+  @Test
+  public static final void testEnginesAgreeOnRealWorldInputs()
+  throws IOException {
+    Map<String, String> corpus = readCorpus();
+    assertFalse(corpus.isEmpty());
+    for (Map.Entry<String, String> e : corpus.entrySet()) {
+      String input = e.getValue();
+      String reproduce = CORPUS + " sample \"" + e.getKey() + "\"";
+      assertEnginesAgree(input, reproduce);
+      // Responses are often cut short, so check truncations too.
+      for (int i = 1; i < 16; ++i) {
+        int end = (int) ((long) input.length() * i / 16);
+        assertEnginesAgree(
+            input.substring(0, end), reproduce + " truncated to " + end);
+      }
+    }
+  }
+
+  @Test
+  public static final void testDisagreementsAreShrunk() {
+    Engine broken = new Engine("broken") {
+      @Override
+      String sanitize(String jsonish) {
+        if (jsonish.contains("0x")) {
+          throw new IllegalStateException();
+        }
+        return JsonSanitizer.sanitize(jsonish);
+      }
+    };
+    String input = "{\"a\": [1, 2, {\"b\": 0x1F}], \"c\": \"d\"}";
+    assertTrue(SanitizerEngines.disagrees(broken, input));
+    assertFalse(SanitizerEngines.disagrees(broken, "[1, 2]"));
+    assertEquals("0x", SanitizerEngines.shrink(broken, input));
+
+    String report = SanitizerEngines.describeDisagreement(
+        broken, input, "-Dfuzz.seed=1234");
+    assertTrue(report, report.contains("-Dfuzz.seed=1234"));
+    assertTrue(report, report.contains("input:     \"0x\""));
+    assertTrue(report, report.contains(
+        "engine:    \"threw java.lang.IllegalStateException\""));
+  }
+
+  @Test
+  public static final void testCarriedCommasAreOverlooked()
+  throws IOException {
+    Engine carrying = null;
+    for (Engine engine : SanitizerEngines.ALL) {
+      if (engine.name.equals("sanitizeChannel carrying commas")) {
+        carrying = engine;
+      }
+    }
+    assertNotNull(carrying);
+    StringBuilder sb = new StringBuilder("[1,");
+    for (int i = 0; i < 100; ++i) { sb.append(' '); }
+    String input = sb.append("2]").toString();
+    // The comma moves, but only within the whitespace after it.
+    assertFalse(input, input.equals(carrying.sanitize(input)));
+    assertFalse(SanitizerEngines.disagrees(carrying, input));
+    assertEquals(
+        "[1,    \"a, b\",\n]",
+        SanitizerEngines.commasFirst("[1  ,  \"a, b\"\n,]"));
+  }
+
+  private static void assertEnginesAgree(String input, String reproduce) {
+    for (Engine engine : SanitizerEngines.ALL) {
+      if (SanitizerEngines.disagrees(engine, input)) {
+        fail(SanitizerEngines.describeDisagreement(engine, input, reproduce));
+      }
+    }
+  }
+
+  /** Maps sample names to samples, in corpus order. */
+  static Map<String, String> readCorpus() throws IOException {
+    Map<String, String> samples = new LinkedHashMap<String, String>();
+    InputStream in = DifferentialTest.class.getResourceAsStream(CORPUS);
+    if (in == null) { return samples; }
+    try {
+      BufferedReader lines = new BufferedReader(
+          new InputStreamReader(in, "UTF-8"));
+      String name = null;
+      StringBuilder sample = new StringBuilder();
+      for (String line; (line = lines.readLine()) != null;) {
+        if (line.startsWith("%% ")) {
+          if (name != null) { samples.put(name, sample.toString()); }
+          name = line.substring(3);
+          sample.setLength(0);
+        } else if (name != null) {
+          sample.append(line).append('\n');
+        }
+      }
+      if (name != null) { samples.put(name, sample.toString()); }
+    } finally {
+      in.close();
+    }
+    return samples;
+  }
+}
@@ -0,0 +1,127 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class EditedJsonTest extends TestCase {
+
+  /** Applies edits to input to check that they describe the output. */
+  static String applyEdits(CharSequence input, List<EditedJson.Edit> edits) {
+    StringBuilder sb = new StringBuilder();
+    int pos = 0;
+    for (EditedJson.Edit e : edits) {
+      assertTrue(e.toString(), pos <= e.getStart());
+      assertTrue(e.toString(), e.getStart() <= e.getEnd());
+      sb.append(input, pos, e.getStart()).append(e.getReplacement());
+      pos = e.getEnd();
+    }
+    sb.append(input, pos, input.length());
+    return sb.toString();
+  }
+
+  private static void assertEdits(
+      String input, EditedJson.Edit... wantEdits)
+      throws IOException {
+    EditedJson edited = JsonSanitizer.sanitizeAsEdits(input);
+    String want = JsonSanitizer.sanitize(input);
+    assertEquals(input, want, edited.toString());
+    assertEquals(input, want.length(), edited.length());
+    for (int i = 0; i < want.length(); ++i) {
+      assertEquals(input, want.charAt(i), edited.charAt(i));
+    }
+    assertEquals(input, Arrays.asList(wantEdits), edited.getEdits());
+    assertEquals(input, want, applyEdits(input, edited.getEdits()));
+
+    StringWriter sw = new StringWriter();
+    edited.writeTo(sw);
+    assertEquals(input, want, sw.toString());
+
+    char[] chars = input.toCharArray();
+    sw = new StringWriter();
+    JsonSanitizer.sanitizeAsEdits(CharBuffer.wrap(chars)).writeTo(sw);
+    assertEquals(input, want, sw.toString());
+
+    // Readers deliver the same output however small the reads.
+    for (int bufSize : new int[] { 1, 3, 4096 }) {
+      assertEquals(input, want, readAll(edited.openReader(), bufSize));
+      assertEquals(
+          input, want,
+          readAll(JsonSanitizer.sanitizingReader(new StringReader(input)),
+                  bufSize));
+      assertEquals(
+          input, want,
+          readAll(JsonSanitizer.sanitizingReader(new StringBuilder(input)),
+                  bufSize));
+    }
+  }
+
+  private static String readAll(Reader r, int bufSize) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    char[] buf = new char[bufSize + 2];
+    for (int n; (n = r.read(buf, 1, bufSize)) >= 0;) {
+      assertTrue(n > 0);
+      sb.append(buf, 1, n);
+    }
+    assertEquals(-1, r.read(buf, 1, bufSize));
+    r.close();
+    return sb.toString();
+  }
+
+  private static EditedJson.Edit edit(int start, int end, String repl) {
+    return new EditedJson.Edit(start, end, repl);
+  }
+
+  @Test
+  public static final void testUnchanged() throws IOException {
+    assertEdits("[1,2,3]");
+    assertEdits("{\"foo\":\"bar\"}");
+    String input = "[1,2,3]";
+    assertSame(input, JsonSanitizer.sanitizeAsEdits(input).getInput());
+  }
+
+  @Test
+  public static final void testEdits() throws IOException {
+    assertEdits("", edit(0, 0, "null"));
+    assertEdits("[1,2,3,]", edit(6, 7, ""));
+    assertEdits("{ foo: \"bar\" }", edit(2, 2, "\""), edit(5, 5, "\""));
+    assertEdits("['foo']", edit(1, 2, "\""), edit(5, 6, "\""));
+    assertEdits("[0x10, 1]", edit(1, 5, "16"));
+    assertEdits("[1 ,/* */ ]", edit(3, 9, ""));
+    assertEdits("{1.:0}", edit(1, 3, "\"1\""));
+    assertEdits("[{a:1", edit(2, 2, "\""), edit(3, 3, "\""), edit(5, 5, "}]"));
+  }
+
+  @Test
+  public static final void testSubSequence() {
+    EditedJson edited = JsonSanitizer.sanitizeAsEdits("{ foo: 'bar', }");
+    String want = JsonSanitizer.sanitize("{ foo: 'bar', }");
+    for (int i = 0; i <= want.length(); ++i) {
+      for (int j = i; j <= want.length(); ++j) {
+        assertEquals(want.substring(i, j), edited.subSequence(i, j).toString());
+      }
+    }
+  }
+}
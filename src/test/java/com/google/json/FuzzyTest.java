@@ -176,7 +176,7 @@ final class FuzzyStringGenerator implements Iterable<String> {
     };
   }
 
-  private String makeRandomJson() {
+  String makeRandomJson() {
     int maxDepth = 1 + rnd.nextInt(8);
     int maxBreadth = 4 + rnd.nextInt(16);
     StringBuilder sb = new StringBuilder();
@@ -322,7 +322,7 @@ final class FuzzyStringGenerator implements Iterable<String> {
     return sb.toString();
   }
 
-  private String mutate(String s) {
+  String mutate(String s) {
     int n = rnd.nextInt(16) + 1;  // Number of changes.
     int len = s.length();
     // Pick the places where we mutate, so we can sort, de-dupe, and then
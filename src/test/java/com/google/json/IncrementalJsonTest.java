@@ -0,0 +1,157 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.json;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class IncrementalJsonTest extends TestCase {
+
+  /** Fragments that start, end, or break tokens. */
+  private static final String[] FRAGMENTS = {
+    "", " ", "\n", "\"", "'", "\\", "[", "]", "{", "}", ",", ":", "0", "-1",
+    "0x", ".5", "e", "a", "true", "null", "/", "/*", "*/", "//", "<", "!--",
+    "]]>", " ", "\"a\":", "[1,", "{\"b\":[", "}]",
+  };
+
+  private static IncrementalJson sanitize(String input, int interval) {
+    return JsonSanitizer.sanitizeIncrementally(
+        input, JsonSanitizer.DEFAULT_NESTING_DEPTH,
+        JsonSanitizer.OutputProfile.EMBEDDABLE, interval);
+  }
+
+  private static void assertSanitized(IncrementalJson json) {
+    assertEquals(
+        json.getInput(), JsonSanitizer.sanitize(json.getInput()),
+        json.getOutput());
+  }
+
+  @Test
+  public static final void testSanitize() {
+    IncrementalJson json = JsonSanitizer.sanitizeIncrementally(
+        "{'a': [1, 2,], b: 0x10}");
+    assertEquals("{\"a\": [1, 2], \"b\": 16}", json.getOutput());
+    assertEquals("{\"a\": [1, 2], \"b\": 16}", json.toString());
+    assertEquals(json.getInput().length(), json.getResanitizedLength());
+  }
+
+  @Test
+  public static final void testEdit() {
+    IncrementalJson json = sanitize("[1, 2, 3, 4, 5, 6, 7, 8, 9]", 2);
+    json = json.edit(4, 5, "'two'");
+    assertEquals("[1, 'two', 3, 4, 5, 6, 7, 8, 9]", json.getInput());
+    assertEquals("[1, \"two\", 3, 4, 5, 6, 7, 8, 9]", json.getOutput());
+    // A string left open swallows the rest of the input.
+    json = json.edit(7, 10, "");
+    assertEquals("[1, 'tw 3, 4, 5, 6, 7, 8, 9]", json.getInput());
+    assertEquals("[1, \"tw 3, 4, 5, 6, 7, 8, 9]\"]", json.getOutput());
+    json = json.edit(7, 7, "',");
+    assertEquals("[1, \"tw\", 3, 4, 5, 6, 7, 8, 9]", json.getOutput());
+    // Removing a trailing comma depends on the bracket after it.
+    json = json.edit(json.getInput().length() - 1, json.getInput().length(),
+                     ",]");
+    assertEquals("[1, \"tw\", 3, 4, 5, 6, 7, 8, 9]", json.getOutput());
+    json = json.edit(json.getInput().length() - 1, json.getInput().length(),
+                     "10]");
+    assertEquals("[1, \"tw\", 3, 4, 5, 6, 7, 8, 9,10]", json.getOutput());
+  }
+
+  @Test
+  public static final void testBadRange() {
+    IncrementalJson json = JsonSanitizer.sanitizeIncrementally("[1]");
+    try {
+      json.edit(2, 4, "");
+      fail();
+    } catch (IndexOutOfBoundsException ex) {
+      // pass
+    }
+    try {
+      json.edit(2, 1, "");
+      fail();
+    } catch (IndexOutOfBoundsException ex) {
+      // pass
+    }
+  }
+
+  @Test
+  public static final void testLocalEditResanitizesLittle() {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < 20000; ++i) {
+      if (i != 0) { sb.append(",\n"); }
+      sb.append("{'id': ").append(i).append(", 'tags': ['x', 0x1F]}");
+    }
+    String input = sb.append(']').toString();
+    IncrementalJson json = sanitize(input, 256);
+    assertSanitized(json);
+
+    int mid = input.indexOf("'id': 10000");
+    IncrementalJson edited = json.edit(mid + 6, mid + 11, "'ten thousand'");
+    assertSanitized(edited);
+    assertTrue(
+        "" + edited.getResanitizedLength(),
+        edited.getResanitizedLength() < 1024);
+    // Edits chain, and an edit that restores the input restores the output.
+    IncrementalJson restored = edited.edit(
+        mid + 6, mid + 6 + "'ten thousand'".length(), "10000");
+    assertEquals(input, restored.getInput());
+    assertEquals(json.getOutput(), restored.getOutput());
+    assertTrue(
+        "" + restored.getResanitizedLength(),
+        restored.getResanitizedLength() < 1024);
+  }
+
+  @Test
+  public static final void testRandomEdits() {
+    long seed = new Random().nextLong();
+    Random rnd = new Random(seed);
+    int nRuns = 300;
+    for (String input : new FuzzyStringGenerator(rnd)) {
+      if (--nRuns < 0) { break; }
+      int interval = 1 + rnd.nextInt(16);
+      IncrementalJson json;
+      try {
+        json = sanitize(input, interval);
+      } catch (ArrayIndexOutOfBoundsException ex) {
+        // Nested too deeply for either.
+        continue;
+      }
+      assertSanitized(json);
+      for (int k = 0; k < 10; ++k) {
+        int n = json.getInput().length();
+        int start = rnd.nextInt(n + 1);
+        int end = Math.min(n, start + rnd.nextInt(4));
+        String replacement = FRAGMENTS[rnd.nextInt(FRAGMENTS.length)];
+        String message = "seed " + Long.toHexString(seed) + " interval "
+            + interval + ": " + SlowInputs.quote(json.getInput())
+            + " with [" + start + ", " + end + ") replaced by "
+            + SlowInputs.quote(replacement);
+        IncrementalJson edited;
+        try {
+          edited = json.edit(start, end, replacement);
+        } catch (ArrayIndexOutOfBoundsException ex) {
+          break;
+        }
+        assertEquals(
+            message, JsonSanitizer.sanitize(edited.getInput()),
+            edited.getOutput());
+        json = edited;
+      }
+    }
+  }
+}
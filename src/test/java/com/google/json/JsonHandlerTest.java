@@ -0,0 +1,188 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class JsonHandlerTest extends TestCase {
+
+  /**
+   * Rebuilds the output from handler events, dropping whitespace, and checks
+   * that each token's text does not change once it is reported.
+   */
+  static final class Recorder implements JsonHandler {
+    final List<String> events = new ArrayList<String>();
+    final StringBuilder compact = new StringBuilder();
+    private final List<int[]> spans = new ArrayList<int[]>();
+    private final List<String> texts = new ArrayList<String>();
+    private boolean needsComma;
+    private int lastEnd;
+
+    private void token(
+        String kind, CharSequence json, int start, int end,
+        boolean isValue, boolean isClose) {
+      assertTrue(kind + " at " + start, lastEnd <= start && start < end);
+      lastEnd = end;
+      String text = json.subSequence(start, end).toString();
+      events.add(kind + " " + text);
+      spans.add(new int[] { start, end });
+      texts.add(text);
+      if (needsComma && !isClose) {
+        compact.append(',');
+      }
+      compact.append(text);
+      if (kind.equals("key")) {
+        compact.append(':');
+        needsComma = false;
+      } else {
+        needsComma = isValue;
+      }
+    }
+
+    void checkStable(CharSequence output) {
+      for (int k = 0, n = spans.size(); k < n; ++k) {
+        int[] span = spans.get(k);
+        assertEquals(
+            texts.get(k), output.subSequence(span[0], span[1]).toString());
+      }
+    }
+
+    @Override
+    public void startObject(CharSequence json, int start, int end) {
+      token("{", json, start, end, false, false);
+    }
+
+    @Override
+    public void endObject(CharSequence json, int start, int end) {
+      token("}", json, start, end, true, true);
+    }
+
+    @Override
+    public void startArray(CharSequence json, int start, int end) {
+      token("[", json, start, end, false, false);
+    }
+
+    @Override
+    public void endArray(CharSequence json, int start, int end) {
+      token("]", json, start, end, true, true);
+    }
+
+    @Override
+    public void key(CharSequence json, int start, int end) {
+      token("key", json, start, end, false, false);
+    }
+
+    @Override
+    public void stringValue(CharSequence json, int start, int end) {
+      token("string", json, start, end, true, false);
+    }
+
+    @Override
+    public void numberValue(CharSequence json, int start, int end) {
+      token("number", json, start, end, true, false);
+    }
+
+    @Override
+    public void booleanValue(CharSequence json, int start, int end) {
+      token("boolean", json, start, end, true, false);
+    }
+
+    @Override
+    public void nullValue(CharSequence json, int start, int end) {
+      token("null", json, start, end, true, false);
+    }
+  }
+
+  /** Removes whitespace outside strings from valid JSON. */
+  static String stripSpaces(String json) {
+    StringBuilder sb = new StringBuilder(json.length());
+    boolean inString = false;
+    for (int i = 0, n = json.length(); i < n; ++i) {
+      char ch = json.charAt(i);
+      if (inString) {
+        if (ch == '\\') {
+          sb.append(ch);
+          ch = json.charAt(++i);
+        } else if (ch == '"') {
+          inString = false;
+        }
+      } else if (ch == '"') {
+        inString = true;
+      } else if (ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r') {
+        continue;
+      }
+      sb.append(ch);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Checks that the events for jsonish describe the sanitized output and
+   * returns them.
+   */
+  static List<String> checkEvents(String jsonish) {
+    Recorder r = new Recorder();
+    EditedJson edited = JsonSanitizer.sanitizeWithHandler(jsonish, r);
+    String want = JsonSanitizer.sanitize(jsonish);
+    assertEquals(jsonish, want, edited.toString());
+    assertEquals(jsonish, stripSpaces(want), r.compact.toString());
+    r.checkStable(want);
+    return r.events;
+  }
+
+  private static void assertEvents(String jsonish, String... want) {
+    assertEquals(jsonish, Arrays.asList(want), checkEvents(jsonish));
+  }
+
+  @Test
+  public static final void testValidJson() {
+    assertEvents("null", "null null");
+    assertEvents(
+        "{\"a\": [1, true, \"b\"], \"c\": {}}",
+        "{ {", "key \"a\"", "[ [", "number 1", "boolean true",
+        "string \"b\"", "] ]", "key \"c\"", "{ {", "} }", "} }");
+  }
+
+  @Test
+  public static final void testFixedJson() {
+    assertEvents("", "null null");
+    assertEvents(
+        "{ foo: 'bar', }",
+        "{ {", "key \"foo\"", "string \"bar\"", "} }");
+    assertEvents(
+        "[0x10,,",
+        "[ [", "number 16", "null null", "] ]");
+    assertEvents(
+        "{1: 2 3:}",
+        "{ {", "key \"1\"", "number 2", "key \"3\"", "null null", "} }");
+    assertEvents(
+        "{\"a\" \"b\"",
+        "{ {", "key \"a\"", "string \"b\"", "} }");
+    assertEvents(
+        "{\"a\":1 2}",
+        "{ {", "key \"a\"", "number 1", "key \"2\"", "null null", "} }");
+    assertEvents(
+        "{\"a\":1 [2]}",
+        "{ {", "key \"a\"", "number 1", "key \"\"", "[ [", "number 2",
+        "] ]", "} }");
+    assertEvents("[{]", "[ [", "{ {", "} }", "] ]");
+  }
+}
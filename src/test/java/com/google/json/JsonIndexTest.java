@@ -0,0 +1,87 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class JsonIndexTest extends TestCase {
+
+  private static String find(JsonIndex index, String path) {
+    int token = index.find(path);
+    return token < 0 ? null : index.getText(token).toString();
+  }
+
+  @Test
+  public static final void testTape() {
+    JsonIndex index = JsonSanitizer.sanitizeAndIndex("{\"a\":[1,2]}");
+    assertEquals(7, index.getTokenCount());
+    assertEquals(6, index.getMatchingBracket(0));
+    assertEquals(0, index.getMatchingBracket(6));
+    assertEquals(5, index.getMatchingBracket(2));
+    assertEquals(4, index.find("$.a[1]"));
+    assertEquals(5, index.getStart(2));
+    assertEquals(10, index.getEnd(2));
+    assertEquals(7, index.skip(0));
+    assertEquals(6, index.skip(2));
+    assertEquals(1, index.getSize(0));
+    assertEquals(2, index.getSize(2));
+    assertTrue(index.isObject(0));
+    assertTrue(index.isArray(2));
+    assertFalse(index.isArray(3));
+  }
+
+  @Test
+  public static final void testFind() {
+    JsonIndex index = JsonSanitizer.sanitizeAndIndex(
+        "{ items: [ {id: 1}, {id: 'two', x: [] }, {\"i\\u0064\": 3} ],"
+        + " 'a b': {\"c\": null}, }");
+    assertEquals(
+        "{ \"items\": [ {\"id\": 1}, {\"id\": \"two\", \"x\": [] },"
+        + " {\"i\\u0064\": 3} ], \"a b\": {\"c\": null} }",
+        index.getJson().toString());
+    assertEquals("1", find(index, "$.items[0].id"));
+    assertEquals("\"two\"", find(index, "$.items[1].id"));
+    assertEquals("[]", find(index, "$.items[1].x"));
+    assertEquals("3", find(index, "$.items[2].id"));
+    assertEquals("null", find(index, "$['a b'].c"));
+    assertEquals("{\"c\": null}", find(index, "$[\"a b\"]"));
+    assertEquals(index.getJson().toString(), find(index, "$"));
+    assertNull(find(index, "$.items[3]"));
+    assertNull(find(index, "$.items.id"));
+    assertNull(find(index, "$.nope"));
+    assertNull(find(index, "$[0]"));
+    assertEquals(3, index.getSize(index.find("$.items")));
+    try {
+      index.find("items");
+      fail();
+    } catch (@SuppressWarnings("unused") IllegalArgumentException ex) {
+      // pass
+    }
+  }
+
+  @Test
+  public static final void testFixedInput() {
+    String input = "[1,2";
+    JsonIndex index = JsonSanitizer.sanitizeAndIndex(input);
+    assertEquals("[1,2]", index.getJson().toString());
+    assertEquals(3, index.getMatchingBracket(0));
+    assertEquals("2", find(index, "$[1]"));
+
+    input = "[1,2]";
+    assertSame(input, JsonSanitizer.sanitizeAndIndex(input).getJson());
+  }
+}
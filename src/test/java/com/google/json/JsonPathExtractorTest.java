@@ -0,0 +1,129 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class JsonPathExtractorTest extends TestCase {
+
+  private static final String MESSAGE =
+      "{ type: 'order', tenant: 42, meta: { priority: [1, 2], 'a/b': null },"
+      + " type: 'dupe', items: [ {id: 'x'}, {id: 'y'} ] }";
+
+  @Test
+  public static final void testExtract() {
+    Map<String, String> want = new LinkedHashMap<String, String>();
+    want.put("$.type", "\"dupe\"");
+    want.put("$.tenant", "42");
+    want.put("$.meta.priority", "[1, 2]");
+    want.put("/meta/priority/1", "2");
+    want.put("/meta/a~1b", "null");
+    want.put("$.items[1].id", "\"y\"");
+    want.put("$['items'][0]", "{\"id\": \"x\"}");
+    assertEquals(
+        want,
+        JsonSanitizer.extract(
+            MESSAGE, "$.type", "$.tenant", "$.nope", "$.meta.priority",
+            "/meta/priority/1", "/meta/a~1b", "$.items[1].id",
+            "$['items'][0]"));
+    assertEquals(
+        JsonSanitizer.sanitize(MESSAGE),
+        JsonSanitizer.extract(MESSAGE, "$").get("$"));
+    assertEquals(
+        JsonSanitizer.sanitize(MESSAGE),
+        JsonSanitizer.extract(MESSAGE, "").get(""));
+  }
+
+  @Test
+  public static final void testWithFullOutput() {
+    JsonPathExtractor extractor = new JsonPathExtractor("$.meta", "/type");
+    EditedJson out = JsonSanitizer.sanitizeWithHandler(MESSAGE, extractor);
+    assertEquals(JsonSanitizer.sanitize(MESSAGE), out.toString());
+    assertTrue(extractor.isDone());
+    assertEquals(
+        "{ \"priority\": [1, 2], \"a/b\": null }",
+        extractor.getValue("$.meta"));
+    assertEquals("\"dupe\"", extractor.getValue("/type"));
+    assertNull(extractor.getValue("$.nope"));
+  }
+
+  @Test
+  public static final void testDuplicateKeys() {
+    String json = "{a: {b: 1, c: 2}, x: 3, a: {c: 4}, x: [5], y: {a: 6}}";
+    Map<String, String> want = new LinkedHashMap<String, String>();
+    // Like JSON.parse, the last member with a name wins, and replacing an
+    // object removes members that only the earlier one had.
+    want.put("$.a", "{\"c\": 4}");
+    want.put("$.a.c", "4");
+    want.put("$.x", "[5]");
+    want.put("$.y.a", "6");
+    assertEquals(
+        want,
+        JsonSanitizer.extract(json, "$.a", "$.a.b", "$.a.c", "$.x", "$.y.a"));
+    assertEquals(
+        JsonSanitizer.parse(json).get("a").toString(),
+        JsonSanitizer.extract(json, "$.a").get("$.a"));
+  }
+
+  @Test
+  public static final void testStopsEarly() {
+    // Values in the first element of a top-level array are settled when it
+    // ends, since no later member can replace them.
+    final String prefix = "[{\"type\": \"a\", \"tenant\": {\"id\": 1}}, ";
+    // Reading past the prefix fails.
+    CharSequence huge = new CharSequence() {
+      @Override
+      public int length() {
+        return 100000;
+      }
+
+      @Override
+      public char charAt(int i) {
+        if (i >= prefix.length() + 1) {
+          throw new IllegalStateException("read " + i);
+        }
+        return i < prefix.length() ? prefix.charAt(i) : ' ';
+      }
+
+      @Override
+      public CharSequence subSequence(int start, int end) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = start; i < end; ++i) { sb.append(charAt(i)); }
+        return sb.toString();
+      }
+    };
+    Map<String, String> found = JsonSanitizer.extract(
+        huge, "$[0].type", "/0/tenant");
+    assertEquals("\"a\"", found.get("$[0].type"));
+    assertEquals("{\"id\": 1}", found.get("/0/tenant"));
+  }
+
+  @Test
+  public static final void testMalformedPaths() {
+    for (String bad : new String[] { "type", "$.", "$[x]", "$[-1]", "/a~2" }) {
+      try {
+        new JsonPathExtractor(bad);
+        fail(bad);
+      } catch (@SuppressWarnings("unused") IllegalArgumentException ex) {
+        // pass
+      }
+    }
+  }
+}
@@ -0,0 +1,148 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class JsonRedactorTest extends TestCase {
+
+  private static void assertRedacted(
+      String want, String input, JsonRedactor redactor) {
+    String got = JsonSanitizer.redact(input, redactor);
+    assertEquals(input, want, got);
+    // The output is well-formed and redaction does not need redoing.
+    assertEquals(input, got, JsonSanitizer.sanitize(got));
+    assertEquals(input, got, JsonSanitizer.redact(got, redactor));
+  }
+
+  @Test
+  public static final void testReplacingValues() {
+    JsonRedactor r = JsonRedactor.replacingValues(
+        "***", "password", "token", "$.user.ssn");
+    assertRedacted(
+        "{\"user\":\"bob\",\"password\":\"***\"}",
+        "{\"user\":\"bob\",\"password\":\"hunter2\"}", r);
+    assertRedacted(
+        "{\"user\":{\"ssn\":\"***\",\"token\":\"***\"},\"ssn\":1}",
+        "{\"user\":{\"ssn\":\"123\",\"token\":[1,{\"a\":2}]},\"ssn\":1}", r);
+    assertRedacted(
+        "[{\"password\": \"***\"}, {\"x\": {\"password\": \"***\"}}]",
+        "[{password: 'a'}, {x: {'password': {password: 'b'}}}]", r);
+    // Missing values are redacted too.
+    assertRedacted("{\"password\":\"***\"}", "{\"password\"", r);
+    assertRedacted("{\"password\":\"***\"}", "{\"password\":}", r);
+    // Members are found by their sanitized names.
+    assertRedacted("{\"pass\\u0077ord\":\"***\"}", "{'pass\\u0077ord':1}", r);
+    // Unchanged input needs no copy.
+    String input = "{\"user\":\"bob\"}";
+    assertSame(input, JsonSanitizer.redact(input, r));
+  }
+
+  @Test
+  public static final void testPlaceholderIsEscaped() {
+    JsonRedactor r = JsonRedactor.replacingValues("</script>\"", "a");
+    assertRedacted(
+        "{\"a\":\"\\u003c/script>\\\"\"}", "{\"a\":1}", r);
+  }
+
+  @Test
+  public static final void testRemovingMembers() {
+    JsonRedactor r = JsonRedactor.removingMembers("password", "/user/ssn");
+    assertRedacted(
+        "{\"user\":\"bob\"}",
+        "{\"user\":\"bob\",\"password\":\"hunter2\"}", r);
+    assertRedacted(
+        "{\"user\":\"bob\"}",
+        "{\"password\":\"hunter2\",\"user\":\"bob\"}", r);
+    assertRedacted(
+        "{\"a\":1, \"b\":2}",
+        "{\"a\":1, \"password\":{}, \"b\":2}", r);
+    assertRedacted("{}", "{\"password\":[1,2,3]}", r);
+    assertRedacted("{  }", "{ \"password\":1, }", r);
+    assertRedacted("{}", "{\"password\":,}", r);
+    assertRedacted("{ \"b\":2}", "{\"password\":1 \"b\":2}", r);
+    assertRedacted("{ \"\":[2]}", "{\"password\":1 [2]}", r);
+    assertRedacted(
+        "{\"user\":{\"name\":\"x\"},\"ssn\":3}",
+        "{\"user\":{\"ssn\":\"123\",\"name\":\"x\"},\"ssn\":3}", r);
+    assertRedacted("[{},{}]", "[{password:1},{password:2}", r);
+    assertRedacted(
+        "{\"$ref\":1}",
+        "{\"$ref\":1,\"/x\":2}", JsonRedactor.removingMembers("$['/x']"));
+    assertRedacted(
+        "{\"/x\":2}",
+        "{\"$ref\":1,\"/x\":2}", JsonRedactor.removingMembers("$ref"));
+  }
+
+  @Test
+  public static final void testFuzzyInputs() {
+    long seed = new Random().nextLong();
+    Random rnd = new Random(seed);
+    int nRuns = 300;
+    for (String input : new FuzzyStringGenerator(rnd)) {
+      if (--nRuns < 0) { break; }
+      JsonIndex index;
+      try {
+        index = JsonSanitizer.sanitizeAndIndex(input);
+      } catch (ArrayIndexOutOfBoundsException ex) {
+        // Nested too deeply.
+        continue;
+      }
+      // Redact members that are present.
+      List<String> names = new ArrayList<String>();
+      addMemberNames(index.getValue(0), names);
+      if (names.isEmpty()) { continue; }
+      String[] namesArr = names.toArray(new String[names.size()]);
+      for (JsonRedactor r : new JsonRedactor[] {
+             JsonRedactor.replacingValues("*", namesArr),
+             JsonRedactor.removingMembers(namesArr),
+           }) {
+        String got = JsonSanitizer.redact(input, r);
+        assertEquals(seed + ": " + input, got, JsonSanitizer.sanitize(got));
+      }
+    }
+  }
+
+  /** Adds the names of members in value that do not read as paths. */
+  private static void addMemberNames(JsonValue value, List<String> names) {
+    if (value.getType() != JsonValue.Type.OBJECT
+        && value.getType() != JsonValue.Type.ARRAY) {
+      return;
+    }
+    for (JsonValue v : value) {
+      String name = v.getKey();
+      if (name != null && !name.startsWith("$") && !name.startsWith("/")) {
+        names.add(name);
+      }
+      addMemberNames(v, names);
+    }
+  }
+
+  @Test
+  public static final void testMalformedPaths() {
+    try {
+      JsonRedactor.removingMembers("$.");
+      fail();
+    } catch (@SuppressWarnings("unused") IllegalArgumentException ex) {
+      // pass
+    }
+  }
+}
@@ -0,0 +1,122 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import com.google.json.JsonSanitizer.OutputProfile;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class JsonSanitizerCacheTest extends TestCase {
+
+  private static JsonSanitizerCache newCache(long maximumRetainedChars) {
+    return new JsonSanitizerCache(
+        maximumRetainedChars, JsonSanitizer.DEFAULT_NESTING_DEPTH,
+        OutputProfile.EMBEDDABLE, 1);
+  }
+
+  @Test
+  public static final void testHitsAndMisses() {
+    JsonSanitizerCache cache = newCache(1000);
+    String input = "{a:1}";
+    String output = cache.sanitize(input);
+    assertEquals("{\"a\":1}", output);
+    assertSame(output, cache.sanitize(new String(input)));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(input.length() + output.length(), cache.getRetainedChars());
+    // Valid input is retained once.
+    String valid = "[1,2]";
+    assertSame(valid, cache.sanitize(valid));
+    assertEquals(
+        input.length() + output.length() + valid.length(),
+        cache.getRetainedChars());
+    cache.clear();
+    assertEquals(0, cache.getRetainedChars());
+  }
+
+  @Test
+  public static final void testNull() {
+    JsonSanitizerCache cache = newCache(1000);
+    assertEquals(JsonSanitizer.sanitize(null), cache.sanitize(null));
+    assertEquals(0, cache.getHitCount() + cache.getMissCount());
+    assertEquals(0, cache.getRetainedChars());
+  }
+
+  @Test
+  public static final void testCollisionsAreVerified() {
+    // "Aa" and "BB" have the same hash code and length.
+    String a = "['Aa']";
+    String b = "['BB']";
+    assertEquals(a.hashCode(), b.hashCode());
+    JsonSanitizerCache cache = newCache(1000);
+    assertEquals("[\"Aa\"]", cache.sanitize(a));
+    assertEquals("[\"BB\"]", cache.sanitize(b));
+    assertEquals("[\"BB\"]", cache.sanitize(b));
+    assertEquals("[\"Aa\"]", cache.sanitize(a));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(3, cache.getMissCount());
+  }
+
+  @Test
+  public static final void testEvictsByRetainedChars() {
+    JsonSanitizerCache cache = newCache(30);
+    cache.sanitize("[\"aaaaaaaaaa\"]");  // 14 chars
+    cache.sanitize("[\"bbbbbbbbbb\"]");
+    // Touch a so that b is the least recently used.
+    cache.sanitize("[\"aaaaaaaaaa\"]");
+    cache.sanitize("[\"cccccccccc\"]");
+    assertEquals(1, cache.getEvictionCount());
+    assertEquals(28, cache.getRetainedChars());
+    cache.sanitize("[\"aaaaaaaaaa\"]");
+    assertEquals(2, cache.getHitCount());
+    cache.sanitize("[\"bbbbbbbbbb\"]");
+    assertEquals(2, cache.getHitCount());
+    // Too big to retain at all.
+    String big = "[\"" + new String(new char[40]).replace('\0', 'x') + "\"]";
+    assertSame(big, cache.sanitize(big));
+    assertTrue(cache.getRetainedChars() <= 30);
+  }
+
+  @Test
+  public static final void testConcurrentUse() throws Exception {
+    final JsonSanitizerCache cache = new JsonSanitizerCache(200);
+    final Throwable[] failure = new Throwable[1];
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; ++t) {
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 2000; ++i) {
+              int n = i % 50;
+              assertEquals("[" + n + "]", cache.sanitize("[" + n + ",]"));
+            }
+          } catch (Throwable th) {
+            synchronized (failure) { failure[0] = th; }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) { thread.join(); }
+    synchronized (failure) {
+      if (failure[0] != null) { throw new AssertionError(failure[0]); }
+    }
+    assertEquals(8000, cache.getHitCount() + cache.getMissCount());
+    assertTrue(cache.getRetainedChars() <= 200);
+  }
+}
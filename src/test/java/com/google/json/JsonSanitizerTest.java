@@ -17,6 +17,7 @@ package com.google.json;
 import static com.google.json.JsonSanitizer.DEFAULT_NESTING_DEPTH;
 import static com.google.json.JsonSanitizer.sanitize;
 
+import java.math.BigInteger;
 import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -240,6 +241,24 @@ public final class JsonSanitizerTest extends TestCase {
     );
   }
 
+  @Test
+  public static final void testHugeHexAndOctalNumbers() {
+    // Too big to be finite in JS, but still converted exactly.
+    StringBuilder hex = new StringBuilder("[0x");
+    StringBuilder octal = new StringBuilder("-0");
+    for (int i = 0; i < 20000; ++i) {
+      hex.append('f');
+      octal.append('7');
+    }
+    hex.append(']');
+    assertEquals(
+        "[" + new BigInteger(hex.substring(3, hex.length() - 1), 16) + "]",
+        JsonSanitizer.sanitize(hex.toString()));
+    assertEquals(
+        "-" + new BigInteger(octal.substring(2), 8),
+        JsonSanitizer.sanitize(octal.toString()));
+  }
+
   @Test
   public static final void testLongNumberInUnclosedInputWithU80() {
     // Found by Fabian Meumertzheim using CI Fuzz (https://www.code-intelligence.com)
@@ -358,4 +377,120 @@ public final class JsonSanitizerTest extends TestCase {
     String got2 = JsonSanitizer.sanitize(got1);
     assertEquals(want, got2);
   }
+
+  @Test
+  public static final void testPlainJsonProfile() {
+    String[] embeddingSensitive = {
+        "\"<script>foo()</script>\"",
+        "\"<!--\"",
+        "\"-->\"",
+        "\"x]]>\"",
+        "[\"<b>Hello</b>\"]",
+    };
+    for (String input : embeddingSensitive) {
+      String plain = sanitize(
+          input, DEFAULT_NESTING_DEPTH, JsonSanitizer.OutputProfile.PLAIN_JSON);
+      assertSame(input, input, plain);
+    }
+    // Other fixups still happen.
+    assertEquals(
+        "{\"a\":\"</script>\\n\",\"b\":[16]}",
+        sanitize(
+            "{a:'</script>\n',b:[0x10,]}", DEFAULT_NESTING_DEPTH,
+            JsonSanitizer.OutputProfile.PLAIN_JSON));
+    // The default is embeddable.
+    assertEquals(
+        sanitize("'</script>]]>'"),
+        sanitize(
+            "'</script>]]>'", DEFAULT_NESTING_DEPTH,
+            JsonSanitizer.OutputProfile.EMBEDDABLE));
+  }
+
+  @Test
+  public static final void testNonStringInputs() {
+    String[] inputs = {
+        "", "null", "[1,2,3]", "{ foo: 'bar' }", "[1,2,3,]",
+        "'<script>'", "\"-->\"", "false/* comment */", "[0x10,012,]",
+        "{\"a\":\"b\"}", "'\\x61\\u0062\\143'", "{{{",
+    };
+    for (String input : inputs) {
+      String want = sanitize(input);
+
+      CharSequence fromBuilder = sanitize(new StringBuilder(input));
+      assertEquals(input, want, fromBuilder.toString());
+
+      char[] padded = ("<<" + input + ">>").toCharArray();
+      CharSequence fromChars = sanitize(padded, 2, input.length());
+      assertEquals(input, want, fromChars.toString());
+
+      CharSequence fromBuffer = sanitize(
+          java.nio.CharBuffer.wrap(padded, 2, input.length()));
+      assertEquals(input, want, fromBuffer.toString());
+
+      CharSequence fromReadOnlyBuffer = sanitize(
+          java.nio.CharBuffer.wrap(padded, 2, input.length()).asReadOnlyBuffer());
+      assertEquals(input, want, fromReadOnlyBuffer.toString());
+    }
+
+    // Valid input is returned without copying.
+    StringBuilder valid = new StringBuilder("[1,2,3]");
+    assertSame(valid, sanitize(valid));
+  }
+
+  @Test
+  public static final void testSanitizeInPlace() {
+    // Shrinking rewrites stay in the input buffer.
+    char[] chars = "xx[1,2,/*three*/3,]yy".toCharArray();
+    java.nio.CharBuffer out = JsonSanitizer.sanitizeInPlace(chars, 2, 17);
+    assertSame(chars, out.array());
+    assertEquals(2, out.arrayOffset() + out.position());
+    assertEquals("[1,2,3]", out.toString());
+    assertEquals("[1,2,3]", new String(chars, 2, out.remaining()));
+    // Content after the input is not touched.
+    assertEquals("yy", new String(chars, 19, 2));
+
+    // One for one replacements stay in the input buffer.
+    chars = "['a','b']".toCharArray();
+    out = JsonSanitizer.sanitizeInPlace(chars, 0, chars.length);
+    assertSame(chars, out.array());
+    assertEquals("[\"a\",\"b\"]", out.toString());
+
+    // Growing rewrites use spare room after the input if allowed,
+    chars = "{a:0x10}      XY".toCharArray();
+    out = JsonSanitizer.sanitizeInPlace(chars, 0, 8, 14);
+    assertSame(chars, out.array());
+    assertEquals("{\"a\":16}", out.toString());
+    assertEquals("XY", new String(chars, 14, 2));
+
+    // and otherwise fall back to a new buffer.
+    chars = "{a:b}".toCharArray();
+    out = JsonSanitizer.sanitizeInPlace(chars, 0, chars.length);
+    assertNotSame(chars, out.array());
+    assertEquals("{\"a\":\"b\"}", out.toString());
+
+    // Chars after the input belong to the caller.
+    chars = "{a:1}XYZW".toCharArray();
+    out = JsonSanitizer.sanitizeInPlace(chars, 0, 5);
+    assertEquals("{\"a\":1}", out.toString());
+    assertEquals("XYZW", new String(chars, 5, 4));
+    try {
+      JsonSanitizer.sanitizeInPlace(chars, 0, 5, 4);
+      fail();
+    } catch (IndexOutOfBoundsException ex) {
+      // pass
+    }
+
+    // A backslash dropped before a word is not read back as part of an
+    // escaped '-' when the output has overwritten it.
+    chars = "\\u002d->".toCharArray();
+    out = JsonSanitizer.sanitizeInPlace(chars, 0, chars.length);
+    assertEquals("\"u002d->\"", out.toString());
+    assertEquals("\"u002d->\"", JsonSanitizer.sanitize("\\u002d->"));
+
+    // Valid input is untouched.
+    chars = "{\"a\":\"b\"}".toCharArray();
+    out = JsonSanitizer.sanitizeInPlace(chars, 0, chars.length);
+    assertSame(chars, out.array());
+    assertEquals("{\"a\":\"b\"}", out.toString());
+  }
 }
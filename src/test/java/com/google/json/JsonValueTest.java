@@ -0,0 +1,169 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class JsonValueTest extends TestCase {
+
+  @Test
+  public static final void testTree() {
+    JsonValue root = JsonSanitizer.parse(
+        "{ name: 'Bob\\n\\u00e9', 'age': 0x20, tags: [true, false, null,],"
+        + " \"n\": -1.5e2, \"big\": 12345678901234567890, \"x\\\"y\": {} }");
+    assertEquals(JsonValue.Type.OBJECT, root.getType());
+    assertEquals(6, root.size());
+    assertEquals("name", root.getKey(0));
+    assertEquals("x\"y", root.getKey(5));
+    assertEquals("Bob\né", root.get("name").getString());
+    assertEquals(32L, root.get("age").getLong());
+    assertEquals(JsonValue.Type.NUMBER, root.get(1).getType());
+    assertEquals(-150.0, root.get("n").getDouble());
+    assertEquals(-150L, root.get("n").getLong());
+    assertEquals(
+        new BigDecimal("12345678901234567890"),
+        root.get("big").getBigDecimal());
+    assertEquals(JsonValue.Type.OBJECT, root.get("x\"y").getType());
+    assertEquals(0, root.get("x\"y").size());
+    assertNull(root.get("missing"));
+
+    JsonValue tags = root.get("tags");
+    assertEquals(JsonValue.Type.ARRAY, tags.getType());
+    assertEquals("[true, false, null]", tags.toString());
+    assertEquals(3, tags.size());
+    assertTrue(tags.get(0).getBoolean());
+    assertFalse(tags.get(1).getBoolean());
+    assertEquals(JsonValue.Type.NULL, tags.get(2).getType());
+    assertEquals("tags", tags.getKey());
+    assertNull(tags.get(0).getKey());
+    assertEquals("age", root.get(1).getKey());
+  }
+
+  @Test
+  public static final void testDuplicateKeys() {
+    JsonValue root = JsonSanitizer.parse(
+        "{a: {b: 1}, c: 2, a: {d: 3}, c: [4]}");
+    // Like JSON.parse, the last member with a name wins.
+    assertEquals("{\"d\": 3}", root.get("a").toString());
+    assertNull(root.get("a").get("b"));
+    assertEquals("[4]", root.get("c").toString());
+    assertEquals("c", root.get("c").getKey());
+    assertEquals("[4]", find(root.getIndex(), "$.c"));
+    assertEquals("3", find(root.getIndex(), "$.a.d"));
+    assertEquals(-1, root.getIndex().find("$.a.b"));
+    // Positional access still sees every member.
+    assertEquals(4, root.size());
+    assertEquals("{\"b\": 1}", root.get(0).toString());
+  }
+
+  private static String find(JsonIndex index, String path) {
+    return index.getText(index.find(path)).toString();
+  }
+
+  @Test
+  public static final void testIteration() {
+    JsonValue root = JsonSanitizer.parse(
+        "{ a: [1, [2, 3], {b: 4}], 'c': {}, d: null }");
+    List<String> keys = new ArrayList<String>();
+    List<String> values = new ArrayList<String>();
+    for (JsonValue member : root) {
+      keys.add(member.getKey());
+      values.add(member.toString());
+    }
+    assertEquals(Arrays.asList("a", "c", "d"), keys);
+    assertEquals(
+        Arrays.asList("[1, [2, 3], {\"b\": 4}]", "{}", "null"), values);
+
+    List<String> elements = new ArrayList<String>();
+    for (JsonValue element : root.get("a")) {
+      assertNull(element.getKey());
+      elements.add(element.toString());
+    }
+    assertEquals(Arrays.asList("1", "[2, 3]", "{\"b\": 4}"), elements);
+
+    Iterator<JsonValue> it = root.get("c").iterator();
+    assertFalse(it.hasNext());
+    try {
+      it.next();
+      fail();
+    } catch (@SuppressWarnings("unused") NoSuchElementException ex) {
+      // pass
+    }
+    try {
+      root.get("d").iterator();
+      fail();
+    } catch (@SuppressWarnings("unused") IllegalStateException ex) {
+      // pass
+    }
+  }
+
+  @Test
+  public static final void testIterationIsLinear() {
+    int n = 200000;
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < n; ++i) {
+      sb.append(i == 0 ? "" : ",").append(i);
+    }
+    JsonValue root = JsonSanitizer.parse(sb.append(']').toString());
+    // Calling get(i) for each i would take about n*n/2 = 2e10 steps.
+    long sum = 0;
+    int count = 0;
+    for (JsonValue element : root) {
+      sum += element.getLong();
+      ++count;
+    }
+    assertEquals(n, count);
+    assertEquals((long) n * (n - 1) / 2, sum);
+  }
+
+  @Test
+  public static final void testMisuse() {
+    JsonValue root = JsonSanitizer.parse("[1, \"a\"]");
+    try {
+      root.get(2);
+      fail();
+    } catch (@SuppressWarnings("unused") IndexOutOfBoundsException ex) {
+      // pass
+    }
+    try {
+      root.get(0).getString();
+      fail();
+    } catch (@SuppressWarnings("unused") IllegalStateException ex) {
+      // pass
+    }
+    try {
+      root.get("a");
+      fail();
+    } catch (@SuppressWarnings("unused") IllegalStateException ex) {
+      // pass
+    }
+    try {
+      JsonSanitizer.parse("1.5").getLong();
+      fail();
+    } catch (@SuppressWarnings("unused") ArithmeticException ex) {
+      // pass
+    }
+    assertEquals(JsonValue.Type.NULL, JsonSanitizer.parse("").getType());
+  }
+}
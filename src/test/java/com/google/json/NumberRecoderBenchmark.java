@@ -0,0 +1,73 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.util.Random;
+
+/**
+ * Times sanitizing inputs that are dominated by number rewriting: long hex
+ * IDs that have to be recoded as decimal, and numeric property names that
+ * have to be canonicalized.
+ * <p>
+ * Run with
+ * {@code java -cp target/classes:target/test-classes
+ * com.google.json.NumberRecoderBenchmark}.
+ * This is not run as part of the tests.
+ */
+@SuppressWarnings("javadoc")
+public final class NumberRecoderBenchmark {
+
+  public static void main(String... argv) {
+    Random rnd = new Random(0);
+    StringBuilder hex = new StringBuilder("[");
+    StringBuilder keys = new StringBuilder("{");
+    for (int i = 0; i < 1000; ++i) {
+      if (i != 0) {
+        hex.append(',');
+        keys.append(',');
+      }
+      // 64 and 128 bit IDs, as telemetry producers emit them.
+      hex.append("0x").append(Long.toHexString(rnd.nextLong()));
+      if ((i & 1) == 0) { hex.append(Long.toHexString(rnd.nextLong())); }
+      keys.append(rnd.nextInt(100000)).append('.').append(rnd.nextInt(1000))
+          .append("e-").append(rnd.nextInt(30)).append(":0");
+    }
+    hex.append(']');
+    keys.append('}');
+
+    run("hex ids", hex.toString());
+    run("numeric keys", keys.toString());
+  }
+
+  private static void run(String name, String input) {
+    int reps = 2000;
+    // Warm up.
+    for (int i = 0; i < reps; ++i) { JsonSanitizer.sanitize(input); }
+
+    long bytes0 = ThreadAllocation.allocatedBytes();
+    long t0 = System.nanoTime();
+    int sink = 0;
+    for (int i = 0; i < reps; ++i) {
+      sink += JsonSanitizer.sanitize(input).length();
+    }
+    long t1 = System.nanoTime();
+    long bytes1 = ThreadAllocation.allocatedBytes();
+
+    System.out.println(
+        name + ": " + ((t1 - t0) / reps) + " ns/op"
+        + (bytes0 >= 0 ? ", " + ((bytes1 - bytes0) / reps) + " B/op" : "")
+        + " (" + sink / reps + " chars)");
+  }
+}
@@ -0,0 +1,124 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class NumberRecoderTest extends TestCase {
+
+  @Test
+  public static final void testRecodeMatchesBigInteger() {
+    NumberRecoder recoder = new NumberRecoder();
+    Random rnd = new Random(0x5eed);
+    for (int base : new int[] { 8, 10, 16 }) {
+      for (int run = 0; run < 500; ++run) {
+        int nDigits = rnd.nextInt(run < 50 ? 4 : 80);
+        StringBuilder digits = new StringBuilder("x");
+        for (int i = 0; i < nDigits; ++i) {
+          char digit = Character.forDigit(rnd.nextInt(base), base);
+          digits.append(rnd.nextBoolean() ? Character.toUpperCase(digit)
+                        : digit);
+        }
+        recoder.recode(digits, 1, digits.length(), base);
+        String want = nDigits == 0
+            ? "0" : new BigInteger(digits.substring(1), base).toString();
+        assertEquals(digits.toString(), want, recoder.toString());
+      }
+    }
+    // Leading zeroes and limb boundaries.
+    recoder.recode("0000000", 0, 7, 8);
+    assertEquals("0", recoder.toString());
+    recoder.recode("3b9aca00", 0, 8, 16);
+    assertEquals("1000000000", recoder.toString());
+    recoder.recode("de0b6b3a7640000", 0, 15, 16);
+    assertEquals("1000000000000000000", recoder.toString());
+    recoder.recode("00120", 0, 5, 10);
+    assertEquals("120", recoder.toString());
+  }
+
+  private static String repeat(char ch, int n) {
+    char[] chars = new char[n];
+    Arrays.fill(chars, ch);
+    return new String(chars);
+  }
+
+  @Test
+  public static final void testRecodeLong() {
+    NumberRecoder recoder = new NumberRecoder();
+    Random rnd = new Random(0x5eed);
+    // Around the switch from base 10**9 limbs to BigInteger, and well past.
+    int max = NumberRecoder.MAX_LIMB_DIGITS;
+    for (int nDigits : new int[] { max - 1, max, max + 1, max + 2, 5000 }) {
+      for (int base : new int[] { 8, 16 }) {
+        StringBuilder sb = new StringBuilder("00");
+        for (int i = 0; i < nDigits; ++i) {
+          sb.append(Character.forDigit(
+              i == 0 ? 1 + rnd.nextInt(base - 1) : rnd.nextInt(base), base));
+        }
+        String digits = sb.toString();
+        recoder.recode(digits, 0, digits.length(), base);
+        assertEquals(
+            digits, new BigInteger(digits, base).toString(),
+            recoder.toString());
+      }
+    }
+    // The biggest integers with as many digits as a finite JS number, and
+    // the least that are Infinity in JS, are converted alike.
+    String hex = "1" + repeat('0', 256);
+    recoder.recode(hex, 0, hex.length(), 16);
+    assertEquals(BigInteger.ONE.shiftLeft(1024).toString(), recoder.toString());
+    String octal = repeat('7', 342);
+    recoder.recode(octal, 0, octal.length(), 8);
+    assertEquals(
+        BigInteger.ONE.shiftLeft(1026).subtract(BigInteger.ONE).toString(),
+        recoder.toString());
+  }
+
+  private static void assertCanonical(String want, String number) {
+    NumberRecoder recoder = new NumberRecoder();
+    // Canonicalize from the middle of a buffer.
+    String padded = "[" + number + "]";
+    assertTrue(
+        number, recoder.canonicalize(padded, 1, padded.length() - 1));
+    assertEquals(number, want, recoder.toString());
+  }
+
+  @Test
+  public static final void testCanonicalize() {
+    assertCanonical("0", "-0.000e5");
+    assertCanonical("1", "1.0");
+    assertCanonical("-150", "-1.5e2");
+    assertCanonical("0.05", "0.5e-1");
+    assertCanonical("123.45", "12345e-2");
+    assertCanonical("100000000000000000000", "1e20");
+    assertCanonical("1e+21", "1e21");
+    assertCanonical("1.5e+21", "15e20");
+    assertCanonical("0.000001", "1e-6");
+    assertCanonical("1e-7", "1e-7");
+    assertCanonical("1.234e-102", "0.01234e-100");
+    assertCanonical("12.5", "00012.500");
+    assertCanonical("1e+2147483647", "1e2147483647");
+    assertCanonical("1e-2147483648", "1e-2147483648");
+    NumberRecoder recoder = new NumberRecoder();
+    assertFalse(recoder.canonicalize("1e2147483648", 0, 12));
+    assertFalse(recoder.canonicalize("1e99999999999999999999", 0, 22));
+  }
+}
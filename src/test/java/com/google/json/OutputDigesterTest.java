@@ -0,0 +1,73 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class OutputDigesterTest extends TestCase {
+
+  /** Checks that the streamed checksum matches one over the output. */
+  private static void assertChecksum(String jsonish) throws Exception {
+    CRC32 streamed = new CRC32();
+    String out = JsonSanitizer.sanitizeAndDigest(jsonish, streamed);
+    assertEquals(jsonish, JsonSanitizer.sanitize(jsonish), out);
+    CRC32 want = new CRC32();
+    want.update(out.getBytes("UTF-8"));
+    assertEquals(jsonish, want.getValue(), streamed.getValue());
+  }
+
+  private static void assertDigest(String jsonish) throws Exception {
+    MessageDigest streamed = sha256();
+    String out = JsonSanitizer.sanitizeAndDigest(jsonish, streamed);
+    assertEquals(jsonish, JsonSanitizer.sanitize(jsonish), out);
+    assertTrue(
+        jsonish,
+        Arrays.equals(
+            sha256().digest(out.getBytes("UTF-8")), streamed.digest()));
+    assertChecksum(jsonish);
+  }
+
+  private static MessageDigest sha256() throws NoSuchAlgorithmException {
+    return MessageDigest.getInstance("SHA-256");
+  }
+
+  @Test
+  public static final void testDigest() throws Exception {
+    assertDigest("");
+    assertDigest("  {\"a\": [1, 2, 3]}\n");
+    assertDigest("[1, 2, 3,]");
+    assertDigest("{a: 'b', 'c': 0x10, /* x */ d: [true,,], }  ");
+    assertDigest("[\"café   😀\", '\ud83d', '\ude00x']");
+    StringBuilder big = new StringBuilder("[");
+    for (int i = 0; i < 5000; ++i) {
+      big.append(i == 0 ? "" : ",").append("\"é").append(i).append('"');
+    }
+    assertDigest(big.toString());
+    // The fast path returns the input, and still streams it.
+    String valid = big.append(']').toString();
+    MessageDigest streamed = sha256();
+    assertSame(valid, JsonSanitizer.sanitizeAndDigest(valid, streamed));
+    assertTrue(
+        Arrays.equals(
+            sha256().digest(valid.getBytes("UTF-8")), streamed.digest()));
+  }
+}
@@ -0,0 +1,201 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.json;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Random;
+
+import com.google.json.SlowInputs.Cost;
+import com.google.json.SlowInputs.Entry;
+import com.google.json.SlowInputs.Operation;
+
+/**
+ * Hunts for inputs that take more than linear time or space by hill
+ * climbing: starting from inputs made by {@link FuzzyStringGenerator}, it
+ * keeps mutations that raise the cost per char of sanitizing or minifying,
+ * and appends any input whose cost exceeds the bounds in
+ * {@link SlowInputs} to the corpus that {@link SlowInputsTest} replays.
+ * <p>
+ * Run with
+ * {@code java -cp target/classes:target/test-classes
+ * com.google.json.PerformanceFuzzer [generations]}
+ * from the project directory, and pass {@code -Dfuzz.seed=...} to replay a
+ * run.
+ * This is not run as part of the tests.
+ */
+@SuppressWarnings("javadoc")
+public final class PerformanceFuzzer {
+  /** Inputs are grown up to about this length. */
+  private static final int MAX_LENGTH = 1 << 16;
+  /** Climbs restart from a fresh input after this many failed mutations. */
+  private static final int PATIENCE = 200;
+  private static final File CORPUS = new File(
+      "src/test/resources/com/google/json/" + SlowInputs.CORPUS);
+
+  private final Random rnd;
+  private final FuzzyStringGenerator generator;
+
+  private PerformanceFuzzer(Random rnd) {
+    this.rnd = rnd;
+    this.generator = new FuzzyStringGenerator(rnd);
+  }
+
+  public static void main(String... argv) throws IOException {
+    int generations = argv.length != 0 ? Integer.parseInt(argv[0]) : 10000;
+    String seedString = System.getProperty("fuzz.seed", null);
+    long seed = seedString != null
+        ? Long.parseLong(seedString, 16) : new Random().nextLong();
+    System.err.println("Fuzzing with -Dfuzz.seed=" + Long.toHexString(seed));
+
+    PerformanceFuzzer fuzzer = new PerformanceFuzzer(new Random(seed));
+    fuzzer.warmUp();
+    for (Operation operation : Operation.values()) {
+      fuzzer.climb(operation, generations);
+    }
+  }
+
+  /** Runs the operations until the JIT has compiled them. */
+  private void warmUp() {
+    Iterator<String> inputs = generator.iterator();
+    long end = System.nanoTime() + 5000000000L;
+    while (System.nanoTime() < end) {
+      String input = inputs.next();
+      for (Operation operation : Operation.values()) {
+        operation.apply(input);
+      }
+    }
+  }
+
+  private void climb(Operation operation, int generations) throws IOException {
+    String best = generator.makeRandomJson();
+    double bestCost = cost(operation, best);
+    int sinceImprovement = 0;
+    double highest = 0;
+    for (int i = 0; i < generations; ++i) {
+      String candidate = mutate(best);
+      double candidateCost = cost(operation, candidate);
+      if (candidateCost > bestCost) {
+        best = candidate;
+        bestCost = candidateCost;
+        sinceImprovement = 0;
+        if (bestCost > highest) {
+          highest = bestCost;
+          System.err.println(
+              operation + " " + i + ": " + best.length() + " chars at "
+              + String.format("%.3f", bestCost) + " of bound");
+        }
+        if (bestCost > 1 && confirm(operation, best)) {
+          save(new Entry(operation, best));
+          sinceImprovement = PATIENCE;
+        }
+      } else {
+        ++sinceImprovement;
+      }
+      if (sinceImprovement >= PATIENCE) {
+        best = generator.makeRandomJson();
+        bestCost = cost(operation, best);
+        sinceImprovement = 0;
+      }
+    }
+    System.err.println(
+        operation + ": highest cost " + String.format("%.3f", highest)
+        + " of bound");
+  }
+
+  /** The cost of input relative to the linear bound for its length. */
+  private static double cost(Operation operation, String input) {
+    try {
+      return SlowInputs.measure(operation, input, 3)
+          .relativeToBound(input.length());
+    } catch (@SuppressWarnings("unused") ArrayIndexOutOfBoundsException e) {
+      // Nested more deeply than the sanitizer allows, so it gave up.
+      return 0;
+    }
+  }
+
+  /**
+   * Measures again, more carefully, to rule out a pause or a JIT stall.
+   * Pauses are common enough that one careful measurement is not enough.
+   */
+  private static boolean confirm(Operation operation, String input) {
+    for (int i = 0; i < 3; ++i) {
+      System.gc();
+      Cost cost = SlowInputs.measure(operation, input, 50);
+      System.err.println(
+          operation + " took " + cost + " on " + input.length() + " chars");
+      if (cost.relativeToBound(input.length()) <= 1) { return false; }
+    }
+    return true;
+  }
+
+  /**
+   * Fragments of JS syntax that random characters rarely spell, which
+   * change how the sanitizer treats what follows them.
+   */
+  private static final String[] DICTIONARY = {
+    "0x", "0", "-0", ".", "e+", "'", "\"", "\\", "\\x", "\\u", "/*",
+    "*/", "//", "\n", "[", "]", "{", "}", ",", ":", "(", ")", "<!--",
+    "-->", "</script", "]]>", "\u2028", "\ud800", "null", "true",
+  };
+
+  /**
+   * Mutates input, either as {@link FuzzyStringGenerator} does, by
+   * inserting a fragment from {@link #DICTIONARY}, or by repeating a slice
+   * of it so that structures that are costly stay in the input while it
+   * grows.
+   */
+  private String mutate(String input) {
+    int n = input.length();
+    switch (n < 2 ? 0 : rnd.nextInt(4)) {
+      case 0:
+        return generator.mutate(n != 0 ? input : "[]");
+      case 1:
+        int at = rnd.nextInt(n + 1);
+        return input.substring(0, at)
+            + DICTIONARY[rnd.nextInt(DICTIONARY.length)]
+            + input.substring(at);
+      default:
+        break;
+    }
+    int start = rnd.nextInt(n - 1);
+    int end = start + 1 + rnd.nextInt(Math.min(n - start, 64));
+    int times = 1 + rnd.nextInt(Math.max(1, (MAX_LENGTH - n) / (end - start)));
+    times = Math.min(times, 64);
+    StringBuilder sb = new StringBuilder(n + times * (end - start));
+    sb.append(input, 0, end);
+    for (int i = 1; i < times; ++i) {
+      sb.append(input, start, end);
+    }
+    return sb.append(input, end, n).toString();
+  }
+
+  private static void save(Entry entry) throws IOException {
+    System.err.println("Saving " + entry.operation + " input of "
+        + entry.input.length() + " chars to " + CORPUS);
+    CORPUS.getParentFile().mkdirs();
+    Writer out = new OutputStreamWriter(
+        new FileOutputStream(CORPUS, true), "UTF-8");
+    try {
+      out.write(entry.toString());
+      out.write('\n');
+    } finally {
+      out.close();
+    }
+  }
+}
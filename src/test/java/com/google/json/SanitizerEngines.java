@@ -0,0 +1,363 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The ways of sanitizing that must agree with
+ * {@link JsonSanitizer#sanitize(String)}, which {@link DifferentialTest}
+ * checks against one another.
+ * <p>
+ * A new engine, whether streaming, byte-level or parallel, should be added
+ * to {@link #ALL} before anything starts depending on it.
+ */
+final class SanitizerEngines {
+  private SanitizerEngines() {
+    // Static API.
+  }
+
+  /** A way of producing the sanitized form of some JSON-like content. */
+  abstract static class Engine {
+    final String name;
+
+    Engine(String name) {
+      this.name = name;
+    }
+
+    abstract String sanitize(String jsonish) throws IOException;
+
+    /**
+     * The form of an outcome that is compared with the reference's, which
+     * engines override to overlook differences that they document.
+     */
+    String comparable(String outcome) {
+      return outcome;
+    }
+
+    /**
+     * The output, or the name of the exception thrown, so that engines
+     * agree on inputs that the reference rejects too.
+     */
+    final String outcome(String jsonish) {
+      try {
+        return sanitize(jsonish);
+      } catch (IOException ex) {
+        return "threw " + ex.getClass().getName();
+      } catch (RuntimeException ex) {
+        return "threw " + ex.getClass().getName();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /** The engine that the others must agree with. */
+  static final Engine REFERENCE = new Engine("sanitize(String)") {
+    @Override
+    String sanitize(String jsonish) {
+      return JsonSanitizer.sanitize(jsonish);
+    }
+  };
+
+  /** The engines checked against {@link #REFERENCE}. */
+  static final List<Engine> ALL = Collections.unmodifiableList(Arrays.asList(
+      new Engine("sanitize(CharSequence)") {
+        @Override
+        String sanitize(String jsonish) {
+          return JsonSanitizer.sanitize(new StringBuilder(jsonish))
+              .toString();
+        }
+      },
+      new Engine("sanitize(char[])") {
+        @Override
+        String sanitize(String jsonish) {
+          char[] chars = (" " + jsonish + " ").toCharArray();
+          return JsonSanitizer.sanitize(chars, 1, jsonish.length())
+              .toString();
+        }
+      },
+      new Engine("sanitizeInPlace") {
+        @Override
+        String sanitize(String jsonish) {
+          char[] chars = ("<" + jsonish + ">").toCharArray();
+          String out = JsonSanitizer.sanitizeInPlace(
+              chars, 1, jsonish.length()).toString();
+          checkUntouched(chars, 0, 1, "<");
+          checkUntouched(chars, chars.length - 1, chars.length, ">");
+          return out;
+        }
+      },
+      new Engine("sanitizeInPlace with spare room") {
+        @Override
+        String sanitize(String jsonish) {
+          char[] chars = ("<" + jsonish + SPARE + ">").toCharArray();
+          String out = JsonSanitizer.sanitizeInPlace(
+              chars, 1, jsonish.length(), chars.length - 1).toString();
+          checkUntouched(chars, 0, 1, "<");
+          checkUntouched(chars, chars.length - 1, chars.length, ">");
+          return out;
+        }
+      },
+      new Engine("sanitizeAsEdits") {
+        @Override
+        String sanitize(String jsonish) {
+          return JsonSanitizer.sanitizeAsEdits(jsonish).toString();
+        }
+      },
+      new Engine("sanitizeAsEdits applied to the input") {
+        @Override
+        String sanitize(String jsonish) {
+          return EditedJsonTest.applyEdits(
+              jsonish, JsonSanitizer.sanitizeAsEdits(jsonish).getEdits());
+        }
+      },
+      new Engine("sanitizeWithHandler") {
+        @Override
+        String sanitize(String jsonish) {
+          JsonHandlerTest.Recorder r = new JsonHandlerTest.Recorder();
+          String out = JsonSanitizer.sanitizeWithHandler(jsonish, r).toString();
+          // The events spell out the same output, less whitespace.
+          if (!JsonHandlerTest.stripSpaces(out).equals(r.compact.toString())) {
+            throw new IllegalStateException("events spell " + r.compact);
+          }
+          r.checkStable(out);
+          return out;
+        }
+      },
+      new Engine("sanitizeAndDigest(String, Checksum)") {
+        @Override
+        String sanitize(String jsonish) throws IOException {
+          CRC32 streamed = new CRC32();
+          String out = JsonSanitizer.sanitizeAndDigest(jsonish, streamed);
+          CRC32 want = new CRC32();
+          want.update(out.getBytes("UTF-8"));
+          if (want.getValue() != streamed.getValue()) {
+            throw new IllegalStateException("checksum is not of the output");
+          }
+          return out;
+        }
+      },
+      new Engine("sanitizingReader(CharSequence)") {
+        @Override
+        String sanitize(String jsonish) throws IOException {
+          return readAll(JsonSanitizer.sanitizingReader(jsonish));
+        }
+      },
+      new Engine("sanitizingReader(Reader)") {
+        @Override
+        String sanitize(String jsonish) throws IOException {
+          return readAll(JsonSanitizer.sanitizingReader(
+              new StringReader(jsonish)));
+        }
+      },
+      new Engine("sanitizeAndIndex") {
+        @Override
+        String sanitize(String jsonish) {
+          JsonIndex index = JsonSanitizer.sanitizeAndIndex(jsonish);
+          String out = index.getJson().toString();
+          // The first token's value spans the whole output.
+          String top = index.getText(0).toString();
+          if (!out.trim().equals(top)) {
+            throw new IllegalStateException("top-level value is " + top);
+          }
+          return out;
+        }
+      },
+      new Engine("JsonSanitizerCache") {
+        private final JsonSanitizerCache cache = new JsonSanitizerCache(1024);
+
+        @Override
+        String sanitize(String jsonish) {
+          // The second call is answered from the cache when it fits.
+          cache.sanitize(jsonish);
+          return cache.sanitize(jsonish);
+        }
+      },
+      new Engine("IncrementalJson.edit") {
+        @Override
+        String sanitize(String jsonish) {
+          // Sanitize the input without its middle third, then put it back.
+          int n = jsonish.length();
+          int start = n / 3, end = 2 * n / 3;
+          IncrementalJson before = JsonSanitizer.sanitizeIncrementally(
+              jsonish.substring(0, start) + jsonish.substring(end),
+              JsonSanitizer.DEFAULT_NESTING_DEPTH,
+              JsonSanitizer.OutputProfile.EMBEDDABLE, 4);
+          return before.edit(start, start, jsonish.substring(start, end))
+              .getOutput();
+        }
+      },
+      new Engine("sanitizeChannel") {
+        @Override
+        String sanitize(String jsonish) throws IOException {
+          byte[] bytes = jsonish.getBytes("UTF-8");
+          if (!jsonish.equals(new String(bytes, "UTF-8"))) {
+            // Lone surrogates do not survive a trip through UTF-8.
+            return JsonSanitizer.sanitize(jsonish);
+          }
+          // Small segments and windows so that tokens straddle them.
+          return ChannelSanitizerTest.sanitizeFile(bytes, 5, 16);
+        }
+      },
+      new Engine("sanitizeChannel carrying commas") {
+        @Override
+        String sanitize(String jsonish) throws IOException {
+          byte[] bytes = jsonish.getBytes("UTF-8");
+          if (!jsonish.equals(new String(bytes, "UTF-8"))) {
+            return JsonSanitizer.sanitize(jsonish);
+          }
+          // Carry pending commas over rather than widen the window.
+          return ChannelSanitizerTest.sanitizeFile(
+              bytes, 5, 16, 16, Integer.MAX_VALUE);
+        }
+
+        /** A carried comma may land anywhere in the whitespace after it. */
+        @Override
+        String comparable(String output) {
+          return commasFirst(output);
+        }
+      }));
+
+  /** Room for output of sanitizeInPlace to grow into. */
+  private static final String SPARE = "                                ";
+
+  /**
+   * Throws if sanitizing in place wrote to chars[start:end], which should
+   * still hold expected.
+   */
+  private static void checkUntouched(
+      char[] chars, int start, int end, String expected) {
+    String actual = new String(chars, start, end - start);
+    if (!expected.equals(actual)) {
+      throw new IllegalStateException(
+          "wrote " + SlowInputs.quote(actual) + " outside the input");
+    }
+  }
+
+  /** Reads r in small, odd-sized chunks to exercise buffer boundaries. */
+  private static String readAll(Reader r) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    char[] buf = new char[7];
+    for (int n; (n = r.read(buf, 0, buf.length)) >= 0;) {
+      sb.append(buf, 0, n);
+    }
+    r.close();
+    return sb.toString();
+  }
+
+  /**
+   * Moves each comma outside strings to the start of the whitespace around
+   * it, so that outputs which differ only in where a comma sits among
+   * whitespace compare equal.
+   */
+  static String commasFirst(String json) {
+    StringBuilder sb = new StringBuilder(json.length());
+    boolean inString = false;
+    for (int i = 0, n = json.length(); i < n; ++i) {
+      char ch = json.charAt(i);
+      if (inString) {
+        if (ch == '\\' && i + 1 < n) {
+          sb.append(ch);
+          ch = json.charAt(++i);
+        } else if (ch == '"') {
+          inString = false;
+        }
+      } else if (ch == '"') {
+        inString = true;
+      } else if (ch == ',' || isSpace(ch)) {
+        // Copy the run of commas and whitespace, commas first.
+        int runStart = sb.length();
+        for (; i < n; ++i) {
+          char c = json.charAt(i);
+          if (c == ',') {
+            sb.insert(runStart, c);
+          } else if (isSpace(c)) {
+            sb.append(c);
+          } else {
+            break;
+          }
+        }
+        --i;
+        continue;
+      }
+      sb.append(ch);
+    }
+    return sb.toString();
+  }
+
+  private static boolean isSpace(char ch) {
+    return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r';
+  }
+
+  /** True if engine's outcome on jsonish differs from the reference's. */
+  static boolean disagrees(Engine engine, String jsonish) {
+    return !engine.comparable(REFERENCE.outcome(jsonish))
+        .equals(engine.comparable(engine.outcome(jsonish)));
+  }
+
+  /**
+   * A shortest input found by deleting ever smaller runs of chars from
+   * input, on which engine still disagrees with the reference.
+   *
+   * @param input an input on which engine disagrees with the reference.
+   */
+  static String shrink(Engine engine, String input) {
+    String s = input;
+    int chunk = Math.max(1, s.length() / 2);
+    while (true) {
+      boolean shrunk = false;
+      for (int start = 0; start < s.length();) {
+        int end = Math.min(s.length(), start + chunk);
+        String candidate = s.substring(0, start) + s.substring(end);
+        if (disagrees(engine, candidate)) {
+          s = candidate;
+          shrunk = true;
+        } else {
+          start = end;
+        }
+      }
+      if (!shrunk) {
+        if (chunk == 1) { break; }
+        chunk /= 2;
+      }
+    }
+    return s;
+  }
+
+  /**
+   * Describes how engine disagrees with the reference on input, after
+   * shrinking it, with the system property that reproduces it.
+   */
+  static String describeDisagreement(
+      Engine engine, String input, String reproduce) {
+    String minimal = shrink(engine, input);
+    return engine + " disagrees with " + REFERENCE
+        + " (reproduce with " + reproduce + ")"
+        + "\n  input:     " + SlowInputs.quote(minimal)
+        + "\n  reference: " + SlowInputs.quote(REFERENCE.outcome(minimal))
+        + "\n  engine:    " + SlowInputs.quote(engine.outcome(minimal))
+        + "\n  unshrunk:  " + SlowInputs.quote(input);
+  }
+}
@@ -0,0 +1,183 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.json;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounds on the cost of sanitizing and minifying, and the corpus of inputs
+ * that {@link PerformanceFuzzer} found to exceed them, which
+ * {@link SlowInputsTest} replays.
+ */
+final class SlowInputs {
+  private SlowInputs() {
+    // Static API.
+  }
+
+  /** The corpus of slow inputs, a resource relative to this class. */
+  static final String CORPUS = "slow-inputs.txt";
+
+  /**
+   * Time that any call may take regardless of input length.
+   * The bounds are loose so that a busy machine does not fail the build;
+   * quadratic behavior on inputs of a few thousand chars blows past them.
+   */
+  static final long FIXED_NANOS = 1000000;
+  /** Time per input char that a call may take. */
+  static final long NANOS_PER_CHAR = 1000;
+  /** Bytes that any call may allocate regardless of input length. */
+  static final long FIXED_BYTES = 16384;
+  /** Bytes per input char that a call may allocate. */
+  static final long BYTES_PER_CHAR = 256;
+
+  /** The operations whose cost is bounded. */
+  enum Operation {
+    SANITIZE {
+      @Override
+      String apply(String input) {
+        return JsonSanitizer.sanitize(input);
+      }
+    },
+    MINIFY {
+      @Override
+      String apply(String input) {
+        return EvalMinifier.minify(input);
+      }
+    },
+    ;
+
+    abstract String apply(String input);
+  }
+
+  /** An input and the operation that was slow on it. */
+  static final class Entry {
+    final Operation operation;
+    final String input;
+
+    Entry(Operation operation, String input) {
+      this.operation = operation;
+      this.input = input;
+    }
+
+    /**
+     * A line of the corpus: the operation name followed by the input as a
+     * JSON string with everything outside printable ASCII escaped.
+     */
+    @Override
+    public String toString() {
+      return operation.name() + " " + quote(input);
+    }
+
+    static Entry parse(String line) {
+      int space = line.indexOf(' ');
+      return new Entry(
+          Operation.valueOf(line.substring(0, space)),
+          JsonIndex.decodeString(line, space + 1, line.length()));
+    }
+  }
+
+  /**
+   * s as a JSON string with everything outside printable ASCII escaped, so
+   * that it survives being pasted from a log into a test.
+   */
+  static String quote(String s) {
+    StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+    for (int i = 0, n = s.length(); i < n; ++i) {
+      char ch = s.charAt(i);
+      if (ch < 0x20 || ch >= 0x7f || ch == '"' || ch == '\\') {
+        sb.append(String.format("\\u%04x", (int) ch));
+      } else {
+        sb.append(ch);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  /** The cost of one call, the least seen over several. */
+  static final class Cost {
+    final long nanos;
+    /** -1 when the JVM does not count allocations. */
+    final long bytes;
+
+    Cost(long nanos, long bytes) {
+      this.nanos = nanos;
+      this.bytes = bytes;
+    }
+
+    /**
+     * The ratio of this cost to the linear bound for an input of length n,
+     * by whichever of time and space is closer to its bound.
+     */
+    double relativeToBound(int n) {
+      return Math.max(timeRelativeToBound(n), spaceRelativeToBound(n));
+    }
+
+    /** The ratio of the time taken to the linear bound for length n. */
+    double timeRelativeToBound(int n) {
+      return nanos / (double) (FIXED_NANOS + NANOS_PER_CHAR * n);
+    }
+
+    /**
+     * The ratio of the bytes allocated to the linear bound for length n,
+     * which is negative when the JVM does not count allocations.
+     */
+    double spaceRelativeToBound(int n) {
+      return bytes / (double) (FIXED_BYTES + BYTES_PER_CHAR * n);
+    }
+
+    @Override
+    public String toString() {
+      return nanos + "ns, " + bytes + "B";
+    }
+  }
+
+  /** Applies operation to input reps times and returns the least cost. */
+  static Cost measure(Operation operation, String input, int reps) {
+    long nanos = Long.MAX_VALUE;
+    long bytes = Long.MAX_VALUE;
+    for (int i = 0; i < reps; ++i) {
+      long bytes0 = ThreadAllocation.allocatedBytes();
+      long t0 = System.nanoTime();
+      operation.apply(input);
+      long t1 = System.nanoTime();
+      long bytes1 = ThreadAllocation.allocatedBytes();
+      nanos = Math.min(nanos, t1 - t0);
+      bytes = Math.min(bytes, bytes1 - bytes0);
+    }
+    return new Cost(nanos, ThreadAllocation.isSupported() ? bytes : -1);
+  }
+
+  static List<Entry> readCorpus() throws IOException {
+    List<Entry> entries = new ArrayList<Entry>();
+    InputStream in = SlowInputs.class.getResourceAsStream(CORPUS);
+    if (in == null) { return entries; }
+    try {
+      BufferedReader lines = new BufferedReader(
+          new InputStreamReader(in, "UTF-8"));
+      for (String line; (line = lines.readLine()) != null;) {
+        if (line.length() != 0 && line.charAt(0) != '#') {
+          entries.add(Entry.parse(line));
+        }
+      }
+    } finally {
+      in.close();
+    }
+    return entries;
+  }
+}
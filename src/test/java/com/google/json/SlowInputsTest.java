@@ -0,0 +1,86 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.json;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.google.json.SlowInputs.Cost;
+import com.google.json.SlowInputs.Entry;
+import com.google.json.SlowInputs.Operation;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * Replays inputs that {@link PerformanceFuzzer} found to be slow, and
+ * checks that each is now handled in space linear in its length.
+ * <p>
+ * Time depends on the machine and whatever else it is running, so it is
+ * only checked against its linear bound when the system property
+ * {@code slow.inputs.timed} is true, as by
+ * {@code mvn test -Dtest=SlowInputsTest -Dslow.inputs.timed=true}.
+ */
+@SuppressWarnings("javadoc")
+public final class SlowInputsTest extends TestCase {
+
+  @Test
+  public static final void testEntryRoundTrips() {
+    Entry entry = new Entry(Operation.MINIFY, "['\"\\\n\u2028\ud800");
+    assertEquals(
+        "MINIFY \"['\\u0022\\u005c\\u000a\\u2028\\ud800\"", entry.toString());
+    Entry parsed = Entry.parse(entry.toString());
+    assertEquals(entry.operation, parsed.operation);
+    assertEquals(entry.input, parsed.input);
+  }
+
+  @Test
+  public static final void testSlowInputsAllocateLinearly()
+      throws IOException {
+    List<Entry> entries = SlowInputs.readCorpus();
+    assertFalse(entries.isEmpty());
+    if (!ThreadAllocation.isSupported()) { return; }
+    for (Entry entry : entries) {
+      Cost cost = SlowInputs.measure(entry.operation, entry.input, 20);
+      assertTrue(
+          entry.operation + " allocated " + cost.bytes + "B on "
+          + entry.input.length() + " chars: " + entry,
+          cost.spaceRelativeToBound(entry.input.length()) <= 1);
+    }
+  }
+
+  @Test
+  public static final void testSlowInputsTakeLinearTime()
+      throws IOException {
+    if (!Boolean.getBoolean("slow.inputs.timed")) { return; }
+    List<Entry> entries = SlowInputs.readCorpus();
+    for (Entry entry : entries) {
+      // Warm up so that time in the interpreter does not count.
+      SlowInputs.measure(entry.operation, entry.input, 20);
+      Cost cost = SlowInputs.measure(entry.operation, entry.input, 20);
+      // A busy machine can stall every rep of one round, so only fail when
+      // a few rounds, each after a collection, are all over the bound.
+      for (int round = 1;
+           round < 3 && cost.timeRelativeToBound(entry.input.length()) > 1;
+           ++round) {
+        System.gc();
+        cost = SlowInputs.measure(entry.operation, entry.input, 20);
+      }
+      assertTrue(
+          entry.operation + " took " + cost.nanos + "ns on "
+          + entry.input.length() + " chars: " + entry,
+          cost.timeRelativeToBound(entry.input.length()) <= 1);
+    }
+  }
+}
@@ -0,0 +1,166 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.json;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times the token loop's state machine on structure-heavy inputs, where
+ * every few characters are a bracket, comma, colon, or value whose
+ * transition depends on the state.
+ * <p>
+ * Run with
+ * {@code java -cp target/classes:target/test-classes
+ * com.google.json.StateMachineBenchmark [baseline-classpath]}.
+ * Given the classpath of another build, for example
+ * {@code target/classes} of a checkout of an earlier commit, this loads
+ * its {@code JsonSanitizer} in a separate class loader and alternates
+ * between the two builds so that both see the same machine noise.
+ * This is not run as part of the tests.
+ */
+@SuppressWarnings("javadoc")
+public final class StateMachineBenchmark {
+
+  public static void main(String... argv) throws Exception {
+    Method current = JsonSanitizer.class.getMethod("sanitize", String.class);
+    Method baseline = null;
+    if (argv.length != 0) {
+      String[] paths = argv[0].split(File.pathSeparator);
+      URL[] urls = new URL[paths.length];
+      for (int i = 0; i < paths.length; ++i) {
+        urls[i] = new File(paths[i]).toURI().toURL();
+      }
+      // A null parent so the baseline's classes do not resolve to ours.
+      ClassLoader loader = new URLClassLoader(urls, null);
+      baseline = loader.loadClass("com.google.json.JsonSanitizer")
+          .getMethod("sanitize", String.class);
+    }
+
+    Random rnd = new Random(0);
+    String[] names = { "valid", "js-like", "mixed" };
+    String[] inputs = {
+      structured(rnd, false), structured(rnd, true), mixed(rnd),
+    };
+    for (int k = 0; k < inputs.length; ++k) {
+      if (baseline != null &&
+          !baseline.invoke(null, inputs[k]).equals(
+              current.invoke(null, inputs[k]))) {
+        throw new AssertionError("Builds disagree on " + names[k]);
+      }
+    }
+    for (int k = 0; k < inputs.length; ++k) {
+      // Warm up.
+      time(current, inputs[k], 2000);
+      if (baseline != null) { time(baseline, inputs[k], 2000); }
+    }
+    for (int k = 0; k < inputs.length; ++k) {
+      // Many short samples that alternate between the builds, so that
+      // both see the same interruptions, and the medians ignore them.
+      int nSamples = 301;
+      long[] samples = new long[nSamples];
+      long[] baselineSamples = new long[nSamples];
+      for (int j = 0; j < nSamples; ++j) {
+        samples[j] = time(current, inputs[k], 20);
+        if (baseline != null) {
+          baselineSamples[j] = time(baseline, inputs[k], 20);
+        }
+      }
+      long t = median(samples);
+      String line = names[k] + ": " + t + " ns/op";
+      if (baseline != null) {
+        long b = median(baselineSamples);
+        line += ", baseline " + b + " ns/op ("
+            + String.format("%+.1f%%", 100.0 * (t - b) / b) + ")";
+      }
+      System.out.println(line);
+    }
+  }
+
+  private static long median(long[] samples) {
+    long[] sorted = samples.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+
+  /**
+   * Records of small members, as in API responses.  If jsLike, in the
+   * style of JS object literals: unquoted or single-quoted keys, trailing
+   * commas, and elided values.
+   */
+  private static String structured(Random rnd, boolean jsLike) {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < 500; ++i) {
+      if (i != 0) { sb.append(','); }
+      if (jsLike) {
+        sb.append("{id:").append(i).append(",'ok':true,tags:['a',,'b',],")
+            .append("n:null,v:[").append(rnd.nextInt(100)).append(",{x:")
+            .append(rnd.nextInt(10)).append("},],}");
+      } else {
+        sb.append("{\"id\":").append(i).append(",\"ok\":true,")
+            .append("\"tags\":[\"a\",\"b\"],\"n\":null,\"v\":[")
+            .append(rnd.nextInt(100)).append(",{\"x\":")
+            .append(rnd.nextInt(10)).append("}]}");
+      }
+    }
+    return sb.append(']').toString();
+  }
+
+  /**
+   * Structural characters and short values in random order, so that
+   * transitions are hard to predict.
+   */
+  private static String mixed(Random rnd) {
+    String[] tokens = {
+      "[", "]", "{", "}", ",", ":", "1", "\"a\"", "true", "x", " ",
+    };
+    StringBuilder sb = new StringBuilder();
+    int depth = 0;
+    for (int i = 0; i < 10000; ++i) {
+      String tok = tokens[rnd.nextInt(tokens.length)];
+      // Keep brackets balanced enough that input is not dropped and
+      // nesting stays within limits.
+      if (tok.equals("[") || tok.equals("{")) {
+        if (depth == 32) { continue; }
+        ++depth;
+      } else if (tok.equals("]") || tok.equals("}")) {
+        if (depth == 1) { continue; }
+        --depth;
+      } else if (depth == 0) {
+        sb.append('[');
+        ++depth;
+      }
+      sb.append(tok);
+    }
+    return sb.toString();
+  }
+
+  private static long time(Method sanitize, String input, int reps)
+      throws Exception {
+    int sink = 0;
+    long t0 = System.nanoTime();
+    for (int i = 0; i < reps; ++i) {
+      sink += ((String) sanitize.invoke(null, input)).length();
+    }
+    long t1 = System.nanoTime();
+    if (sink == 42) { System.out.print(""); }
+    return (t1 - t0) / reps;
+  }
+}
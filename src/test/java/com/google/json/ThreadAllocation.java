@@ -0,0 +1,56 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the bytes allocated by the current thread, for tests and
+ * benchmarks that bound allocation, via
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ */
+final class ThreadAllocation {
+  private ThreadAllocation() {
+    // Static API.
+  }
+
+  private static final com.sun.management.ThreadMXBean THREAD_BEAN;
+  static {
+    java.lang.management.ThreadMXBean bean =
+        ManagementFactory.getThreadMXBean();
+    com.sun.management.ThreadMXBean threadBean = null;
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      threadBean = (com.sun.management.ThreadMXBean) bean;
+      if (threadBean.isThreadAllocatedMemorySupported()) {
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+      } else {
+        threadBean = null;
+      }
+    }
+    THREAD_BEAN = threadBean;
+  }
+
+  /** True if {@link #allocatedBytes} counts. */
+  static boolean isSupported() {
+    return THREAD_BEAN != null;
+  }
+
+  /** Bytes allocated by this thread, or -1 if the JVM cannot tell. */
+  static long allocatedBytes() {
+    return THREAD_BEAN != null
+        ? THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId())
+        : -1;
+  }
+}
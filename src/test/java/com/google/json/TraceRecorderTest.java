@@ -0,0 +1,151 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.json.JsonSanitizer.State;
+import com.google.json.TraceListener.Action;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class TraceRecorderTest extends TestCase {
+
+  /** Sanitizes each input with recorder installed. */
+  private static TraceRecorder trace(
+      int capacity, int sampleEvery, String... inputs) {
+    TraceRecorder recorder = new TraceRecorder(capacity);
+    JsonSanitizer.setTraceListener(recorder, sampleEvery);
+    try {
+      for (String input : inputs) {
+        JsonSanitizer.sanitize(input);
+      }
+    } finally {
+      JsonSanitizer.setTraceListener(null, 1);
+    }
+    return recorder;
+  }
+
+  private static List<String> describe(List<TraceRecorder.Event> events) {
+    List<String> descriptions = new ArrayList<String>();
+    for (TraceRecorder.Event e : events) {
+      // Leave out the call number since that depends on earlier tests.
+      descriptions.add(e.toString().replaceFirst("^#\\d+ ", ""));
+    }
+    return descriptions;
+  }
+
+  private static void assertTrace(String input, String... expected) {
+    TraceRecorder recorder = trace(100, 1, input);
+    assertEquals(
+        input,
+        listOf(expected),
+        describe(recorder.getEvents()));
+  }
+
+  private static List<String> listOf(String... strs) {
+    List<String> list = new ArrayList<String>();
+    for (String s : strs) { list.add(s); }
+    return list;
+  }
+
+  @Test
+  public static final void testValid() {
+    assertTrace(
+        "[1, 2]",
+        "@0 '[' START_ARRAY KEPT",
+        "@1 '1' START_ARRAY KEPT",
+        "@2 ',' AFTER_ELEMENT KEPT",
+        "@4 '2' BEFORE_ELEMENT KEPT",
+        "@5 ']' AFTER_ELEMENT KEPT",
+        "@6 EOF AFTER_ELEMENT KEPT");
+  }
+
+  @Test
+  public static final void testFixes() {
+    assertTrace(
+        "{a:(1),}",
+        "@0 '{' START_ARRAY KEPT",
+        "@1 'a' START_MAP INSERTED",
+        "@2 ':' AFTER_KEY KEPT",
+        "@3 '(' BEFORE_VALUE REMOVED",
+        "@4 '1' BEFORE_VALUE KEPT",
+        "@5 ')' AFTER_VALUE REMOVED",
+        "@6 ',' AFTER_VALUE KEPT",
+        "@7 '}' BEFORE_KEY REWRITTEN",
+        "@8 EOF AFTER_ELEMENT KEPT");
+    assertTrace(
+        "[0x10 'a'",
+        "@0 '[' START_ARRAY KEPT",
+        "@1 '0' START_ARRAY REWRITTEN",
+        "@6 ''' AFTER_ELEMENT REWRITTEN",
+        "@9 EOF AFTER_ELEMENT INSERTED");
+    assertTrace(
+        "1]2",
+        "@0 '1' START_ARRAY KEPT",
+        "@1 ']' AFTER_ELEMENT REMOVED",
+        "@3 EOF AFTER_ELEMENT KEPT");
+    assertTrace(
+        " ",
+        "@0 U+2028 START_ARRAY REMOVED",
+        "@1 EOF START_ARRAY INSERTED");
+  }
+
+  @Test
+  public static final void testSampling() {
+    TraceRecorder recorder = trace(100, 3, "1", "2", "3", "4", "5");
+    List<TraceRecorder.Event> events = recorder.getEvents();
+    assertEquals(4, events.size());
+    assertEquals('1', events.get(0).getChar());
+    assertEquals('4', events.get(2).getChar());
+    long call = events.get(0).getCall();
+    assertEquals(call + 3, events.get(2).getCall());
+    assertEquals(2, recorder.getEvents(call).size());
+    assertEquals(State.START_ARRAY, events.get(0).getState());
+    assertEquals(Action.KEPT, events.get(0).getAction());
+  }
+
+  @Test
+  public static final void testRingBuffer() {
+    TraceRecorder recorder = trace(3, 1, "[1,2,3,4]");
+    assertEquals(10, recorder.getEventCount());
+    assertEquals(
+        listOf(
+            "@7 '4' BEFORE_ELEMENT KEPT",
+            "@8 ']' AFTER_ELEMENT KEPT",
+            "@9 EOF AFTER_ELEMENT KEPT"),
+        describe(recorder.getEvents()));
+    recorder.clear();
+    assertTrue(recorder.getEvents().isEmpty());
+  }
+
+  @Test
+  public static final void testNotInstalled() {
+    TraceRecorder recorder = new TraceRecorder(10);
+    JsonSanitizer.setTraceListener(recorder, 1);
+    JsonSanitizer.setTraceListener(null, 1);
+    JsonSanitizer.sanitize("[1]");
+    assertEquals(0, recorder.getEventCount());
+    try {
+      JsonSanitizer.setTraceListener(recorder, 0);
+      fail();
+    } catch (@SuppressWarnings("unused") IllegalArgumentException ex) {
+      // Expected.
+    }
+  }
+}
@@ -0,0 +1,160 @@
+// Copyright (C) 2012 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public final class FlightRecorderEventsTest extends TestCase {
+
+  /**
+   * Tests run against a class directory rather than the multi-release jar,
+   * so load the library with the Java 11 versions ahead of the base ones.
+   */
+  private static URLClassLoader multiReleaseLoader() throws Exception {
+    Path classes = Paths.get(JsonSanitizer.class.getProtectionDomain()
+        .getCodeSource().getLocation().toURI());
+    URL[] urls = {
+      classes.resolve("META-INF/versions/11").toUri().toURL(),
+      classes.toUri().toURL(),
+    };
+    return new URLClassLoader(urls, ClassLoader.getPlatformClassLoader());
+  }
+
+  /** Sanitizes and minifies once, for a JVM that does not record. */
+  public static final class SanitizeOnce {
+    public static void main(String[] args) {
+      JsonSanitizer.sanitize("{a:1}");
+      EvalMinifier.minify("[\"a\",\"a\"]");
+    }
+  }
+
+  @Test
+  public static final void testEventClassesNotLoadedWithoutRecorder()
+      throws Exception {
+    Path classes = Paths.get(JsonSanitizer.class.getProtectionDomain()
+        .getCodeSource().getLocation().toURI());
+    Path testClasses = Paths.get(SanitizeOnce.class.getProtectionDomain()
+        .getCodeSource().getLocation().toURI());
+    String classPath = classes.resolve("META-INF/versions/11")
+        + File.pathSeparator + classes + File.pathSeparator + testClasses;
+    Process p = new ProcessBuilder(
+        Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+        "-verbose:class", "-cp", classPath, SanitizeOnce.class.getName())
+        .redirectErrorStream(true)
+        .start();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    InputStream in = p.getInputStream();
+    byte[] buf = new byte[8192];
+    for (int n; (n = in.read(buf)) >= 0;) {
+      out.write(buf, 0, n);
+    }
+    assertEquals(0, p.waitFor());
+    String log = out.toString("UTF-8");
+    assertTrue(log, log.contains("com.google.json.FlightRecorderSupport "));
+    assertFalse(log, log.contains("com.google.json.SanitizeEvent "));
+    assertFalse(log, log.contains("com.google.json.MinifyEvent "));
+  }
+
+  @Test
+  public static final void testEvents() throws Exception {
+    StringBuilder repetitive = new StringBuilder("[");
+    for (int i = 0; i < 20; ++i) {
+      repetitive.append("\"a long repeated string\",");
+    }
+    repetitive.append(']');
+
+    List<RecordedEvent> events;
+    URLClassLoader loader = multiReleaseLoader();
+    Recording recording = new Recording();
+    Path file = Files.createTempFile("json-sanitizer", ".jfr");
+    try {
+      Method sanitize = loader.loadClass("com.google.json.JsonSanitizer")
+          .getMethod("sanitize", String.class);
+      Method minify = loader.loadClass("com.google.json.EvalMinifier")
+          .getMethod("minify", String.class);
+      assertEquals(
+          "Java 11 versions loaded", "jdk.jfr.Event",
+          loader.loadClass("com.google.json.SanitizeEvent").getSuperclass()
+          .getName());
+
+      recording.enable("com.google.json.Sanitize")
+          .withThreshold(Duration.ZERO);
+      recording.enable("com.google.json.Minify")
+          .withThreshold(Duration.ZERO);
+      recording.start();
+      sanitize.invoke(null, "[1,2]");
+      sanitize.invoke(null, "{a:[[1,]]");
+      minify.invoke(null, repetitive.toString());
+      recording.stop();
+      recording.dump(file);
+      events = RecordingFile.readAllEvents(file);
+    } finally {
+      recording.close();
+      loader.close();
+      Files.delete(file);
+    }
+
+    List<RecordedEvent> sanitizes = new ArrayList<RecordedEvent>();
+    List<RecordedEvent> minifies = new ArrayList<RecordedEvent>();
+    for (RecordedEvent e : events) {
+      String name = e.getEventType().getName();
+      if (name.equals("com.google.json.Sanitize")) {
+        sanitizes.add(e);
+      } else if (name.equals("com.google.json.Minify")) {
+        minifies.add(e);
+      }
+    }
+    // The minifier sanitizes too.
+    assertEquals(3, sanitizes.size());
+    assertEquals(1, minifies.size());
+
+    RecordedEvent valid = sanitizes.get(0);
+    assertEquals(5, valid.getInt("inputLength"));
+    assertEquals(5, valid.getInt("outputLength"));
+    assertTrue(valid.getBoolean("fastPath"));
+    assertEquals(0, valid.getInt("rewrites"));
+    assertEquals(1, valid.getInt("maxDepth"));
+
+    RecordedEvent fixed = sanitizes.get(1);
+    assertEquals("{\"a\":[[1]]}".length(), fixed.getInt("outputLength"));
+    assertFalse(fixed.getBoolean("fastPath"));
+    assertTrue(fixed.getInt("rewrites") > 0);
+    assertEquals(3, fixed.getInt("maxDepth"));
+
+    RecordedEvent minified = minifies.get(0);
+    assertEquals(repetitive.length(), minified.getInt("inputLength"));
+    assertEquals(1, minified.getInt("poolSize"));
+    assertTrue(minified.getInt("charsSaved") > 0);
+  }
+}